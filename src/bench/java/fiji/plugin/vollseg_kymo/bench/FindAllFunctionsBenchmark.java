@@ -0,0 +1,109 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2022 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.vollseg_kymo.bench;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import fiji.plugin.vollseg_kymo_fit_function.AbstractFunction2D;
+import fiji.plugin.vollseg_kymo_fit_function.PointFunctionMatch;
+import fiji.plugin.vollseg_kymo_functions.Tracking;
+import net.imglib2.util.Pair;
+
+/**
+ * The segmentation of a whole track by {@link Tracking#findAllFunctions}, with
+ * the functions and the default minimum number of inliers and maximum gap of
+ * Load_ransac_fits, over {@link SyntheticTrack}s of varied length, noise,
+ * outlier fraction and segment count. The maximum error is the default one,
+ * or three times the noise if that is larger.
+ * <p>
+ * Before measuring, the segments found are checked against the ones the
+ * track was made of, see {@link SyntheticTrack#check}. The benchmark fails if
+ * the check does.
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+public class FindAllFunctionsBenchmark
+{
+	public static final int MIN_INLIERS = 10;
+
+	public static final int MAX_DIST = 300;
+
+	@Param( { "linear", "interpolatedQuadratic", "interpolatedCubic" } )
+	public String model;
+
+	@Param( { "250", "1000", "4000" } )
+	public int length;
+
+	@Param( { "2", "8" } )
+	public int segments;
+
+	@Param( { "0.5", "1.5" } )
+	public double noise;
+
+	@Param( { "0", "0.1" } )
+	public double outliers;
+
+	@Param( { "42" } )
+	public long seed;
+
+	private SyntheticTrack track;
+
+	private double maxError;
+
+	@SuppressWarnings( "rawtypes" )
+	private AbstractFunction2D function;
+
+	@Setup
+	public void setup()
+	{
+		track = SyntheticTrack.sawtooth( length, segments, noise, outliers, seed );
+		maxError = Math.max( 1.8, 3 * noise );
+		function = Models.create( model );
+
+		track.check( findAllFunctions(), maxError );
+	}
+
+	@SuppressWarnings( "unchecked" )
+	@Benchmark
+	public ArrayList< Pair< AbstractFunction2D< ? >, ArrayList< PointFunctionMatch > > > findAllFunctions()
+	{
+		AbstractFunction2D.setRandomSeed( seed );
+		return Tracking.findAllFunctions( track.points, function, maxError, MIN_INLIERS, MAX_DIST );
+	}
+}
@@ -0,0 +1,148 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2022 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.vollseg_kymo.bench;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import fiji.plugin.vollseg_kymo_fit_function.AbstractFunction2D;
+import fiji.plugin.vollseg_kymo_fit_function.polynomial.Polynomial;
+import mpicbg.models.Point;
+
+/**
+ * The per point kernels of the functions: the distance of a point to the
+ * curve, which RANSAC computes for every candidate of every iteration, and
+ * the least squares fit to all points.
+ * <p>
+ * The points lie around a line for the linear function and around a
+ * parabola for the others, with gaussian noise of 1 px.
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class KernelBenchmark
+{
+	@Param( { "linear", "quadratic", "cubic" } )
+	public String model;
+
+	@Param( { "1000" } )
+	public int size;
+
+	@Param( { "42" } )
+	public long seed;
+
+	private ArrayList< Point > points;
+
+	/** How far each point lies above or below the curve. */
+	private double[] offsets;
+
+	@SuppressWarnings( "rawtypes" )
+	private AbstractFunction2D function;
+
+	@SuppressWarnings( "rawtypes" )
+	private AbstractFunction2D fitted;
+
+	@SuppressWarnings( "unchecked" )
+	@Setup
+	public void setup() throws Exception
+	{
+		final Random random = new Random( seed );
+		final boolean straight = model.equals( "linear" );
+
+		final ArrayList< Point > exact = new ArrayList< Point >( size );
+		points = new ArrayList< Point >( size );
+		offsets = new double[ size ];
+
+		for ( int x = 0; x < size; ++x )
+		{
+			final double y = straight ? 10 + 0.5 * x : 10 + 0.5 * x - 0.5 * x * x / size;
+			exact.add( new Point( new double[] { x, y } ) );
+
+			offsets[ x ] = random.nextGaussian();
+			points.add( new Point( new double[] { x, y + offsets[ x ] } ) );
+		}
+
+		// the curve the distances are measured to
+		function = Models.create( model );
+		function.fitFunction( exact );
+		fitted = Models.create( model );
+
+		check( exact );
+	}
+
+	/**
+	 * The exact curve is found again, and no point is farther from it than
+	 * vertically.
+	 */
+	@SuppressWarnings( "unchecked" )
+	private void check( final ArrayList< Point > exact )
+	{
+		final Polynomial< ?, ? > polynomial = ( Polynomial< ?, ? > ) function;
+		for ( final Point p : exact )
+		{
+			final double x = p.getW()[ 0 ], y = p.getW()[ 1 ];
+			if ( Math.abs( polynomial.predict( x ) - y ) > 1e-6 * Math.max( 1, Math.abs( y ) ) )
+				throw new IllegalStateException( model + " fit is off at x = " + x + ": " + polynomial.predict( x ) + " instead of " + y );
+		}
+
+		for ( int i = 0; i < size; ++i )
+		{
+			final double distance = function.distanceTo( points.get( i ) );
+			if ( !( distance <= Math.abs( offsets[ i ] ) + 1e-2 ) )
+				throw new IllegalStateException( model + " distance " + distance + " at x = " + i + " is more than the vertical offset " + Math.abs( offsets[ i ] ) );
+		}
+	}
+
+	@SuppressWarnings( "unchecked" )
+	@Benchmark
+	public double distanceTo()
+	{
+		double sum = 0;
+		for ( final Point p : points )
+			sum += function.distanceTo( p );
+		return sum;
+	}
+
+	@SuppressWarnings( "unchecked" )
+	@Benchmark
+	public Object fit() throws Exception
+	{
+		fitted.fitFunction( points );
+		return fitted;
+	}
+}
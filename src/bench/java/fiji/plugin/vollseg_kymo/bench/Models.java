@@ -0,0 +1,66 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2022 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.vollseg_kymo.bench;
+
+import fiji.plugin.vollseg_kymo_fit_function.AbstractFunction2D;
+import fiji.plugin.vollseg_kymo_fit_function.polynomial.HigherOrderPolynomialFunction;
+import fiji.plugin.vollseg_kymo_fit_function.polynomial.InterpolatedPolynomial;
+import fiji.plugin.vollseg_kymo_fit_function.polynomial.LinearFunction;
+import fiji.plugin.vollseg_kymo_fit_function.polynomial.QuadraticFunction;
+
+/**
+ * The functions benchmarked, by the name used as benchmark parameter.
+ */
+public class Models
+{
+	/** The lambda of the interpolated functions. */
+	public static final double LAMBDA = 0.1;
+
+	private Models()
+	{}
+
+	/**
+	 * @param name
+	 *            linear, quadratic or cubic for the plain functions,
+	 *            interpolatedQuadratic or interpolatedCubic for the ones
+	 *            Load_ransac_fits builds for function choices 1 and 2.
+	 */
+	@SuppressWarnings( "rawtypes" )
+	public static AbstractFunction2D create( final String name )
+	{
+		switch ( name )
+		{
+		case "linear":
+			return new LinearFunction();
+		case "quadratic":
+			return new QuadraticFunction();
+		case "cubic":
+			return new HigherOrderPolynomialFunction( 3 );
+		case "interpolatedQuadratic":
+			return new InterpolatedPolynomial< LinearFunction, QuadraticFunction >( new LinearFunction(), new QuadraticFunction(), 1 - LAMBDA );
+		case "interpolatedCubic":
+			return new InterpolatedPolynomial< LinearFunction, HigherOrderPolynomialFunction >( new LinearFunction(), new HigherOrderPolynomialFunction( 3 ), 1 - LAMBDA );
+		default:
+			throw new IllegalArgumentException( "Unknown model " + name );
+		}
+	}
+}
@@ -0,0 +1,129 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2022 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.vollseg_kymo.bench;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import fiji.plugin.vollseg_kymo_fit_function.AbstractFunction2D;
+import fiji.plugin.vollseg_kymo_fit_function.PointFunctionMatch;
+import fiji.plugin.vollseg_kymo_functions.Tracking;
+import mpicbg.models.Point;
+
+/**
+ * One {@link AbstractFunction2D#ransac} search, as run for every segment of a
+ * track: {@link Tracking#RANSAC_ITERATIONS} iterations over one segment with
+ * noise and outliers, a line for the linear function and a parabola for the
+ * others. The random number generator is re-seeded before every search, so
+ * each one does the same work.
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class RansacBenchmark
+{
+	@Param( { "linear", "quadratic", "cubic" } )
+	public String model;
+
+	@Param( { "100", "1000" } )
+	public int size;
+
+	@Param( { "0.5", "1.5" } )
+	public double noise;
+
+	@Param( { "0", "0.2" } )
+	public double outliers;
+
+	@Param( { "42" } )
+	public long seed;
+
+	private ArrayList< PointFunctionMatch > candidates;
+
+	private final ArrayList< PointFunctionMatch > inliers = new ArrayList< PointFunctionMatch >();
+
+	private double maxError;
+
+	/** The points that are not outliers. */
+	private int expected;
+
+	@SuppressWarnings( "rawtypes" )
+	private AbstractFunction2D function;
+
+	@Setup
+	public void setup() throws Exception
+	{
+		final Random random = new Random( seed );
+		final boolean straight = model.equals( "linear" );
+
+		candidates = new ArrayList< PointFunctionMatch >( size );
+		expected = 0;
+
+		for ( int x = 0; x < size; ++x )
+		{
+			final double ideal = straight ? 10 + 0.5 * x : 10 + 0.5 * x - 0.5 * x * x / size;
+			final double y;
+
+			if ( random.nextDouble() < outliers )
+			{
+				y = 10 + random.nextDouble() * ( 0.5 * size + 10 );
+			}
+			else
+			{
+				y = ideal + random.nextGaussian() * noise;
+				++expected;
+			}
+			candidates.add( new PointFunctionMatch( new Point( new double[] { x, y } ) ) );
+		}
+
+		maxError = Math.max( 1.8, 3 * noise );
+		function = Models.create( model );
+
+		ransac();
+		if ( inliers.size() < 0.9 * expected )
+			throw new IllegalStateException( model + " RANSAC found " + inliers.size() + " inliers of " + expected );
+	}
+
+	@SuppressWarnings( "unchecked" )
+	@Benchmark
+	public int ransac() throws Exception
+	{
+		AbstractFunction2D.setRandomSeed( seed );
+		function.ransac( candidates, inliers, Tracking.RANSAC_ITERATIONS, maxError, 0, function.getMinNumPoints(), size );
+		return inliers.size();
+	}
+}
@@ -0,0 +1,171 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2022 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.vollseg_kymo.bench;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import fiji.plugin.vollseg_kymo_fit_function.PointFunctionMatch;
+import fiji.plugin.vollseg_kymo_fit_function.polynomial.Polynomial;
+import mpicbg.models.Point;
+import net.imglib2.util.Pair;
+
+/**
+ * A kymograph track with known segments: one length per timepoint, growing
+ * and shrinking in turn at 0.5 px per timepoint, with gaussian noise and a
+ * fraction of the timepoints replaced by lengths drawn uniformly over the
+ * range of the track. The same arguments always give the same track.
+ */
+public class SyntheticTrack
+{
+	public static final double SLOPE = 0.5;
+
+	public final ArrayList< Point > points;
+
+	/** The segment each point was drawn from, -1 for an outlier. */
+	public final int[] segmentOf;
+
+	public final int segments;
+
+	private SyntheticTrack( final ArrayList< Point > points, final int[] segmentOf, final int segments )
+	{
+		this.points = points;
+		this.segmentOf = segmentOf;
+		this.segments = segments;
+	}
+
+	/**
+	 * @param length
+	 *            the number of timepoints.
+	 * @param segments
+	 *            the number of segments, of equal length.
+	 * @param noise
+	 *            the standard deviation of the length, in px.
+	 * @param outliers
+	 *            the fraction of the timepoints that are outliers.
+	 */
+	public static SyntheticTrack sawtooth( final int length, final int segments, final double noise, final double outliers, final long seed )
+	{
+		final Random random = new Random( seed );
+		final int piece = length / segments;
+		final double base = 10;
+		final double top = base + SLOPE * piece;
+
+		final ArrayList< Point > points = new ArrayList< Point >( length );
+		final int[] segmentOf = new int[ length ];
+
+		for ( int t = 0; t < length; ++t )
+		{
+			final int segment = Math.min( segments - 1, t / piece );
+			final int along = t - segment * piece;
+			final double y;
+
+			if ( random.nextDouble() < outliers )
+			{
+				y = base + random.nextDouble() * ( top - base + 10 );
+				segmentOf[ t ] = -1;
+			}
+			else
+			{
+				final double ideal = segment % 2 == 0 ? base + SLOPE * along : top - SLOPE * along;
+				y = ideal + random.nextGaussian() * noise;
+				segmentOf[ t ] = segment;
+			}
+
+			points.add( new Point( new double[] { t, y } ) );
+		}
+
+		return new SyntheticTrack( points, segmentOf, segments );
+	}
+
+	/**
+	 * @return the points as RANSAC candidates.
+	 */
+	public ArrayList< PointFunctionMatch > candidates()
+	{
+		final ArrayList< PointFunctionMatch > candidates = new ArrayList< PointFunctionMatch >( points.size() );
+		for ( final Point p : points )
+			candidates.add( new PointFunctionMatch( p ) );
+		return candidates;
+	}
+
+	/**
+	 * Checks the segments found by {@link Polynomial} functions: the inliers
+	 * of each are on average within twice the maximum error of its function,
+	 * at least 90% of the points that are not outliers are an inlier of some
+	 * segment, and so is at least half of every segment the track was made
+	 * of.
+	 *
+	 * @throws IllegalStateException
+	 *             if one of these does not hold.
+	 */
+	public void check( final List< ? extends Pair< ?, ArrayList< PointFunctionMatch > > > found, final double maxError )
+	{
+		if ( found == null || found.isEmpty() )
+			throw new IllegalStateException( "No segment found" );
+
+		final Set< Point > explained = Collections.newSetFromMap( new IdentityHashMap< Point, Boolean >() );
+		for ( final Pair< ?, ArrayList< PointFunctionMatch > > segment : found )
+		{
+			final Polynomial< ?, ? > function = ( Polynomial< ?, ? > ) segment.getA();
+			double residuals = 0;
+			for ( final PointFunctionMatch match : segment.getB() )
+			{
+				final double[] w = match.getP1().getW();
+				residuals += Math.abs( w[ 1 ] - function.predict( w[ 0 ] ) );
+				explained.add( match.getP1() );
+			}
+
+			// vertical, larger than the distances to the curve where it is steep
+			if ( !( residuals <= 2 * maxError * segment.getB().size() ) )
+				throw new IllegalStateException( "Inliers are on average " + residuals / segment.getB().size() + " px off their function " + function );
+		}
+
+		final int[] sizes = new int[ segments ];
+		final int[] counts = new int[ segments ];
+		for ( int t = 0; t < points.size(); ++t )
+		{
+			if ( segmentOf[ t ] < 0 )
+				continue;
+
+			++sizes[ segmentOf[ t ] ];
+			if ( explained.contains( points.get( t ) ) )
+				++counts[ segmentOf[ t ] ];
+		}
+
+		int size = 0, count = 0;
+		for ( int s = 0; s < segments; ++s )
+		{
+			if ( 2 * counts[ s ] < sizes[ s ] )
+				throw new IllegalStateException( "Segment " + s + " of " + segments + " not found, " + counts[ s ] + " of its " + sizes[ s ] + " points are inliers" );
+			size += sizes[ s ];
+			count += counts[ s ];
+		}
+
+		if ( count < 0.9 * size )
+			throw new IllegalStateException( "Only " + count + " of " + size + " points are inliers" );
+	}
+}
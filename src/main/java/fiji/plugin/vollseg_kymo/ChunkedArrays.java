@@ -0,0 +1,315 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2022 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.vollseg_kymo;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Copy-on-write arrays for the state of a {@link StatCollection}, split into
+ * chunks of {@link #CHUNK} elements. {@link Chunked#freeze()} hands a reader
+ * a copy that shares all the chunks, after that each side copies a chunk the
+ * first time it writes to it, and the list of chunks. A write after a
+ * snapshot therefore costs one chunk and O(n / {@link #CHUNK}), not O(n).
+ */
+final class ChunkedArrays
+{
+	static final int SHIFT = 10;
+
+	static final int CHUNK = 1 << SHIFT;
+
+	static final int MASK = CHUNK - 1;
+
+	private ChunkedArrays()
+	{}
+
+	/**
+	 * The chunks, and which of them may be written in place.
+	 *
+	 * @param <A>
+	 *            the array type of a chunk.
+	 */
+	static abstract class Chunked< A >
+	{
+
+		/** The chunks, <code>null</code> where nothing was written yet. */
+		protected A[] chunks;
+
+		/** The chunks not shared with a frozen copy. */
+		private BitSet owned = new BitSet();
+
+		/** Whether {@link #chunks} itself is shared with a frozen copy. */
+		private boolean shared = false;
+
+		protected Chunked( final A[] chunks )
+		{
+			this.chunks = chunks;
+		}
+
+		/**
+		 * Marks all the chunks as shared, before handing them to a frozen
+		 * copy.
+		 *
+		 * @return the chunks.
+		 */
+		protected A[] share()
+		{
+			shared = true;
+			owned = new BitSet();
+			return chunks;
+		}
+
+		/**
+		 * Returns the chunk of the given chunk index for writing, created or
+		 * copied first if it is missing or shared.
+		 */
+		protected A writable( final int c )
+		{
+			if ( shared || c >= chunks.length )
+			{
+				chunks = Arrays.copyOf( chunks, c < chunks.length ? chunks.length : Math.max( c + 1, 2 * chunks.length ) );
+				shared = false;
+			}
+			if ( !owned.get( c ) )
+			{
+				chunks[ c ] = null == chunks[ c ] ? newChunk() : copy( chunks[ c ] );
+				owned.set( c );
+			}
+			return chunks[ c ];
+		}
+
+		protected abstract A newChunk();
+
+		protected abstract A copy( A chunk );
+
+		/**
+		 * @return a copy that shares all the chunks with this one. Either can
+		 *         be written to afterwards without the other seeing it.
+		 */
+		abstract Chunked< A > freeze();
+	}
+
+	/**
+	 * A list of objects.
+	 */
+	static final class Objects< T > extends Chunked< Object[] >
+	{
+
+		private int size = 0;
+
+		Objects()
+		{
+			super( new Object[ 0 ][] );
+		}
+
+		int size()
+		{
+			return size;
+		}
+
+		@SuppressWarnings( "unchecked" )
+		T get( final int i )
+		{
+			return ( T ) chunks[ i >>> SHIFT ][ i & MASK ];
+		}
+
+		void set( final int i, final T value )
+		{
+			writable( i >>> SHIFT )[ i & MASK ] = value;
+		}
+
+		void add( final T value )
+		{
+			set( size, value );
+			size++;
+		}
+
+		T removeLast()
+		{
+			final T last = get( size - 1 );
+			set( size - 1, null );
+			size--;
+			return last;
+		}
+
+		@Override
+		Objects< T > freeze()
+		{
+			final Objects< T > frozen = new Objects<>();
+			frozen.chunks = share();
+			frozen.share();
+			frozen.size = size;
+			return frozen;
+		}
+
+		@Override
+		protected Object[] newChunk()
+		{
+			return new Object[ CHUNK ];
+		}
+
+		@Override
+		protected Object[] copy( final Object[] chunk )
+		{
+			return chunk.clone();
+		}
+	}
+
+	/**
+	 * A map from non-negative <code>int</code> keys to <code>int</code>
+	 * values, 0 where no value was set. Meant for dense keys, only the chunks
+	 * that hold a key are allocated.
+	 */
+	static final class Ints extends Chunked< int[] >
+	{
+
+		Ints()
+		{
+			super( new int[ 0 ][] );
+		}
+
+		int get( final int key )
+		{
+			final int c = key >>> SHIFT;
+			return c < chunks.length && null != chunks[ c ] ? chunks[ c ][ key & MASK ] : 0;
+		}
+
+		void set( final int key, final int value )
+		{
+			if ( key < 0 )
+				throw new IllegalArgumentException( "Negative key " + key );
+			writable( key >>> SHIFT )[ key & MASK ] = value;
+		}
+
+		@Override
+		Ints freeze()
+		{
+			final Ints frozen = new Ints();
+			frozen.chunks = share();
+			frozen.share();
+			return frozen;
+		}
+
+		@Override
+		protected int[] newChunk()
+		{
+			return new int[ CHUNK ];
+		}
+
+		@Override
+		protected int[] copy( final int[] chunk )
+		{
+			return chunk.clone();
+		}
+	}
+
+	/**
+	 * A bit set that keeps count of the bits set, {@link #CHUNK} words of 64
+	 * bits per chunk.
+	 */
+	static final class Bits extends Chunked< long[] >
+	{
+
+		private int cardinality = 0;
+
+		Bits()
+		{
+			super( new long[ 0 ][] );
+		}
+
+		/**
+		 * @return a bit set with the bits of the words.
+		 */
+		static Bits of( final long[] words )
+		{
+			final Bits bits = new Bits();
+			for ( int w = 0; w < words.length; w++ )
+			{
+				if ( 0 == words[ w ] )
+					continue;
+				bits.writable( w >>> SHIFT )[ w & MASK ] = words[ w ];
+				bits.cardinality += Long.bitCount( words[ w ] );
+			}
+			return bits;
+		}
+
+		/**
+		 * @return a bit set with the bits 0 to size set.
+		 */
+		static Bits filled( final int size )
+		{
+			final long[] words = new long[ ( size + 63 ) >>> 6 ];
+			Arrays.fill( words, -1L );
+			if ( 0 != ( size & 63 ) )
+				words[ words.length - 1 ] = ( 1L << size ) - 1;
+			return of( words );
+		}
+
+		long word( final int w )
+		{
+			final int c = w >>> SHIFT;
+			return c < chunks.length && null != chunks[ c ] ? chunks[ c ][ w & MASK ] : 0L;
+		}
+
+		boolean get( final int bit )
+		{
+			return 0 != ( word( bit >>> 6 ) & ( 1L << bit ) );
+		}
+
+		void set( final int bit, final boolean value )
+		{
+			if ( get( bit ) == value )
+				return;
+
+			final int w = bit >>> 6;
+			writable( w >>> SHIFT )[ w & MASK ] ^= 1L << bit;
+			cardinality += value ? 1 : -1;
+		}
+
+		int cardinality()
+		{
+			return cardinality;
+		}
+
+		@Override
+		Bits freeze()
+		{
+			final Bits frozen = new Bits();
+			frozen.chunks = share();
+			frozen.share();
+			frozen.cardinality = cardinality;
+			return frozen;
+		}
+
+		@Override
+		protected long[] newChunk()
+		{
+			return new long[ CHUNK ];
+		}
+
+		@Override
+		protected long[] copy( final long[] chunk )
+		{
+			return chunk.clone();
+		}
+	}
+}
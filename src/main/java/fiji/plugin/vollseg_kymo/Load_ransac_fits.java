@@ -43,7 +43,10 @@ import java.awt.Scrollbar;
 import java.awt.TextField;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.io.File;
+import java.lang.reflect.InvocationTargetException;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
 import java.util.ArrayList;
@@ -52,6 +55,7 @@ import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.function.BooleanSupplier;
 import javax.swing.JComboBox;
 import javax.swing.JFileChooser;
 import javax.swing.JFrame;
@@ -59,6 +63,7 @@ import javax.swing.JPanel;
 import javax.swing.JScrollBar;
 import javax.swing.JScrollPane;
 import javax.swing.JTable;
+import javax.swing.SwingUtilities;
 import javax.swing.border.Border;
 import javax.swing.border.CompoundBorder;
 import javax.swing.border.EmptyBorder;
@@ -70,17 +75,18 @@ import net.imglib2.util.ValuePair;
 
 import org.jfree.chart.JFreeChart;
 import org.jfree.chart.util.ShapeUtils;
-import org.jfree.data.xy.XYSeriesCollection;
 
 import fiji.plugin.vollseg_kymo.gui.wizard.Mtrack_vollseg_kymoWizardSequence;
 import fiji.plugin.vollseg_kymo.gui.wizard.WizardSequence;
 import fiji.plugin.vollseg_kymo.listeners.AutoCompileResultsListener;
+import fiji.plugin.vollseg_kymo.listeners.AutoTuneCheckBoxListener;
 import fiji.plugin.vollseg_kymo.listeners.CatastrophyCheckBoxListener;
 import fiji.plugin.vollseg_kymo.listeners.CompileRes;
 import fiji.plugin.vollseg_kymo.listeners.CompileResultsListener;
 import fiji.plugin.vollseg_kymo.listeners.ErrorListener;
 import fiji.plugin.vollseg_kymo.listeners.ErrorLocListener;
 import fiji.plugin.vollseg_kymo.listeners.FinishButtonListener;
+import fiji.plugin.vollseg_kymo.listeners.FramestrideListener;
 import fiji.plugin.vollseg_kymo.listeners.FunctionItemListener;
 import fiji.plugin.vollseg_kymo.listeners.LambdaListener;
 import fiji.plugin.vollseg_kymo.listeners.LengthdistroListener;
@@ -95,11 +101,17 @@ import fiji.plugin.vollseg_kymo.listeners.MinInlierListener;
 import fiji.plugin.vollseg_kymo.listeners.MinInlierLocListener;
 import fiji.plugin.vollseg_kymo.listeners.MinSlopeListener;
 import fiji.plugin.vollseg_kymo.listeners.MinSlopeLocListener;
+import fiji.plugin.vollseg_kymo.listeners.OverviewListener;
 import fiji.plugin.vollseg_kymo.listeners.Slicer;
+import fiji.plugin.vollseg_kymo.listeners.WriteAllLengthsListener;
 import fiji.plugin.vollseg_kymo.listeners.SliderBoxGUI;
 import fiji.plugin.vollseg_kymo.listeners.WriteLengthListener;
 import fiji.plugin.vollseg_kymo.listeners.WriteRatesListener;
 import fiji.plugin.vollseg_kymo.listeners.WriteStatsListener;
+import fiji.plugin.vollseg_kymo.util.RecomputeService;
+import fiji.plugin.vollseg_kymo.util.StageMetrics;
+import fiji.plugin.vollseg_kymo.util.StageMetrics.Stage;
+import fiji.plugin.vollseg_kymo.util.TrackEvents;
 import fiji.plugin.vollseg_kymo_fit_function.AbstractFunction2D;
 import fiji.plugin.vollseg_kymo_fit_function.PointFunctionMatch;
 import fiji.plugin.vollseg_kymo_fit_function.polynomial.HigherOrderPolynomialFunction;
@@ -107,9 +119,16 @@ import fiji.plugin.vollseg_kymo_fit_function.polynomial.InterpolatedPolynomial;
 import fiji.plugin.vollseg_kymo_fit_function.polynomial.LinearFunction;
 import fiji.plugin.vollseg_kymo_fit_function.polynomial.Polynomial;
 import fiji.plugin.vollseg_kymo_fit_function.polynomial.QuadraticFunction;
+import fiji.plugin.vollseg_kymo_functions.AutoTuner;
 import fiji.plugin.vollseg_kymo_functions.Averagerate;
+import fiji.plugin.vollseg_kymo_functions.FitCache;
+import fiji.plugin.vollseg_kymo_functions.ParameterLattice;
+import fiji.plugin.vollseg_kymo_functions.PrimitiveXYDataset;
+import fiji.plugin.vollseg_kymo_functions.Segmentation;
 import fiji.plugin.vollseg_kymo_functions.RansacFileChooser;
 import fiji.plugin.vollseg_kymo_functions.Rateobject;
+import fiji.plugin.vollseg_kymo_functions.TrackPipeline;
+import fiji.plugin.vollseg_kymo_functions.TrackThumbnails;
 import fiji.plugin.vollseg_kymo_functions.Tracking;
 import mpicbg.models.Point;
 
@@ -158,7 +177,7 @@ public class Load_ransac_fits implements PlugIn {
 
 	private Label inputLabelT;
 	private Label inputLabelTcont;
-	public TextField inputFieldT, maxErrorField, minInlierField, maxGapField, maxSlopeField, minSlopeField;
+	public TextField inputFieldT, inputFieldStride, maxErrorField, minInlierField, maxGapField, maxSlopeField, minSlopeField;
 	public float MAX_ABS_SLOPE = 360.0f;
 	public float MIN_ABS_SLOPE = -360.0f;
 	public static double MIN_CAT = 0.0;
@@ -189,9 +208,20 @@ public class Load_ransac_fits implements PlugIn {
 	ArrayList<Pair<LinearFunction, ArrayList<PointFunctionMatch>>> negsegments;
 	public boolean manualcat = false;
 	public int framenumber = 1;
-	final XYSeriesCollection dataset;
-	public final JFreeChart chart;
-	// final SVGGraphics2D svgchart;
+	// every framestride-th frame goes into the length distribution of all frames
+	public int framestride = 1;
+	public boolean showLengthChart = true;
+
+	// the length plot, built on first use and never in batch-only mode
+	private PrimitiveXYDataset dataset;
+	private JFreeChart chart;
+
+	// fits and measures tracks without building any window or chart
+	public final boolean batchOnly;
+
+	// the points of the current track, kept while the track is shown
+	private PrimitiveXYDataset.Series trackSeries;
+	private List<Pair<Integer, Double>> trackSeriesOf;
 	public int updateCount = 0;
 	public static ArrayList<Pair<AbstractFunction2D, ArrayList<PointFunctionMatch>>> segments;
 	public HashMap<Integer, Pair<Double, Double>> indexedsegments;
@@ -202,6 +232,7 @@ public class Load_ransac_fits implements PlugIn {
 	public HashMap<Integer, ArrayList<Rateobject>> Compilepositiverates;
 	public HashMap<Integer, ArrayList<Rateobject>> Compilenegativerates;
 	public HashMap<Integer, Averagerate> Compileaverage;
+	public HashMap<Integer, AutoTuner.Result> Compileparameters;
 
 	public
 	// for scrollbars
@@ -219,6 +250,9 @@ public class Load_ransac_fits implements PlugIn {
 	public boolean detectCatastrophe = false;
 	public boolean detectmanualCatastrophe = false;
 	public ArrayList<Pair<Integer, Double>> lifecount;
+	// frames per bin of the lifetime histogram, none is written if false
+	public double lifetimebin = 1;
+	public boolean lifetimeHistogram = true;
 	public double minDistanceCatastrophe = 2;
 	public final boolean serial;
 	File[] AllMovies;
@@ -226,13 +260,33 @@ public class Load_ransac_fits implements PlugIn {
 	public ArrayList<File> AllMoviesB;
 	public boolean wasCanceled = false;
 
+	// the plugin of this run, its metrics time the stages since the batch
+	// started
+	public final Mtrack_vollseg_kymo vollsegkymo = createMtrack_vollseg_kymo(createModel());
+
+	// parsed tracks and RANSAC results of already visited tracks, keyed by file
+	// content and parameters
+	public final TrackPipeline pipeline = new TrackPipeline(new FitCache(), TrackPipeline.DEFAULT_PARSED_CAPACITY,
+			vollsegkymo.getMetrics());
+	public boolean useDiskCache = false;
+	public long seed = FitCache.DEFAULT_SEED;
+
+	// pick maxError, minInliers and maxDist per track in batch runs, within
+	// autoTuneMillis per track
+	public boolean autoTune = false;
+	public long autoTuneMillis = 2000;
+
 	public Load_ransac_fits(final ArrayList<Pair<Integer, Double>> mts, File file) {
 		this(mts, 0, 300, 3.0f, 0.1f, 10.0f, 10, 50, 1, 0.1, file);
 		nf.setMaximumFractionDigits(3);
 	}
 
 	public Load_ransac_fits(File[] file) {
-		this(0, 300, 3.0f, 0.1f, 10.0f, 10, 50, 1, 0.1, file);
+		this(file, false);
+	}
+
+	public Load_ransac_fits(File[] file, final boolean batchOnly) {
+		this(0, 300, 3.0f, 0.1f, 10.0f, 10, 50, 1, 0.1, file, batchOnly);
 		nf.setMaximumFractionDigits(3);
 	}
 
@@ -258,21 +312,25 @@ public class Load_ransac_fits implements PlugIn {
 		this.maxDist = Math.min(maxDist, numTimepoints);
 
 		this.serial = false;
+		this.batchOnly = false;
 		if (this.minSlope >= this.maxSlope)
 			this.minSlope = this.maxSlope - 0.1f;
-
-		this.dataset = new XYSeriesCollection();
-		this.chart = Tracking.makeChart(dataset, "Microtubule Length Plot", "Timepoint", "MT Length");
-		// this.svgchart = new SVGGraphics2D(500, 500);
-		this.jFreeChartFrame = Tracking.display(chart, new Dimension(500, 500));
-
-		// this.chart.draw(svgchart, new Rectangle2D.Double(0, 0, 500, 500),
-		// null);
 	};
 
 	public Load_ransac_fits(final int minTP, final int maxTP, final float maxError, final float minSlope,
 			final float maxSlope, final int maxDist, final int minInliers, final int functionChoice,
 			final double lambda, final File[] file) {
+		this(minTP, maxTP, maxError, minSlope, maxSlope, maxDist, minInliers, functionChoice, lambda, file, false);
+	}
+
+	/**
+	 * @param batchOnly
+	 *            if true, {@link #run(String)} fits and measures all files
+	 *            and writes the results without showing anything.
+	 */
+	public Load_ransac_fits(final int minTP, final int maxTP, final float maxError, final float minSlope,
+			final float maxSlope, final int maxDist, final int minInliers, final int functionChoice,
+			final double lambda, final File[] file, final boolean batchOnly) {
 		this.minTP = minTP;
 		this.maxTP = maxTP;
 		this.numTimepoints = maxTP - minTP + 1;
@@ -289,25 +347,52 @@ public class Load_ransac_fits implements PlugIn {
 		this.maxDist = Math.min(maxDist, numTimepoints);
 
 		this.serial = true;
+		this.batchOnly = batchOnly;
 		if (this.minSlope >= this.maxSlope)
 			this.minSlope = this.maxSlope - 0.1f;
-
-		this.dataset = new XYSeriesCollection();
-		this.chart = Tracking.makeChart(dataset, "Microtubule Length Plot", "Timepoint", "MT Length");
-		// this.svgchart = new SVGGraphics2D(500, 500);
-		this.jFreeChartFrame = Tracking.display(chart, new Dimension(500, 500));
-		// this.chart.draw(svgchart, new Rectangle2D.Double(0, 0, 500, 500),
-		// null);
 	};
 
+	/**
+	 * @return the dataset of the length plot, null in batch-only mode
+	 */
+	protected PrimitiveXYDataset dataset() {
+
+		if (dataset == null && !batchOnly) {
+			dataset = new PrimitiveXYDataset();
+			chart = Tracking.makeChart(dataset, "Microtubule Length Plot", "Timepoint", "MT Length");
+		}
+		return dataset;
+	}
+
+	/**
+	 * @return the length plot, null in batch-only mode
+	 */
+	public JFreeChart chart() {
+
+		dataset();
+		return chart;
+	}
+
+	/**
+	 * Opens the frame of the length plot, or again if it was closed.
+	 */
+	public void showChart() {
+
+		if (batchOnly)
+			return;
+
+		if (jFreeChartFrame == null || !jFreeChartFrame.isVisible())
+			jFreeChartFrame = Tracking.display(chart(), new Dimension(500, 500), pipeline.metrics);
+	}
+
 	@Override
 	public void run(String arg) {
 		
 		
-		final Model model = createModel( );
-		final Mtrack_vollseg_kymo vollsegkymo = createMtrack_vollseg_kymo( model );
-		final WizardSequence sequence = createSequence( vollsegkymo);
-		final JFrame frame = sequence.run( "Mtrack_vollseg_kymo on " );
+		if (!batchOnly) {
+			final WizardSequence sequence = createSequence( vollsegkymo);
+			sequence.run( "Mtrack_vollseg_kymo on " );
+		}
 		
 		
 		
@@ -325,6 +410,7 @@ public class Load_ransac_fits implements PlugIn {
 		Compilepositiverates = new HashMap<Integer, ArrayList<Rateobject>>();
 		Compilenegativerates = new HashMap<Integer, ArrayList<Rateobject>>();
 		Compileaverage = new HashMap<Integer, Averagerate>();
+		Compileparameters = new HashMap<Integer, AutoTuner.Result>();
 
 		calibrations = new double[3];
 		lifecount = new ArrayList<Pair<Integer, Double>>();
@@ -335,24 +421,58 @@ public class Load_ransac_fits implements PlugIn {
 		negsegments = new ArrayList<Pair<LinearFunction, ArrayList<PointFunctionMatch>>>();
 		indexedsegments = new HashMap<Integer, Pair<Double, Double>>();
 		linearsegments = new HashMap<Integer, LinearFunction>();
-		if (serial) {
+		if (batchOnly) {
+
+			runBatch();
+
+		} else if (serial) {
 
 			CardTable();
 
+		} else {
+
+			showChart();
+
 		}
 
 	}
 
-	public JFrame Cardframe = new JFrame("Welcome to MTrack_VollSeg_Kymo");
-	public JPanel panelCont = new JPanel();
-	public JPanel panelFirst = new JPanel();
-	public JPanel panelSecond = new JPanel();
-	public JPanel PanelDirectory = new JPanel();
-	private JPanel PanelParameteroptions = new JPanel();
-	private JPanel PanelSavetoFile = new JPanel();
-	public JPanel Panelfunction = new JPanel();
-	private JPanel Panelslope = new JPanel();
-	private JPanel PanelCompileRes = new JPanel();
+	/**
+	 * Fits and measures every file in turn, then writes the rates and
+	 * averages of all of them next to the files.
+	 */
+	public void runBatch() {
+
+		if (inputfiles == null)
+			return;
+
+		pipeline.metrics.beginRun();
+		for (int trackindex = 0; trackindex < inputfiles.length; ++trackindex)
+			displayclicked(trackindex);
+		pipeline.metrics.endRun();
+		logMetrics();
+	}
+
+	/**
+	 * Logs how long each stage took since the batch started.
+	 */
+	public void logMetrics() {
+
+		IJ.log("Time per stage for " + (inputfiles == null ? 0 : inputfiles.length) + " files:\n"
+				+ pipeline.metrics.summary());
+	}
+
+	// the main window, built by CardTable
+	public JFrame Cardframe;
+	public JPanel panelCont;
+	public JPanel panelFirst;
+	public JPanel panelSecond;
+	public JPanel PanelDirectory;
+	private JPanel PanelParameteroptions;
+	private JPanel PanelSavetoFile;
+	public JPanel Panelfunction;
+	private JPanel Panelslope;
+	private JPanel PanelCompileRes;
 	public JTable table;
 	public JFileChooser chooserA;
 	public String choosertitleA;
@@ -380,29 +500,28 @@ public class Load_ransac_fits implements PlugIn {
 
 	public int SizeX = 500;
 	public int SizeY = 400;
-	public JScrollBar maxErrorSB = new JScrollBar(Scrollbar.HORIZONTAL, (int) this.maxError, 10, 0, 10 + scrollbarSize);
-	public JScrollBar minInliersSB = new JScrollBar(Scrollbar.HORIZONTAL, (int) this.minInliers, 10, 0,
-			10 + scrollbarSize);
-	public JScrollBar maxDistSB = new JScrollBar(Scrollbar.HORIZONTAL, (int) this.maxDist, 10, 0, 10 + scrollbarSize);
-	public JScrollBar minSlopeSB = new JScrollBar(Scrollbar.HORIZONTAL, (int) this.minSlope, 10, 0, 10 + scrollbarSize);
-	public JScrollBar maxSlopeSB = new JScrollBar(Scrollbar.HORIZONTAL, (int) this.maxSlope, 10, 0, 10 + scrollbarSize);
-
-	public Label maxErrorLabel = new Label(
-			"Maximum Error (px) = " + new DecimalFormat("#.##").format(this.maxError) + "      ", Label.CENTER);
-	public Label minInliersLabel = new Label(
-			"Minimum No. of timepoints (tp) = " + new DecimalFormat("#.##").format(this.minInliers), Label.CENTER);
-	public Label maxDistLabel = new Label("Maximum Gap (tp) = " + new DecimalFormat("#.##").format(this.maxDist),
-			Label.CENTER);
-
-	public Label minSlopeLabel = new Label(
-			"Min. Segment Slope (px/tp) = " + new DecimalFormat("#.##").format(this.minSlope), Label.CENTER);
-	public Label maxSlopeLabel = new Label(
-			"Max. Segment Slope (px/tp) = " + new DecimalFormat("#.##").format(this.maxSlope), Label.CENTER);
-	public Label maxResLabel = new Label(
-			"MT is rescued if the start of event# i + 1 > start of event# i by px =  " + this.restolerance,
-			Label.CENTER);
+	public JScrollBar maxErrorSB, minInliersSB, maxDistSB, minSlopeSB, maxSlopeSB;
+
+	public Label maxErrorLabel, minInliersLabel, maxDistLabel, minSlopeLabel, maxSlopeLabel, maxResLabel;
 
 	public void CardTable() {
+		Cardframe = new JFrame("Welcome to MTrack_VollSeg_Kymo");
+		panelCont = new JPanel();
+		panelFirst = new JPanel();
+		panelSecond = new JPanel();
+		PanelDirectory = new JPanel();
+		PanelParameteroptions = new JPanel();
+		PanelSavetoFile = new JPanel();
+		Panelfunction = new JPanel();
+		Panelslope = new JPanel();
+		PanelCompileRes = new JPanel();
+
+		maxErrorSB = new JScrollBar(Scrollbar.HORIZONTAL, (int) this.maxError, 10, 0, 10 + scrollbarSize);
+		minInliersSB = new JScrollBar(Scrollbar.HORIZONTAL, (int) this.minInliers, 10, 0, 10 + scrollbarSize);
+		maxDistSB = new JScrollBar(Scrollbar.HORIZONTAL, (int) this.maxDist, 10, 0, 10 + scrollbarSize);
+		minSlopeSB = new JScrollBar(Scrollbar.HORIZONTAL, (int) this.minSlope, 10, 0, 10 + scrollbarSize);
+		maxSlopeSB = new JScrollBar(Scrollbar.HORIZONTAL, (int) this.maxSlope, 10, 0, 10 + scrollbarSize);
+
 		this.lambdaSB = new Scrollbar(Scrollbar.HORIZONTAL, this.lambdaInt, 1, MIN_SLIDER, MAX_SLIDER + 1);
 
 		maxSlopeSB.setValue(Slicer.computeScrollbarPositionFromValue((float) maxSlope, (float) MIN_ABS_SLOPE,
@@ -520,6 +639,8 @@ public class Load_ransac_fits implements PlugIn {
 		inputLabelTcont = new Label("(Press Enter to start computation) ");
 		inputFieldT = new TextField(5);
 		inputFieldT.setText("1");
+		inputFieldStride = new TextField(5);
+		inputFieldStride.setText("1");
 
 		c.gridwidth = 10;
 		c.gridheight = 10;
@@ -544,15 +665,20 @@ public class Load_ransac_fits implements PlugIn {
 		final Button Compile = new Button("Compute rates and freq. till current file");
 		final Button AutoCompile = new Button("Auto Compute Velocity and Frequencies");
 		final Button Measureserial = new Button("Select directory of MTrack generated files");
+		final Button Overview = new Button("Overview of all tracks");
 		final Button WriteLength = new Button("Compute length distribution at framenumber : ");
+		final Button WriteAllLengths = new Button("Compute length distribution at all frames, stride : ");
 		final Button WriteStats = new Button("Compute lifetime and mean length distribution");
 		final Button WriteAgain = new Button("Save Velocity and Frequencies to File");
+		final Checkbox autoTuneBox = new Checkbox("Auto-tune RANSAC parameters per track", this.autoTune);
 
 		PanelDirectory.add(Measureserial, new GridBagConstraints(0, 0, 1, 1, 0.0, 0.0, GridBagConstraints.WEST,
 				GridBagConstraints.HORIZONTAL, insets, 0, 0));
 
 		PanelDirectory.add(scrollPane, new GridBagConstraints(0, 1, 1, 1, 0.0, 0.0, GridBagConstraints.WEST,
 				GridBagConstraints.HORIZONTAL, insets, 0, 0));
+		PanelDirectory.add(Overview, new GridBagConstraints(0, 2, 1, 1, 0.0, 0.0, GridBagConstraints.WEST,
+				GridBagConstraints.HORIZONTAL, insets, 0, 0));
 		PanelDirectory.setBorder(selectdirectory);
 		PanelDirectory.setPreferredSize(new Dimension(SizeX, SizeY));
 		panelFirst.add(PanelDirectory, new GridBagConstraints(0, 0, 3, 1, 0.0, 0.0, GridBagConstraints.WEST,
@@ -624,9 +750,18 @@ public class Load_ransac_fits implements PlugIn {
 		PanelCompileRes.add(inputFieldT, new GridBagConstraints(3, 1, 3, 1, 0.1, 0.0, GridBagConstraints.CENTER,
 				GridBagConstraints.HORIZONTAL, insets, 0, 0));
 
+		PanelCompileRes.add(WriteAllLengths, new GridBagConstraints(0, 2, 3, 1, 0.0, 0.0, GridBagConstraints.CENTER,
+				GridBagConstraints.HORIZONTAL, insets, 0, 0));
+
+		PanelCompileRes.add(inputFieldStride, new GridBagConstraints(3, 2, 3, 1, 0.1, 0.0, GridBagConstraints.CENTER,
+				GridBagConstraints.HORIZONTAL, insets, 0, 0));
+
 		PanelCompileRes.add(WriteStats, new GridBagConstraints(0, 4, 3, 1, 0.0, 0.0, GridBagConstraints.WEST,
 				GridBagConstraints.HORIZONTAL, insets, 0, 0));
 
+		PanelCompileRes.add(autoTuneBox, new GridBagConstraints(0, 5, 3, 1, 0.0, 0.0, GridBagConstraints.WEST,
+				GridBagConstraints.HORIZONTAL, insets, 0, 0));
+
 		PanelCompileRes.setPreferredSize(new Dimension(SizeX, SizeY));
 
 		PanelCompileRes.setBorder(compileres);
@@ -641,15 +776,14 @@ public class Load_ransac_fits implements PlugIn {
 				public void mouseClicked(MouseEvent e) {
 					if (e.getClickCount() >= 1) {
 
-						if (!jFreeChartFrame.isVisible())
-							jFreeChartFrame = Tracking.display(chart, new Dimension(500, 500));
+						showChart();
 						JTable target = (JTable) e.getSource();
 						row = target.getSelectedRow();
 						// do some action if appropriate column
 						if (row > 0)
-							displayclicked(row);
+							requestDisplay(row);
 						else
-							displayclicked(0);
+							requestDisplay(0);
 					}
 				}
 			});
@@ -677,14 +811,18 @@ public class Load_ransac_fits implements PlugIn {
 				new ManualCatastrophyCheckBoxListener(this, findmanualCatastrophe, minCatDistLabel, minCatDist));
 		minCatDist.addAdjustmentListener(new MinCatastrophyDistanceListener(this, minCatDistLabel, minCatDist));
 		Measureserial.addActionListener(new MeasureserialListener(this));
+		Overview.addActionListener(new OverviewListener(this));
 		Compile.addActionListener(new CompileResultsListener(this));
 		AutoCompile.addActionListener(new AutoCompileResultsListener(this));
+		autoTuneBox.addItemListener(new AutoTuneCheckBoxListener(this, autoTuneBox));
 		WriteLength.addActionListener(new WriteLengthListener(this));
+		WriteAllLengths.addActionListener(new WriteAllLengthsListener(this));
 		WriteStats.addActionListener(new WriteStatsListener(this));
 		WriteAgain.addActionListener(new WriteRatesListener(this));
 		done.addActionListener(new FinishButtonListener(this, false));
 		cancel.addActionListener(new FinishButtonListener(this, true));
 		inputFieldT.addTextListener(new LengthdistroListener(this));
+		inputFieldStride.addTextListener(new FramestrideListener(this));
 
 		maxSlopeField.addTextListener(new MaxSlopeLocListener(this, false));
 		minSlopeField.addTextListener(new MinSlopeLocListener(this, false));
@@ -709,38 +847,408 @@ public class Load_ransac_fits implements PlugIn {
 
 	CompileRes compile = new CompileRes(this);
 
+	// fits tracks for the GUI off the event dispatch thread
+	RecomputeService recompute;
+
+	protected synchronized RecomputeService recompute() {
+		if (recompute == null)
+			recompute = new RecomputeService("Load_ransac_fits");
+		return recompute;
+	}
+
+	// segmentations of the open track around the current RANSAC parameters
+	ParameterLattice lattice;
+	public boolean precomputeLattice = true;
+
+	protected synchronized ParameterLattice lattice() {
+		if (lattice == null)
+			lattice = new ParameterLattice(pipeline);
+		return lattice;
+	}
+
+	// scores candidate parameters per track when autoTune is on
+	AutoTuner autoTuner;
+
+	protected synchronized AutoTuner autoTuner() {
+		if (autoTuner == null)
+			autoTuner = new AutoTuner();
+		return autoTuner;
+	}
+
+	// runs the batch of the GUI off the event dispatch thread, apart from
+	// recompute so that clicking a track does not stop it
+	RecomputeService batch;
+
+	protected synchronized RecomputeService batch() {
+		if (batch == null)
+			batch = new RecomputeService("Load_ransac_fits batch");
+		return batch;
+	}
+
 	public void displayclicked(final int trackindex) {
 
-		if (!jFreeChartFrame.isVisible())
-			jFreeChartFrame = Tracking.display(chart, new Dimension(500, 500));
+		showChart();
 		this.inputfile = this.inputfiles[trackindex];
 		this.inputdirectory = this.inputfiles[trackindex].getParent();
-		this.mts = Tracking.loadMT(this.inputfiles[trackindex]);
+		final TrackPipeline.Track track = pipeline.parse(this.inputfiles[trackindex]);
+		this.mts = track == null ? null : track.mts;
 		if (mts != null) {
 			if (mts.size() > 5) {
-				this.points = Tracking.toPoints(mts);
-				this.calibrations = Tracking.loadCalibration(this.inputfiles[trackindex]);
-
-				linearlist = new ArrayList<Pair<LinearFunction, ArrayList<PointFunctionMatch>>>();
-				dataset.removeAllSeries();
-				this.dataset.addSeries(Tracking.drawPoints(mts, calibrations));
-				Tracking.setColor(chart, 0, new Color(64, 64, 64));
-				Tracking.setStroke(chart, 0, 0.2f);
+				this.points = track.points;
+				this.calibrations = track.calibrations;
 				row = trackindex;
 				setFunction();
-				updateRANSAC();
-				compile.compileresults();
+				Segmentation segmentation = null;
+				if (autoTune) {
+					final AutoTuner.Result tuned = autoTuner().tune(points, function, seed, maxError, minInliers,
+							maxDist, autoTuneMillis);
+					if (tuned != null) {
+						Compileparameters.put(trackindex, tuned);
+						segmentation = tuned.segmentation;
+					} else {
+						Compileparameters.remove(trackindex);
+					}
+				}
+				if (segmentation == null)
+					segmentation = fitSegments(inputfile, points, function, maxError, minInliers, maxDist,
+							functionChoice, lambda, null);
+				if (detectCatastrophe)
+					fitCatastrophes(inputfile, segmentation, points, minDistanceCatastrophe, null);
+				displayloaded(segmentation);
 			} else {
-				IJ.log("Warning:  Loading an empty file");
+				displayempty();
+			}
+		}
+
+	}
+
+	/**
+	 * Same as {@link #runBatch()}, but parsing, auto-tuning and fitting the
+	 * tracks happens on the batch thread. Each track is shown on the event
+	 * dispatch thread once it is fitted, in order. Starting another batch
+	 * before this one is done drops the rest of it.
+	 */
+	public void requestBatch() {
+
+		if (inputfiles == null)
+			return;
+
+		showChart();
+
+		final File[] files = this.inputfiles;
+		setFunction();
+		final AbstractFunction2D function = this.function;
+		final float maxError = this.maxError;
+		final int minInliers = this.minInliers, maxDist = this.maxDist, functionChoice = this.functionChoice;
+		final double lambda = this.lambda;
+		final boolean detectCatastrophe = this.detectCatastrophe;
+		final double minDistanceCatastrophe = this.minDistanceCatastrophe;
+		final boolean autoTune = this.autoTune;
+		final long autoTuneMillis = this.autoTuneMillis;
 
-				chart.setTitle("Bad File: No Donut for you");
-				dataset.removeAllSeries();
-				Tracking.setColor(chart, 0, new Color(64, 64, 64));
-				Tracking.setStroke(chart, 0, 0.2f);
+		batch().submit(new RecomputeService.Task<Boolean>() {
 
+			@Override
+			public Boolean compute(final BooleanSupplier canceled) {
+				pipeline.metrics.beginRun();
+				try {
+					for (int trackindex = 0; trackindex < files.length; ++trackindex) {
+						final File file = files[trackindex];
+						final TrackPipeline.Track track = pipeline.parse(file);
+						AutoTuner.Result tuned = null;
+						Segmentation segmentation = null;
+						if (track != null && track.mts.size() > 5) {
+							if (autoTune)
+								tuned = autoTuner().tune(track.points, function, seed, maxError, minInliers, maxDist,
+										autoTuneMillis);
+							segmentation = tuned != null ? tuned.segmentation
+									: fitSegments(file, track.points, function, maxError, minInliers, maxDist,
+											functionChoice, lambda, canceled);
+							if (detectCatastrophe)
+								fitCatastrophes(file, segmentation, track.points, minDistanceCatastrophe, canceled);
+						}
+						if (canceled.getAsBoolean())
+							return false;
+
+						// the results are compiled on the event dispatch thread, one
+						// track after the other
+						final int index = trackindex;
+						final AutoTuner.Result result = tuned;
+						final Segmentation fitted = segmentation;
+						SwingUtilities.invokeAndWait(() -> {
+							inputfile = file;
+							inputdirectory = file.getParent();
+							mts = track == null ? null : track.mts;
+							if (mts == null)
+								return;
+							if (mts.size() > 5) {
+								points = track.points;
+								calibrations = track.calibrations;
+								row = index;
+								if (result != null)
+									Compileparameters.put(index, result);
+								else if (autoTune)
+									Compileparameters.remove(index);
+								displayloaded(fitted);
+							} else {
+								displayempty();
+							}
+						});
+					}
+				} catch (final InterruptedException e) {
+					return false;
+				} catch (final InvocationTargetException e) {
+					throw new RuntimeException(e.getCause());
+				} finally {
+					pipeline.metrics.endRun();
+				}
+				return true;
+			}
+
+			@Override
+			public void publish(final Boolean done) {
+				table.validate();
+				scrollPane.validate();
+				logMetrics();
+			}
+		});
+	}
+
+	/**
+	 * Same as {@link #displayclicked(int)}, but loading and fitting the track
+	 * happens on the recompute thread. Clicking another track before it is
+	 * done drops this one.
+	 */
+	public void requestDisplay(final int trackindex) {
+
+		showChart();
+
+		final File file = this.inputfiles[trackindex];
+		setFunction();
+		final AbstractFunction2D function = this.function;
+		final float maxError = this.maxError;
+		final int minInliers = this.minInliers, maxDist = this.maxDist, functionChoice = this.functionChoice;
+		final double lambda = this.lambda;
+		final boolean detectCatastrophe = this.detectCatastrophe;
+		final double minDistanceCatastrophe = this.minDistanceCatastrophe;
+
+		recompute().submit(new RecomputeService.Task<Segmentation>() {
+
+			TrackPipeline.Track track;
+
+			@Override
+			public Segmentation compute(final BooleanSupplier canceled) {
+				track = pipeline.parse(file);
+				if (track == null || track.mts.size() <= 5)
+					return null;
+				final Segmentation segmentation = fitSegments(file, track.points, function, maxError, minInliers,
+						maxDist, functionChoice, lambda, canceled);
+				if (detectCatastrophe)
+					fitCatastrophes(file, segmentation, track.points, minDistanceCatastrophe, canceled);
+				return segmentation;
 			}
+
+			@Override
+			public void publish(final Segmentation segmentation) {
+				inputfile = file;
+				inputdirectory = file.getParent();
+				mts = track == null ? null : track.mts;
+				if (mts == null)
+					return;
+				if (mts.size() > 5) {
+					points = track.points;
+					calibrations = track.calibrations;
+					row = trackindex;
+					displayloaded(segmentation);
+					if (precomputeLattice)
+						lattice().precompute(file, points, function, functionChoice, lambda, seed, maxError,
+								minInliers, maxDist);
+				} else {
+					displayempty();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Refits the current track with the current parameters on the recompute
+	 * thread and updates chart and table once it is done. Replaces any update
+	 * that is still running.
+	 */
+	public void requestUpdate() {
+
+		if (points == null)
+			return;
+
+		final File file = this.inputfile;
+		final ArrayList<Point> points = this.points;
+		final AbstractFunction2D function = this.function;
+		final float maxError = this.maxError;
+		final int minInliers = this.minInliers, maxDist = this.maxDist, functionChoice = this.functionChoice;
+		final double lambda = this.lambda;
+		final boolean detectCatastrophe = this.detectCatastrophe;
+		final double minDistanceCatastrophe = this.minDistanceCatastrophe;
+
+		// show the nearest precomputed grid point right away, the exact fit
+		// follows
+		if (precomputeLattice) {
+			lattice().precompute(file, points, function, functionChoice, lambda, seed, maxError, minInliers, maxDist);
+			final Segmentation preview = lattice().get(maxError, minInliers, maxDist);
+			if (preview != null)
+				previewRANSAC(preview);
 		}
 
+		recompute().submit(new RecomputeService.Task<Segmentation>() {
+
+			@Override
+			public Segmentation compute(final BooleanSupplier canceled) {
+				final Segmentation segmentation = fitSegments(file, points, function, maxError, minInliers, maxDist,
+						functionChoice, lambda, canceled);
+				if (detectCatastrophe)
+					fitCatastrophes(file, segmentation, points, minDistanceCatastrophe, canceled);
+				return segmentation;
+			}
+
+			@Override
+			public void publish(final Segmentation segmentation) {
+				// the user may have moved on to another track meanwhile
+				if (points == Load_ransac_fits.this.points)
+					updateRANSAC(segmentation);
+			}
+		});
+	}
+
+	// thumbnails of all tracks of the directory, for triage
+	TrackThumbnails overview;
+	JFrame overviewFrame;
+	// the fits of the overview, kept apart from the ones of the tracks looked at
+	FitCache overviewCache;
+
+	/**
+	 * Shows every track of the directory with its fit in a grid of
+	 * thumbnails, fitted with the current parameters. Clicking one opens it
+	 * like a click in the table.
+	 */
+	public void showOverview() {
+
+		if (inputfiles == null || inputfiles.length == 0)
+			return;
+
+		if (overviewFrame != null && overviewFrame.isDisplayable()) {
+			// the parameters may have changed since
+			overview.reload();
+			overviewFrame.toFront();
+			return;
+		}
+
+		final File[] files = this.inputfiles;
+		overviewCache = new FitCache(Math.max(FitCache.DEFAULT_CAPACITY, files.length));
+
+		overview = new TrackThumbnails(files, index -> {
+			final TrackPipeline.Track track = pipeline.parse(files[index]);
+			if (track == null)
+				return null;
+			if (track.mts.size() <= 5)
+				return TrackThumbnails.Sparkline.of(track.points, null);
+			return TrackThumbnails.Sparkline.of(track.points, overviewFit(files[index], track.points));
+		}, index -> {
+			if (table != null && index < table.getRowCount())
+				table.setRowSelectionInterval(index, index);
+			requestDisplay(index);
+		});
+
+		overviewFrame = new JFrame("Track overview");
+		overviewFrame.setContentPane(new JScrollPane(overview));
+		overviewFrame.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+		overviewFrame.addWindowListener(new WindowAdapter() {
+
+			@Override
+			public void windowClosed(final WindowEvent e) {
+				overview.dispose();
+			}
+		});
+		overviewFrame.pack();
+		overviewFrame.setVisible(true);
+	}
+
+	/**
+	 * Fits a track for its thumbnail with the parameters at the time of the
+	 * call, on the calling thread. A fit the shared cache already has is read
+	 * from it, new fits go to the cache of the overview, so that fitting the
+	 * whole directory does not push out the fits of the tracks looked at.
+	 */
+	protected Segmentation overviewFit(final File file, final ArrayList<Point> points) {
+
+		final float maxError = this.maxError;
+		final int minInliers = this.minInliers, maxDist = this.maxDist, functionChoice = this.functionChoice;
+		final double lambda = this.lambda;
+
+		// a function of its own, the fit is run concurrently for many tracks
+		final AbstractFunction2D function;
+		if (functionChoice == 0)
+			function = new LinearFunction();
+		else if (functionChoice == 1)
+			function = new InterpolatedPolynomial<LinearFunction, QuadraticFunction>(new LinearFunction(),
+					new QuadraticFunction(), 1 - lambda);
+		else
+			function = new InterpolatedPolynomial<LinearFunction, HigherOrderPolynomialFunction>(
+					new LinearFunction(), new HigherOrderPolynomialFunction(3), 1 - lambda);
+
+		final FitCache.Key key = pipeline.fitCache.key(file, maxError, minInliers, maxDist, functionChoice, lambda,
+				seed);
+		final Segmentation shared = key == null ? null : pipeline.fitCache.peek(key);
+		if (shared != null)
+			return shared;
+
+		return overviewCache.segment(key, points, function, maxError, minInliers, maxDist, null);
+	}
+
+	protected void displayloaded(final Segmentation segmentation) {
+
+		linearlist = new ArrayList<Pair<LinearFunction, ArrayList<PointFunctionMatch>>>();
+		final PrimitiveXYDataset dataset = dataset();
+		if (dataset == null) {
+			drawRANSAC(segmentation);
+			compile.compileresults();
+			return;
+		}
+		dataset.beginUpdate();
+		try {
+			dataset.removeAllSeries();
+			this.dataset.addSeries(trackSeries());
+			Tracking.setColor(chart, 0, new Color(64, 64, 64));
+			Tracking.setStroke(chart, 0, 0.2f);
+			updateRANSAC(segmentation);
+		} finally {
+			dataset.endUpdate();
+		}
+		compile.compileresults();
+	}
+
+	/**
+	 * @return the points of the current track, built once per track
+	 */
+	protected PrimitiveXYDataset.Series trackSeries() {
+
+		if (trackSeries == null || trackSeriesOf != mts) {
+			trackSeries = Tracking.pointSeries(mts, "MT Length");
+			trackSeriesOf = mts;
+		}
+		return trackSeries;
+	}
+
+	protected void displayempty() {
+
+		IJ.log("Warning:  Loading an empty file");
+
+		final JFreeChart chart = chart();
+		if (chart == null)
+			return;
+
+		chart.setTitle("Bad File: No Donut for you");
+		dataset.removeAllSeries();
+		Tracking.setColor(chart, 0, new Color(64, 64, 64));
+		Tracking.setStroke(chart, 0, 0.2f);
 	}
 
 	public void setFunction() {
@@ -760,6 +1268,8 @@ public class Load_ransac_fits implements PlugIn {
 	}
 
 	public void setLambdaEnabled(final boolean state) {
+		if (lambdaSB == null)
+			return;
 		if (state) {
 			if (!lambdaSB.isEnabled()) {
 				lambdaSB.setEnabled(true);
@@ -784,6 +1294,102 @@ public class Load_ransac_fits implements PlugIn {
 
 	public void updateRANSAC() {
 
+		final Segmentation segmentation = fitSegments(inputfile, points, function, maxError, minInliers, maxDist,
+				functionChoice, lambda, null);
+		if (detectCatastrophe)
+			fitCatastrophes(inputfile, segmentation, points, minDistanceCatastrophe, null);
+		updateRANSAC(segmentation);
+	}
+
+	/**
+	 * Runs (or looks up) the RANSAC segmentation of a track, the expensive
+	 * part of an update. Safe to call off the event dispatch thread.
+	 */
+	protected Segmentation fitSegments(final File file, final ArrayList<Point> points,
+			final AbstractFunction2D function, final float maxError, final int minInliers, final int maxDist,
+			final int functionChoice, final double lambda, final BooleanSupplier canceled) {
+
+		if (useDiskCache && file != null)
+			pipeline.fitCache.setDiskDirectory(new File(file.getParentFile(), ".fitcache"));
+
+		return pipeline.segment(file, points, function, maxError, minInliers, maxDist, functionChoice, lambda, seed,
+				canceled);
+	}
+
+	/**
+	 * Fits the lines between the segments that catastrophe detection looks
+	 * at, the other expensive part of an update, so that drawing it only reads
+	 * them back from the segmentation. Safe to call off the event dispatch
+	 * thread.
+	 */
+	protected void fitCatastrophes(final File file, final Segmentation segmentation, final ArrayList<Point> points,
+			final double minDistanceCatastrophe, final BooleanSupplier canceled) {
+
+		if (segmentation == null)
+			return;
+
+		final long start = StageMetrics.start();
+		final TrackEvents.Span event = TrackEvents.ENABLED ? TrackEvents.beginCatastrophes() : null;
+		// the RANSAC events of the catastrophe fits carry the file name
+		final String previous = TrackEvents.ENABLED ? TrackEvents.enterTrack(file) : null;
+		int found = 0;
+
+		final ArrayList<Pair<AbstractFunction2D, ArrayList<PointFunctionMatch>>> segments = segmentation.segments;
+
+		try {
+			for (int gap = 0; gap < segments.size() - 1; ++gap) {
+				if (canceled != null && canceled.getAsBoolean())
+					break;
+
+				final ArrayList<PointFunctionMatch> before = segments.get(gap).getB();
+				final ArrayList<PointFunctionMatch> after = segments.get(gap + 1).getB();
+
+				final double lStart = before.get(before.size() - 1).getP1().getL()[1];
+				final double lEnd = after.get(0).getP1().getL()[1];
+
+				if (Math.abs(lStart - lEnd) >= minDistanceCatastrophe) {
+					final Pair<LinearFunction, ArrayList<PointFunctionMatch>> fit = segmentation.catastropheFit(gap,
+							points);
+					if (fit != null && fit.getA().getM() < 0)
+						++found;
+				}
+			}
+		} finally {
+			pipeline.metrics.stop(Stage.CATASTROPHE, start);
+			if (TrackEvents.ENABLED)
+				TrackEvents.exitTrack(previous);
+			// no gaps without segments
+			if (event != null)
+				TrackEvents.endCatastrophes(event, file, Math.max(0, segments.size() - 1), found);
+		}
+	}
+
+	/**
+	 * Filters, classifies and aggregates the segments of the current track and
+	 * shows them. Only the slope window, the rescue tolerances and the
+	 * catastrophe settings are read here, none of them needs a new RANSAC.
+	 */
+	public void updateRANSAC(final Segmentation segmentation) {
+
+		final PrimitiveXYDataset dataset = dataset();
+		if (dataset == null) {
+			drawRANSAC(segmentation);
+			return;
+		}
+
+		// all series of the update reach the chart in one notification
+		dataset.beginUpdate();
+		try {
+			drawRANSAC(segmentation);
+		} finally {
+			dataset.endUpdate();
+		}
+	}
+
+	private void drawRANSAC(final Segmentation segmentation) {
+
+		final long drawStart = StageMetrics.start();
+
 		negcount = 0;
 		negtimediff = 0;
 		averageshrink = 0;
@@ -794,23 +1400,25 @@ public class Load_ransac_fits implements PlugIn {
 
 		++updateCount;
 
-		dataset.removeAllSeries();
-		this.dataset.addSeries(Tracking.drawPoints(mts, calibrations));
+		// both null in batch-only mode, only the rates are computed then
+		final PrimitiveXYDataset dataset = this.dataset;
+		final JFreeChart chart = this.chart;
 
-		@SuppressWarnings("unchecked")
-		ArrayList<Pair<AbstractFunction2D, ArrayList<PointFunctionMatch>>> segments = Tracking.findAllFunctions(points,
-				function, maxError, minInliers, maxDist);
+		if (dataset != null) {
+			dataset.removeAllSeries();
+			dataset.addSeries(trackSeries());
+		}
 
-		if (segments == null || segments.size() == 0) {
+		if (segmentation == null || segmentation.size() == 0) {
 			--updateCount;
+			pipeline.metrics.stop(Stage.POSTPROCESS, drawStart);
 			return;
 		}
 
-		// sort the segments according to time HORIZONTAL to each other and the
+		// sorted according to time HORIZONTAL to each other and the
 		// PointFunctionMatches internally
-		sort(segments);
+		final ArrayList<Pair<AbstractFunction2D, ArrayList<PointFunctionMatch>>> segments = segmentation.segments;
 
-		final LinearFunction linear = new LinearFunction();
 		int linearcount = 1;
 		i = 1;
 		segment = 1;
@@ -840,8 +1448,11 @@ public class Load_ransac_fits implements PlugIn {
 
 		List<Pair<Float, Float>> starttimerates = new ArrayList<Pair<Float, Float>>();
 		List<Pair<Float, Float>> catstarttimerates = new ArrayList<Pair<Float, Float>>();
-		for (final Pair<AbstractFunction2D, ArrayList<PointFunctionMatch>> result : segments) {
-			if (LinearFunction.slopeFits(result.getB(), linear, minSlope, maxSlope)) {
+		for (int index = 0; index < segments.size(); ++index) {
+			final Pair<AbstractFunction2D, ArrayList<PointFunctionMatch>> result = segments.get(index);
+			if (segmentation.slopeFits(index, minSlope, maxSlope)) {
+
+				final LinearFunction linear = segmentation.linearFit(index);
 
 				final Pair<Double, Double> minMax = Tracking.fromTo(result.getB());
 
@@ -859,31 +1470,15 @@ public class Load_ransac_fits implements PlugIn {
 
 				Polynomial<?, Point> polynomial = (Polynomial) result.getA();
 
-				dataset.addSeries(
-						Tracking.drawFunction(polynomial, minMax.getA(), minMax.getB(), 0.5, "Segment " + segment));
-
-				if (functionChoice > 0) {
-					Tracking.setColor(chart, i, new Color(255, 0, 0));
-					Tracking.setDisplayType(chart, i, true, false);
-					Tracking.setStroke(chart, i, 0.5f);
-					chart.setTitle("Length plot for" + " " + this.inputfiles[row].getName());
-				} else {
-					Tracking.setColor(chart, i, new Color(0, 128, 0));
-					Tracking.setDisplayType(chart, i, true, false);
-					Tracking.setStroke(chart, i, 2f);
-					chart.setTitle("Length plot for" + " " + this.inputfiles[row].getName());
-				}
+				if (chart != null)
+					addSegmentSeries(polynomial, minMax);
 
 				++i;
 
 				if (functionChoice > 0) {
 
-					dataset.addSeries(Tracking.drawFunction(linear, minMax.getA(), minMax.getB(), 0.5,
-							"Linear Segment " + segment));
-
-					Tracking.setColor(chart, i, new Color(0, 128, 0));
-					Tracking.setDisplayType(chart, i, true, false);
-					Tracking.setStroke(chart, i, 2f);
+					if (chart != null)
+						addLinearSeries(linear, minMax);
 
 					++i;
 
@@ -943,18 +1538,14 @@ public class Load_ransac_fits implements PlugIn {
 					previousendX.add(endX);
 
 				}
-				dataset.addSeries(
-						Tracking.drawPoints(Tracking.toPairList(result.getB()), calibrations, "Inliers " + segment));
-
-				Tracking.setColor(chart, i, new Color(255, 0, 0));
-				Tracking.setDisplayType(chart, i, false, true);
-				Tracking.setSmallUpTriangleShape(chart, i);
+				if (chart != null)
+					addInlierSeries(result.getB());
 
 				++i;
 				++segment;
 
 			} else {
-				System.out.println("Removed segment because slope is wrong.");
+				RingBufferLogger.CONSOLE.debug("Removed segment because slope is wrong.");
 
 			}
 
@@ -964,7 +1555,7 @@ public class Load_ransac_fits implements PlugIn {
 
 			if (segments.size() < 2) {
 
-				System.out.println("Only two points found");
+				RingBufferLogger.CONSOLE.debug("Only two points found");
 
 			} else {
 				for (int catastrophy = 0; catastrophy < segments.size() - 1; ++catastrophy) {
@@ -977,21 +1568,27 @@ public class Load_ransac_fits implements PlugIn {
 					final double lStart = start.getB().get(start.getB().size() - 1).getP1().getL()[1];
 					final double lEnd = end.getB().get(0).getP1().getL()[1];
 
-					final ArrayList<Point> catastropyPoints = new ArrayList<Point>();
+					int catastropyPoints = 0;
 
 					for (final Point p : points)
 						if (p.getL()[0] >= tStart && p.getL()[0] <= tEnd)
-							catastropyPoints.add(p);
+							++catastropyPoints;
 
-					if (catastropyPoints.size() > 2) {
+					if (catastropyPoints > 2) {
 						if (Math.abs(lStart - lEnd) >= this.minDistanceCatastrophe) {
-							// maximally 1.1 timepoints between points on a line
-							final Pair<LinearFunction, ArrayList<PointFunctionMatch>> fit = Tracking
-									.findFunction(catastropyPoints, new LinearFunction(), 0.75, 3, 1.1);
+							// fitted once per segmentation by fitCatastrophes, sorted
+							// by time, fitted here if it was not
+							final String previous = TrackEvents.ENABLED ? TrackEvents.enterTrack(inputfile) : null;
+							final Pair<LinearFunction, ArrayList<PointFunctionMatch>> fit;
+							try {
+								fit = segmentation.catastropheFit(catastrophy, points);
+							} finally {
+								if (TrackEvents.ENABLED)
+									TrackEvents.exitTrack(previous);
+							}
 
 							if (fit != null) {
 								if (fit.getA().getM() < 0) {
-									sort(fit);
 									negsegments.add(fit);
 									double minY = Math.min(fit.getB().get(0).getP1().getL()[1],
 											fit.getB().get(fit.getB().size() - 1).getP1().getL()[1]);
@@ -1006,9 +1603,10 @@ public class Load_ransac_fits implements PlugIn {
 									double linearrate = fit.getA().getCoefficient(1);
 
 									if (linearrate < 0) {
-										dataset.addSeries(Tracking.drawFunction((Polynomial) fit.getA(),
-												minMax.getA() - 1, minMax.getB() + 1, 0.1, minY - 2.5, maxY + 2.5,
-												"CRansac " + catastrophy));
+										if (chart != null)
+											dataset.addSeries(Tracking.functionSeries((Polynomial) fit.getA(),
+													minMax.getA() - 1, minMax.getB() + 1, 0.1, minY - 2.5, maxY + 2.5,
+													"CRansac " + catastrophy));
 										negcount++;
 										negtimediff += endX - startX;
 
@@ -1029,17 +1627,21 @@ public class Load_ransac_fits implements PlugIn {
 												linearrate * calibrations[0] / calibrations[2],
 												(int) (startX * calibrations[2]), (int) (endX * calibrations[2]));
 										allrates.add(velocity);
-										Tracking.setColor(chart, i, new Color(0, 0, 255));
-										Tracking.setDisplayType(chart, i, true, false);
-										Tracking.setStroke(chart, i, 2f);
+										if (chart != null) {
+											Tracking.setColor(chart, i, new Color(0, 0, 255));
+											Tracking.setDisplayType(chart, i, true, false);
+											Tracking.setStroke(chart, i, 2f);
+										}
 
 										++i;
-										dataset.addSeries(Tracking.drawPoints(Tracking.toPairList(fit.getB()),
-												calibrations, "C(inl) " + catastrophy));
+										if (chart != null) {
+											dataset.addSeries(
+													Tracking.matchSeries(fit.getB(), "C(inl) " + catastrophy));
 
-										Tracking.setColor(chart, i, new Color(0, 0, 255));
-										Tracking.setDisplayType(chart, i, false, true);
-										Tracking.setShape(chart, i, ShapeUtils.createDownTriangle(4f));
+											Tracking.setColor(chart, i, new Color(0, 0, 255));
+											Tracking.setDisplayType(chart, i, false, true);
+											Tracking.setShape(chart, i, ShapeUtils.createDownTriangle(4f));
+										}
 
 										++i;
 									}
@@ -1049,8 +1651,8 @@ public class Load_ransac_fits implements PlugIn {
 						}
 
 						else {
-							System.out.println("Catastrophy height not sufficient " + Math.abs(lStart - lEnd) + " < "
-									+ this.minDistanceCatastrophe);
+							RingBufferLogger.CONSOLE.debug("Catastrophy height not sufficient %s < %s", Math.abs(lStart - lEnd),
+									this.minDistanceCatastrophe);
 
 						}
 					}
@@ -1084,7 +1686,8 @@ public class Load_ransac_fits implements PlugIn {
 		if (resfrequ < 0)
 			resfrequ = 0;
 
-		rt.show("Rates(real units) for" + " " + this.inputfile.getName());
+		if (!batchOnly)
+			rt.show("Rates(real units) for" + " " + this.inputfile.getName());
 		averageshrink *= calibrations[0] / calibrations[2];
 		averagegrowth *= calibrations[0] / calibrations[2];
 		rtAll.incrementCounter();
@@ -1114,6 +1717,111 @@ public class Load_ransac_fits implements PlugIn {
 			wrongfileindex = new ValuePair<Boolean, Integer>(wrongfile, row);
 			wrongfileindexlist.put(row, wrongfile);
 		}
+		if (table != null)
+			updateTable(averagegrowth, averageshrink, count, negcount, catfrequ, resfrequ);
+
+		Averagerate avrate = new Averagerate(averagegrowth, averageshrink, catfrequ, resfrequ, count, negcount,
+				catcount, rescount, this.inputfile);
+		averagerates.add(avrate);
+		Compilepositiverates.put(row, allrates);
+
+		Compileaverage.put(row, avrate);
+
+		--updateCount;
+		pipeline.metrics.stop(Stage.POSTPROCESS, drawStart);
+
+	}
+
+	/**
+	 * Shows the segments of a precomputed segmentation in the chart, and
+	 * nothing else: no catastrophes are looked for, and the rates, the table
+	 * and the compiled results are left to the exact fit that follows.
+	 */
+	protected void previewRANSAC(final Segmentation segmentation) {
+
+		final PrimitiveXYDataset dataset = this.dataset;
+		if (dataset == null || chart == null || segmentation == null)
+			return;
+
+		dataset.beginUpdate();
+		try {
+			dataset.removeAllSeries();
+			dataset.addSeries(trackSeries());
+
+			i = 1;
+			segment = 1;
+			for (int index = 0; index < segmentation.size(); ++index) {
+				if (!segmentation.slopeFits(index, minSlope, maxSlope))
+					continue;
+
+				final Pair<AbstractFunction2D, ArrayList<PointFunctionMatch>> result = segmentation.segments.get(index);
+				final Pair<Double, Double> minMax = Tracking.fromTo(result.getB());
+
+				addSegmentSeries((Polynomial) result.getA(), minMax);
+				++i;
+				if (functionChoice > 0) {
+					addLinearSeries(segmentation.linearFit(index), minMax);
+					++i;
+				}
+				addInlierSeries(result.getB());
+				++i;
+				++segment;
+			}
+		} finally {
+			dataset.endUpdate();
+		}
+	}
+
+	/**
+	 * Adds the fitted function of the current segment as series i.
+	 */
+	private void addSegmentSeries(final Polynomial<?, Point> polynomial, final Pair<Double, Double> minMax) {
+
+		dataset.addSeries(Tracking.functionSeries(polynomial, minMax.getA(), minMax.getB(), 0.5, "Segment " + segment));
+
+		if (functionChoice > 0) {
+			Tracking.setColor(chart, i, new Color(255, 0, 0));
+			Tracking.setDisplayType(chart, i, true, false);
+			Tracking.setStroke(chart, i, 0.5f);
+		} else {
+			Tracking.setColor(chart, i, new Color(0, 128, 0));
+			Tracking.setDisplayType(chart, i, true, false);
+			Tracking.setStroke(chart, i, 2f);
+		}
+		chart.setTitle("Length plot for" + " " + this.inputfiles[row].getName());
+	}
+
+	/**
+	 * Adds the linear fit of the current segment as series i.
+	 */
+	private void addLinearSeries(final LinearFunction linear, final Pair<Double, Double> minMax) {
+
+		dataset.addSeries(Tracking.functionSeries(linear, minMax.getA(), minMax.getB(), 0.5,
+				"Linear Segment " + segment));
+
+		Tracking.setColor(chart, i, new Color(0, 128, 0));
+		Tracking.setDisplayType(chart, i, true, false);
+		Tracking.setStroke(chart, i, 2f);
+	}
+
+	/**
+	 * Adds the inliers of the current segment as series i.
+	 */
+	private void addInlierSeries(final ArrayList<PointFunctionMatch> inliers) {
+
+		dataset.addSeries(Tracking.matchSeries(inliers, "Inliers " + segment));
+
+		Tracking.setColor(chart, i, new Color(255, 0, 0));
+		Tracking.setDisplayType(chart, i, false, true);
+		Tracking.setSmallUpTriangleShape(chart, i);
+	}
+
+	/**
+	 * Shows the rates of the current track in its row of the table.
+	 */
+	protected void updateTable(final double averagegrowth, final double averageshrink, final int count,
+			final int negcount, final double catfrequ, final double resfrequ) {
+
 		table.getModel().setValueAt(new DecimalFormat("#.###").format(averagegrowth), row, 1);
 		table.getModel().setValueAt(new DecimalFormat("#.###").format(averageshrink), row, 2);
 		table.getModel().setValueAt(new DecimalFormat("#").format(count), row, 3);
@@ -1152,16 +1860,6 @@ public class Load_ransac_fits implements PlugIn {
 		table.validate();
 
 		scrollPane.validate();
-
-		Averagerate avrate = new Averagerate(averagegrowth, averageshrink, catfrequ, resfrequ, count, negcount,
-				catcount, rescount, this.inputfile);
-		averagerates.add(avrate);
-		Compilepositiverates.put(row, allrates);
-
-		Compileaverage.put(row, avrate);
-
-		--updateCount;
-
 	}
 
 	public List<Pair<Float, Float>> ManualCat(
@@ -1214,7 +1912,7 @@ public class Load_ransac_fits implements PlugIn {
 
 					if (linearrate < 0) {
 
-						System.out.println("Overriding Ransac, Detecting without fiting a function");
+						RingBufferLogger.CONSOLE.debug("Overriding Ransac, Detecting without fiting a function");
 
 						negcount++;
 						negtimediff += endX - startX;
@@ -1239,14 +1937,16 @@ public class Load_ransac_fits implements PlugIn {
 								(int) (startX * calibrations[2]), (int) (endX * calibrations[2]));
 						allrates.add(velocity);
 
-						dataset.addSeries(Tracking.drawPoints(Tracking.toPairList(p), calibrations,
-								"CManual" + catindex + catastrophy));
+						if (chart != null) {
+							dataset.addSeries(Tracking.matchSeries(p, "CManual" + catindex + catastrophy));
 
-						Tracking.setColor(chart, i, new Color(255, 192, 255));
-						Tracking.setDisplayType(chart, i, true, false);
-						Tracking.setStroke(chart, i, 2f);
+							Tracking.setColor(chart, i, new Color(255, 192, 255));
+							Tracking.setDisplayType(chart, i, true, false);
+							Tracking.setStroke(chart, i, 2f);
+						}
 						++i;
-						chart.setTitle("Length plot for" + " " + this.inputfiles[row].getName());
+						if (chart != null)
+							chart.setTitle("Length plot for" + " " + this.inputfiles[row].getName());
 					}
 				}
 			}
@@ -1389,10 +2089,22 @@ public class Load_ransac_fits implements PlugIn {
 	}
 
 	public void close() {
-		panelFirst.setVisible(false);
-		Cardframe.dispose();
-		jFreeChartFrame.setVisible(false);
-		jFreeChartFrame.dispose();
+		if (recompute != null)
+			recompute.quit();
+		if (batch != null)
+			batch.quit();
+		if (lattice != null)
+			lattice.shutdown();
+		if (autoTuner != null)
+			autoTuner.shutdown();
+		if (Cardframe != null) {
+			panelFirst.setVisible(false);
+			Cardframe.dispose();
+		}
+		if (jFreeChartFrame != null) {
+			jFreeChartFrame.setVisible(false);
+			jFreeChartFrame.dispose();
+		}
 	}
 
 	protected static double computeValueFromDoubleExpScrollbarPosition(final int scrollbarPosition,
@@ -65,10 +65,7 @@ public abstract class Logger extends PrintWriter
 			@Override
 			public void write( final char[] cbuf, final int off, final int len ) throws IOException
 			{
-				String str = "";
-				for ( int i = off; i < len; i++ )
-					str += cbuf[ i ];
-				log( str );
+				log( new String( cbuf, off, len ) );
 			}
 		};
 	}
@@ -24,8 +24,8 @@ package fiji.plugin.vollseg_kymo;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedHashSet;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
 
 import org.jgrapht.Graphs;
 import org.jgrapht.graph.DefaultWeightedEdge;
@@ -63,7 +63,7 @@ public class Model
 	// STATS
 
 	/** The stats managed by this model. */
-	protected StatCollection stats = new StatCollection();
+	protected volatile StatCollection stats = new StatCollection();
 
 	// TRANSACTION MODEL
 
@@ -114,9 +114,21 @@ public class Model
 	// LISTENERS
 
 	/**
-	 * The list of listeners listening to model content change.
+	 * The list of listeners listening to model content change. Copied on
+	 * write, for the events are delivered off the thread that registers them.
 	 */
-	Set< ModelChangeListener > modelChangeListeners = new LinkedHashSet< >();
+	Set< ModelChangeListener > modelChangeListeners = new CopyOnWriteArraySet< >();
+
+	/**
+	 * The listeners among {@link #modelChangeListeners} that are notified on
+	 * the event dispatch thread.
+	 */
+	private final Set< ModelChangeListener > edtListeners = new CopyOnWriteArraySet< >();
+
+	/**
+	 * Coalesces the events of this model and delivers them asynchronously.
+	 */
+	private final ModelEventDispatcher dispatcher = new ModelEventDispatcher( this );
 
 	/*
 	 * CONSTRUCTOR
@@ -196,19 +208,59 @@ public class Model
 
 	public void addModelChangeListener( final ModelChangeListener listener )
 	{
+		addModelChangeListener( listener, false );
+	}
+
+	/**
+	 * Registers a listener, to be notified on the event dispatch thread or on
+	 * the worker thread of the {@link ModelEventDispatcher}.
+	 *
+	 * @param listener
+	 *            the listener.
+	 * @param onEventDispatchThread
+	 *            if <code>true</code>, the events are delivered on the event
+	 *            dispatch thread, as Swing views need.
+	 */
+	public void addModelChangeListener( final ModelChangeListener listener, final boolean onEventDispatchThread )
+	{
+		if ( onEventDispatchThread )
+			edtListeners.add( listener );
+		else
+			edtListeners.remove( listener );
 		modelChangeListeners.add( listener );
 	}
 
 	public boolean removeModelChangeListener( final ModelChangeListener listener )
 	{
+		edtListeners.remove( listener );
 		return modelChangeListeners.remove( listener );
 	}
 
+	/**
+	 * @return whether the listener was registered to be notified on the event
+	 *         dispatch thread.
+	 */
+	public boolean isNotifiedOnEventDispatchThread( final ModelChangeListener listener )
+	{
+		return edtListeners.contains( listener );
+	}
+
 	public Set< ModelChangeListener > getModelChangeListener()
 	{
 		return modelChangeListeners;
 	}
 
+	/**
+	 * Returns the dispatcher delivering the events of this model, to set the
+	 * coalescing window or switch back to synchronous delivery.
+	 *
+	 * @return the event dispatcher.
+	 */
+	public ModelEventDispatcher getEventDispatcher()
+	{
+		return dispatcher;
+	}
+
 	/*
 	 * PHYSICAL UNITS
 	 */
@@ -288,6 +340,18 @@ public class Model
 		return stats;
 	}
 
+	/**
+	 * Returns an immutable snapshot of the stats of this model, for exporters
+	 * and views to read from while fitting threads keep writing. Cheap, see
+	 * {@link StatCollection#snapshot()}.
+	 *
+	 * @return a snapshot of the Stat collection.
+	 */
+	public StatCollection.Snapshot snapshot()
+	{
+		return stats.snapshot();
+	}
+
 	/**
 	 * Removes all the stats from this model.
 	 *
@@ -300,9 +364,7 @@ public class Model
 		stats.clear();
 		if ( doNotify )
 		{
-			final ModelChangeEvent event = new ModelChangeEvent( this, ModelChangeEvent.StatS_COMPUTED );
-			for ( final ModelChangeListener listener : modelChangeListeners )
-				listener.modelChanged( event );
+			dispatcher.post( new ModelChangeEvent( this, ModelChangeEvent.StatS_COMPUTED ) );
 		}
 	}
 
@@ -320,9 +382,7 @@ public class Model
 		this.stats = stats;
 		if ( doNotify )
 		{
-			final ModelChangeEvent event = new ModelChangeEvent( this, ModelChangeEvent.StatS_COMPUTED );
-			for ( final ModelChangeListener listener : modelChangeListeners )
-				listener.modelChanged( event );
+			dispatcher.post( new ModelChangeEvent( this, ModelChangeEvent.StatS_COMPUTED ) );
 		}
 	}
 
@@ -341,23 +401,21 @@ public class Model
 		stats.filter( StatFilters );
 		if ( doNotify )
 		{
-			final ModelChangeEvent event = new ModelChangeEvent( this, ModelChangeEvent.StatS_FILTERED );
-			for ( final ModelChangeListener listener : modelChangeListeners )
-				listener.modelChanged( event );
+			dispatcher.post( new ModelChangeEvent( this, ModelChangeEvent.StatS_FILTERED ) );
 		}
-
 	}
 
 	/**
 	 * Notify the {@link ModelChangeListener}s of this model that feature values
 	 * have been computed. This method serves as a manual trigger for this
-	 * event.
+	 * event, to be called whenever feature values of stats already in this
+	 * model change. The columns and sorted rows the stats keep for filtering
+	 * are dropped first.
 	 */
 	public void notifyFeaturesComputed()
 	{
-		final ModelChangeEvent event = new ModelChangeEvent( this, ModelChangeEvent.FEATURES_COMPUTED );
-		for ( final ModelChangeListener listener : modelChangeListeners )
-			listener.modelChanged( event );
+		stats.featuresChanged();
+		dispatcher.post( new ModelChangeEvent( this, ModelChangeEvent.FEATURES_COMPUTED ) );
 	}
 
 	/*
@@ -444,6 +502,8 @@ public class Model
 		}
 
 		statsMoved.add( StatToMove );
+		if ( updateLevel == 0 )
+			flushUpdate();
 		return StatToMove;
 	}
 
@@ -478,6 +538,8 @@ public class Model
 		{
 			System.out.println( "[TrackMateModel] Adding Stat " + StatToAdd + " to frame " + toFile );
 		}
+		if ( updateLevel == 0 )
+			flushUpdate();
 		return StatToAdd;
 	}
 
@@ -509,6 +571,8 @@ public class Model
 			statsRemoved.add( StatToRemove ); // TRANSACTION
 			if ( DEBUG )
 				System.out.println( "[Vollseg_kymo_model] Removing Stat " + StatToRemove + " from frame " + fromFile );
+			if ( updateLevel == 0 )
+				flushUpdate();
 
 			// changes to edges will be caught automatically by the TrackGraphModel
 			return StatToRemove;
@@ -543,7 +607,8 @@ public class Model
 	{
 		statsUpdated.add( StatToUpdate ); // Enlist for feature update when
 											// transaction is marked as finished
-		
+		if ( updateLevel == 0 )
+			flushUpdate();
 	}
 
 	
@@ -564,7 +629,9 @@ public class Model
 		copy.setPhysicalUnits( spaceUnits, timeUnits );
 
 		// stats.
-		final StatCollection stats2 = StatCollection.fromCollection( stats.iterable( true ) );
+		final StatCollection stats2 = StatCollection.fromCollection( stats.snapshot().iterable( true ) );
+		// only the visible stats are copied, whatever visibility they carry
+		stats2.setVisible( true );
 		copy.setstats( stats2, false );
 
 		// Feature model.
@@ -587,6 +654,11 @@ public class Model
 
 	/**
 	 * Fire events. Regenerate fields derived from the filtered graph.
+	 * <p>
+	 * The events are handed to the {@link ModelEventDispatcher}, so that this
+	 * returns without waiting for the listeners. Modifications made outside a
+	 * transaction come through here one by one and are merged by the
+	 * dispatcher instead.
 	 */
 	private void flushUpdate()
 	{
@@ -639,14 +711,17 @@ public class Model
 			}
 		}
 
-		
+		if ( nstatsToSignal > 0 )
+			dispatcher.post( event );
 
-		
-			statsAdded.clear();
-			statsRemoved.clear();
-			statsMoved.clear();
-			statsUpdated.clear();
-			eventCache.clear();
+		for ( final Integer eventID : eventCache )
+			dispatcher.post( new ModelChangeEvent( this, eventID ) );
+
+		statsAdded.clear();
+		statsRemoved.clear();
+		statsMoved.clear();
+		statsUpdated.clear();
+		eventCache.clear();
 	}
 
 }
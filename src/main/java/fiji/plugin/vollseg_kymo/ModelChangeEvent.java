@@ -196,6 +196,81 @@ public class ModelChangeEvent extends EventObject {
 		this.source = source;
 	}
 
+	/**
+	 * @return the IDs of the Stats carrying the given modification flag.
+	 */
+	public Set<Integer> getStatIDs(final int flag) {
+		final Set<Integer> ids = new HashSet<>();
+		for (final Map.Entry<Stat, Integer> entry : StatFlags.entrySet())
+			if (entry.getValue() == flag)
+				ids.add(entry.getKey().ID());
+		return ids;
+	}
+
+	public Set<Integer> getAddedIDs() {
+		return getStatIDs(FLAG_Stat_ADDED);
+	}
+
+	public Set<Integer> getRemovedIDs() {
+		return getStatIDs(FLAG_Stat_REMOVED);
+	}
+
+	/**
+	 * @return the IDs of the Stats that were modified or moved to another
+	 *         file.
+	 */
+	public Set<Integer> getChangedIDs() {
+		final Set<Integer> ids = getStatIDs(FLAG_Stat_MODIFIED);
+		ids.addAll(getStatIDs(FLAG_Stat_FILE_CHANGED));
+		return ids;
+	}
+
+	public boolean isEmpty() {
+		return Stats.isEmpty() && edges.isEmpty();
+	}
+
+	/**
+	 * Folds a later event of the same type into this one, so that this event
+	 * describes the net change of both. A Stat added and then removed is
+	 * dropped, one removed and added again counts as modified, and an added
+	 * Stat stays added whatever happens to it afterwards.
+	 *
+	 * @param later
+	 *            the event that happened after this one.
+	 */
+	public void merge(final ModelChangeEvent later) {
+		for (final Stat stat : later.Stats) {
+			final Integer before = StatFlags.get(stat);
+			final Integer after = later.StatFlags.get(stat);
+
+			if (later.fromFile.containsKey(stat) && !fromFile.containsKey(stat))
+				fromFile.put(stat, later.fromFile.get(stat));
+			if (later.toFile.containsKey(stat))
+				toFile.put(stat, later.toFile.get(stat));
+
+			if (before == null || after == null) {
+				Stats.add(stat);
+				if (after != null)
+					StatFlags.put(stat, after);
+				continue;
+			}
+
+			if (before == FLAG_Stat_ADDED && after == FLAG_Stat_REMOVED) {
+				Stats.remove(stat);
+				StatFlags.remove(stat);
+				fromFile.remove(stat);
+				toFile.remove(stat);
+			} else if (before == FLAG_Stat_REMOVED && after != FLAG_Stat_REMOVED) {
+				StatFlags.put(stat, FLAG_Stat_MODIFIED);
+			} else if (before == FLAG_Stat_ADDED || before == FLAG_Stat_FILE_CHANGED && after == FLAG_Stat_MODIFIED) {
+				// keep the stronger flag
+			} else {
+				StatFlags.put(stat, after);
+			}
+		}
+		edges.addAll(later.edges);
+	}
+
 	@Override
 	public String toString() {
 		final StringBuilder str = new StringBuilder("[ModelChangeEvent]:\n");
@@ -0,0 +1,198 @@
+/*-
+ * #%L
+ * Microtubule tracker.
+ * %%
+ * Copyright (C) 2017 MTrack developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.vollseg_kymo;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.SwingUtilities;
+
+/**
+ * Collects the {@link ModelChangeEvent}s of a {@link Model} and hands them to
+ * its listeners off the thread that changed the model.
+ * <p>
+ * Events posted within the coalescing window are queued in the order they
+ * were posted. An event is merged into the one before it only if both are of
+ * the same type, the {@link ModelChangeEvent#MODEL_MODIFIED} ones into a
+ * single delta (see {@link ModelChangeEvent#merge(ModelChangeEvent)}), so
+ * listeners never see events out of order. Listeners registered with
+ * {@link Model#addModelChangeListener(ModelChangeListener, boolean)} to be
+ * called on the event dispatch thread receive the events there, all others on
+ * the worker thread of the model.
+ */
+public class ModelEventDispatcher
+{
+
+	public static final long DEFAULT_WINDOW = 50;
+
+	/** Seconds the worker thread is kept alive without events to deliver. */
+	private static final long KEEP_ALIVE = 10;
+
+	/**
+	 * The worker of this model. Its thread stops when idle, so that the
+	 * dispatcher can be garbage collected with the model.
+	 */
+	private final ScheduledThreadPoolExecutor worker;
+
+	private final Model model;
+
+	private long window = DEFAULT_WINDOW;
+
+	private boolean asynchronous = true;
+
+	/** Events waiting for the window to close, in the order they were posted. */
+	private ArrayDeque< ModelChangeEvent > pending = new ArrayDeque< >();
+
+	private boolean scheduled = false;
+
+	public ModelEventDispatcher( final Model model )
+	{
+		this.model = model;
+		this.worker = new ScheduledThreadPoolExecutor( 1, r -> {
+			final Thread thread = new Thread( r, "ModelEventDispatcher" );
+			thread.setDaemon( true );
+			return thread;
+		} );
+		worker.setKeepAliveTime( KEEP_ALIVE, TimeUnit.SECONDS );
+		worker.allowCoreThreadTimeOut( true );
+	}
+
+	/**
+	 * Sets how long events are collected before they are delivered.
+	 *
+	 * @param millis
+	 *            the coalescing window, 0 to deliver as soon as the worker is
+	 *            free.
+	 */
+	public synchronized void setWindow( final long millis )
+	{
+		this.window = Math.max( 0, millis );
+	}
+
+	public synchronized long getWindow()
+	{
+		return window;
+	}
+
+	/**
+	 * @param asynchronous
+	 *            if <code>false</code>, events are delivered on the thread
+	 *            posting them, without coalescing, as in headless batch runs.
+	 */
+	public synchronized void setAsynchronous( final boolean asynchronous )
+	{
+		this.asynchronous = asynchronous;
+	}
+
+	public synchronized boolean isAsynchronous()
+	{
+		return asynchronous;
+	}
+
+	public void post( final ModelChangeEvent event )
+	{
+		if ( event.getEventID() == ModelChangeEvent.MODEL_MODIFIED && event.isEmpty() )
+			return;
+
+		synchronized ( this )
+		{
+			if ( asynchronous )
+			{
+				final ModelChangeEvent previous = pending.peekLast();
+
+				// only the last event may absorb this one, merging further
+				// back would move it before the events in between
+				if ( previous == null || previous.getEventID() != event.getEventID() )
+					pending.addLast( event );
+				else if ( event.getEventID() == ModelChangeEvent.MODEL_MODIFIED )
+					previous.merge( event );
+
+				if ( !scheduled )
+				{
+					scheduled = true;
+					worker.schedule( this::flush, window, TimeUnit.MILLISECONDS );
+				}
+				return;
+			}
+		}
+
+		for ( final ModelChangeListener listener : model.getModelChangeListener() )
+			listener.modelChanged( event );
+	}
+
+	/**
+	 * Delivers the pending events right away, on the worker thread.
+	 */
+	public void flushNow()
+	{
+		worker.execute( this::flush );
+	}
+
+	private void flush()
+	{
+		final ArrayList< ModelChangeEvent > events;
+
+		synchronized ( this )
+		{
+			scheduled = false;
+			if ( pending.isEmpty() )
+				return;
+
+			events = new ArrayList< >( pending );
+			pending = new ArrayDeque< >();
+		}
+
+		final ArrayList< ModelChangeListener > uiListeners = new ArrayList< >();
+
+		for ( final ModelChangeListener listener : model.getModelChangeListener() )
+		{
+			if ( model.isNotifiedOnEventDispatchThread( listener ) )
+			{
+				uiListeners.add( listener );
+				continue;
+			}
+
+			for ( final ModelChangeEvent event : events )
+			{
+				try
+				{
+					listener.modelChanged( event );
+				}
+				catch ( final RuntimeException e )
+				{
+					e.printStackTrace();
+				}
+			}
+		}
+
+		if ( !uiListeners.isEmpty() )
+		{
+			SwingUtilities.invokeLater( () -> {
+				for ( final ModelChangeListener listener : uiListeners )
+					for ( final ModelChangeEvent event : events )
+						listener.modelChanged( event );
+			} );
+		}
+	}
+}
@@ -29,6 +29,7 @@ import org.scijava.Named;
 import org.scijava.util.VersionUtils;
 
 import fiji.plugin.vollseg_kymo.Model;
+import fiji.plugin.vollseg_kymo.util.StageMetrics;
 import net.imglib2.algorithm.Benchmark;
 import net.imglib2.algorithm.MultiThreaded;
 
@@ -58,6 +59,9 @@ public class Mtrack_vollseg_kymo implements Benchmark, MultiThreaded,  Named, Ca
 	
 	protected long processingTime;
 
+	/** How long the stages of this run took, see {@link #getMetrics()}. */
+	protected final StageMetrics metrics = new StageMetrics();
+
 	protected String errorMessage;
 
 	protected int numThreads = Runtime.getRuntime().availableProcessors();
@@ -107,12 +111,27 @@ public class Mtrack_vollseg_kymo implements Benchmark, MultiThreaded,  Named, Ca
 		this.numThreads = numThreads;
 	}
 
+	/**
+	 * Returns the time elapsed since the last run began, until it ended, in
+	 * milliseconds, by the wall clock of {@link #getMetrics()}. The time per
+	 * stage, summed over the threads, is in its summary.
+	 */
 	@Override
 	public long getProcessingTime()
 	{
+		processingTime = metrics.getWallMillis();
 		return processingTime;
 	}
 
+	/**
+	 * @return the metrics the stages of this run are recorded to, to hand to
+	 *         the {@link fiji.plugin.vollseg_kymo_functions.TrackPipeline}.
+	 */
+	public StageMetrics getMetrics()
+	{
+		return metrics;
+	}
+
 	// --- org.scijava.Named methods ---
 
 	@Override
@@ -0,0 +1,481 @@
+/*-
+ * #%L
+ * Microtubule tracker.
+ * %%
+ * Copyright (C) 2017 MTrack developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.vollseg_kymo;
+
+import java.awt.Color;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import javax.swing.Timer;
+
+/**
+ * A {@link Logger} that never blocks the thread logging.
+ * <p>
+ * Messages go into a bounded ring buffer and are handed to a {@link Sink} in
+ * batches, by a Swing timer on the event dispatch thread for a UI sink or by a
+ * shared daemon thread otherwise. Any number of threads can log at once: a
+ * slot is claimed with a compare-and-set on the write sequence, there are no
+ * locks.
+ * <p>
+ * Messages below the level are discarded before anything is formatted, the
+ * others are only formatted when drained. Format arguments other than strings,
+ * numbers, characters, booleans and enums may change meanwhile, they are
+ * turned into strings when logged. Above
+ * {@link #setRateLimit(int) the rate limit}, and whenever the buffer is full,
+ * messages are dropped and counted, the sink gets a line saying how many were
+ * lost. Errors are exempt from the rate limit. Repeats of the same message in
+ * a batch are collapsed into one line with a count. Status and progress only
+ * keep their last value.
+ * <p>
+ * A logger drains until {@link #stop()}, e.g. when the component showing its
+ * messages goes away, and again after {@link #start()}.
+ */
+public class RingBufferLogger extends Logger
+{
+
+	public enum Level
+	{
+		DEBUG, INFO, WARN, ERROR
+	}
+
+	/**
+	 * Receives the drained messages.
+	 */
+	public interface Sink
+	{
+		/**
+		 * Appends the first n messages and colors, in logging order.
+		 */
+		void append( String[] messages, Color[] colors, int n );
+
+		void setStatus( String status );
+
+		void setProgress( double val );
+	}
+
+	public static final int DEFAULT_CAPACITY = 4096;
+
+	public static final int DEFAULT_RATE_LIMIT = 200;
+
+	public static final int DRAIN_PERIOD = 100;
+
+	private static final ScheduledExecutorService DRAINER = Executors.newSingleThreadScheduledExecutor( r -> {
+		final Thread thread = new Thread( r, "RingBufferLogger" );
+		thread.setDaemon( true );
+		return thread;
+	} );
+
+	/**
+	 * Shared by the fitting code in place of printing to the standard output.
+	 * Only warnings and errors are shown by default.
+	 */
+	public static final RingBufferLogger CONSOLE = new RingBufferLogger( new Sink()
+	{
+		@Override
+		public void append( final String[] messages, final Color[] colors, final int n )
+		{
+			for ( int i = 0; i < n; i++ )
+			{
+				if ( colors[ i ] == ERROR_COLOR )
+					System.err.print( messages[ i ] );
+				else
+					System.out.print( messages[ i ] );
+			}
+		}
+
+		@Override
+		public void setStatus( final String status )
+		{
+			System.out.println( status );
+		}
+
+		@Override
+		public void setProgress( final double val )
+		{}
+	}, DEFAULT_CAPACITY, false );
+
+	static
+	{
+		CONSOLE.setLevel( Level.WARN );
+	}
+
+	private final Sink sink;
+
+	private final int mask;
+
+	private final AtomicReferenceArray< Entry > slots;
+
+	/** The sequence of the next message to write. */
+	private final AtomicLong head = new AtomicLong();
+
+	/** The sequence of the next message to drain, written by the drainer only. */
+	private volatile long tail = 0;
+
+	private final AtomicLong dropped = new AtomicLong();
+
+	private volatile Level level = Level.INFO;
+
+	private volatile int rateLimit = DEFAULT_RATE_LIMIT;
+
+	/** Second of the current rate window, and the messages logged in it. */
+	private final AtomicLong window = new AtomicLong();
+
+	private volatile String status;
+
+	private volatile double progress = Double.NaN;
+
+	private final Timer timer;
+
+	/** Drains on the shared thread if not on the EDT, null when stopped. */
+	private ScheduledFuture< ? > drainer;
+
+	// reused by the drainer
+	private String[] messages = new String[ 64 ];
+
+	private Color[] colors = new Color[ 64 ];
+
+	/**
+	 * @param capacity
+	 *            rounded up to a power of two.
+	 * @param onEdt
+	 *            whether the sink must be called on the event dispatch
+	 *            thread.
+	 */
+	public RingBufferLogger( final Sink sink, final int capacity, final boolean onEdt )
+	{
+		this.sink = sink;
+		final int size = Integer.highestOneBit( Math.max( 2, capacity ) - 1 ) << 1;
+		this.mask = size - 1;
+		this.slots = new AtomicReferenceArray<>( size );
+
+		timer = onEdt ? new Timer( DRAIN_PERIOD, e -> drain() ) : null;
+		start();
+	}
+
+	/**
+	 * Starts draining periodically, as done on creation.
+	 */
+	public synchronized void start()
+	{
+		if ( timer != null )
+		{
+			if ( !timer.isRunning() )
+				timer.start();
+		}
+		else if ( drainer == null )
+		{
+			drainer = DRAINER.scheduleWithFixedDelay( this::drain, DRAIN_PERIOD, DRAIN_PERIOD, TimeUnit.MILLISECONDS );
+		}
+	}
+
+	public void setLevel( final Level level )
+	{
+		this.level = level;
+	}
+
+	public Level getLevel()
+	{
+		return level;
+	}
+
+	public boolean isEnabled( final Level level )
+	{
+		return level.compareTo( this.level ) >= 0;
+	}
+
+	/**
+	 * @param messagesPerSecond
+	 *            how many messages below {@link Level#ERROR} are kept per
+	 *            second, 0 for no limit.
+	 */
+	public void setRateLimit( final int messagesPerSecond )
+	{
+		this.rateLimit = Math.max( 0, messagesPerSecond );
+	}
+
+	/**
+	 * @return how many messages were dropped so far.
+	 */
+	public long getDropped()
+	{
+		return dropped.get();
+	}
+
+	/*
+	 * The level methods log one line each, formatted with String#format when
+	 * drained if there are arguments.
+	 */
+
+	public void debug( final String format, final Object... args )
+	{
+		log( Level.DEBUG, NORMAL_COLOR, format, args, true );
+	}
+
+	public void info( final String format, final Object... args )
+	{
+		log( Level.INFO, NORMAL_COLOR, format, args, true );
+	}
+
+	public void warn( final String format, final Object... args )
+	{
+		log( Level.WARN, BLUE_COLOR, format, args, true );
+	}
+
+	public void error( final String format, final Object... args )
+	{
+		log( Level.ERROR, ERROR_COLOR, format, args, true );
+	}
+
+	@Override
+	public void log( final String message, final Color color )
+	{
+		log( Level.INFO, color, message, null, false );
+	}
+
+	@Override
+	public void error( final String message )
+	{
+		log( Level.ERROR, ERROR_COLOR, message, null, false );
+	}
+
+	/**
+	 * Queues a message. Never blocks.
+	 */
+	private void log( final Level level, final Color color, final String format, final Object[] args, final boolean line )
+	{
+		if ( !isEnabled( level ) )
+			return;
+
+		if ( level != Level.ERROR && !withinRate() )
+		{
+			dropped.incrementAndGet();
+			return;
+		}
+
+		long seq;
+		do
+		{
+			seq = head.get();
+			if ( seq - tail > mask )
+			{
+				dropped.incrementAndGet();
+				return;
+			}
+		}
+		while ( !head.compareAndSet( seq, seq + 1 ) );
+
+		slots.set( ( int ) seq & mask, new Entry( color, format, snapshot( args ), line ) );
+	}
+
+	/**
+	 * @return the arguments, with the ones that may change before they are
+	 *         formatted turned into strings.
+	 */
+	private static Object[] snapshot( final Object[] args )
+	{
+		if ( args == null )
+			return null;
+
+		Object[] copy = args;
+		for ( int i = 0; i < args.length; i++ )
+		{
+			final Object arg = args[ i ];
+			if ( arg == null || arg instanceof String || arg instanceof Number || arg instanceof Character
+					|| arg instanceof Boolean || arg instanceof Enum )
+				continue;
+
+			if ( copy == args )
+				copy = args.clone();
+			copy[ i ] = String.valueOf( arg );
+		}
+		return copy;
+	}
+
+	/**
+	 * Counts the message against the rate limit of the current second.
+	 */
+	private boolean withinRate()
+	{
+		final int limit = rateLimit;
+		if ( limit == 0 )
+			return true;
+
+		// the second in the high bits, the count in the low 32 bits
+		final long second = ( System.nanoTime() / 1_000_000_000L ) & 0xffffffffL;
+		while ( true )
+		{
+			final long current = window.get();
+			if ( current >>> 32 != second )
+			{
+				if ( window.compareAndSet( current, ( second << 32 ) | 1 ) )
+					return true;
+				continue;
+			}
+			if ( ( current & 0xffffffffL ) >= limit )
+				return false;
+			if ( window.compareAndSet( current, current + 1 ) )
+				return true;
+		}
+	}
+
+	@Override
+	public void setStatus( final String status )
+	{
+		this.status = status;
+	}
+
+	@Override
+	public void setProgress( final double val )
+	{
+		this.progress = val;
+	}
+
+	/**
+	 * Hands everything logged so far to the sink. Called periodically, but can
+	 * be called directly, from one thread at a time, e.g. at the end of a batch.
+	 */
+	public synchronized void drain()
+	{
+		int n = 0;
+		long t = tail;
+		String last = null;
+		int repeats = 0;
+
+		while ( true )
+		{
+			final int slot = ( int ) t & mask;
+			final Entry entry = slots.get( slot );
+			// claimed but not written yet, next time
+			if ( entry == null )
+				break;
+			slots.set( slot, null );
+			tail = ++t;
+
+			final String message = entry.format();
+			if ( message.equals( last ) )
+			{
+				repeats++;
+				continue;
+			}
+			if ( repeats > 0 )
+			{
+				n = add( n, "  (repeated " + repeats + " more times)\n", NORMAL_COLOR );
+				repeats = 0;
+			}
+			n = add( n, message, entry.color );
+			last = message;
+		}
+		if ( repeats > 0 )
+			n = add( n, "  (repeated " + repeats + " more times)\n", NORMAL_COLOR );
+
+		final long lost = dropped.getAndSet( 0 );
+		if ( lost > 0 )
+			n = add( n, "... " + lost + " messages dropped\n", BLUE_COLOR );
+
+		if ( n > 0 )
+			sink.append( messages, colors, n );
+
+		final String status = this.status;
+		if ( status != null )
+		{
+			this.status = null;
+			sink.setStatus( status );
+		}
+		final double progress = this.progress;
+		if ( !Double.isNaN( progress ) )
+		{
+			this.progress = Double.NaN;
+			sink.setProgress( progress );
+		}
+	}
+
+	private int add( final int n, final String message, final Color color )
+	{
+		if ( n == messages.length )
+		{
+			messages = Arrays.copyOf( messages, 2 * n );
+			colors = Arrays.copyOf( colors, 2 * n );
+		}
+		messages[ n ] = message;
+		colors[ n ] = color;
+		return n + 1;
+	}
+
+	/**
+	 * Stops draining periodically, after handing what is left to the sink.
+	 * Messages logged afterwards wait for {@link #start()}, or are dropped
+	 * once the buffer is full.
+	 */
+	public synchronized void stop()
+	{
+		if ( timer != null )
+			timer.stop();
+		if ( drainer != null )
+		{
+			drainer.cancel( false );
+			drainer = null;
+		}
+		drain();
+	}
+
+	private static final class Entry
+	{
+		private final Color color;
+
+		private final String format;
+
+		private final Object[] args;
+
+		private final boolean line;
+
+		private Entry( final Color color, final String format, final Object[] args, final boolean line )
+		{
+			this.color = color;
+			this.format = format;
+			this.args = args;
+			this.line = line;
+		}
+
+		private String format()
+		{
+			String message = format;
+			if ( args != null && args.length > 0 )
+			{
+				try
+				{
+					message = String.format( Locale.ROOT, format, args );
+				}
+				catch ( final RuntimeException e )
+				{
+					message = format + " " + Arrays.toString( args );
+				}
+			}
+			return line ? message + '\n' : message;
+		}
+	}
+}
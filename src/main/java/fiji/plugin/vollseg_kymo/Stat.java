@@ -24,14 +24,20 @@ package fiji.plugin.vollseg_kymo;
 import static fiji.plugin.vollseg_kymo.StatCollection.VISIBILITY;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicInteger;
 
-import fiji.plugin.vollseg_kymo.util.AlphanumComparator;
 import net.imglib2.AbstractEuclideanSpace;
 
 /**
@@ -39,6 +45,17 @@ import net.imglib2.AbstractEuclideanSpace;
  * Each stat received at creation a unique ID (as an <code>int</code>), used
  * later for saving, retrieving and loading. Interfering with this value will
  * predictively cause undesired behavior.
+ * <p>
+ * Numeric features are stored as primitive <code>double</code>s, in a row
+ * indexed by the feature ID of {@link #featureID(String)}, which is the same
+ * for all stats. Only the features of {@link #STRING_FEATURES} are stored as
+ * strings. Filtering and sorting should go through
+ * {@link #getDoubleFeature(int)}, {@link #getFeature(String)} formats the
+ * value for display.
+ * <p>
+ * The row and the set of features present are built once by the constructor.
+ * Writes after that, which are rare, replace them as a whole, so that the
+ * reads of a (parallel) filter take no lock.
  *
  * @author V Kapoor
  *
@@ -51,8 +68,26 @@ public class Stat extends AbstractEuclideanSpace implements Comparable<Stat> {
 
 	public static AtomicInteger IDcounter = new AtomicInteger(-1);
 
-	/** Store the individual features, and their values. */
-	private final ConcurrentHashMap<String, String> features = new ConcurrentHashMap<>();
+	/** Feature name to feature ID, the index of the feature in every stat row. */
+	private static final ConcurrentHashMap<String, Integer> FEATURE_IDS = new ConcurrentHashMap<>();
+
+	/** Feature ID to feature name. */
+	private static final List<String> FEATURE_KEYS = new CopyOnWriteArrayList<>();
+
+	/**
+	 * The numeric feature values, indexed by feature ID. Never modified once
+	 * the constructor returned.
+	 */
+	private volatile double[] values;
+
+	/**
+	 * Which feature IDs have been set. Never modified once the constructor
+	 * returned, written after {@link #values}.
+	 */
+	private volatile BitSet present;
+
+	/** The string features, created on first use. */
+	private Map<String, String> strings;
 
 	/** A user-supplied name for this stat. */
 	public String name;
@@ -81,13 +116,18 @@ public class Stat extends AbstractEuclideanSpace implements Comparable<Stat> {
 			final String name) {
 		super(3);
 		this.ID = IDcounter.incrementAndGet();
-		putFeature(RATE, String.valueOf(Double.valueOf(rate)));
-		putFeature(START_TIME, String.valueOf(Double.valueOf(start_time)));
-		putFeature(END_TIME, String.valueOf(Double.valueOf(end_time)));
-		putFeature(AVERAGE_GROWTH_RATE, String.valueOf(Double.valueOf(average_growth_rate)));
-		putFeature(AVERAGE_SHRINK_RATE, String.valueOf(Double.valueOf(average_shrink_rate)));
-		putFeature(CATASTROPHE_FREQUENCY, String.valueOf(Double.valueOf(catastrophe_frequency)));
-		putFeature(RESCUE_FREQUENCY, String.valueOf(Double.valueOf(rescue_frequency)));
+		// filled in place, the stat is not published yet
+		final double[] row = newRow(featureCount());
+		final BitSet set = new BitSet(row.length);
+		init(row, set, RATE, rate);
+		init(row, set, START_TIME, start_time);
+		init(row, set, END_TIME, end_time);
+		init(row, set, AVERAGE_GROWTH_RATE, average_growth_rate);
+		init(row, set, AVERAGE_SHRINK_RATE, average_shrink_rate);
+		init(row, set, CATASTROPHE_FREQUENCY, catastrophe_frequency);
+		init(row, set, RESCUE_FREQUENCY, rescue_frequency);
+		values = row;
+		present = set;
 		putFeature(NAME, name);
 
 	}
@@ -102,6 +142,8 @@ public class Stat extends AbstractEuclideanSpace implements Comparable<Stat> {
 	public Stat(final int ID) {
 		super(3);
 		this.ID = ID;
+		values = newRow(featureCount());
+		present = new BitSet();
 		synchronized (IDcounter) {
 			if (IDcounter.get() < ID) {
 				IDcounter.set(ID);
@@ -169,14 +211,16 @@ public class Stat extends AbstractEuclideanSpace implements Comparable<Stat> {
 		// Coordinates
 
 		// Feature list
-		if (null == features || features.size() < 1)
+		final BitSet present = this.present;
+		final double[] values = this.values;
+		if (present.isEmpty())
 			s.append("No features calculated\n");
 		else {
 			s.append("Feature list:\n");
 			double val;
-			for (final String key : features.keySet()) {
-				s.append("\t" + key.toString() + ": ");
-				val = Double.valueOf(features.get(key));
+			for (int id = present.nextSetBit(0); id >= 0; id = present.nextSetBit(id + 1)) {
+				s.append("\t" + featureKey(id) + ": ");
+				val = values[id];
 				if (val >= 1e4)
 					s.append(String.format("%.1g", val));
 				else
@@ -192,35 +236,119 @@ public class Stat extends AbstractEuclideanSpace implements Comparable<Stat> {
 	 */
 
 	/**
-	 * Exposes the storage map of features for this stat. Altering the returned map
-	 * will alter the stat.
+	 * Returns the features of this stat at the time of the call, the numeric
+	 * ones formatted as by {@link #getFeature(String)}.
+	 * <p>
+	 * Unlike in earlier versions this is not a view of the stored features:
+	 * the features are no longer kept in a map of strings, so the map is built
+	 * on each call and can not be modified. Use
+	 * {@link #putFeature(String, String)} to change a feature.
 	 *
-	 * @return a map of {@link String}s to {@link Double}s.
+	 * @return an unmodifiable map of feature names to values.
 	 */
 	public Map<String, String> getFeatures() {
-		return features;
+		final BitSet present = this.present;
+		final double[] values = this.values;
+		final Map<String, String> features = new HashMap<>();
+		for (int id = present.nextSetBit(0); id >= 0; id = present.nextSetBit(id + 1))
+			features.put(featureKey(id), String.valueOf(values[id]));
+		synchronized (this) {
+			if (null != strings)
+				features.putAll(strings);
+		}
+		return Collections.unmodifiableMap(features);
 	}
 
 	/**
-	 * Returns the value corresponding to the specified stat feature.
+	 * Returns the value corresponding to the specified stat feature, for
+	 * display.
 	 *
 	 * @param feature The feature string to retrieve the stored value for.
-	 * @return the feature value, as a {@link Double}. Will be <code>null</code> if
-	 *         it has not been set.
+	 * @return the feature value, as a {@link String}. Will be <code>null</code>
+	 *         if it has not been set.
 	 */
 	public String getFeature(final String feature) {
-		return features.get(feature);
+		if (STRING_FEATURES.contains(feature))
+			return getStringFeature(feature);
+
+		final Integer id = FEATURE_IDS.get(feature);
+		if (null != id && hasFeature(id))
+			return String.valueOf(getDoubleFeature(id));
+
+		return getStringFeature(feature);
+	}
+
+	private synchronized String getStringFeature(final String feature) {
+		return null == strings ? null : strings.get(feature);
 	}
 
 	/**
-	 * Stores the specified feature value for this stat.
+	 * Returns the numeric value of the specified feature, without boxing.
+	 *
+	 * @param id the feature ID, from {@link #featureID(String)}.
+	 * @return the feature value, {@link Double#NaN} if it has not been set.
+	 */
+	public double getDoubleFeature(final int id) {
+		final double[] row = values;
+		return id < row.length ? row[id] : Double.NaN;
+	}
+
+	public double getDoubleFeature(final String feature) {
+		final Integer id = FEATURE_IDS.get(feature);
+		return null == id ? Double.NaN : getDoubleFeature(id);
+	}
+
+	public boolean hasFeature(final int id) {
+		return present.get(id);
+	}
+
+	/**
+	 * Stores the specified numeric feature value for this stat. A copy of the
+	 * row with the value is published, a filter reading the stat meanwhile
+	 * sees either the old or the new row.
+	 *
+	 * @param id    the feature ID, from {@link #featureID(String)}.
+	 * @param value the value to store.
+	 */
+	public synchronized void putFeature(final int id, final double value) {
+		final double[] row = Arrays.copyOf(values, Math.max(values.length, Math.max(id + 1, featureCount())));
+		Arrays.fill(row, values.length, row.length, Double.NaN);
+		row[id] = value;
+		values = row;
+
+		// published after the value, a reader that sees the bit sees the value
+		final BitSet set = (BitSet) present.clone();
+		set.set(id);
+		present = set;
+	}
+
+	public void putFeature(final String feature, final double value) {
+		putFeature(featureID(feature), value);
+	}
+
+	/**
+	 * Stores the specified feature value for this stat. Values of numeric
+	 * features are parsed and stored as <code>double</code>s, the features of
+	 * {@link #STRING_FEATURES} and values that are not numbers as strings.
 	 *
 	 * @param feature the name of the feature to store, as a {@link String}.
-	 * @param value   the value to store, as a {@link Double}. Using
+	 * @param value   the value to store, as a {@link String}. Using
 	 *                <code>null</code> will have unpredicted outcomes.
 	 */
 	public void putFeature(final String feature, final String value) {
-		features.put(feature, value);
+		if (!STRING_FEATURES.contains(feature)) {
+			try {
+				putFeature(featureID(feature), Double.parseDouble(value));
+				return;
+			} catch (final NumberFormatException | NullPointerException e) {
+				// kept as a string below
+			}
+		}
+		synchronized (this) {
+			if (null == strings)
+				strings = new HashMap<>(2);
+			strings.put(feature, value);
+		}
 	}
 
 	/**
@@ -228,17 +356,16 @@ public class Stat extends AbstractEuclideanSpace implements Comparable<Stat> {
 	 * specified stat. By construction, this operation is anti-symmetric (
 	 * <code>A.diffTo(B) = - B.diffTo(A)</code>).
 	 * <p>
-	 * Will generate a {@link NullPointerException} if one of the stats does not
-	 * store the named feature.
+	 * Returns {@link Double#NaN} if one of the stats does not store the named
+	 * feature.
 	 *
 	 * @param s       the stat to compare to.
 	 * @param feature the name of the feature to use for calculation.
 	 * @return the difference in feature value.
 	 */
 	public double diffTo(final Stat s, final String feature) {
-		final double f1 = Double.valueOf(features.get(feature));
-		final double f2 = Double.valueOf(s.getFeature(feature));
-		return f1 - f2;
+		final int id = featureID(feature);
+		return getDoubleFeature(id) - s.getDoubleFeature(id);
 	}
 
 	/**
@@ -252,22 +379,81 @@ public class Stat extends AbstractEuclideanSpace implements Comparable<Stat> {
 	 * By construction, this operation is symmetric ( <code>A.normalizeDiffTo(B) =
 	 * B.normalizeDiffTo(A)</code>).
 	 * <p>
-	 * Will generate a {@link NullPointerException} if one of the stats does not
-	 * store the named feature.
+	 * Returns {@link Double#NaN} if one of the stats does not store the named
+	 * feature.
 	 *
 	 * @param s       the stat to compare to.
 	 * @param feature the name of the feature to use for calculation.
 	 * @return the absolute normalized difference feature value.
 	 */
 	public double normalizeDiffTo(final Stat s, final String feature) {
-		final double a = Double.valueOf(features.get(feature));
-		final double b = Double.valueOf(s.getFeature(feature));
+		final int id = featureID(feature);
+		final double a = getDoubleFeature(id);
+		final double b = s.getDoubleFeature(id);
 		if (a == -b)
 			return 0d;
 
 		return Math.abs(a - b) / ((a + b) / 2);
 	}
 
+	/*
+	 * FEATURE IDS
+	 */
+
+	/**
+	 * Returns the ID of a feature, the index of its value in the row of every
+	 * stat. Features get their ID on first use, and keep it.
+	 *
+	 * @param feature the feature name.
+	 * @return the feature ID.
+	 */
+	public static int featureID(final String feature) {
+		final Integer id = FEATURE_IDS.get(feature);
+		if (null != id)
+			return id;
+
+		synchronized (FEATURE_IDS) {
+			Integer newID = FEATURE_IDS.get(feature);
+			if (null == newID) {
+				newID = FEATURE_KEYS.size();
+				FEATURE_KEYS.add(feature);
+				FEATURE_IDS.put(feature, newID);
+			}
+			return newID;
+		}
+	}
+
+	/**
+	 * Sets a feature of a row that is being built. The features set by the
+	 * constructor have their ID since the class was loaded, so the row is
+	 * large enough.
+	 */
+	private static void init(final double[] row, final BitSet present, final String feature, final double value) {
+		final int id = featureID(feature);
+		row[id] = value;
+		present.set(id);
+	}
+
+	private static double[] newRow(final int size) {
+		final double[] row = new double[size];
+		Arrays.fill(row, Double.NaN);
+		return row;
+	}
+
+	/**
+	 * @return the name of the feature with the specified ID.
+	 */
+	public static String featureKey(final int id) {
+		return FEATURE_KEYS.get(id);
+	}
+
+	/**
+	 * @return the number of features that have an ID.
+	 */
+	public static int featureCount() {
+		return FEATURE_KEYS.size();
+	}
+
 	/*
 	 * PUBLIC UTILITY CONSTANTS
 	 */
@@ -300,6 +486,9 @@ public class Stat extends AbstractEuclideanSpace implements Comparable<Stat> {
 	/** The name feature. */
 	public static final String NAME = "NAME";
 
+	/** The features stored as strings. */
+	public final static Set<String> STRING_FEATURES = new HashSet<>();
+
 	/** The position features. */
 	public final static String[] STAT_FEATURES = new String[] { AVERAGE_GROWTH_RATE, AVERAGE_SHRINK_RATE,
 			CATASTROPHE_FREQUENCY, RESCUE_FREQUENCY };
@@ -375,6 +564,12 @@ public class Stat extends AbstractEuclideanSpace implements Comparable<Stat> {
 		IS_INT.put(RESCUE_FREQUENCY, Boolean.FALSE);
 		IS_INT.put(NAME, Boolean.FALSE);
 		IS_INT.put(VISIBILITY, Boolean.TRUE);
+
+		STRING_FEATURES.add(NAME);
+
+		for (final String feature : FEATURES)
+			if (!STRING_FEATURES.contains(feature))
+				featureID(feature);
 	}
 
 	/**
@@ -387,9 +582,11 @@ public class Stat extends AbstractEuclideanSpace implements Comparable<Stat> {
 	 */
 	public final static Comparator<Stat> featureComparator(final String feature) {
 		final Comparator<Stat> comparator = new Comparator<Stat>() {
+			private final int id = featureID(feature);
+
 			@Override
 			public int compare(final Stat o1, final Stat o2) {
-				final double diff = o2.diffTo(o1, feature);
+				final double diff = o2.getDoubleFeature(id) - o1.getDoubleFeature(id);
 				if (diff == 0)
 					return 0;
 				else if (diff < 0)
@@ -22,17 +22,26 @@
 package fiji.plugin.vollseg_kymo;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
 import java.util.NavigableSet;
 import java.util.Set;
-import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import net.imglib2.algorithm.MultiThreaded;
 
@@ -40,12 +49,31 @@ import net.imglib2.algorithm.MultiThreaded;
  * A utility class that wrap the {@link java.util.SortedMap} we use to store the
  * stats contained in each frame with a few utility methods.
  * <p>
- * Internally we rely on ConcurrentSkipListMap to allow concurrent access
- * without clashes.
+ * Next to the per-frame sets, every stat has a row. Visibility is a bit set
+ * over the rows, a table from stat ID to row makes {@link #search(int)} a
+ * lookup. For filtering, the values of a feature are copied once into a
+ * primitive column over the rows, which is kept until the content changes or
+ * {@link #featuresChanged()} is called. The bit set is the only record of the
+ * visibility: the {@link #VISIBILITY} feature of a stat in this collection is
+ * answered from it by {@link #getFeature(Stat, String)}, the stat itself only
+ * carries one if it was loaded with it, see {@link #fromMap(Map)}.
+ * <p>
+ * Readers on other threads can take a {@link #snapshot()}: an immutable view
+ * of the frames, the rows and the visibility. These are kept in
+ * {@link ChunkedArrays}, and the set of each frame is copied on write as
+ * well: a snapshot shares them all, and the first write after it copies only
+ * the chunks and the frame set it touches, plus the lists of chunks, O(n /
+ * {@link ChunkedArrays#CHUNK}). The sorted frame names of a snapshot are
+ * built by the reader, on first use.
+ * <p>
+ * The views this collection hands out, {@link #keySet()},
+ * {@link #iterable(boolean)}, {@link #iterator(boolean)} and their per-frame
+ * variants, are views of a snapshot and can not be modified.
  * <p>
  * This class is {@link MultiThreaded}. There are a few processes that can
  * benefit from multithreaded computation ({@link #filter(Collection)},
- * {@link #filter(FeatureFilter)}
+ * {@link #filter(FeatureFilter)}. They run on a pool shared by all
+ * collections, the rows are split into as many chunks as threads are set.
  *
  * @author Jean-Yves Tinevez - Feb 2011 -2013. Revised December 2020.
  */
@@ -58,6 +86,8 @@ public class StatCollection implements MultiThreaded
 
 	public static final String VISIBILITY = "VISIBILITY";
 
+	private static final int VISIBILITY_ID = Stat.featureID( VISIBILITY );
+
 	/**
 	 * Time units for filtering and cropping operation timeouts. Filtering
 	 * should not take more than 1 minute.
@@ -70,8 +100,61 @@ public class StatCollection implements MultiThreaded
 	 */
 	private static final long TIME_OUT_DELAY = 1;
 
-	/** The frame by frame list of stat this object wrap. */
-	private ConcurrentSkipListMap< String, Set< Stat > > content = new ConcurrentSkipListMap<>();
+	/** The pool filtering runs on, shared by all collections. */
+	private static final ExecutorService FILTER_POOL = Executors.newFixedThreadPool(
+			Runtime.getRuntime().availableProcessors(), r -> {
+				final Thread thread = new Thread( r, "StatCollection filter" );
+				thread.setDaemon( true );
+				return thread;
+			} );
+
+	/** Frame name to frame index. Never shared with a snapshot. */
+	private final TreeMap< String, Integer > frameOf = new TreeMap<>();
+
+	/** The frame names, by frame index. */
+	private ChunkedArrays.Objects< String > frameNames = new ChunkedArrays.Objects<>();
+
+	/** The stats of each frame, by frame index. */
+	private ChunkedArrays.Objects< Set< Stat > > frameStats = new ChunkedArrays.Objects<>();
+
+	/**
+	 * The frames whose set is not shared with a snapshot and can be changed in
+	 * place.
+	 */
+	private BitSet ownedFrames = new BitSet();
+
+	/** The stats, by row. */
+	private ChunkedArrays.Objects< Stat > rows = new ChunkedArrays.Objects<>();
+
+	/** Stat ID to row + 1, 0 for the stats not in this collection. */
+	private ChunkedArrays.Ints rowOf = new ChunkedArrays.Ints();
+
+	/** Which rows are visible. */
+	private ChunkedArrays.Bits visible = new ChunkedArrays.Bits();
+
+	/** Feature ID to the values of the feature, by row. */
+	private final HashMap< Integer, double[] > columns = new HashMap<>();
+
+	/** Feature ID to the rows, sorted by the value of the feature. */
+	private final HashMap< Integer, int[] > sortedRows = new HashMap<>();
+
+	/**
+	 * The filters of the last {@link #filter(Collection)} and, per row, how
+	 * many of them it fails. <code>null</code> when the content or the
+	 * visibility changed since.
+	 */
+	private List< FeatureFilter > lastFilters;
+
+	private int[] failCounts;
+
+	/**
+	 * The snapshot of the current state, <code>null</code> if the collection
+	 * changed since the last one was taken.
+	 */
+	private Snapshot snapshot;
+
+	/** Incremented on every change made after a snapshot was taken. */
+	private long version = 0;
 
 	private int numThreads;
 
@@ -101,27 +184,20 @@ public class StatCollection implements MultiThreaded
 	 * @return the stat with the specified ID or <code>null</code> if this stat
 	 *         does not exist or does not belong to this collection.
 	 */
-	public Stat search( final int ID )
+	public synchronized Stat search( final int ID )
 	{
-		/*
-		 * Having a map id -> stat would be better, but we don't have a big need
-		 * for this.
-		 */
-		for ( final Stat stat : iterable( false ) )
-			if ( stat.ID() == ID )
-				return stat;
-
-		return null;
+		final int row = ID < 0 ? -1 : rowOf.get( ID ) - 1;
+		return row < 0 ? null : rows.get( row );
 	}
 
 	@Override
-	public String toString()
+	public synchronized String toString()
 	{
 		String str = super.toString();
 		str += ": contains " + getNstats( false ) + " stats total in "
-				+ keySet().size() + " different frames, over which "
+				+ frameOf.size() + " different frames, over which "
 				+ getNstats( true ) + " are visible:\n";
-		for ( final String key : content.keySet() )
+		for ( final String key : frameOf.keySet() )
 			str += "\tfname " + key + ": ";
 
 		return str;
@@ -134,26 +210,20 @@ public class StatCollection implements MultiThreaded
 	 * If the frame does not exist yet in the collection, it is created and
 	 * added. Upon adding, the added stat has its feature {@link Stat#FRAME}
 	 * updated with the passed frame value.
-	 * 
+	 *
 	 * @param stat
 	 *            the stat to add.
 	 * @param frame
 	 *            the frame to add it to.
 	 */
-	public void add( final Stat stat, final String fname )
+	public synchronized void add( final Stat stat, final String fname )
 	{
-		Set< Stat > stats = content.get( fname );
-		if ( null == stats )
-		{
-			stats = new HashSet<>();
-			content.put( fname, stats );
-		}
-		stats.add( stat );
+		beforeWrite();
+		writableFrame( fname ).add( stat );
 		stat.putFeature( Stat.NAME, fname );
-		stat.putFeature(VISIBILITY, String.valueOf(ONE));
+		setRowVisible( addRow( stat ), true );
 	}
-	
-	
+
 	/**
 	 * Filters out the content of this collection using the specified
 	 * {@link FeatureFilter}. Spots that are filtered out are marked as
@@ -164,139 +234,286 @@ public class StatCollection implements MultiThreaded
 	 */
 	public final void filter( final FeatureFilter featurefilter )
 	{
+		final List< FeatureFilter > filters = new ArrayList<>( 1 );
+		filters.add( featurefilter );
+		filter( filters );
+	}
 
-		final Collection< String > fnames = content.keySet();
-		final ExecutorService executors = Executors.newFixedThreadPool( numThreads );
+	/**
+	 * Filters out the content of this collection using the specified
+	 * {@link FeatureFilter} collection. Spots that are filtered out are marked
+	 * as invisible, and visible otherwise. To be marked as visible, a spot must
+	 * pass <b>all</b> of the specified filters (AND chaining). A stat that
+	 * does not have the feature of a filter does not pass it.
+	 * <p>
+	 * If the filters are the ones of the previous call with only the threshold
+	 * of one of them changed, and the content did not change in between, only
+	 * the stats with a value between the old and the new threshold are tested
+	 * again.
+	 *
+	 * @param filters
+	 *            the filter collection to use.
+	 */
+	public final synchronized void filter( final Collection< FeatureFilter > filters )
+	{
+		final List< FeatureFilter > newFilters = new ArrayList<>( filters );
 
-		for ( final String fname : fnames )
+		// moving the threshold of one filter only re-tests the rows between
+		// the old and the new threshold
+		if ( null != failCounts && lastFilters.size() == newFilters.size() )
 		{
-
-			final Runnable command = new Runnable()
+			int changed = -1;
+			int nChanged = 0;
+			boolean comparable = true;
+			for ( int i = 0; i < newFilters.size() && comparable; i++ )
 			{
-				@Override
-				public void run()
+				final FeatureFilter o = lastFilters.get( i );
+				final FeatureFilter n = newFilters.get( i );
+				if ( !o.feature.equals( n.feature ) || o.isAbove != n.isAbove )
+					comparable = false;
+				else if ( Double.compare( o.value, n.value ) != 0 )
 				{
-					final Set< Stat > stats = content.get( fname );
-					final double tval = featurefilter.value;
+					changed = i;
+					nChanged++;
+				}
+			}
 
-					if ( featurefilter.isAbove )
-					{
-						for ( final Stat stat : stats )
-						{
-							final Double val = Double.valueOf( stat.getFeature( featurefilter.feature ) );
-							stat.putFeature( VISIBILITY, val.compareTo( tval ) < 0 ? String.valueOf( ZERO ) : String.valueOf( ONE ) );
-						}
+			if ( comparable && nChanged == 0 )
+				return;
 
-					}
-					else
-					{
-						for ( final Stat stat : stats )
-						{
-							final Double val = Double.valueOf( stat.getFeature( featurefilter.feature ) );
-							stat.putFeature( VISIBILITY, val.compareTo( tval ) > 0 ? String.valueOf( ZERO ) : String.valueOf( ONE ));
-						}
-					}
-				}
-			};
-			executors.execute( command );
+			if ( comparable && nChanged == 1 )
+			{
+				beforeWrite();
+				refilter( changed, newFilters.get( changed ) );
+				return;
+			}
+		}
+
+		final int size = rows.size();
+
+		// the columns are built before the chunks run, not inside
+		final double[][] cols = new double[ newFilters.size() ][];
+		final double[] tvals = new double[ newFilters.size() ];
+		final boolean[] isAboves = new boolean[ newFilters.size() ];
+		int f = 0;
+		for ( final FeatureFilter featureFilter : newFilters )
+		{
+			cols[ f ] = column( Stat.featureID( featureFilter.feature ) );
+			tvals[ f ] = featureFilter.value;
+			isAboves[ f ] = featureFilter.isAbove;
+			f++;
+		}
+
+		final int[] fails = new int[ size ];
+		final long[] words = new long[ ( size + 63 ) >>> 6 ];
+		final int nChunks = Math.max( 1, Math.min( numThreads, words.length ) );
+		final int wordsPerChunk = ( words.length + nChunks - 1 ) / Math.max( 1, nChunks );
+
+		final List< Future< ? > > futures = new ArrayList<>( nChunks );
+		for ( int from = 0; from < words.length; from += wordsPerChunk )
+		{
+			final int fromRow = from << 6;
+			final int toRow = Math.min( size, ( from + wordsPerChunk ) << 6 );
+			futures.add( FILTER_POOL.submit( () -> {
+				for ( int i = 0; i < cols.length; i++ )
+					count( fails, fromRow, toRow, cols[ i ], tvals[ i ], isAboves[ i ] );
+				for ( int r = fromRow; r < toRow; r++ )
+					if ( fails[ r ] == 0 )
+						words[ r >>> 6 ] |= 1L << ( r & 63 );
+			} ) );
 		}
 
-		executors.shutdown();
 		try
 		{
-			final boolean ok = executors.awaitTermination( TIME_OUT_DELAY, TIME_OUT_UNITS );
-			if ( !ok )
-				System.err.println( "[SpotCollection.filter()] Timeout of " + TIME_OUT_DELAY + " " + TIME_OUT_UNITS + " reached while filtering." );
+			for ( final Future< ? > future : futures )
+				future.get( TIME_OUT_DELAY, TIME_OUT_UNITS );
+		}
+		catch ( final TimeoutException e )
+		{
+			System.err.println( "[SpotCollection.filter()] Timeout of " + TIME_OUT_DELAY + " " + TIME_OUT_UNITS + " reached while filtering." );
+			return;
 		}
-		catch ( final InterruptedException e )
+		catch ( final InterruptedException | ExecutionException e )
 		{
 			e.printStackTrace();
+			return;
 		}
+
+		beforeWrite();
+		visible = ChunkedArrays.Bits.of( words );
+		lastFilters = newFilters;
+		failCounts = fails;
 	}
 
-	
 	/**
-	 * Filters out the content of this collection using the specified
-	 * {@link FeatureFilter} collection. Spots that are filtered out are marked
-	 * as invisible, and visible otherwise. To be marked as visible, a spot must
-	 * pass <b>all</b> of the specified filters (AND chaining).
-	 *
-	 * @param filters
-	 *            the filter collection to use.
+	 * Counts, for the rows fromRow to toRow, the ones whose value in the
+	 * column does not pass the threshold. NaN never passes.
 	 */
-	public final void filter( final Collection< FeatureFilter > filters )
+	private static void count( final int[] fails, final int fromRow, final int toRow,
+			final double[] column, final double tval, final boolean isAbove )
 	{
+		if ( isAbove )
+		{
+			for ( int r = fromRow; r < toRow; r++ )
+				if ( !( column[ r ] >= tval ) )
+					fails[ r ]++;
+		}
+		else
+		{
+			for ( int r = fromRow; r < toRow; r++ )
+				if ( !( column[ r ] <= tval ) )
+					fails[ r ]++;
+		}
+	}
 
-		final Collection< String > fnames = content.keySet();
-		final ExecutorService executors = Executors.newFixedThreadPool( numThreads );
-
-		for ( final String fname : fnames )
+	/**
+	 * Applies the new threshold of filter index of the last filtering. Only the
+	 * rows with a value between the old and the new threshold pass or fail it
+	 * differently, they are found by binary search in the sorted rows of the
+	 * feature.
+	 */
+	private void refilter( final int index, final FeatureFilter filter )
+	{
+		final double oldValue = lastFilters.get( index ).value;
+		final double newValue = filter.value;
+		final int id = Stat.featureID( filter.feature );
+		final double[] column = column( id );
+		final int[] sorted = sortedRows( id );
+
+		final double low = Math.min( oldValue, newValue );
+		final double high = Math.max( oldValue, newValue );
+
+		// pass is value >= t above, value <= t below; raising t above or
+		// lowering it below makes the rows in between fail
+		final int from = filter.isAbove ? lowerBound( sorted, column, low ) : upperBound( sorted, column, low );
+		final int to = filter.isAbove ? lowerBound( sorted, column, high ) : upperBound( sorted, column, high );
+		final boolean nowFailing = filter.isAbove == ( newValue > oldValue );
+
+		for ( int i = from; i < to; i++ )
 		{
-			final Runnable command = new Runnable()
+			final int r = sorted[ i ];
+			if ( nowFailing )
 			{
-				@Override
-				public void run()
-				{
-					final Set< Stat > stats = content.get( fname );
-					for ( final Stat stat : stats )
-					{
-
-						boolean shouldNotBeVisible = false;
-						for ( final FeatureFilter featureFilter : filters )
-						{
+				if ( failCounts[ r ]++ == 0 )
+					visible.set( r, false );
+			}
+			else
+			{
+				if ( --failCounts[ r ] == 0 )
+					visible.set( r, true );
+			}
+		}
 
-							final Double val =  Double.valueOf( stat.getFeature( featureFilter.feature ) );
-							final double tval = featureFilter.value;
-							final boolean isAbove = featureFilter.isAbove;
+		lastFilters.set( index, filter );
+	}
 
-							if ( null == val || isAbove && val.compareTo( tval ) < 0 || !isAbove && val.compareTo( tval ) > 0 )
-							{
-								shouldNotBeVisible = true;
-								break;
-							}
-						} // loop over filters
-						stat.putFeature( VISIBILITY, shouldNotBeVisible ? String.valueOf( ZERO ) : String.valueOf( ONE ) );
+	/**
+	 * @return the rows sorted by increasing value of the feature, NaN last.
+	 *         Built on first use.
+	 */
+	protected synchronized int[] sortedRows( final int id )
+	{
+		int[] sorted = sortedRows.get( id );
+		if ( null == sorted )
+		{
+			final double[] column = column( id );
+			sorted = new int[ column.length ];
+			for ( int r = 0; r < sorted.length; r++ )
+				sorted[ r ] = r;
+			sort( sorted, column );
+			// the visibility changes with every filtering
+			if ( id != VISIBILITY_ID )
+				sortedRows.put( id, sorted );
+		}
+		return sorted;
+	}
 
-					} // loop over spots
-				}
-			};
-			executors.execute( command );
+	/**
+	 * Stable merge sort of the rows by their value, without boxing.
+	 */
+	private static void sort( final int[] sorted, final double[] column )
+	{
+		int[] src = sorted;
+		int[] dst = new int[ sorted.length ];
+		for ( int width = 1; width < sorted.length; width <<= 1 )
+		{
+			for ( int lo = 0; lo < sorted.length; lo += width << 1 )
+			{
+				final int mid = Math.min( lo + width, sorted.length );
+				final int hi = Math.min( lo + ( width << 1 ), sorted.length );
+				int i = lo, j = mid, k = lo;
+				while ( i < mid && j < hi )
+					dst[ k++ ] = Double.compare( column[ src[ j ] ], column[ src[ i ] ] ) < 0 ? src[ j++ ] : src[ i++ ];
+				while ( i < mid )
+					dst[ k++ ] = src[ i++ ];
+				while ( j < hi )
+					dst[ k++ ] = src[ j++ ];
+			}
+			final int[] tmp = src;
+			src = dst;
+			dst = tmp;
 		}
+		if ( src != sorted )
+			System.arraycopy( src, 0, sorted, 0, sorted.length );
+	}
 
-		executors.shutdown();
-		try
+	/**
+	 * @return the first position in the sorted rows with a value &gt;= x
+	 */
+	private static int lowerBound( final int[] sorted, final double[] column, final double x )
+	{
+		int lo = 0, hi = sorted.length;
+		while ( lo < hi )
 		{
-			final boolean ok = executors.awaitTermination( TIME_OUT_DELAY, TIME_OUT_UNITS );
-			if ( !ok )
-				System.err.println( "[SpotCollection.filter()] Timeout of " + TIME_OUT_DELAY + " " + TIME_OUT_UNITS + " reached while filtering." );
+			final int mid = ( lo + hi ) >>> 1;
+			if ( column[ sorted[ mid ] ] < x )
+				lo = mid + 1;
+			else
+				hi = mid;
 		}
-		catch ( final InterruptedException e )
+		return lo;
+	}
+
+	/**
+	 * @return the first position in the sorted rows with a value &gt; x, NaN
+	 *         included
+	 */
+	private static int upperBound( final int[] sorted, final double[] column, final double x )
+	{
+		int lo = 0, hi = sorted.length;
+		while ( lo < hi )
 		{
-			e.printStackTrace();
+			final int mid = ( lo + hi ) >>> 1;
+			if ( column[ sorted[ mid ] ] <= x )
+				lo = mid + 1;
+			else
+				hi = mid;
 		}
+		return lo;
 	}
-	
-	
-	
+
 	/**
 	 * Removes the given stat from this collection, at the specified frame.
 	 * <p>
 	 * If the stat frame collection does not exist yet, nothing is done and
 	 * <code>false</code> is returned. If the stat cannot be found in the frame
 	 * content, nothing is done and <code>false</code> is returned.
-	 * 
+	 *
 	 * @param stat
 	 *            the stat to remove.
 	 * @param frame
 	 *            the frame to remove it from.
 	 * @return <code>true</code> if the stat was succesfully removed.
 	 */
-	public boolean remove( final Stat stat, final String fname )
+	public synchronized boolean remove( final Stat stat, final String fname )
 	{
-		final Set< Stat > stats = content.get( fname );
-		if ( null == stats )
+		final Set< Stat > before = frame( fname );
+		if ( null == before || !before.contains( stat ) )
 			return false;
-		return stats.remove( stat );
+		beforeWrite();
+		writableFrame( fname ).remove( stat );
+		removeRow( stat );
+		return true;
 	}
 
 	/**
@@ -305,104 +522,350 @@ public class StatCollection implements MultiThreaded
 	 * @param visible
 	 *            if true, all stats will be marked as visible.
 	 */
-	public void setVisible( final boolean visible )
+	public synchronized void setVisible( final boolean visible )
 	{
-		final Double val = visible ? ONE : ZERO;
-		final Collection< String > fnames = content.keySet();
+		beforeWrite();
+		this.visible = visible ? ChunkedArrays.Bits.filled( rows.size() ) : new ChunkedArrays.Bits();
+		lastFilters = null;
+		failCounts = null;
+	}
 
-		final ExecutorService executors = Executors.newFixedThreadPool( numThreads );
-		for ( final String fname : fnames )
-		{
+	/**
+	 * Returns the total number of stats in this collection, over all frames.
+	 *
+	 * @param visiblestatsOnly
+	 *            if true, will only count visible stats. If false count all
+	 *            stats.
+	 * @return the total number of stats in this collection.
+	 */
+	public final synchronized int getNstats( final boolean visiblestatsOnly )
+	{
+		return visiblestatsOnly ? visible.cardinality() : rows.size();
+	}
 
-			final Runnable command = new Runnable()
-			{
-				@Override
-				public void run()
-				{
+	/**
+	 * Returns the number of stats at the given frame.
+	 *
+	 * @param frame
+	 *            the frame.
+	 * @param visiblestatsOnly
+	 *            if true, will only count visible stats. If false count all
+	 *            stats.
+	 * @return the number of stats at the given frame.
+	 */
+	public synchronized int getNstats( final String fname, final boolean visiblestatsOnly )
+	{
+		final Set< Stat > stats = frame( fname );
+		if ( null == stats )
+			return 0;
 
-					final Set< Stat > stats = content.get( fname );
-					for ( final Stat stat : stats )
-						stat.putFeature( VISIBILITY, String.valueOf(val) );
-				}
-			};
-			executors.execute( command );
-		}
+		if ( !visiblestatsOnly )
+			return stats.size();
 
-		executors.shutdown();
-		try
+		int nstats = 0;
+		for ( final Stat stat : stats )
+			if ( isVisible( stat ) )
+				nstats++;
+		return nstats;
+	}
+
+	/**
+	 * Returns whether the specified stat is visible in this collection.
+	 *
+	 * @param stat
+	 *            the stat.
+	 * @return <code>false</code> if the stat is not visible or not in this
+	 *         collection.
+	 */
+	public synchronized boolean isVisible( final Stat stat )
+	{
+		final int row = rowOf( rowOf, stat );
+		return row >= 0 && visible.get( row );
+	}
+
+	/**
+	 * Returns the value of a feature of a stat of this collection, for
+	 * display. Same as {@link Stat#getFeature(String)}, except for
+	 * {@link #VISIBILITY}, which is the visibility in this collection.
+	 *
+	 * @param stat
+	 *            the stat.
+	 * @param feature
+	 *            the feature name.
+	 * @return the feature value, <code>null</code> if it has not been set or
+	 *         the stat is not in this collection.
+	 */
+	public synchronized String getFeature( final Stat stat, final String feature )
+	{
+		return getFeature( rowOf, visible, stat, feature );
+	}
+
+	/**
+	 * Returns the numeric value of a feature of a stat of this collection.
+	 * Same as {@link Stat#getDoubleFeature(int)}, except for
+	 * {@link #VISIBILITY}, which is 1 or 0 by the visibility in this
+	 * collection.
+	 *
+	 * @param stat
+	 *            the stat.
+	 * @param id
+	 *            the feature ID, from {@link Stat#featureID(String)}.
+	 * @return the feature value, {@link Double#NaN} if it has not been set or
+	 *         the stat is not in this collection.
+	 */
+	public synchronized double getDoubleFeature( final Stat stat, final int id )
+	{
+		return getDoubleFeature( rowOf, visible, stat, id );
+	}
+
+	public double getDoubleFeature( final Stat stat, final String feature )
+	{
+		return getDoubleFeature( stat, Stat.featureID( feature ) );
+	}
+
+	/**
+	 * Drops the feature columns used for filtering. To be called when feature
+	 * values of stats already in this collection change.
+	 */
+	public synchronized void featuresChanged()
+	{
+		invalidate();
+	}
+
+	/**
+	 * Drops the columns, the sorted rows and the state of the last filtering.
+	 */
+	private void invalidate()
+	{
+		columns.clear();
+		sortedRows.clear();
+		lastFilters = null;
+		failCounts = null;
+	}
+
+	/*
+	 * SNAPSHOTS
+	 */
+
+	/**
+	 * Returns an immutable view of the current content of this collection,
+	 * which can be read from any thread without locking while this collection
+	 * keeps changing. Taking a snapshot does not copy anything, and the same
+	 * snapshot is returned as long as the collection does not change.
+	 * <p>
+	 * The stats themselves are shared: the snapshot freezes which stats there
+	 * are, their rows and their visibility, and the feature columns built so
+	 * far. A column built later from the snapshot reads the current feature
+	 * values.
+	 * <p>
+	 * The first change after a snapshot was taken copies the chunks and the
+	 * frame set it touches, and the lists of chunks, O(n /
+	 * {@link ChunkedArrays#CHUNK}) in the number of stats.
+	 *
+	 * @return a snapshot of this collection.
+	 */
+	public synchronized Snapshot snapshot()
+	{
+		if ( null == snapshot )
 		{
-			final boolean ok = executors.awaitTermination( TIME_OUT_DELAY, TIME_OUT_UNITS );
-			if ( !ok )
-				System.err.println( "[statCollection.setVisible()] Timeout of " + TIME_OUT_DELAY + " " + TIME_OUT_UNITS + " reached." );
+			snapshot = new Snapshot( version, frameNames.freeze(), frameStats.freeze(), rows.freeze(), rowOf.freeze(),
+					visible.freeze(), new HashMap<>( columns ) );
+			ownedFrames = new BitSet();
 		}
-		catch ( final InterruptedException e )
+		return snapshot;
+	}
+
+	/**
+	 * To be called before the content, the rows or the visibility change.
+	 */
+	private void beforeWrite()
+	{
+		if ( null != snapshot )
 		{
-			e.printStackTrace();
+			snapshot = null;
+			version++;
 		}
 	}
 
-	
-	
-	
+	/*
+	 * FRAMES
+	 */
 
 	/**
-	 * Returns the total number of stats in this collection, over all frames.
-	 *
-	 * @param visiblestatsOnly
-	 *            if true, will only count visible stats. If false count all
-	 *            stats.
-	 * @return the total number of stats in this collection.
+	 * @return the stats of the frame, <code>null</code> if there is no such
+	 *         frame. Not to be changed, see {@link #writableFrame(String)}.
 	 */
-	public final int getNstats( final boolean visiblestatsOnly )
+	private Set< Stat > frame( final String fname )
 	{
-		int nstats = 0;
-		if ( visiblestatsOnly )
+		final Integer index = frameOf.get( fname );
+		return null == index ? null : frameStats.get( index );
+	}
+
+	/**
+	 * @return the stats of the frame, to be changed. The frame is created if
+	 *         there is none, and its set copied if a snapshot shares it.
+	 */
+	private Set< Stat > writableFrame( final String fname )
+	{
+		final Integer index = frameOf.get( fname );
+		if ( null == index )
 		{
-			final Iterator< Stat > it = iterator( true );
-			while ( it.hasNext() )
-			{
-				it.next();
-				nstats++;
-			}
+			final Set< Stat > stats = new HashSet<>();
+			setFrame( fname, stats );
+			return stats;
+		}
+
+		Set< Stat > stats = frameStats.get( index );
+		if ( !ownedFrames.get( index ) )
+		{
+			stats = new HashSet<>( stats );
+			frameStats.set( index, stats );
+			ownedFrames.set( index );
+		}
+		return stats;
+	}
 
+	/**
+	 * Replaces the stats of a frame, or adds the frame.
+	 */
+	private void setFrame( final String fname, final Set< Stat > stats )
+	{
+		Integer index = frameOf.get( fname );
+		if ( null == index )
+		{
+			index = frameNames.size();
+			frameOf.put( fname, index );
+			frameNames.add( fname );
+			frameStats.add( stats );
 		}
 		else
 		{
-			for ( final Set< Stat > stats : content.values() )
-				nstats += stats.size();
+			frameStats.set( index, stats );
 		}
-		return nstats;
+		ownedFrames.set( index );
 	}
 
+	/*
+	 * ROWS
+	 */
+
 	/**
-	 * Returns the number of stats at the given frame.
-	 *
-	 * @param frame
-	 *            the frame.
-	 * @param visiblestatsOnly
-	 *            if true, will only count visible stats. If false count all
-	 *            stats.
-	 * @return the number of stats at the given frame.
+	 * @return the values of the feature over the rows, NaN where a stat does
+	 *         not have it. Built on first use.
 	 */
-	public int getNstats( final String fname, final boolean visiblestatsOnly )
+	protected synchronized double[] column( final int id )
 	{
-		if ( visiblestatsOnly )
+		if ( id == VISIBILITY_ID )
+			return visibilityColumn( rows.size(), visible );
+
+		double[] column = columns.get( id );
+		if ( null == column )
 		{
-			final Iterator< Stat > it = iterator( fname, true );
-			int nstats = 0;
-			while ( it.hasNext() )
-			{
-				it.next();
-				nstats++;
-			}
-			return nstats;
+			column = new double[ rows.size() ];
+			for ( int r = 0; r < column.length; r++ )
+				column[ r ] = rows.get( r ).getDoubleFeature( id );
+			columns.put( id, column );
 		}
+		return column;
+	}
 
-		final Set< Stat > stats = content.get( fname );
-		if ( null == stats )
-			return 0;
+	/**
+	 * @return 1 for the visible rows, 0 for the others. Built on every call,
+	 *         the visibility changes with every filtering.
+	 */
+	private static double[] visibilityColumn( final int size, final ChunkedArrays.Bits visible )
+	{
+		final double[] column = new double[ size ];
+		for ( int r = 0; r < size; r++ )
+			if ( visible.get( r ) )
+				column[ r ] = 1d;
+		return column;
+	}
+
+	/**
+	 * @return the row of the stat in the table of rows, -1 if it has none.
+	 */
+	private static int rowOf( final ChunkedArrays.Ints rowOf, final Stat stat )
+	{
+		return stat.ID() < 0 ? -1 : rowOf.get( stat.ID() ) - 1;
+	}
 
-		return stats.size();
+	private static String getFeature( final ChunkedArrays.Ints rowOf, final ChunkedArrays.Bits visible,
+			final Stat stat, final String feature )
+	{
+		if ( !VISIBILITY.equals( feature ) )
+			return stat.getFeature( feature );
+
+		final int row = rowOf( rowOf, stat );
+		return row < 0 ? null : String.valueOf( visible.get( row ) ? ONE : ZERO );
+	}
+
+	private static double getDoubleFeature( final ChunkedArrays.Ints rowOf, final ChunkedArrays.Bits visible,
+			final Stat stat, final int id )
+	{
+		if ( id != VISIBILITY_ID )
+			return stat.getDoubleFeature( id );
+
+		final int row = rowOf( rowOf, stat );
+		return row < 0 ? Double.NaN : visible.get( row ) ? 1d : 0d;
+	}
+
+	/**
+	 * Adds a row for the stat, if it has none yet. Stat IDs are handed out
+	 * from 0 by {@link Stat#IDcounter}, the table from ID to row is indexed by
+	 * them.
+	 */
+	private int addRow( final Stat stat )
+	{
+		final int existing = rowOf( rowOf, stat );
+		if ( existing >= 0 )
+			return existing;
+
+		final int row = rows.size();
+		rows.add( stat );
+		rowOf.set( stat.ID(), row + 1 );
+		invalidate();
+		return row;
+	}
+
+	/**
+	 * Removes the row of the stat by moving the last row into its place.
+	 */
+	private void removeRow( final Stat stat )
+	{
+		final int row = rowOf( rowOf, stat );
+		if ( row < 0 )
+			return;
+
+		rowOf.set( stat.ID(), 0 );
+		final int last = rows.size() - 1;
+		final Stat moved = rows.removeLast();
+		if ( row != last )
+		{
+			rows.set( row, moved );
+			rowOf.set( moved.ID(), row + 1 );
+			visible.set( row, visible.get( last ) );
+		}
+		visible.set( last, false );
+		invalidate();
+	}
+
+	/**
+	 * Sets the visibility of a row. If that flips a row the last filtering
+	 * counted, its fail counts no longer match the visibility and are dropped,
+	 * the next filtering re-tests all rows.
+	 */
+	private void setRowVisible( final int row, final boolean isVisible )
+	{
+		if ( visible.get( row ) == isVisible )
+			return;
+
+		visible.set( row, isVisible );
+		if ( null != failCounts && row < failCounts.length )
+		{
+			lastFilters = null;
+			failCounts = null;
+		}
 	}
 
 	/*
@@ -411,7 +874,7 @@ public class StatCollection implements MultiThreaded
 
 	/**
 	 * Return an iterator that iterates over all the stats contained in this
-	 * collection.
+	 * collection, as they are at the time of the call.
 	 *
 	 * @param visiblestatsOnly
 	 *            if true, the returned iterator will only iterate through
@@ -420,14 +883,12 @@ public class StatCollection implements MultiThreaded
 	 */
 	public Iterator< Stat > iterator( final boolean visiblestatsOnly )
 	{
-		if ( visiblestatsOnly )
-			return new VisiblestatsIterator();
-
-		return new AllstatsIterator();
+		return snapshot().iterable( visiblestatsOnly ).iterator();
 	}
 
 	/**
-	 * Return an iterator that iterates over the stats in the specified frame.
+	 * Return an iterator that iterates over the stats in the specified frame,
+	 * as they are at the time of the call.
 	 *
 	 * @param visiblestatsOnly
 	 *            if true, the returned iterator will only iterate through
@@ -439,19 +900,12 @@ public class StatCollection implements MultiThreaded
 	 */
 	public Iterator< Stat > iterator( final String fname, final boolean visiblestatsOnly )
 	{
-		final Set< Stat > frameContent = content.get( fname );
-		if ( null == frameContent )
-			return EMPTY_ITERATOR;
-
-		if ( visiblestatsOnly )
-			return new VisiblestatsFrameIterator( frameContent );
-
-		return frameContent.iterator();
+		return snapshot().iterable( fname, visiblestatsOnly ).iterator();
 	}
 
 	/**
 	 * A convenience methods that returns an {@link Iterable} wrapper for this
-	 * collection as a whole.
+	 * collection as a whole, a view of a {@link #snapshot()}.
 	 *
 	 * @param visiblestatsOnly
 	 *            if true, the iterable will contains only visible stats.
@@ -460,13 +914,14 @@ public class StatCollection implements MultiThreaded
 	 */
 	public Iterable< Stat > iterable( final boolean visiblestatsOnly )
 	{
-		return new WholeCollectionIterable( visiblestatsOnly );
+		return snapshot().iterable( visiblestatsOnly );
 	}
 
 	/**
 	 * A convenience methods that returns an {@link Iterable} wrapper for a
-	 * specific frame of this stat collection. The iterable is backed-up by the
-	 * actual collection content, so modifying it can have unexpected results.
+	 * specific frame of this stat collection, a view of a {@link #snapshot()}.
+	 * Later changes of this collection do not show in it, and it can not be
+	 * modified.
 	 *
 	 * @param visiblestatsOnly
 	 *            if true, the iterable will contains only visible stats of the
@@ -479,10 +934,7 @@ public class StatCollection implements MultiThreaded
 	 */
 	public Iterable< Stat > iterable( final String fname, final boolean visiblestatsOnly )
 	{
-		if ( visiblestatsOnly )
-			return new FrameVisibleIterable( fname );
-
-		return content.get( fname );
+		return snapshot().iterable( fname, visiblestatsOnly );
 	}
 
 	/*
@@ -500,15 +952,21 @@ public class StatCollection implements MultiThreaded
 	 * @param stats
 	 *            the stats to store.
 	 */
-	public void put( final String fname, final Collection< Stat > stats )
+	public synchronized void put( final String fname, final Collection< Stat > stats )
 	{
+		beforeWrite();
+		final Set< Stat > previous = frame( fname );
+		if ( null != previous )
+			for ( final Stat stat : previous )
+				removeRow( stat );
+
 		final Set< Stat > value = new HashSet<>( stats );
 		for ( final Stat stat : value )
 		{
 			stat.putFeature( Stat.NAME, fname  );
-			stat.putFeature( VISIBILITY, String.valueOf( ZERO ) );
+			setRowVisible( addRow( stat ), false );
 		}
-		content.put( fname, value );
+		setFrame( fname, value );
 	}
 
 	/**
@@ -516,11 +974,11 @@ public class StatCollection implements MultiThreaded
 	 *
 	 * @return the first (lowest) frame currently in this collection.
 	 */
-	public String firstKey()
+	public synchronized String firstKey()
 	{
-		if ( content.isEmpty() )
+		if ( frameOf.isEmpty() )
 			return String.valueOf( 0 );
-		return content.firstKey();
+		return frameOf.firstKey();
 	}
 
 	/**
@@ -528,41 +986,64 @@ public class StatCollection implements MultiThreaded
 	 *
 	 * @return the last (highest) frame currently in this collection.
 	 */
-	public String lastKey()
+	public synchronized String lastKey()
 	{
-		if ( content.isEmpty() )
+		if ( frameOf.isEmpty() )
 			return  String.valueOf( 0 ) ;
-		return content.lastKey();
+		return frameOf.lastKey();
 	}
 
 	/**
-	 * Returns a NavigableSet view of the frames contained in this collection.
-	 * The set's iterator returns the keys in ascending order. The set is backed
-	 * by the map, so changes to the map are reflected in the set, and
-	 * vice-versa. The set supports element removal, which removes the
-	 * corresponding mapping from the map, via the Iterator.remove, Set.remove,
-	 * removeAll, retainAll, and clear operations. It does not support the add
-	 * or addAll operations.
-	 * <p>
-	 * The view's iterator is a "weakly consistent" iterator that will never
-	 * throw ConcurrentModificationException, and guarantees to traverse
-	 * elements as they existed upon construction of the iterator, and may (but
-	 * is not guaranteed to) reflect any modifications subsequent to
-	 * construction.
+	 * Returns a NavigableSet view of the frames contained in this collection,
+	 * in ascending order. The view is the one of a {@link #snapshot()}: later
+	 * changes of this collection do not show in it, and it can not be
+	 * modified.
 	 *
 	 * @return a navigable set view of the frames in this collection.
 	 */
 	public NavigableSet< String > keySet()
 	{
-		return content.keySet();
+		return snapshot().keySet();
 	}
 
 	/**
 	 * Removes all the content from this collection.
 	 */
-	public void clear()
+	public synchronized void clear()
+	{
+		// no point in copying what is thrown away
+		frameOf.clear();
+		frameNames = new ChunkedArrays.Objects<>();
+		frameStats = new ChunkedArrays.Objects<>();
+		ownedFrames = new BitSet();
+		rows = new ChunkedArrays.Objects<>();
+		rowOf = new ChunkedArrays.Ints();
+		visible = new ChunkedArrays.Bits();
+		snapshot = null;
+		version++;
+		invalidate();
+	}
+
+	/**
+	 * Remove all the non-visible stats of this collection.
+	 */
+	public synchronized void crop()
 	{
-		content.clear();
+		beforeWrite();
+		for ( final String fname : frameOf.keySet() )
+		{
+			final List< Stat > toRemove = new ArrayList<>();
+			for ( final Stat stat : frame( fname ) )
+				if ( !isVisible( stat ) )
+					toRemove.add( stat );
+
+			if ( toRemove.isEmpty() )
+				continue;
+
+			writableFrame( fname ).removeAll( toRemove );
+			for ( final Stat stat : toRemove )
+				removeRow( stat );
+		}
 	}
 
 	/*
@@ -591,296 +1072,244 @@ public class StatCollection implements MultiThreaded
 	 * PRIVATE CLASSES
 	 */
 
-	private class AllstatsIterator implements Iterator< Stat >
+	private static final Iterator< Stat > EMPTY_ITERATOR = new Iterator< Stat >()
 	{
 
-		private boolean hasNext = true;
-
-		private final Iterator< String > frameIterator;
-
-		private Iterator< Stat > contentIterator;
-
-		private Stat next = null;
-
-		public AllstatsIterator()
-		{
-			this.frameIterator = content.keySet().iterator();
-			if ( !frameIterator.hasNext() )
-			{
-				hasNext = false;
-				return;
-			}
-			final Set< Stat > currentFrameContent = content.get( frameIterator.next() );
-			contentIterator = currentFrameContent.iterator();
-			iterate();
-		}
-
-		private void iterate()
-		{
-			while ( true )
-			{
-
-				// Is there still stats in current content?
-				if ( !contentIterator.hasNext() )
-				{
-					// No. Then move to next frame.
-					// Is there still frames to iterate over?
-					if ( !frameIterator.hasNext() )
-					{
-						// No. Then we are done
-						hasNext = false;
-						next = null;
-						return;
-					}
-
-					contentIterator = content.get( frameIterator.next() ).iterator();
-					continue;
-				}
-				next = contentIterator.next();
-				return;
-			}
-		}
-
 		@Override
 		public boolean hasNext()
 		{
-			return hasNext;
+			return false;
 		}
 
 		@Override
 		public Stat next()
 		{
-			final Stat toReturn = next;
-			iterate();
-			return toReturn;
+			return null;
 		}
 
 		@Override
 		public void remove()
-		{
-			throw new UnsupportedOperationException( "Remove operation is not supported for statCollection iterators." );
-		}
-	}
+		{}
+	};
 
-	private class VisiblestatsIterator implements Iterator< Stat >
+	/**
+	 * An immutable view of a {@link StatCollection}, see
+	 * {@link StatCollection#snapshot()}. All methods can be called from any
+	 * thread.
+	 */
+	public static final class Snapshot implements Iterable< Stat >
 	{
 
-		private boolean hasNext = true;
+		private final long version;
 
-		private final Iterator< String > frameIterator;
+		private final ChunkedArrays.Objects< String > frameNames;
 
-		private Iterator< Stat > contentIterator;
+		private final ChunkedArrays.Objects< Set< Stat > > frameStats;
 
-		private Stat next = null;
+		private final ChunkedArrays.Objects< Stat > rows;
 
-		private Set< Stat > currentFrameContent;
+		private final ChunkedArrays.Ints rowOf;
 
-		public VisiblestatsIterator()
-		{
-			this.frameIterator = content.keySet().iterator();
-			if ( !frameIterator.hasNext() )
-			{
-				hasNext = false;
-				return;
-			}
-			currentFrameContent = content.get( frameIterator.next() );
-			contentIterator = currentFrameContent.iterator();
-			iterate();
-		}
+		private final ChunkedArrays.Bits visible;
 
-		private void iterate()
-		{
+		private final ConcurrentHashMap< Integer, double[] > columns;
 
-			while ( true )
-			{
-				// Is there still stats in current content?
-				if ( !contentIterator.hasNext() )
-				{
-					// No. Then move to next frame.
-					// Is there still frames to iterate over?
-					if ( !frameIterator.hasNext() )
-					{
-						// No. Then we are done
-						hasNext = false;
-						next = null;
-						return;
-					}
+		/** The frames by name, built on first use. */
+		private volatile NavigableMap< String, Set< Stat > > content;
 
-					// Yes. Then start iterating over the next frame.
-					currentFrameContent = content.get( frameIterator.next() );
-					contentIterator = currentFrameContent.iterator();
-					continue;
-				}
-				next = contentIterator.next();
-				// Is it visible?
-				if ( next.getFeature( VISIBILITY ).compareTo( String.valueOf( ZERO )  ) > 0 )
-				{
-					// Yes! Be happy and return
-					return;
-				}
-			}
+		private Snapshot( final long version, final ChunkedArrays.Objects< String > frameNames,
+				final ChunkedArrays.Objects< Set< Stat > > frameStats, final ChunkedArrays.Objects< Stat > rows,
+				final ChunkedArrays.Ints rowOf, final ChunkedArrays.Bits visible, final Map< Integer, double[] > columns )
+		{
+			this.version = version;
+			this.frameNames = frameNames;
+			this.frameStats = frameStats;
+			this.rows = rows;
+			this.rowOf = rowOf;
+			this.visible = visible;
+			this.columns = new ConcurrentHashMap<>( columns );
 		}
 
-		@Override
-		public boolean hasNext()
+		/**
+		 * @return a number that changes whenever the collection changed
+		 *         between two snapshots.
+		 */
+		public long version()
 		{
-			return hasNext;
+			return version;
 		}
 
-		@Override
-		public Stat next()
+		public int getNstats( final boolean visiblestatsOnly )
 		{
-			final Stat toReturn = next;
-			iterate();
-			return toReturn;
+			return visiblestatsOnly ? visible.cardinality() : rows.size();
 		}
 
-		@Override
-		public void remove()
+		public Stat search( final int ID )
 		{
-			throw new UnsupportedOperationException( "Remove operation is not supported for statCollection iterators." );
+			final int row = ID < 0 ? -1 : rowOf.get( ID ) - 1;
+			return row < 0 ? null : rows.get( row );
 		}
-	}
 
-	private class VisiblestatsFrameIterator implements Iterator< Stat >
-	{
-
-		private boolean hasNext = true;
-
-		private Stat next = null;
-
-		private final Iterator< Stat > contentIterator;
-
-		public VisiblestatsFrameIterator( final Set< Stat > frameContent )
+		public boolean isVisible( final Stat stat )
 		{
-			this.contentIterator = ( null == frameContent ) ? EMPTY_ITERATOR : frameContent.iterator();
-			iterate();
+			final int row = rowOf( rowOf, stat );
+			return row >= 0 && visible.get( row );
 		}
 
-		private void iterate()
+		/**
+		 * @return the stat at the given row.
+		 */
+		public Stat get( final int row )
 		{
-			while ( true )
-			{
-				if ( !contentIterator.hasNext() )
-				{
-					// No. Then we are done
-					hasNext = false;
-					next = null;
-					return;
-				}
-				next = contentIterator.next();
-				// Is it visible?
-				if ( next.getFeature( VISIBILITY ).compareTo( String.valueOf( ZERO )  ) > 0 )
-				{
-					// Yes. Be happy, and return.
-					return;
-				}
-			}
+			return rows.get( row );
 		}
 
-		@Override
-		public boolean hasNext()
+		public boolean isVisible( final int row )
 		{
-			return hasNext;
+			return visible.get( row );
 		}
 
-		@Override
-		public Stat next()
+		/**
+		 * Same as {@link StatCollection#getFeature(Stat, String)}, with the
+		 * visibility of the snapshot.
+		 */
+		public String getFeature( final Stat stat, final String feature )
 		{
-			final Stat toReturn = next;
-			iterate();
-			return toReturn;
+			return StatCollection.getFeature( rowOf, visible, stat, feature );
 		}
 
-		@Override
-		public void remove()
+		/**
+		 * Same as {@link StatCollection#getDoubleFeature(Stat, int)}, with
+		 * the visibility of the snapshot.
+		 */
+		public double getDoubleFeature( final Stat stat, final int id )
 		{
-			throw new UnsupportedOperationException( "Remove operation is not supported for statCollection iterators." );
+			return StatCollection.getDoubleFeature( rowOf, visible, stat, id );
 		}
-	}
 
-	/**
-	 * Remove all the non-visible stats of this collection.
-	 */
-	public void crop()
-	{
-		final Collection< String > fnames = content.keySet();
-		for ( final String fname : fnames )
+		public double getDoubleFeature( final Stat stat, final String feature )
 		{
-			final Set< Stat > fc = content.get( fname );
-			final List< Stat > toRemove = new ArrayList<>();
-			for ( final Stat stat : fc )
-				if ( !isVisible( stat ) )
-					toRemove.add( stat );
-
-			fc.removeAll( toRemove );
+			return getDoubleFeature( stat, Stat.featureID( feature ) );
 		}
-	}
-
-	/**
-	 * A convenience wrapper that implements {@link Iterable} for this stat
-	 * collection.
-	 */
-	private final class WholeCollectionIterable implements Iterable< Stat >
-	{
 
-		private final boolean visiblestatsOnly;
-
-		public WholeCollectionIterable( final boolean visiblestatsOnly )
+		/**
+		 * @return the values of the feature over the rows, NaN where a stat
+		 *         does not have it.
+		 */
+		public double[] column( final int id )
 		{
-			this.visiblestatsOnly = visiblestatsOnly;
+			if ( id == VISIBILITY_ID )
+				return visibilityColumn( rows.size(), visible );
+
+			return columns.computeIfAbsent( id, k -> {
+				final double[] column = new double[ rows.size() ];
+				for ( int r = 0; r < column.length; r++ )
+					column[ r ] = rows.get( r ).getDoubleFeature( k );
+				return column;
+			} );
 		}
 
-		@Override
-		public Iterator< Stat > iterator()
+		/**
+		 * @return the frames by name. Sorted on first use, by the reader.
+		 */
+		private NavigableMap< String, Set< Stat > > content()
 		{
-			if ( visiblestatsOnly )
-				return new VisiblestatsIterator();
-
-			return new AllstatsIterator();
+			NavigableMap< String, Set< Stat > > map = content;
+			if ( null == map )
+			{
+				final TreeMap< String, Set< Stat > > sorted = new TreeMap<>();
+				for ( int f = 0; f < frameNames.size(); f++ )
+					sorted.put( frameNames.get( f ), Collections.unmodifiableSet( frameStats.get( f ) ) );
+				map = Collections.unmodifiableNavigableMap( sorted );
+				content = map;
+			}
+			return map;
 		}
-	}
-
-	/**
-	 * A convenience wrapper that implements {@link Iterable} for this stat
-	 * collection.
-	 */
-	private final class FrameVisibleIterable implements Iterable< Stat >
-	{
-
-		private final String fname;
 
-		public FrameVisibleIterable( final String fname )
+		public NavigableSet< String > keySet()
 		{
-			this.fname = fname;
+			return content().navigableKeySet();
 		}
 
+		/**
+		 * @return all the stats, frame by frame.
+		 */
 		@Override
 		public Iterator< Stat > iterator()
 		{
-			return new VisiblestatsFrameIterator( content.get( fname ) );
+			return iterable( false ).iterator();
 		}
-	}
 
-	private static final Iterator< Stat > EMPTY_ITERATOR = new Iterator< Stat >()
-	{
-
-		@Override
-		public boolean hasNext()
+		public Iterable< Stat > iterable( final boolean visiblestatsOnly )
 		{
-			return false;
+			return () -> new SnapshotIterator( content().values().iterator(), visiblestatsOnly );
 		}
 
-		@Override
-		public Stat next()
+		public Iterable< Stat > iterable( final String fname, final boolean visiblestatsOnly )
 		{
-			return null;
+			final Set< Stat > frameContent = content().get( fname );
+			if ( null == frameContent )
+				return Collections.emptyList();
+
+			return () -> new SnapshotIterator( Collections.singleton( frameContent ).iterator(), visiblestatsOnly );
 		}
 
-		@Override
-		public void remove()
-		{}
-	};
+		private final class SnapshotIterator implements Iterator< Stat >
+		{
+
+			private final Iterator< Set< Stat > > frameIterator;
+
+			private final boolean visiblestatsOnly;
+
+			private Iterator< Stat > contentIterator = EMPTY_ITERATOR;
+
+			private Stat next = null;
+
+			public SnapshotIterator( final Iterator< Set< Stat > > frameIterator, final boolean visiblestatsOnly )
+			{
+				this.frameIterator = frameIterator;
+				this.visiblestatsOnly = visiblestatsOnly;
+				iterate();
+			}
+
+			private void iterate()
+			{
+				next = null;
+				while ( true )
+				{
+					if ( !contentIterator.hasNext() )
+					{
+						if ( !frameIterator.hasNext() )
+							return;
+						contentIterator = frameIterator.next().iterator();
+						continue;
+					}
+					final Stat candidate = contentIterator.next();
+					if ( !visiblestatsOnly || isVisible( candidate ) )
+					{
+						next = candidate;
+						return;
+					}
+				}
+			}
+
+			@Override
+			public boolean hasNext()
+			{
+				return null != next;
+			}
+
+			@Override
+			public Stat next()
+			{
+				if ( null == next )
+					throw new NoSuchElementException();
+				final Stat toReturn = next;
+				iterate();
+				return toReturn;
+			}
+		}
+	}
 
 	/*
 	 * STATIC METHODS
@@ -889,8 +1318,9 @@ public class StatCollection implements MultiThreaded
 	/**
 	 * Creates a new {@link StatCollection} containing only the specified stats.
 	 * Their frame origin is retrieved from their {@link Stat#FRAME} feature, so
-	 * it must be set properly for all stats. All the stats of the new
-	 * collection have the same visibility that the one they carry.
+	 * it must be set properly for all stats. The stats that carry a
+	 * {@link #VISIBILITY} feature have the visibility it says, the others are
+	 * visible.
 	 *
 	 * @param stats
 	 *            the stat collection to build from.
@@ -901,14 +1331,8 @@ public class StatCollection implements MultiThreaded
 		final StatCollection sc = new StatCollection();
 		for ( final Stat stat : stats )
 		{
-			final String fname = stat.getFeature( Stat.NAME );
-			Set< Stat > fc = sc.content.get( fname );
-			if ( null == fc )
-			{
-				fc = new HashSet<>();
-				sc.content.put( fname, fc );
-			}
-			fc.add( stat );
+			sc.writableFrame( stat.getFeature( Stat.NAME ) ).add( stat );
+			sc.addCarried( stat );
 		}
 		return sc;
 	}
@@ -926,12 +1350,24 @@ public class StatCollection implements MultiThreaded
 	public static StatCollection fromMap( final Map< String, Set< Stat > > source )
 	{
 		final StatCollection sc = new StatCollection();
-		sc.content = new ConcurrentSkipListMap<>( source );
+		for ( final Map.Entry< String, Set< Stat > > entry : source.entrySet() )
+		{
+			sc.setFrame( entry.getKey(), new HashSet<>( entry.getValue() ) );
+			for ( final Stat stat : entry.getValue() )
+				sc.addCarried( stat );
+		}
 		return sc;
 	}
 
-	private static final boolean isVisible( final Stat stat )
+	/**
+	 * Adds the row of a stat, visible unless it carries a {@link #VISIBILITY}
+	 * feature that says otherwise.
+	 */
+	private void addCarried( final Stat stat )
 	{
-		return stat.getFeature( VISIBILITY ).compareTo( String.valueOf( ZERO )  ) > 0;
+		if ( !stat.hasFeature( VISIBILITY_ID ) || stat.getDoubleFeature( VISIBILITY_ID ) > 0 )
+			visible.set( addRow( stat ), true );
+		else
+			addRow( stat );
 	}
 }
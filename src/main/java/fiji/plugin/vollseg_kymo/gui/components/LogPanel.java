@@ -30,13 +30,14 @@ import javax.swing.JPanel;
 import javax.swing.JProgressBar;
 import javax.swing.JScrollPane;
 import javax.swing.JTextPane;
-import javax.swing.SwingUtilities;
-import javax.swing.text.AttributeSet;
+import javax.swing.text.BadLocationException;
 import javax.swing.text.SimpleAttributeSet;
 import javax.swing.text.StyleConstants;
 import javax.swing.text.StyleContext;
+import javax.swing.text.StyledDocument;
 
 import fiji.plugin.vollseg_kymo.Logger;
+import fiji.plugin.vollseg_kymo.RingBufferLogger;
 
 /**
  * A panel using s {@link JTextPane} to log events.
@@ -54,7 +55,10 @@ public class LogPanel extends JPanel
 
 	private final JProgressBar progressBar;
 
-	private final Logger logger;
+	/** Characters kept in the text pane, older ones are dropped. */
+	public static final int MAX_LENGTH = 1 << 20;
+
+	private final RingBufferLogger logger;
 
 	public LogPanel()
 	{
@@ -85,13 +89,33 @@ public class LogPanel extends JPanel
 		scrollPane.setViewportView( textPane );
 		textPane.setBackground( this.getBackground() );
 
-		logger = new LogPanelLogger();
+		// the fitting threads never wait for the text pane, it is updated in
+		// batches on the event dispatch thread
+		logger = new RingBufferLogger( new LogPanelSink(), RingBufferLogger.DEFAULT_CAPACITY, true );
 	}
 
 	/*
 	 * PUBLIC METHODS
 	 */
 
+	@Override
+	public void addNotify()
+	{
+		super.addNotify();
+		logger.start();
+	}
+
+	/**
+	 * Stops the timer draining the logger, it would keep the panel alive
+	 * otherwise.
+	 */
+	@Override
+	public void removeNotify()
+	{
+		logger.stop();
+		super.removeNotify();
+	}
+
 	/**
 	 * Exposes the text pane in which the log is shown.
 	 * 
@@ -130,44 +154,57 @@ public class LogPanel extends JPanel
 		textPane.setText( log );
 	}
 
-	private class LogPanelLogger extends Logger
+	/**
+	 * Appends a batch of messages at the end of the text pane, dropping the
+	 * beginning of the log once it gets longer than {@link #MAX_LENGTH}. Must
+	 * be called on the event dispatch thread.
+	 */
+	private void append( final String[] messages, final Color[] colors, final int n )
 	{
-
-		@Override
-		public void error( final String message )
+		final StyledDocument doc = textPane.getStyledDocument();
+		final StyleContext sc = StyleContext.getDefaultStyleContext();
+		try
+		{
+			// consecutive messages of the same color go in with one insert
+			final StringBuilder run = new StringBuilder();
+			Color color = null;
+			for ( int i = 0; i < n; i++ )
+			{
+				if ( colors[ i ] != color && run.length() > 0 )
+				{
+					doc.insertString( doc.getLength(), run.toString(), sc.addAttribute( SimpleAttributeSet.EMPTY, StyleConstants.Foreground, color ) );
+					run.setLength( 0 );
+				}
+				color = colors[ i ];
+				run.append( messages[ i ] );
+			}
+			if ( run.length() > 0 )
+				doc.insertString( doc.getLength(), run.toString(), sc.addAttribute( SimpleAttributeSet.EMPTY, StyleConstants.Foreground, color ) );
+
+			final int excess = doc.getLength() - MAX_LENGTH;
+			if ( excess > 0 )
+				doc.remove( 0, excess );
+		}
+		catch ( final BadLocationException e )
 		{
-			log( message, Logger.ERROR_COLOR );
+			e.printStackTrace();
 		}
+		textPane.setCaretPosition( doc.getLength() );
+	}
+
+	private class LogPanelSink implements RingBufferLogger.Sink
+	{
 
 		@Override
-		public void log( final String message, final Color color )
+		public void append( final String[] messages, final Color[] colors, final int n )
 		{
-			SwingUtilities.invokeLater( new Runnable()
-			{
-				@Override
-				public void run()
-				{
-					final StyleContext sc = StyleContext.getDefaultStyleContext();
-					final AttributeSet aset = sc.addAttribute( SimpleAttributeSet.EMPTY, StyleConstants.Foreground, color );
-					final int len = textPane.getDocument().getLength();
-					textPane.setCaretPosition( len );
-					textPane.setCharacterAttributes( aset, false );
-					textPane.replaceSelection( message );
-				}
-			} );
+			LogPanel.this.append( messages, colors, n );
 		}
 
 		@Override
 		public void setStatus( final String status )
 		{
-			SwingUtilities.invokeLater( new Runnable()
-			{
-				@Override
-				public void run()
-				{
-					progressBar.setString( status );
-				}
-			} );
+			progressBar.setString( status );
 		}
 
 		@Override
@@ -177,21 +214,7 @@ public class LogPanel extends JPanel
 				val = 0;
 			if ( val > 1 )
 				val = 1;
-			final int intVal = ( int ) ( val * 100 );
-			SwingUtilities.invokeLater( new Runnable()
-			{
-				@Override
-				public void run()
-				{
-					progressBar.setValue( intVal );
-				}
-			} );
-		}
-
-		@Override
-		public String toString()
-		{
-			return getTextContent();
+			progressBar.setValue( ( int ) ( val * 100 ) );
 		}
 	}
 }
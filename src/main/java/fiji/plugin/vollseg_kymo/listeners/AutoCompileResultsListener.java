@@ -23,11 +23,6 @@ package fiji.plugin.vollseg_kymo.listeners;
 
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 import fiji.plugin.vollseg_kymo.Load_ransac_fits;
 
@@ -42,34 +37,10 @@ public class AutoCompileResultsListener implements ActionListener {
 
 	@Override
 	public void actionPerformed(final ActionEvent arg0) {
-	
-		
-		
-		int nThreads = 1;
-		// set up executor service
-		final ExecutorService taskexecutor = Executors.newFixedThreadPool(nThreads);
-		 List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
-		for (int trackindex = 0; trackindex < parent.inputfiles.length; ++trackindex){
-			
-			tasks.add(Executors.callable(new Split(parent, trackindex)));
-			
-		}
-		try {
-			taskexecutor.invokeAll(tasks);
-		} catch (InterruptedException e1) {
-			// TODO Auto-generated catch block
-			e1.printStackTrace();
-		}
-		
-	
-				
-			
-		
-           parent.table.validate();
-           parent.scrollPane.validate();
-           
-	}
 
-	
+		// fitting and auto-tuning every track takes a while, it runs on the
+		// batch thread of the plugin and the results come back to this thread
+		parent.requestBatch();
+	}
 
 }
@@ -0,0 +1,50 @@
+/*-
+ * #%L
+ * Microtubule tracker.
+ * %%
+ * Copyright (C) 2017 MTrack developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.vollseg_kymo.listeners;
+
+import java.awt.Checkbox;
+import java.awt.event.ItemEvent;
+import java.awt.event.ItemListener;
+
+import fiji.plugin.vollseg_kymo.Load_ransac_fits;
+
+public class AutoTuneCheckBoxListener implements ItemListener
+{
+	final Load_ransac_fits parent;
+	final Checkbox checkbox;
+
+	public AutoTuneCheckBoxListener( final Load_ransac_fits parent, final Checkbox checkbox )
+	{
+		this.parent = parent;
+		this.checkbox = checkbox;
+	}
+
+	@Override
+	public void itemStateChanged( final ItemEvent e )
+	{
+		parent.autoTune = checkbox.getState();
+
+		// parameters tuned before belong to a different run
+		if ( !parent.autoTune )
+			parent.Compileparameters.clear();
+	}
+}
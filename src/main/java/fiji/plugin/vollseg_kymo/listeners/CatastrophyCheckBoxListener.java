@@ -60,13 +60,7 @@ public class CatastrophyCheckBoxListener implements ItemListener
 
 		if ( checkbox.getState() != state )
 		{
-			while ( parent.updateCount > 0 )
-			{
-				try { Thread.sleep( 10 ); } catch ( InterruptedException ex ) {}
-			}
-
-			
-			parent.updateRANSAC();
+			parent.requestUpdate();
 		}
 	}
 
@@ -29,6 +29,10 @@ import java.util.ArrayList;
 import java.util.Map;
 
 import fiji.plugin.vollseg_kymo.Load_ransac_fits;
+import fiji.plugin.vollseg_kymo.util.StageMetrics;
+import fiji.plugin.vollseg_kymo.util.StageMetrics.Stage;
+import fiji.plugin.vollseg_kymo.util.TrackEvents;
+import fiji.plugin.vollseg_kymo_functions.AutoTuner;
 import fiji.plugin.vollseg_kymo_functions.Averagerate;
 import fiji.plugin.vollseg_kymo_functions.Rateobject;
 
@@ -42,7 +46,8 @@ public class CompileRes {
 	}
 	public void compileresults() {
 
-
+		final long start = StageMetrics.start();
+		final TrackEvents.Span event = TrackEvents.ENABLED ? TrackEvents.beginWrite() : null;
 
 		try {
 			File ratesfile = new File(parent.inputdirectory + "//"  + "AllRates" + ".txt");
@@ -129,6 +134,31 @@ public class CompileRes {
 
 			bwfrequ.close();
 			fwfrequ.close();
+
+			// the parameters each track was fitted with when they were tuned
+			// per track
+			if (parent.Compileparameters.size() > 0) {
+				File paramfile = new File(parent.inputdirectory + "//" + "AllParameters" + ".txt");
+
+				FileWriter fwparam = new FileWriter(paramfile);
+
+				BufferedWriter bwparam = new BufferedWriter(fwparam);
+
+				bwparam.write("\tMaxError\tMinInliers\tMaxGap\tBIC\tCandidates\tFileName\n");
+
+				for (Map.Entry<Integer, AutoTuner.Result> allparameters : parent.Compileparameters.entrySet()) {
+
+					AutoTuner.Result tuned = allparameters.getValue();
+					String File = parent.inputfiles[allparameters.getKey()].getName();
+
+					bwparam.write("\t" + parent.nf.format(tuned.maxError) + "\t" + parent.nf.format(tuned.minInliers)
+							+ "\t" + parent.nf.format(tuned.maxDist) + "\t" + parent.nf.format(tuned.score) + "\t"
+							+ tuned.evaluated + "\t" + File + "\n");
+				}
+
+				bwparam.close();
+				fwparam.close();
+			}
 		}
 
 		catch (IOException e) {
@@ -136,6 +166,12 @@ public class CompileRes {
 			e.printStackTrace();
 		}
 
+		finally {
+			parent.pipeline.metrics.stop(Stage.WRITE, start);
+			if (event != null)
+				TrackEvents.endWrite(event, parent.inputfile, parent.Compileaverage.size());
+		}
+
 	}
 	
 }
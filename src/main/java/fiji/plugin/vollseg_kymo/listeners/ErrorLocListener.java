@@ -60,7 +60,7 @@ public class ErrorLocListener implements TextListener {
 						
 			  
 				
-					parent.updateRANSAC();
+					parent.requestUpdate();
 					parent.maxErrorSB.repaint();
 					parent.maxErrorSB.validate();
 					
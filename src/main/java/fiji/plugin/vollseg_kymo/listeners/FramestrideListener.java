@@ -0,0 +1,35 @@
+package fiji.plugin.vollseg_kymo.listeners;
+
+import java.awt.TextComponent;
+import java.awt.event.TextEvent;
+import java.awt.event.TextListener;
+
+import fiji.plugin.vollseg_kymo.Load_ransac_fits;
+
+public class FramestrideListener implements TextListener {
+
+	final Load_ransac_fits parent;
+
+	public FramestrideListener(final Load_ransac_fits parent) {
+
+		this.parent = parent;
+
+	}
+
+	@Override
+	public void textValueChanged(TextEvent e) {
+
+		final TextComponent tc = (TextComponent) e.getSource();
+		String s = tc.getText();
+
+		if (s.length() > 0) {
+			try {
+				parent.framestride = Math.max(1, (int) Float.parseFloat(s));
+			} catch (final NumberFormatException ex) {
+				// a partial entry such as "-" or "1e", keep the last valid stride
+			}
+		}
+
+	}
+
+}
@@ -66,6 +66,6 @@ public class FunctionItemListener implements ActionListener
 		if (selectedindex == 2)
 			parent.functionChoice = 2;
 		parent.setFunction();
-		parent.updateRANSAC();
+		parent.requestUpdate();
 	}
 }
@@ -60,7 +60,7 @@ public class MaxDistLocListener implements TextListener {
 						
 			  
 				
-					parent.updateRANSAC();
+					parent.requestUpdate();
 					parent.maxDistSB.repaint();
 					parent.maxDistSB.validate();
 					
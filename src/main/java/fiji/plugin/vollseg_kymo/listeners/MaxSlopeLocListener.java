@@ -73,7 +73,7 @@ public class MaxSlopeLocListener implements TextListener {
 						
 			  
 				
-					parent.updateRANSAC();
+					parent.requestUpdate();
 					parent.maxSlopeSB.repaint();
 					parent.maxSlopeSB.validate();
 					
@@ -41,7 +41,6 @@ import javax.swing.table.DefaultTableCellRenderer;
 import javax.swing.table.TableCellRenderer;
 
 import fiji.plugin.vollseg_kymo.Load_ransac_fits;
-import fiji.plugin.vollseg_kymo_functions.Tracking;
 
 public class MeasureserialListener implements ActionListener {
 
@@ -152,6 +151,7 @@ public class MeasureserialListener implements ActionListener {
            
 			parent.Compilepositiverates.clear();
 			parent.Compilenegativerates.clear();
+			parent.Compileparameters.clear();
 		
 			parent.PanelDirectory.add(parent.scrollPane,  new GridBagConstraints(0, 1, 1, 1, 0.0, 0.0, GridBagConstraints.WEST,
 					GridBagConstraints.HORIZONTAL, parent.insets, 0, 0));
@@ -164,15 +164,14 @@ public class MeasureserialListener implements ActionListener {
 			parent.table.addMouseListener(new MouseAdapter() {
 				  public void mouseClicked(MouseEvent e) {
 				    if (e.getClickCount() == 1) {
-				    	if (!parent.jFreeChartFrame.isVisible())
-				    		parent.jFreeChartFrame = Tracking.display(parent.chart, new Dimension(500, 500));
+				    	parent.showChart();
 				      JTable target = (JTable)e.getSource();
 				      parent.row = target.getSelectedRow();
 				      // do some action if appropriate column
 				      if (parent.row > 0)
-				      parent.displayclicked(parent.row);
+				      parent.requestDisplay(parent.row);
 				      else
-				    	  parent.displayclicked(0);	  
+				    	  parent.requestDisplay(0);	  
 				    }
 				  }
 				});
@@ -63,7 +63,7 @@ public class MinInlierLocListener implements TextListener {
 						
 			  
 				
-					parent.updateRANSAC();
+					parent.requestUpdate();
 					parent.minInliersSB.repaint();
 					parent.minInliersSB.validate();
 					
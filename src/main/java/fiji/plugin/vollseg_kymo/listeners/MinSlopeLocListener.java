@@ -65,7 +65,7 @@ public class MinSlopeLocListener implements TextListener {
 				if (arg0.getKeyChar() == KeyEvent.VK_ENTER && !pressed) {
 					pressed = true;
 
-					parent.updateRANSAC();
+					parent.requestUpdate();
 					parent.minSlopeSB.repaint();
 					parent.minSlopeSB.validate();
 
@@ -0,0 +1,43 @@
+/*-
+ * #%L
+ * Microtubule tracker.
+ * %%
+ * Copyright (C) 2017 MTrack developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.vollseg_kymo.listeners;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+
+import fiji.plugin.vollseg_kymo.Load_ransac_fits;
+
+public class OverviewListener implements ActionListener {
+
+	final Load_ransac_fits parent;
+
+	public OverviewListener(final Load_ransac_fits parent) {
+		this.parent = parent;
+	}
+
+	@Override
+	public void actionPerformed(final ActionEvent arg0) {
+
+		parent.showOverview();
+
+	}
+}
@@ -44,12 +44,7 @@ public class StandardMouseListener implements MouseListener
 	@Override
 	public void mouseReleased( MouseEvent arg0 )
 	{
-		while ( parent.updateCount > 0 )
-		{
-			try { Thread.sleep( 10 ); } catch ( InterruptedException e ) {}
-		}
-
-		parent.updateRANSAC();
+		parent.requestUpdate();
 	}
 
 	@Override
@@ -24,13 +24,16 @@ package fiji.plugin.vollseg_kymo.listeners;
 import java.awt.Dimension;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.List;
 
 import org.jfree.chart.ChartFactory;
 import org.jfree.chart.JFreeChart;
-import org.jfree.data.xy.XYSeries;
-import org.jfree.data.xy.XYSeriesCollection;
+import org.jfree.chart.title.TextTitle;
+import org.jfree.chart.ui.RectangleEdge;
 
 import fiji.plugin.vollseg_kymo.Load_ransac_fits;
 import fiji.plugin.vollseg_kymo_fit_function.AbstractFunction2D;
@@ -38,10 +41,11 @@ import fiji.plugin.vollseg_kymo_fit_function.PointFunctionMatch;
 import fiji.plugin.vollseg_kymo_fit_function.polynomial.Polynomial;
 import fiji.plugin.vollseg_kymo_functions.DisplayPoints;
 import fiji.plugin.vollseg_kymo_functions.LengthDistribution;
+import fiji.plugin.vollseg_kymo_functions.LifetimeStatistics;
+import fiji.plugin.vollseg_kymo_functions.PrimitiveXYDataset;
 import fiji.plugin.vollseg_kymo_functions.Tracking;
 import mpicbg.models.Point;
 import net.imglib2.util.Pair;
-import net.imglib2.util.ValuePair;
 
 public class WriteStatsListener implements ActionListener {
 
@@ -122,41 +126,74 @@ public class WriteStatsListener implements ActionListener {
 		
 		
 		
+	}
+
+	/**
+	 * Computes and writes the length distribution of all frames on a thread of
+	 * its own, reading every file takes too long for the event dispatch
+	 * thread.
+	 */
+	public void lengthDistroAllFrames(final int framestride) {
+
+		final ArrayList<File> movies = new ArrayList<File>(parent.AllMoviesB);
+		final boolean showChart = parent.showLengthChart;
+		new Thread(() -> LengthDistribution.GetLengthDistributionMatrix(movies, framestride, showChart),
+				"Length distribution").start();
+
 	}
         public  void writeStatstofile(){
-			ArrayList<Pair<Integer, ArrayList<Pair<Integer, Double>>>> Alllife = new ArrayList<Pair<Integer, ArrayList<Pair<Integer, Double>>>>();
-
-        	for (int i = 0; i < parent.lifecount.size(); ++i) {
-        		Pair<Integer, ArrayList<Pair<Integer,Double>>> life = new ValuePair<Integer, ArrayList<Pair<Integer,Double>>>(i, parent.lifecount);
-				Alllife.add(life);
-        		
-        		
-        	}
-        	
-        	List<Pair<Integer,Double>> Xvalues = new ArrayList<Pair<Integer,Double>>();
-
-			for (final Pair<Integer, ArrayList<Pair<Integer,Double>>> key : Alllife){
-			
-				Xvalues.addAll(key.getB());
+
+			// every growth event once, in seconds, with its running count in the track
+			double[] lifetimes = new double[parent.lifecount.size()];
+			double[] counts = new double[lifetimes.length];
+			int events = 0;
+			LifetimeStatistics statistics = new LifetimeStatistics(parent.lifetimebin * parent.calibrations[2]);
+
+			try {
+				File lifefile = new File(parent.inputdirectory + "//" + "Lifetime-Distribution" + ".txt");
+
+				FileWriter fw = new FileWriter(lifefile);
+
+				BufferedWriter bw = new BufferedWriter(fw);
+
+				bw.write("\tLifetime(sec)\tCount\n");
+
+				for (final Pair<Integer, Double> key : parent.lifecount) {
+
+					double lifetime = key.getB() * parent.calibrations[2];
+
+					lifetimes[events] = lifetime;
+					counts[events++] = key.getA();
+					statistics.add(lifetime);
+
+					bw.write("\t" + parent.nf.format(lifetime) + "\t" + "\t" + key.getA() + "\t" + "\n");
+				}
+
+				bw.close();
+				fw.close();
+
+				writeLifetimeStatistics(statistics);
 			}
-			
-			
-			
-			XYSeries timeseries = Tracking.drawPoints(Xvalues, new double[]{1,1,1}, "Time Distribution");
-			XYSeries counterseries = new XYSeries("Time Distribution");
-			
-			
-			for (final Pair<Integer, Double> key : Xvalues){
-				
-				counterseries.add(key.getB() * parent.calibrations[2], key.getA());
+
+			catch (IOException e) {
+				// TODO Auto-generated catch block
+				e.printStackTrace();
 			}
 			
 			
-			XYSeriesCollection dataset = new XYSeriesCollection(counterseries);
+			// pooled over all tracks, decimated to the pixels of the chart
+			PrimitiveXYDataset dataset = new PrimitiveXYDataset();
+			dataset.addSeries(new PrimitiveXYDataset.Series("Time Distribution", lifetimes, counts, events));
 			
 			 final JFreeChart chart =
 					  ChartFactory.createScatterPlot("LifeTime Distribution",
 					  "Time (sec)", "Count of growth events", dataset);
+
+			 TextTitle legendText = new TextTitle("Mean" + " : " + parent.nf.format(statistics.mean()) + "  "
+					 + "Median" + " : " + parent.nf.format(statistics.median()) + "  " + "Events" + " : "
+					 + statistics.count());
+			 legendText.setPosition(RectangleEdge.RIGHT);
+			 chart.addSubtitle(legendText);
 					  
 					  DisplayPoints.display(chart, new Dimension(800, 500));
 	
@@ -166,5 +203,46 @@ public class WriteStatsListener implements ActionListener {
 		
 	}
 
+	/**
+	 * Writes the summary of the lifetimes and, if parent.lifetimeHistogram is
+	 * set, their histogram with parent.lifetimebin frames per bin.
+	 */
+	public void writeLifetimeStatistics(final LifetimeStatistics statistics) throws IOException {
+
+		File statsfile = new File(parent.inputdirectory + "//" + "Lifetime-Statistics" + ".txt");
+
+		FileWriter fw = new FileWriter(statsfile);
+
+		BufferedWriter bw = new BufferedWriter(fw);
+
+		bw.write("\tEvents\tMean(sec)\tStandardDeviation(sec)\tMin(sec)\tQ25(sec)\tMedian(sec)\tQ75(sec)\tQ90(sec)\tMax(sec)\n");
+		bw.write("\t" + statistics.count() + "\t" + parent.nf.format(statistics.mean()) + "\t"
+				+ parent.nf.format(statistics.standardDeviation()) + "\t" + parent.nf.format(statistics.min()) + "\t"
+				+ parent.nf.format(statistics.quantile(0.25)) + "\t" + parent.nf.format(statistics.median()) + "\t"
+				+ parent.nf.format(statistics.quantile(0.75)) + "\t" + parent.nf.format(statistics.quantile(0.9)) + "\t"
+				+ parent.nf.format(statistics.max()) + "\n");
+
+		bw.close();
+		fw.close();
+
+		if (!parent.lifetimeHistogram)
+			return;
+
+		File histogramfile = new File(parent.inputdirectory + "//" + "Lifetime-Histogram" + ".txt");
+
+		FileWriter fwhist = new FileWriter(histogramfile);
+
+		BufferedWriter bwhist = new BufferedWriter(fwhist);
+
+		bwhist.write("\tBinStart(sec)\tBinEnd(sec)\tCount\n");
+
+		for (int bin = 0; bin < statistics.bins(); ++bin)
+			bwhist.write("\t" + parent.nf.format(bin * statistics.binwidth) + "\t"
+					+ parent.nf.format((bin + 1) * statistics.binwidth) + "\t" + statistics.binCount(bin) + "\n");
+
+		bwhist.close();
+		fwhist.close();
+	}
+
 	
 }
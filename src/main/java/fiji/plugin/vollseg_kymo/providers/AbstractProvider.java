@@ -21,93 +21,45 @@
  */
 package fiji.plugin.vollseg_kymo.providers;
 
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-
-import org.scijava.Context;
-import org.scijava.InstantiableException;
-import org.scijava.log.LogService;
-import org.scijava.plugin.PluginInfo;
-import org.scijava.plugin.PluginService;
 
 import fiji.plugin.vollseg_kymo.Mtrack_vollseg_kymo_module;
-import fiji.plugin.vollseg_kymo.util.TMUtils;
 
+/**
+ * Gives access to the modules of one type. Discovery and instantiation are
+ * done once per process by the shared {@link PluginIndex}, creating a
+ * provider costs nothing.
+ */
 public abstract class AbstractProvider< K extends Mtrack_vollseg_kymo_module >
 {
 	private final Class< K > cl;
 
+	private final PluginIndex< K > index;
+
 	public AbstractProvider( final Class< K > cl )
 	{
 		this.cl = cl;
-		registerModules();
-	}
-
-	protected List< String > keys;
-
-	protected List< String > visibleKeys;
-
-	protected List< String > disabled;
-
-	protected Map< String, K > implementations;
-
-	private void registerModules()
-	{
-		final Context context = TMUtils.getContext();
-		final LogService log = context.getService( LogService.class );
-		final PluginService pluginService = context.getService( PluginService.class );
-		final List< PluginInfo< K > > infos = pluginService.getPluginsOfType( cl );
-
-		keys = new ArrayList<>( infos.size() );
-		visibleKeys = new ArrayList<>( infos.size() );
-		disabled = new ArrayList<>( infos.size() );
-		implementations = new HashMap<>();
-
-		for ( final PluginInfo< K > info : infos )
-		{
-			if ( !info.isEnabled() )
-			{
-				disabled.add( info.getClassName() );
-				continue;
-			}
-			try
-			{
-				final K implementation = info.createInstance();
-				final String key = implementation.getKey();
-
-				implementations.put( key, implementation );
-				keys.add( key );
-				if ( info.isVisible() )
-					visibleKeys.add( key );
-
-			}
-			catch ( final InstantiableException e )
-			{
-				log.error( "Could not instantiate " + info.getClassName(), e );
-			}
-		}
+		this.index = PluginIndex.of( cl );
 	}
 
 	public List< String > getKeys()
 	{
-		return new ArrayList<>( keys );
+		return index.getKeys();
 	}
 
 	public List< String > getVisibleKeys()
 	{
-		return new ArrayList<>( visibleKeys );
+		return index.getVisibleKeys();
 	}
 
 	public List< String > getDisabled()
 	{
-		return new ArrayList<>( disabled );
+		return index.getDisabled();
 	}
 
 	public K getFactory( final String key )
 	{
-		return implementations.get( key );
+		return index.get( key );
 	}
 
 	public String echo()
@@ -0,0 +1,235 @@
+/*-
+ * #%L
+ * Microtubule tracker.
+ * %%
+ * Copyright (C) 2017 MTrack developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.vollseg_kymo.providers;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.scijava.Context;
+import org.scijava.InstantiableException;
+import org.scijava.log.LogService;
+import org.scijava.plugin.PluginInfo;
+import org.scijava.plugin.PluginService;
+
+import fiji.plugin.vollseg_kymo.Mtrack_vollseg_kymo_module;
+import fiji.plugin.vollseg_kymo.util.TMUtils;
+
+/**
+ * The modules of one type found by SciJava plugin discovery, shared by all
+ * providers of that type in the process.
+ * <p>
+ * Discovery runs once, when the index of a type is first asked for
+ * something. A module is only instantiated when it is needed: looking one up
+ * by key first tries the module whose plugin name is the key, and
+ * instantiates the others one by one only if that fails, since the key of a
+ * module is only known from an instance. Listing the keys instantiates all
+ * modules. Every module is instantiated at most once, the instance is reused
+ * by all providers.
+ *
+ * @param <K>
+ *            the type of module.
+ */
+public class PluginIndex< K extends Mtrack_vollseg_kymo_module >
+{
+
+	private static final Map< Class< ? >, PluginIndex< ? > > INDICES = new ConcurrentHashMap<>();
+
+	private final Class< K > cl;
+
+	/** The enabled modules, in discovery order. */
+	private List< PluginInfo< K > > infos;
+
+	/** The instance of each enabled module, null until it is created. */
+	private List< K > instances;
+
+	private List< String > disabled;
+
+	private final Map< String, K > byKey = new HashMap<>();
+
+	private boolean complete = false;
+
+	private PluginIndex( final Class< K > cl )
+	{
+		this.cl = cl;
+	}
+
+	/**
+	 * @return the index of the modules of the given type, built on first use.
+	 */
+	@SuppressWarnings( "unchecked" )
+	public static < K extends Mtrack_vollseg_kymo_module > PluginIndex< K > of( final Class< K > cl )
+	{
+		return ( PluginIndex< K > ) INDICES.computeIfAbsent( cl, c -> new PluginIndex<>( cl ) );
+	}
+
+	/**
+	 * Forgets all indices, e.g. after plugins were installed. The next
+	 * provider discovers the modules again.
+	 */
+	public static void clearAll()
+	{
+		INDICES.clear();
+	}
+
+	private void discover()
+	{
+		if ( infos != null )
+			return;
+
+		final Context context = TMUtils.getContext();
+		final PluginService pluginService = context.getService( PluginService.class );
+		final List< PluginInfo< K > > all = pluginService.getPluginsOfType( cl );
+
+		infos = new ArrayList<>( all.size() );
+		instances = new ArrayList<>( all.size() );
+		disabled = new ArrayList<>();
+
+		for ( final PluginInfo< K > info : all )
+		{
+			if ( info.isEnabled() )
+			{
+				infos.add( info );
+				instances.add( null );
+			}
+			else
+			{
+				disabled.add( info.getClassName() );
+			}
+		}
+	}
+
+	/**
+	 * @return the instance of the i-th module, null if it can not be
+	 *         instantiated.
+	 */
+	private K instance( final int i )
+	{
+		K implementation = instances.get( i );
+		if ( null != implementation )
+			return implementation;
+
+		final PluginInfo< K > info = infos.get( i );
+		try
+		{
+			implementation = info.createInstance();
+		}
+		catch ( final InstantiableException e )
+		{
+			TMUtils.getContext().getService( LogService.class ).error( "Could not instantiate " + info.getClassName(), e );
+			// not tried again
+			infos.set( i, null );
+			return null;
+		}
+
+		instances.set( i, implementation );
+		byKey.putIfAbsent( implementation.getKey(), implementation );
+		return implementation;
+	}
+
+	private void instantiateAll()
+	{
+		if ( complete )
+			return;
+
+		for ( int i = 0; i < infos.size(); i++ )
+			if ( null != infos.get( i ) )
+				instance( i );
+		complete = true;
+	}
+
+	public synchronized K get( final String key )
+	{
+		discover();
+
+		K implementation = byKey.get( key );
+		if ( null != implementation || complete )
+			return implementation;
+
+		// the module named after the key, most likely the one
+		for ( int i = 0; i < infos.size(); i++ )
+		{
+			final PluginInfo< K > info = infos.get( i );
+			if ( null != info && null == instances.get( i ) && key.equals( info.getName() ) )
+			{
+				implementation = instance( i );
+				if ( null != implementation && key.equals( implementation.getKey() ) )
+					return implementation;
+			}
+		}
+
+		for ( int i = 0; i < infos.size(); i++ )
+		{
+			if ( null == infos.get( i ) || null != instances.get( i ) )
+				continue;
+
+			implementation = instance( i );
+			if ( null != implementation && key.equals( implementation.getKey() ) )
+				return implementation;
+		}
+		complete = true;
+		return null;
+	}
+
+	/**
+	 * @return the keys of the enabled modules, in discovery order.
+	 */
+	public synchronized List< String > getKeys()
+	{
+		return keys( false );
+	}
+
+	/**
+	 * @return the keys of the enabled and visible modules, in discovery order.
+	 */
+	public synchronized List< String > getVisibleKeys()
+	{
+		return keys( true );
+	}
+
+	private List< String > keys( final boolean visibleOnly )
+	{
+		discover();
+		instantiateAll();
+
+		final List< String > keys = new ArrayList<>( infos.size() );
+		for ( int i = 0; i < infos.size(); i++ )
+		{
+			final PluginInfo< K > info = infos.get( i );
+			if ( null == info || ( visibleOnly && !info.isVisible() ) )
+				continue;
+			keys.add( instances.get( i ).getKey() );
+		}
+		return keys;
+	}
+
+	/**
+	 * @return the class names of the disabled modules.
+	 */
+	public synchronized List< String > getDisabled()
+	{
+		discover();
+		return new ArrayList<>( disabled );
+	}
+}
@@ -0,0 +1,196 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2022 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.vollseg_kymo.util;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The {@link TrackEvents} as Java Flight Recorder events. Only loaded when
+ * they are enabled, needs a JVM with the <code>jdk.jfr</code> module, Java 11
+ * or Java 8 from update 262 on.
+ */
+final class JfrTrackEvents implements TrackEvents.Recorder
+{
+
+	@Name( "fiji.plugin.vollseg_kymo.TrackLoad" )
+	@Label( "Track Load" )
+	@Description( "Reading the timepoints and calibration of a track file" )
+	@Category( { "MTrack", "I/O" } )
+	@StackTrace( false )
+	static final class Load extends Event implements TrackEvents.Span
+	{
+		@Label( "File" )
+		String file;
+
+		@Label( "Timepoints" )
+		int timepoints;
+	}
+
+	@Name( "fiji.plugin.vollseg_kymo.Ransac" )
+	@Label( "RANSAC" )
+	@Description( "One RANSAC search for the next segment of a track" )
+	@Category( { "MTrack", "Fitting" } )
+	@StackTrace( false )
+	static final class Ransac extends Event implements TrackEvents.Span
+	{
+		@Label( "File" )
+		String file;
+
+		@Label( "Model" )
+		String model;
+
+		@Label( "Candidates" )
+		int candidates;
+
+		@Label( "Iterations" )
+		int iterations;
+
+		@Label( "Inliers" )
+		int inliers;
+	}
+
+	@Name( "fiji.plugin.vollseg_kymo.Catastrophes" )
+	@Label( "Catastrophe Detection" )
+	@Description( "Looking for catastrophes between the segments of a track" )
+	@Category( { "MTrack", "Fitting" } )
+	@StackTrace( false )
+	static final class Catastrophes extends Event implements TrackEvents.Span
+	{
+		@Label( "File" )
+		String file;
+
+		@Label( "Candidates" )
+		@Description( "Gaps between two segments" )
+		int candidates;
+
+		@Label( "Found" )
+		int found;
+	}
+
+	@Name( "fiji.plugin.vollseg_kymo.ResultsWrite" )
+	@Label( "Results Write" )
+	@Description( "Writing the rates and averages of all tracks" )
+	@Category( { "MTrack", "I/O" } )
+	@StackTrace( false )
+	static final class Write extends Event implements TrackEvents.Span
+	{
+		@Label( "File" )
+		@Description( "The track whose results triggered the write" )
+		String file;
+
+		@Label( "Tracks" )
+		int tracks;
+	}
+
+	@Override
+	public TrackEvents.Span beginLoad()
+	{
+		final Load event = new Load();
+		event.begin();
+		return event;
+	}
+
+	@Override
+	public void endLoad( final TrackEvents.Span span, final String file, final int timepoints )
+	{
+		final Load event = ( Load ) span;
+		event.end();
+		if ( event.shouldCommit() )
+		{
+			event.file = file;
+			event.timepoints = timepoints;
+			event.commit();
+		}
+	}
+
+	@Override
+	public TrackEvents.Span beginRansac()
+	{
+		final Ransac event = new Ransac();
+		event.begin();
+		return event;
+	}
+
+	@Override
+	public void endRansac( final TrackEvents.Span span, final String file, final String model, final int candidates, final int iterations, final int inliers )
+	{
+		final Ransac event = ( Ransac ) span;
+		event.end();
+		if ( event.shouldCommit() )
+		{
+			event.file = file;
+			event.model = model;
+			event.candidates = candidates;
+			event.iterations = iterations;
+			event.inliers = inliers;
+			event.commit();
+		}
+	}
+
+	@Override
+	public TrackEvents.Span beginCatastrophes()
+	{
+		final Catastrophes event = new Catastrophes();
+		event.begin();
+		return event;
+	}
+
+	@Override
+	public void endCatastrophes( final TrackEvents.Span span, final String file, final int candidates, final int found )
+	{
+		final Catastrophes event = ( Catastrophes ) span;
+		event.end();
+		if ( event.shouldCommit() )
+		{
+			event.file = file;
+			event.candidates = candidates;
+			event.found = found;
+			event.commit();
+		}
+	}
+
+	@Override
+	public TrackEvents.Span beginWrite()
+	{
+		final Write event = new Write();
+		event.begin();
+		return event;
+	}
+
+	@Override
+	public void endWrite( final TrackEvents.Span span, final String file, final int tracks )
+	{
+		final Write event = ( Write ) span;
+		event.end();
+		if ( event.shouldCommit() )
+		{
+			event.file = file;
+			event.tracks = tracks;
+			event.commit();
+		}
+	}
+}
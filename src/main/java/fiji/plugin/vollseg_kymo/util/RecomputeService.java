@@ -0,0 +1,129 @@
+/*-
+ * #%L
+ * Microtubule tracker.
+ * %%
+ * Copyright (C) 2017 MTrack developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.vollseg_kymo.util;
+
+import java.util.function.BooleanSupplier;
+
+import javax.swing.SwingUtilities;
+
+/**
+ * Same idea as the {@link OnRequestUpdater}, but for computations that produce
+ * a result which has to be shown in the GUI.
+ * <p>
+ * Only the latest submitted {@link Task} matters. A task submitted while
+ * another one is computing supersedes it: the running task sees its cancel
+ * flag raised and is expected to give up at its next check, and its result is
+ * dropped. The computation runs on this thread, the result of the latest task
+ * is published on the event dispatch thread.
+ */
+public class RecomputeService extends Thread {
+
+	private long request = 0;
+	private Task<?> pending = null;
+
+	/**
+	 * Constructor autostarts thread
+	 */
+	public RecomputeService(final String name) {
+		super("RecomputeService for " + name);
+		setDaemon(true);
+		setPriority(Thread.NORM_PRIORITY);
+		start();
+	}
+
+	public void submit(final Task<?> task) {
+		if (isInterrupted())
+			return;
+		synchronized (this) {
+			pending = task;
+			request++;
+			notify();
+		}
+	}
+
+	public void quit() {
+		interrupt();
+		synchronized (this) {
+			pending = null;
+			notify();
+		}
+	}
+
+	/**
+	 * @return true if no task was submitted after the request with the given
+	 *         number.
+	 */
+	public synchronized boolean isCurrent(final long r) {
+		return r == request && !isInterrupted();
+	}
+
+	@Override
+	public void run() {
+		while (!isInterrupted()) {
+			try {
+				final Task<?> task;
+				final long r;
+				synchronized (this) {
+					while (pending == null && !isInterrupted())
+						wait();
+					task = pending;
+					pending = null;
+					r = request;
+				}
+				if (task != null)
+					execute(task, r);
+			} catch (final InterruptedException e) {
+				break;
+			} catch (final Exception e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	private <T> void execute(final Task<T> task, final long r) {
+		final T result = task.compute(() -> !isCurrent(r));
+		if (!isCurrent(r))
+			return;
+		SwingUtilities.invokeLater(() -> {
+			if (isCurrent(r))
+				task.publish(result);
+		});
+	}
+
+	public interface Task<T> {
+
+		/**
+		 * Called on the service thread. Long computations should poll
+		 * <code>canceled</code> and return early once it is true, the result
+		 * is thrown away anyway.
+		 */
+		public T compute(BooleanSupplier canceled);
+
+		/**
+		 * Called on the event dispatch thread with the result of
+		 * {@link #compute(BooleanSupplier)}, only if no newer task was
+		 * submitted meanwhile.
+		 */
+		public void publish(T result);
+	}
+
+}
@@ -0,0 +1,352 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2022 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.vollseg_kymo.util;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * How long each stage of the track processing took, summed over all tracks
+ * and threads, and how long the whole run took by the wall clock.
+ * <p>
+ * Every run keeps its own instance, the one of the plugin is handed to the
+ * {@link fiji.plugin.vollseg_kymo_functions.TrackPipeline} and the listeners
+ * record to it. The stage totals add up the time of all threads, so with
+ * tracks processed in parallel they exceed the elapsed time, which is
+ * measured from {@link #beginRun()} to {@link #endRun()}.
+ * <p>
+ * Recording a duration costs two {@link System#nanoTime()} calls and a few
+ * uncontended atomic increments, nothing is allocated and nothing is locked,
+ * so the stages can be timed on every call. Besides the count and the total,
+ * every stage keeps a histogram of the durations with eight buckets per power
+ * of two, from which the percentiles are read to within 12.5%. The maximum is
+ * exact.
+ * <p>
+ * Typical use:
+ *
+ * <pre>
+ * final long start = StageMetrics.start();
+ * try
+ * {
+ * 	// the work
+ * }
+ * finally
+ * {
+ * 	metrics.stop( Stage.PARSE, start );
+ * }
+ * </pre>
+ */
+public class StageMetrics
+{
+
+	public enum Stage
+	{
+		PARSE( "Parse" ),
+		RANSAC( "RANSAC" ),
+		POSTPROCESS( "Post-processing" ),
+		CATASTROPHE( "Catastrophes" ),
+		WRITE( "Writing" ),
+		/** The first render of a chart, redraws are not counted. */
+		CHART( "Charting" );
+
+		private final String name;
+
+		private Stage( final String name )
+		{
+			this.name = name;
+		}
+
+		@Override
+		public String toString()
+		{
+			return name;
+		}
+	}
+
+	/** Bits of the duration kept below its highest bit. */
+	private static final int SUB_BITS = 3;
+
+	private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+	private static final int BUCKETS = 64 * SUB_BUCKETS;
+
+	private final Counter[] counters = new Counter[ Stage.values().length ];
+
+	/** When the run began and ended, 0 if it did not. */
+	private volatile long runStart = 0;
+
+	private volatile long runEnd = 0;
+
+	public StageMetrics()
+	{
+		for ( int i = 0; i < counters.length; i++ )
+			counters[ i ] = new Counter();
+	}
+
+	/**
+	 * @return the start time to hand to {@link #stop(Stage, long)}.
+	 */
+	public static long start()
+	{
+		return System.nanoTime();
+	}
+
+	/**
+	 * Records the time elapsed since the given start time.
+	 */
+	public void stop( final Stage stage, final long start )
+	{
+		record( stage, System.nanoTime() - start );
+	}
+
+	/**
+	 * Records a duration.
+	 *
+	 * @param nanos
+	 *            the duration in nanoseconds, negative ones count as 0.
+	 */
+	public void record( final Stage stage, final long nanos )
+	{
+		final long value = Math.max( 0, nanos );
+		final Counter counter = counters[ stage.ordinal() ];
+		counter.count.increment();
+		counter.total.add( value );
+		counter.max.accumulate( value );
+		counter.buckets.incrementAndGet( bucket( value ) );
+	}
+
+	/**
+	 * Forgets everything recorded so far, e.g. when a new batch starts. Not
+	 * atomic with respect to durations recorded at the same time.
+	 */
+	public void reset()
+	{
+		runStart = 0;
+		runEnd = 0;
+		for ( final Counter counter : counters )
+		{
+			counter.count.reset();
+			counter.total.reset();
+			counter.max.reset();
+			for ( int i = 0; i < BUCKETS; i++ )
+				counter.buckets.set( i, 0 );
+		}
+	}
+
+	/**
+	 * Forgets everything recorded so far and starts the wall clock of a new
+	 * run.
+	 */
+	public void beginRun()
+	{
+		reset();
+		runStart = System.nanoTime();
+	}
+
+	/**
+	 * Stops the wall clock started by {@link #beginRun()}.
+	 */
+	public void endRun()
+	{
+		if ( runStart != 0 )
+			runEnd = System.nanoTime();
+	}
+
+	/**
+	 * @return the time from {@link #beginRun()} to {@link #endRun()}, or to
+	 *         now if the run did not end yet, in nanoseconds, 0 if no run
+	 *         began.
+	 */
+	public long getWallNanos()
+	{
+		final long start = runStart;
+		if ( start == 0 )
+			return 0;
+		final long end = runEnd;
+		return ( end != 0 ? end : System.nanoTime() ) - start;
+	}
+
+	/**
+	 * @return the elapsed time of the run in milliseconds, as expected by
+	 *         {@link net.imglib2.algorithm.Benchmark#getProcessingTime()}.
+	 */
+	public long getWallMillis()
+	{
+		return getWallNanos() / 1_000_000L;
+	}
+
+	public Snapshot snapshot( final Stage stage )
+	{
+		final Counter counter = counters[ stage.ordinal() ];
+		final long[] buckets = new long[ BUCKETS ];
+		for ( int i = 0; i < BUCKETS; i++ )
+			buckets[ i ] = counter.buckets.get( i );
+		return new Snapshot( stage, counter.count.sum(), counter.total.sum(), counter.max.get(), buckets );
+	}
+
+	/**
+	 * @return the time spent in all stages, summed over the threads, in
+	 *         nanoseconds.
+	 */
+	public long getTotalNanos()
+	{
+		long total = 0;
+		for ( final Counter counter : counters )
+			total += counter.total.sum();
+		return total;
+	}
+
+	/**
+	 * @return the time spent in all stages, summed over the threads, in
+	 *         milliseconds.
+	 */
+	public long getTotalMillis()
+	{
+		return getTotalNanos() / 1_000_000L;
+	}
+
+	/**
+	 * @return one line per stage that was recorded, with the count, the total,
+	 *         the mean and the percentiles in milliseconds.
+	 */
+	public String summary()
+	{
+		final StringBuilder str = new StringBuilder();
+		str.append( String.format( Locale.ROOT, "%-16s %8s %11s %9s %9s %9s %9s %9s%n",
+				"Stage", "Count", "Total ms", "Mean ms", "p50 ms", "p90 ms", "p99 ms", "Max ms" ) );
+
+		for ( final Stage stage : Stage.values() )
+		{
+			final Snapshot s = snapshot( stage );
+			if ( s.count == 0 )
+				continue;
+
+			str.append( String.format( Locale.ROOT, "%-16s %8d %11.1f %9.2f %9.2f %9.2f %9.2f %9.2f%n",
+					stage, s.count, millis( s.total ), millis( s.mean() ), millis( s.percentile( 0.5 ) ),
+					millis( s.percentile( 0.9 ) ), millis( s.percentile( 0.99 ) ), millis( s.max ) ) );
+		}
+		str.append( String.format( Locale.ROOT, "%-16s %8s %11.1f%n", "All stages", "", millis( getTotalNanos() ) ) );
+		if ( runStart != 0 )
+			str.append( String.format( Locale.ROOT, "%-16s %8s %11.1f%n", "Elapsed", "", millis( getWallNanos() ) ) );
+		return str.toString();
+	}
+
+	private static double millis( final double nanos )
+	{
+		return nanos / 1e6;
+	}
+
+	/**
+	 * The bucket of a duration: values below {@link #SUB_BUCKETS} have their
+	 * own, above that a power of two is split into {@link #SUB_BUCKETS}.
+	 */
+	private static int bucket( final long value )
+	{
+		if ( value < SUB_BUCKETS )
+			return ( int ) value;
+
+		final int exponent = 63 - Long.numberOfLeadingZeros( value );
+		final int sub = ( int ) ( value >>> ( exponent - SUB_BITS ) ) & ( SUB_BUCKETS - 1 );
+		return ( exponent - SUB_BITS + 1 ) * SUB_BUCKETS + sub;
+	}
+
+	/**
+	 * @return the largest duration falling into the bucket.
+	 */
+	private static long upperBound( final int bucket )
+	{
+		if ( bucket < SUB_BUCKETS )
+			return bucket;
+
+		final int shift = bucket / SUB_BUCKETS - 1;
+		final long lower = ( long ) ( SUB_BUCKETS + bucket % SUB_BUCKETS ) << shift;
+		return lower + ( 1L << shift ) - 1;
+	}
+
+	/**
+	 * The durations of one stage at one point in time, in nanoseconds.
+	 */
+	public static class Snapshot
+	{
+		public final Stage stage;
+
+		public final long count;
+
+		public final long total;
+
+		public final long max;
+
+		private final long[] buckets;
+
+		private Snapshot( final Stage stage, final long count, final long total, final long max, final long[] buckets )
+		{
+			this.stage = stage;
+			this.count = count;
+			this.total = total;
+			this.max = max;
+			this.buckets = buckets;
+		}
+
+		public double mean()
+		{
+			return count == 0 ? 0 : ( double ) total / count;
+		}
+
+		/**
+		 * @param q
+		 *            between 0 and 1.
+		 * @return a duration at least as long as a fraction q of the recorded
+		 *         ones, 12.5% longer at most, 0 if none was recorded.
+		 */
+		public long percentile( final double q )
+		{
+			long seen = 0;
+			for ( final long n : buckets )
+				seen += n;
+			if ( seen == 0 )
+				return 0;
+
+			final long rank = Math.max( 1, ( long ) Math.ceil( q * seen ) );
+			long cumulative = 0;
+			for ( int i = 0; i < buckets.length; i++ )
+			{
+				cumulative += buckets[ i ];
+				if ( cumulative >= rank )
+					return Math.min( upperBound( i ), max );
+			}
+			return max;
+		}
+	}
+
+	private static class Counter
+	{
+		private final LongAdder count = new LongAdder();
+
+		private final LongAdder total = new LongAdder();
+
+		private final LongAccumulator max = new LongAccumulator( Math::max, 0 );
+
+		private final AtomicLongArray buckets = new AtomicLongArray( BUCKETS );
+	}
+}
@@ -0,0 +1,179 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2022 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.vollseg_kymo.util;
+
+import java.io.File;
+
+import fiji.plugin.vollseg_kymo.RingBufferLogger;
+
+/**
+ * Java Flight Recorder events for the loading, fitting, catastrophe detection
+ * and writing of every track, to break the time of a real run down per track
+ * from a single recording.
+ * <p>
+ * Off unless the JVM is started with <code>-Dvollseg_kymo.jfr=true</code>.
+ * The JFR event classes are only loaded then, so a JVM without JFR runs the
+ * plugin as before. Every call site checks {@link #ENABLED} first, a constant
+ * the JIT folds away, so nothing is allocated or measured when off:
+ *
+ * <pre>
+ * final TrackEvents.Span event = TrackEvents.ENABLED ? TrackEvents.beginLoad() : null;
+ * // the work
+ * if ( event != null )
+ * 	TrackEvents.endLoad( event, file, timepoints );
+ * </pre>
+ *
+ * The events are in the "MTrack" category of JDK Mission Control.
+ */
+public final class TrackEvents
+{
+
+	public static final String PROPERTY = "vollseg_kymo.jfr";
+
+	/** Whether events are emitted, decided once when the class loads. */
+	public static final boolean ENABLED;
+
+	private static final Recorder RECORDER;
+
+	/** The file name of the track fitted by each thread, for the RANSAC events. */
+	private static final ThreadLocal< String > TRACK = new ThreadLocal<>();
+
+	static
+	{
+		Recorder recorder = null;
+		if ( Boolean.getBoolean( PROPERTY ) )
+		{
+			try
+			{
+				recorder = ( Recorder ) Class.forName( "fiji.plugin.vollseg_kymo.util.JfrTrackEvents" ).newInstance();
+			}
+			catch ( final Throwable e )
+			{
+				RingBufferLogger.CONSOLE.warn( "Flight recorder events not available: %s", e );
+			}
+		}
+		RECORDER = recorder;
+		ENABLED = recorder != null;
+	}
+
+	private TrackEvents()
+	{}
+
+	/**
+	 * An event in progress, handed back to the matching end method.
+	 */
+	public interface Span
+	{}
+
+	/**
+	 * What the events are recorded with, implemented by
+	 * {@link JfrTrackEvents}.
+	 */
+	interface Recorder
+	{
+		Span beginLoad();
+
+		void endLoad( Span span, String file, int timepoints );
+
+		Span beginRansac();
+
+		void endRansac( Span span, String file, String model, int candidates, int iterations, int inliers );
+
+		Span beginCatastrophes();
+
+		void endCatastrophes( Span span, String file, int candidates, int found );
+
+		Span beginWrite();
+
+		void endWrite( Span span, String file, int tracks );
+	}
+
+	/**
+	 * Tags the RANSAC events of the calling thread with the track until
+	 * {@link #exitTrack(String)}.
+	 *
+	 * @return the track tagged before, to hand to {@link #exitTrack(String)}.
+	 */
+	public static String enterTrack( final File file )
+	{
+		final String previous = TRACK.get();
+		TRACK.set( name( file ) );
+		return previous;
+	}
+
+	public static void exitTrack( final String previous )
+	{
+		if ( previous == null )
+			TRACK.remove();
+		else
+			TRACK.set( previous );
+	}
+
+	public static Span beginLoad()
+	{
+		return RECORDER.beginLoad();
+	}
+
+	public static void endLoad( final Span span, final File file, final int timepoints )
+	{
+		RECORDER.endLoad( span, name( file ), timepoints );
+	}
+
+	public static Span beginRansac()
+	{
+		return RECORDER.beginRansac();
+	}
+
+	/**
+	 * @param model
+	 *            the function fitted.
+	 */
+	public static void endRansac( final Span span, final Object model, final int candidates, final int iterations, final int inliers )
+	{
+		RECORDER.endRansac( span, TRACK.get(), model.getClass().getSimpleName(), candidates, iterations, inliers );
+	}
+
+	public static Span beginCatastrophes()
+	{
+		return RECORDER.beginCatastrophes();
+	}
+
+	public static void endCatastrophes( final Span span, final File file, final int candidates, final int found )
+	{
+		RECORDER.endCatastrophes( span, name( file ), candidates, found );
+	}
+
+	public static Span beginWrite()
+	{
+		return RECORDER.beginWrite();
+	}
+
+	public static void endWrite( final Span span, final File file, final int tracks )
+	{
+		RECORDER.endWrite( span, name( file ), tracks );
+	}
+
+	private static String name( final File file )
+	{
+		return file == null ? null : file.getName();
+	}
+}
@@ -32,10 +32,6 @@ import java.awt.font.TextAttribute;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.beans.PropertyChangeSupport;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Iterator;
-import java.util.List;
 import java.util.Map;
 
 import javax.swing.JTextField;
@@ -44,7 +40,6 @@ import fiji.plugin.vollseg_kymo.Model;
 import fiji.plugin.vollseg_kymo.Stat;
 import fiji.plugin.vollseg_kymo.visualization.Mtrack_vollseg_kymo_model_view;
 
-@SuppressWarnings( "unchecked" )
 public class SearchBar extends JTextField
 {
 	private static final long serialVersionUID = 1L;
@@ -54,7 +49,7 @@ public class SearchBar extends JTextField
 	private final static Font NOTFOUND_FONT;
 	static
 	{
-		@SuppressWarnings( "rawtypes" )
+		@SuppressWarnings( { "rawtypes", "unchecked" } )
 		final Map attributes = NORMAL_FONT.getAttributes();
 		attributes.put( TextAttribute.STRIKETHROUGH, TextAttribute.STRIKETHROUGH_ON );
 		attributes.put( TextAttribute.FOREGROUND, Color.RED.darker() );
@@ -67,6 +62,8 @@ public class SearchBar extends JTextField
 
 	private final Mtrack_vollseg_kymo_model_view view;
 
+	/** Follows the model while the search bar is displayed. */
+	private final StatSearchIndex index;
 
 	/**
 	 * Creates new form SearchBox
@@ -80,6 +77,7 @@ public class SearchBar extends JTextField
 	{
 		this.model = model;
 		this.view = view;
+		this.index = new StatSearchIndex( model );
 		putClientProperty( "JTextField.variant", "search" );
 		putClientProperty( "JTextField.Search.Prompt", "Search" );
 		setPreferredSize( new Dimension( 80, 25 ) );
@@ -110,6 +108,20 @@ public class SearchBar extends JTextField
 		observer.addPropertyChangeListener( new SearchAction() );
 	}
 
+	@Override
+	public void addNotify()
+	{
+		super.addNotify();
+		index.listen();
+	}
+
+	@Override
+	public void removeNotify()
+	{
+		index.dispose();
+		super.removeNotify();
+	}
+
 	private void searchBoxKey( final KeyEvent e )
 	{
 		setFont( NORMAL_FONT );
@@ -139,27 +151,14 @@ public class SearchBar extends JTextField
 //		setText( "Search" );
 	}
 
-	private class SearchAction implements PropertyChangeListener, Iterator< stat >
+	/**
+	 * Searches the stat labels through a {@link StatSearchIndex}. Searching
+	 * again for the same text moves on to the next match.
+	 */
+	private class SearchAction implements PropertyChangeListener
 	{
 
-		private Iterator< stat > iterator;
-
-		private Iterator< Integer > trackIterator;
-
-		public SearchAction()
-		{
-			trackIterator = model.getTrackModel().trackIDs( true ).iterator();
-			if ( trackIterator.hasNext() )
-			{
-				final Integer currentTrackID = trackIterator.next();
-				final stat trackStart = firststatOf( currentTrackID );
-				iterator = model.getTrackModel().getSortedDepthFirstIterator( trackStart, stat.nameComparator, false );
-			}
-			else
-			{
-				iterator = Collections.EMPTY_LIST.iterator();
-			}
-		}
+		private final StatSearchIndex.Cursor cursor = new StatSearchIndex.Cursor();
 
 		@Override
 		public void propertyChange( final PropertyChangeEvent evt )
@@ -173,56 +172,13 @@ public class SearchBar extends JTextField
 
 		private void search( final String text )
 		{
-			stat start = null;
-			stat stat;
-			while ( ( stat = next() ) != start )
+			final Stat stat = index.next( text, cursor );
+			if ( null != stat )
 			{
-				if ( start == null )
-				{
-					start = stat;
-				}
-				if ( stat.getName().contains( text ) )
-				{
-					view.centerViewOn( stat );
-					return;
-				}
+				view.centerViewOn( stat );
+				return;
 			}
 			setFont( NOTFOUND_FONT );
 		}
-
-		@Override
-		public boolean hasNext()
-		{
-			return true;
-		}
-
-		@Override
-		public stat next()
-		{
-			if ( null == iterator || !iterator.hasNext() )
-			{
-				if ( null == trackIterator || !trackIterator.hasNext() )
-				{
-					trackIterator = model.getTrackModel().trackIDs( true ).iterator();
-				}
-				final Integer currentTrackID = trackIterator.next();
-				final stat trackStart = firststatOf( currentTrackID );
-				iterator = model.getTrackModel().getSortedDepthFirstIterator( trackStart, stat.nameComparator, false );
-			}
-			return iterator.next();
-		}
-
-		private stat firststatOf( final Integer trackID )
-		{
-			final List< stat > trackstats = new ArrayList<>( model.getTrackModel().trackstats( trackID ) );
-			Collections.sort( trackstats, stat.frameComparator );
-			return trackstats.get( 0 );
-		}
-
-		@Override
-		public void remove()
-		{
-			throw new UnsupportedOperationException();
-		}
 	}
 }
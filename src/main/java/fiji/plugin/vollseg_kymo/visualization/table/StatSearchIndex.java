@@ -0,0 +1,375 @@
+/*-
+ * #%L
+ * Microtubule tracker.
+ * %%
+ * Copyright (C) 2017 MTrack developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.vollseg_kymo.visualization.table;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import fiji.plugin.vollseg_kymo.Model;
+import fiji.plugin.vollseg_kymo.ModelChangeEvent;
+import fiji.plugin.vollseg_kymo.ModelChangeListener;
+import fiji.plugin.vollseg_kymo.Stat;
+import fiji.plugin.vollseg_kymo.StatCollection;
+
+/**
+ * Finds the stats whose label contains a piece of text, without looking at
+ * all of them.
+ * <p>
+ * Stats share few distinct labels, which are interned: every label gets an id
+ * and the list of the slots of its stats. Only the labels are indexed, by
+ * their characters, their pairs of characters and their trigrams, so a label
+ * shared by many stats is indexed once. Ids and slots are handed out in
+ * increasing order, so all lists stay sorted by just appending. A query of one
+ * or two characters is answered by its own list of labels, a longer one from
+ * the shortest list among its trigrams, verified by
+ * {@link String#contains(CharSequence)}. Removed stats leave an empty slot
+ * behind, the index is rebuilt once there are more empty slots than stats.
+ * <p>
+ * Kept current from the events of the {@link Model} while it listens to them,
+ * from {@link #listen()} to {@link #dispose()}. All methods are thread-safe.
+ */
+public class StatSearchIndex implements ModelChangeListener
+{
+
+	private final Model model;
+
+	/** The stat in each slot, <code>null</code> for a removed one. */
+	private final ArrayList< Stat > stats = new ArrayList<>();
+
+	/** Stat ID to slot. */
+	private final HashMap< Integer, Integer > slotOf = new HashMap<>();
+
+	/** The lower case labels, by label id. */
+	private final ArrayList< String > labels = new ArrayList<>();
+
+	/** Lower case label to label id. */
+	private final HashMap< String, Integer > labelOf = new HashMap<>();
+
+	/** The slots of the stats of each label, by label id, in increasing order. */
+	private final ArrayList< Postings > slotsOf = new ArrayList<>();
+
+	/**
+	 * N-gram of one to three characters to the ids of the labels that contain
+	 * it, in increasing order.
+	 */
+	private final HashMap< Long, Postings > grams = new HashMap<>();
+
+	private int removed = 0;
+
+	/** Whether this index is registered with the model. */
+	private final AtomicBoolean listening = new AtomicBoolean();
+
+	/**
+	 * The version of the snapshot of the model the index was built from. The
+	 * model changed since if its snapshot has another one.
+	 */
+	private volatile long modelVersion;
+
+	/** Incremented when slots are renumbered, which invalidates cursors. */
+	private int version = 0;
+
+	public StatSearchIndex( final Model model )
+	{
+		this.model = model;
+		rebuild();
+	}
+
+	/**
+	 * Re-indexes all the stats of the model.
+	 */
+	public synchronized void rebuild()
+	{
+		stats.clear();
+		slotOf.clear();
+		labels.clear();
+		labelOf.clear();
+		slotsOf.clear();
+		grams.clear();
+		removed = 0;
+		version++;
+		final StatCollection.Snapshot snapshot = model.snapshot();
+		modelVersion = snapshot.version();
+		for ( final Stat stat : snapshot )
+			add( stat );
+	}
+
+	public synchronized void add( final Stat stat )
+	{
+		if ( slotOf.containsKey( stat.ID() ) )
+			return;
+
+		final int slot = stats.size();
+		stats.add( stat );
+		slotOf.put( stat.ID(), slot );
+		slotsOf.get( intern( label( stat ) ) ).add( slot );
+	}
+
+	/**
+	 * @return the id of the label, indexed by its n-grams the first time it
+	 *         is seen.
+	 */
+	private int intern( final String label )
+	{
+		final Integer existing = labelOf.get( label );
+		if ( null != existing )
+			return existing;
+
+		final int id = labels.size();
+		labels.add( label );
+		labelOf.put( label, id );
+		slotsOf.add( new Postings() );
+
+		for ( int n = 1; n <= 3; n++ )
+		{
+			for ( int i = 0; i + n <= label.length(); i++ )
+			{
+				final Long key = gram( label, i, n );
+				Postings postings = grams.get( key );
+				if ( null == postings )
+				{
+					postings = new Postings();
+					grams.put( key, postings );
+				}
+				// a label repeating an n-gram lists the id once
+				if ( postings.size == 0 || postings.ids[ postings.size - 1 ] != id )
+					postings.add( id );
+			}
+		}
+		return id;
+	}
+
+	public synchronized void remove( final Stat stat )
+	{
+		final Integer slot = slotOf.remove( stat.ID() );
+		if ( null == slot )
+			return;
+
+		// the slot stays in the list of its label, it is skipped when searching
+		stats.set( slot, null );
+		removed++;
+		if ( removed > slotOf.size() )
+			rebuild();
+	}
+
+	/**
+	 * Returns the next stat after the one the cursor last returned whose label
+	 * contains the text, in the order the stats were added, wrapping around at
+	 * the end.
+	 *
+	 * @param text
+	 *            the text to search for, case insensitive.
+	 * @param cursor
+	 *            where the previous search stopped. A search for another
+	 *            text starts over. Updated to point at the match.
+	 * @return the matching stat, <code>null</code> if none matches.
+	 */
+	public synchronized Stat next( final String text, final Cursor cursor )
+	{
+		final String query = text.toLowerCase( Locale.ROOT );
+		if ( cursor.version != version || !query.equals( cursor.query ) )
+		{
+			cursor.version = version;
+			cursor.query = query;
+			cursor.slot = -1;
+			cursor.labels = matchingLabels( query );
+			cursor.nLabels = labels.size();
+		}
+		else if ( cursor.nLabels != labels.size() )
+		{
+			// labels are only appended, the new ones are checked on their own
+			for ( int id = cursor.nLabels; id < labels.size(); id++ )
+				if ( labels.get( id ).contains( query ) )
+					cursor.labels.add( id );
+			cursor.nLabels = labels.size();
+		}
+
+		// slots do not move until the next rebuild, the search goes on after
+		// the last match even if stats were added in between
+		int slot = nextSlot( cursor.labels, cursor.slot );
+		if ( slot < 0 )
+			slot = nextSlot( cursor.labels, -1 );
+		if ( slot < 0 )
+			return null;
+
+		cursor.slot = slot;
+		return stats.get( slot );
+	}
+
+	/**
+	 * @return the ids of the labels that contain the query.
+	 */
+	private Postings matchingLabels( final String query )
+	{
+		// the query itself if it is short, its trigrams otherwise
+		final int n = Math.min( 3, query.length() );
+
+		Postings shortest = null;
+		for ( int i = 0; i + n <= query.length(); i++ )
+		{
+			final Postings postings = grams.get( gram( query, i, n ) );
+			if ( null == postings )
+				return new Postings();
+			if ( null == shortest || postings.size < shortest.size )
+				shortest = postings;
+		}
+
+		final Postings matching = new Postings();
+		for ( int k = 0; k < shortest.size; k++ )
+			if ( labels.get( shortest.ids[ k ] ).contains( query ) )
+				matching.add( shortest.ids[ k ] );
+		return matching;
+	}
+
+	/**
+	 * @return the first slot after the given one that holds a stat with one
+	 *         of the labels, -1 if there is none.
+	 */
+	private int nextSlot( final Postings labelIds, final int after )
+	{
+		int next = -1;
+		for ( int k = 0; k < labelIds.size; k++ )
+		{
+			final Postings slots = slotsOf.get( labelIds.ids[ k ] );
+			int i = Arrays.binarySearch( slots.ids, 0, slots.size, after + 1 );
+			if ( i < 0 )
+				i = -i - 1;
+			while ( i < slots.size && null == stats.get( slots.ids[ i ] ) )
+				i++;
+			if ( i < slots.size && ( next < 0 || slots.ids[ i ] < next ) )
+				next = slots.ids[ i ];
+		}
+		return next;
+	}
+
+	/**
+	 * Starts following the changes of the model. If the model changed since
+	 * the index was built, before it first listened or while it did not, the
+	 * index is rebuilt.
+	 */
+	public void listen()
+	{
+		if ( listening.compareAndSet( false, true ) )
+		{
+			model.addModelChangeListener( this );
+			if ( model.snapshot().version() != modelVersion )
+				rebuild();
+		}
+	}
+
+	/**
+	 * Stops following the changes of the model, so that the index can be
+	 * garbage collected with the view it belongs to.
+	 */
+	public void dispose()
+	{
+		if ( listening.compareAndSet( true, false ) )
+			model.removeModelChangeListener( this );
+	}
+
+	public synchronized int size()
+	{
+		return slotOf.size();
+	}
+
+	@Override
+	public void modelChanged( final ModelChangeEvent event )
+	{
+		switch ( event.getEventID() )
+		{
+		case ModelChangeEvent.StatS_COMPUTED:
+			rebuild();
+			break;
+
+		case ModelChangeEvent.MODEL_MODIFIED:
+			synchronized ( this )
+			{
+				for ( final Stat stat : event.getStats() )
+				{
+					final Integer flag = event.getStatFlag( stat );
+					remove( stat );
+					if ( null == flag || flag != ModelChangeEvent.FLAG_Stat_REMOVED )
+						add( stat );
+				}
+			}
+			break;
+
+		default:
+			break;
+		}
+	}
+
+	private static String label( final Stat stat )
+	{
+		final String name = stat.getFeature( Stat.NAME );
+		return null == name ? "" : name.toLowerCase( Locale.ROOT );
+	}
+
+	/**
+	 * The n characters from i on, and n itself, packed into a long.
+	 */
+	private static Long gram( final String str, final int i, final int n )
+	{
+		long key = n;
+		for ( int k = 0; k < n; k++ )
+			key = ( key << 16 ) | str.charAt( i + k );
+		return Long.valueOf( key );
+	}
+
+	/**
+	 * Where a search stopped, to continue with the next match.
+	 */
+	public static class Cursor
+	{
+		private String query;
+
+		/** The ids of the labels that contain the query. */
+		private Postings labels;
+
+		/** How many labels there were when {@link #labels} was last updated. */
+		private int nLabels;
+
+		/** The slot of the last match, -1 for none. */
+		private int slot = -1;
+
+		private int version = -1;
+	}
+
+	/**
+	 * A growing list of ids in increasing order.
+	 */
+	private static class Postings
+	{
+		private int[] ids = new int[ 4 ];
+
+		private int size = 0;
+
+		private void add( final int id )
+		{
+			if ( size == ids.length )
+				ids = Arrays.copyOf( ids, size * 2 );
+			ids[ size++ ] = id;
+		}
+	}
+}
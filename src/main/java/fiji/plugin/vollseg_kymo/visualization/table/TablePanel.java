@@ -28,21 +28,37 @@ import java.awt.Rectangle;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseMotionAdapter;
+import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.function.BiConsumer;
 import java.util.function.BiFunction;
+import java.util.function.BooleanSupplier;
+import java.util.function.DoubleConsumer;
 import java.util.function.Function;
+import java.util.function.IntBinaryOperator;
 import java.util.function.Supplier;
+import java.util.zip.GZIPOutputStream;
 
 import javax.swing.AbstractCellEditor;
 import javax.swing.DefaultCellEditor;
@@ -64,21 +80,58 @@ import javax.swing.table.DefaultTableColumnModel;
 import javax.swing.table.TableCellEditor;
 import javax.swing.table.TableColumn;
 import javax.swing.table.TableColumnModel;
-import javax.swing.table.TableModel;
-import javax.swing.table.TableRowSorter;
-
-import com.opencsv.CSVWriter;
 
 import fiji.plugin.trackmate.gui.GuiUtils;
 import fiji.plugin.trackmate.gui.displaysettings.ColorIcon;
 import fiji.plugin.trackmate.visualization.FeatureColorGenerator;
 import gnu.trove.map.hash.TObjectIntHashMap;
 
+/**
+ * A table of objects and their features, sized for hundreds of thousands of
+ * rows.
+ * <p>
+ * The table model does not hold rows: a cell is read from the object when the
+ * {@link JTable} paints it, and the table only paints the rows in view. When a
+ * column is sorted, its values are read once into a primitive array, which is
+ * kept until the objects change. Sorting orders a permutation of the row
+ * indices by these values, on a background thread, and the table is only
+ * touched on the EDT to swap in the new permutation.
+ */
 public class TablePanel< O >
 {
 
 	private static final int ROW_HEIGHT = 26;
 
+	/** Sorts and builds the columns of all tables, off the EDT. */
+	private static final ExecutorService SORTER = Executors.newSingleThreadExecutor( r -> {
+		final Thread thread = new Thread( r, "TablePanel sorter" );
+		thread.setDaemon( true );
+		return thread;
+	} );
+
+	/** Formats the rows of CSV exports, in chunks. */
+	private static final ExecutorService FORMATTERS = Executors.newFixedThreadPool(
+			Runtime.getRuntime().availableProcessors(), r -> {
+				final Thread thread = new Thread( r, "TablePanel CSV formatter" );
+				thread.setDaemon( true );
+				return thread;
+			} );
+
+	/** Runs the background CSV exports, one at a time. */
+	private static final ExecutorService EXPORTER = Executors.newSingleThreadExecutor( r -> {
+		final Thread thread = new Thread( r, "TablePanel CSV export" );
+		thread.setDaemon( true );
+		return thread;
+	} );
+
+	private static final int EXPORT_CHUNK = 4096;
+
+	private static final int EXPORT_BUFFER = 1 << 16;
+
+	private static final String ASCENDING_ARROW = " &#9650;";
+
+	private static final String DESCENDING_ARROW = " &#9660;";
+
 	private final JTable table;
 
 	private final List< Class< ? > > columnClasses;
@@ -89,7 +142,30 @@ public class TablePanel< O >
 
 	private final BiConsumer< O, String > labelSetter;
 
-	private final List< O > objects;
+	/** The objects, by model row. Replaced as a whole, never changed in place. */
+	private List< O > objects;
+
+	/** View row to model row, <code>null</code> when the table is not sorted. */
+	private int[] viewToModel;
+
+	/** Model row to view row, <code>null</code> when the table is not sorted. */
+	private int[] modelToView;
+
+	/** Model column to the values of its feature, by model row. EDT only. */
+	private final Map< Integer, double[] > columnCache = new HashMap<>();
+
+	/** The model column the table is sorted by, -1 if none. */
+	private int sortColumn = -1;
+
+	private boolean ascending = true;
+
+	/**
+	 * Incremented whenever the objects or the sorting change, so that a sort
+	 * finishing after that is dropped.
+	 */
+	private int generation = 0;
+
+	private final List< String > headerLine = new ArrayList<>();
 
 	private final List< String > features;
 
@@ -203,7 +279,7 @@ public class TablePanel< O >
 		// Class of columns.
 		columnClasses.clear();
 		// Last line of header is for units.
-		final List< String > headerLine = new ArrayList<>();
+		headerLine.clear();
 		// Map from column index to tooltip strings.
 		mapToTooltip.clear();
 
@@ -248,20 +324,18 @@ public class TablePanel< O >
 			tableColumnModel.addColumn( new TableColumn( colIndex++ ) );
 		}
 
-		// Sorting.
-		final TableRowSorter< MyTableModel > sorter = new TableRowSorter<>( tableModel );
-		table.setRowSorter( sorter );
-		for ( int c = 0; c < columnClasses.size(); c++ )
-		{
-			if ( columnClasses.get( c ).equals( Integer.class ) )
-				sorter.setComparator( c, ( i1, i2 ) -> Integer.compare( ( int ) i1, ( int ) i2 ) );
-			else if ( columnClasses.get( c ).equals( Double.class ) )
-				sorter.setComparator( c, ( d1, d2 ) -> Double.compare( ( double ) d1, ( double ) d2 ) );
-			else if ( columnClasses.get( c ).equals( Color.class ) )
-				sorter.setComparator( c, ( c1, c2 ) -> c1.toString().compareTo( c2.toString() ) );
-			else
-				sorter.setComparator( c, Comparator.naturalOrder() );
-		}
+		// Sorting: a click on a header sorts by it, a second one reverses.
+		table.getTableHeader().addMouseListener( new MouseAdapter()
+		{
+			@Override
+			public void mouseClicked( final MouseEvent e )
+			{
+				final int column = table.convertColumnIndexToModel( table.getTableHeader().columnAtPoint( e.getPoint() ) );
+				if ( column < 0 )
+					return;
+				sort( column, column == sortColumn ? !ascending : true );
+			}
+		} );
 
 		// Pass last line to column headers and set cell renderer.
 		final MyTableCellRenderer cellRenderer = new MyTableCellRenderer();
@@ -289,18 +363,196 @@ public class TablePanel< O >
 		this.useColoring = useColoring;
 	}
 
+	/**
+	 * Replaces the objects of the table. If the table is sorted, it is sorted
+	 * again in the background and shown unsorted in the meantime.
+	 *
+	 * @param objects
+	 *            the objects to display.
+	 */
 	@SuppressWarnings( "unchecked" )
 	public void setObjects( final Iterable< O > objects )
 	{
-		this.objects.clear();
+		final List< O > list = new ArrayList<>();
 		this.map.clear();
 		int index = 0;
 		for ( final O o : objects )
 		{
-			this.objects.add( o );
+			list.add( o );
 			map.put( o, index++ );
 		}
+		this.objects = list;
+		generation++;
+		viewToModel = null;
+		modelToView = null;
+		columnCache.clear();
 		( ( MyTableModel ) table.getModel() ).fireTableDataChanged();
+
+		if ( sortColumn >= 0 )
+			sort( sortColumn, ascending );
+	}
+
+	/**
+	 * Drops the cached columns, to be called when feature values of the
+	 * objects displayed change. The current order is kept until the table is
+	 * sorted again.
+	 */
+	public void invalidateColumns()
+	{
+		columnCache.clear();
+		table.repaint();
+	}
+
+	/**
+	 * Sorts the table by the specified column. The values of the column are
+	 * read and sorted on a background thread, the table keeps its current
+	 * order until they are.
+	 *
+	 * @param column
+	 *            the model column to sort by.
+	 * @param ascending
+	 *            the sort order.
+	 */
+	public void sort( final int column, final boolean ascending )
+	{
+		final int gen = ++generation;
+		final List< O > list = objects;
+		final boolean isLabel = column == 0 && labelGenerator != null;
+		final String feature = isLabel ? null : features.get( column - ( labelGenerator == null ? 0 : 1 ) );
+		final double[] cached = columnCache.get( column );
+
+		SORTER.execute( () -> {
+			final int n = list.size();
+			final int[] permutation = new int[ n ];
+			for ( int r = 0; r < n; r++ )
+				permutation[ r ] = r;
+
+			final double[] values;
+			if ( isLabel )
+			{
+				values = null;
+				final String[] labels = new String[ n ];
+				for ( int r = 0; r < n; r++ )
+					labels[ r ] = labelGenerator.apply( list.get( r ) );
+				sort( permutation, ( r1, r2 ) -> compareLabels( labels[ r1 ], labels[ r2 ] ) );
+			}
+			else
+			{
+				values = null == cached ? readColumn( list, feature ) : cached;
+				sort( permutation, ( r1, r2 ) -> Double.compare( values[ r1 ], values[ r2 ] ) );
+			}
+
+			if ( !ascending )
+				for ( int i = 0, j = n - 1; i < j; i++, j-- )
+				{
+					final int tmp = permutation[ i ];
+					permutation[ i ] = permutation[ j ];
+					permutation[ j ] = tmp;
+				}
+
+			SwingUtilities.invokeLater( () -> {
+				if ( gen != generation )
+					return;
+				if ( null != values )
+					columnCache.put( column, values );
+				applySort( permutation, column, ascending );
+			} );
+		} );
+	}
+
+	/**
+	 * Swaps in a new row order, keeping the selection.
+	 */
+	private void applySort( final int[] permutation, final int column, final boolean ascending )
+	{
+		final int[] selected = table.getSelectedRows();
+		for ( int i = 0; i < selected.length; i++ )
+			selected[ i ] = toModel( selected[ i ] );
+
+		final int[] inverse = new int[ permutation.length ];
+		for ( int v = 0; v < permutation.length; v++ )
+			inverse[ permutation[ v ] ] = v;
+
+		viewToModel = permutation;
+		modelToView = inverse;
+		sortColumn = column;
+		this.ascending = ascending;
+
+		final TableColumnModel columnModel = table.getColumnModel();
+		for ( int c = 0; c < columnModel.getColumnCount(); c++ )
+		{
+			final TableColumn tc = columnModel.getColumn( c );
+			final int modelColumn = tc.getModelIndex();
+			final String header = headerLine.get( modelColumn );
+			tc.setHeaderValue( modelColumn != column ? header
+					: header.replaceFirst( "</b>", ( ascending ? ASCENDING_ARROW : DESCENDING_ARROW ) + "</b>" ) );
+		}
+		table.getTableHeader().repaint();
+
+		( ( AbstractTableModel ) table.getModel() ).fireTableDataChanged();
+
+		final ListSelectionModel selectionModel = table.getSelectionModel();
+		selectionModel.setValueIsAdjusting( true );
+		for ( final int row : selected )
+		{
+			final int viewRow = inverse[ row ];
+			selectionModel.addSelectionInterval( viewRow, viewRow );
+		}
+		selectionModel.setValueIsAdjusting( false );
+	}
+
+	private double[] readColumn( final List< O > list, final String feature )
+	{
+		final double[] values = new double[ list.size() ];
+		for ( int r = 0; r < values.length; r++ )
+		{
+			final Double val = featureFun.apply( list.get( r ), feature );
+			values[ r ] = null == val ? Double.NaN : val.doubleValue();
+		}
+		return values;
+	}
+
+	private static int compareLabels( final String l1, final String l2 )
+	{
+		if ( l1 == null )
+			return l2 == null ? 0 : -1;
+		if ( l2 == null )
+			return 1;
+		return l1.compareTo( l2 );
+	}
+
+	/**
+	 * Stable merge sort of the row indices, without boxing.
+	 */
+	private static void sort( final int[] rows, final IntBinaryOperator comparator )
+	{
+		int[] src = rows;
+		int[] dst = new int[ rows.length ];
+		for ( int width = 1; width < rows.length; width <<= 1 )
+		{
+			for ( int lo = 0; lo < rows.length; lo += width << 1 )
+			{
+				final int mid = Math.min( lo + width, rows.length );
+				final int hi = Math.min( lo + ( width << 1 ), rows.length );
+				int i = lo, j = mid, k = lo;
+				while ( i < mid && j < hi )
+					dst[ k++ ] = comparator.applyAsInt( src[ j ], src[ i ] ) < 0 ? src[ j++ ] : src[ i++ ];
+				while ( i < mid )
+					dst[ k++ ] = src[ i++ ];
+				while ( j < hi )
+					dst[ k++ ] = src[ j++ ];
+			}
+			final int[] tmp = src;
+			src = dst;
+			dst = tmp;
+		}
+		if ( src != rows )
+			System.arraycopy( src, 0, rows, 0, rows.length );
+	}
+
+	private int toModel( final int viewRow )
+	{
+		return null == viewToModel ? viewRow : viewToModel[ viewRow ];
 	}
 
 	/**
@@ -334,26 +586,17 @@ public class TablePanel< O >
 	 */
 	public O getObjectForViewRow( final int viewRowIndex )
 	{
-		if ( viewRowIndex < 0 )
+		if ( viewRowIndex < 0 || viewRowIndex >= objects.size() )
 			return null;
-		final int modelRow = table.convertRowIndexToModel( viewRowIndex );
-		return objects.get( modelRow );
+		return objects.get( toModel( viewRowIndex ) );
 	}
 
 	public int getViewRowForObject( final O o )
 	{
 		final int modelRow = map.get( o );
-		if ( modelRow < 0 ) // Object not in table.
-			return -1;
-		try
-		{
-			return table.convertRowIndexToView( modelRow );
-		}
-		catch ( final IndexOutOfBoundsException e )
-		{
-			// Table has been cleared.
+		if ( modelRow < 0 || modelRow >= objects.size() ) // Object not in table.
 			return -1;
-		}
+		return null == modelToView ? modelRow : modelToView[ modelRow ];
 	}
 
 	public void scrollToObject( final O o )
@@ -365,119 +608,303 @@ public class TablePanel< O >
 		table.scrollRectToVisible( cellRect );
 	}
 
+	/**
+	 * Exports the table, in its current order, to a CSV file. Gzip-compressed
+	 * if the file name ends with <code>.gz</code>.
+	 *
+	 * @param file
+	 *            the file to write to.
+	 * @throws IOException
+	 *             if the file cannot be written.
+	 */
 	public void exportToCsv( final File file ) throws IOException
 	{
-		try (CSVWriter writer = new CSVWriter( new FileWriter( file ),
-				CSVWriter.DEFAULT_SEPARATOR,
-				CSVWriter.NO_QUOTE_CHARACTER,
-				CSVWriter.DEFAULT_ESCAPE_CHARACTER,
-				CSVWriter.DEFAULT_LINE_END ))
-		{
-			final int nCols = table.getColumnCount();
-			// Shall we skip the label column?
-			final boolean skipLabelColumn = labelGenerator == null;
-			final int labelColumnShift = skipLabelColumn ? 0 : 1;
-
-			final String[] content = new String[ nCols ];
-
-			/*
-			 * Header.
-			 */
-
-			/*
-			 * Determine whether we can skip 2nd or 3d line, if it's identical
-			 * to the 2nd one (happens when the names are repeated).
-			 */
-
-			boolean skipThirdLine = true;
-			boolean skipSecondLine = true;
-			for ( int i = labelColumnShift; i < content.length; i++ )
-			{
-				final String feature = features.get( i - labelColumnShift );
-				final String name = featureNames.get( features.get( i - labelColumnShift ) );
-				final String shortName = featureShortNames.get( features.get( i - labelColumnShift ) );
-				if ( !feature.equals( name ) )
-					skipSecondLine = false;
-				if ( !name.equals( shortName ) )
-					skipThirdLine = false;
-			}
+		final CsvExport export = new CsvExport( file, file.getName().endsWith( ".gz" ), p -> {}, () -> false );
+		try
+		{
+			export.call();
+		}
+		catch ( final InterruptedException e )
+		{
+			throw new IOException( e );
+		}
+	}
 
-			// Header 1st line.
+	/**
+	 * Exports the table, in its current order, to a CSV file in the
+	 * background. Must be called on the EDT. The rows are formatted in chunks
+	 * on several threads and streamed to the file in order, so that only a few
+	 * chunks are held in memory at a time. A canceled export deletes the
+	 * partial file.
+	 *
+	 * @param file
+	 *            the file to write to.
+	 * @param gzip
+	 *            whether to compress the file.
+	 * @param progress
+	 *            receives the fraction of rows written, on the export thread.
+	 * @param canceled
+	 *            polled between chunks.
+	 * @return a future holding <code>true</code> if the export completed,
+	 *         <code>false</code> if it was canceled.
+	 */
+	public Future< Boolean > exportToCsvInBackground( final File file, final boolean gzip,
+			final DoubleConsumer progress, final BooleanSupplier canceled )
+	{
+		return EXPORTER.submit( new CsvExport( file, gzip, progress, canceled ) );
+	}
+
+	/**
+	 * The header lines of the CSV export. The 2nd and 3rd lines are skipped if
+	 * they repeat the one above (happens when the names are repeated).
+	 */
+	private List< String[] > csvHeader()
+	{
+		final int nCols = columnClasses.size();
+		// Shall we skip the label column?
+		final boolean skipLabelColumn = labelGenerator == null;
+		final int labelColumnShift = skipLabelColumn ? 0 : 1;
+
+		boolean skipThirdLine = true;
+		boolean skipSecondLine = true;
+		for ( int i = labelColumnShift; i < nCols; i++ )
+		{
+			final String feature = features.get( i - labelColumnShift );
+			final String name = featureNames.get( features.get( i - labelColumnShift ) );
+			final String shortName = featureShortNames.get( features.get( i - labelColumnShift ) );
+			if ( !feature.equals( name ) )
+				skipSecondLine = false;
+			if ( !name.equals( shortName ) )
+				skipThirdLine = false;
+		}
+
+		final List< String[] > lines = new ArrayList<>( 4 );
+
+		// Header 1st line.
+		String[] content = new String[ nCols ];
+		if ( !skipLabelColumn )
+			content[ 0 ] = "LABEL";
+		for ( int i = labelColumnShift; i < nCols; i++ )
+			content[ i ] = features.get( i - labelColumnShift );
+		lines.add( content );
+
+		// Header 2nd line.
+		if ( !skipSecondLine )
+		{
+			content = new String[ nCols ];
 			if ( !skipLabelColumn )
-				content[ 0 ] = "LABEL";
-			for ( int i = labelColumnShift; i < content.length; i++ )
-				content[ i ] = features.get( i - labelColumnShift );
-			writer.writeNext( content );
+				content[ 0 ] = "Label";
+			for ( int i = labelColumnShift; i < nCols; i++ )
+				content[ i ] = featureNames.get( features.get( i - labelColumnShift ) );
+			lines.add( content );
+		}
+
+		// Header 3rd line.
+		if ( !skipThirdLine )
+		{
+			content = new String[ nCols ];
+			if ( !skipLabelColumn )
+				content[ 0 ] = "Label";
+			for ( int i = labelColumnShift; i < nCols; i++ )
+				content[ i ] = featureShortNames.get( features.get( i - labelColumnShift ) );
+			lines.add( content );
+		}
+
+		// Header 4th line.
+		content = new String[ nCols ];
+		if ( !skipLabelColumn )
+			content[ 0 ] = "";
+		for ( int i = labelColumnShift; i < nCols; i++ )
+		{
+			final String units = featureUnits.get( features.get( i - labelColumnShift ) );
+			content[ i ] = ( units == null || units.isEmpty() ) ? "" : "(" + units + ")";
+		}
+		lines.add( content );
+
+		return lines;
+	}
+
+	/**
+	 * Appends a field, escaping quotes by doubling them as the previous
+	 * {@link com.opencsv.CSVWriter}-based export did.
+	 */
+	private static void appendField( final StringBuilder sb, final String str )
+	{
+		if ( null == str )
+			return;
+		for ( int i = 0; i < str.length(); i++ )
+		{
+			final char c = str.charAt( i );
+			if ( c == '"' )
+				sb.append( '"' );
+			sb.append( c );
+		}
+	}
+
+	/*
+	 * INNER CLASSES
+	 */
+
+	/**
+	 * Streams the rows of the table to a file. Everything it reads from the
+	 * table is captured when it is created, so it can run on any thread.
+	 */
+	private class CsvExport implements Callable< Boolean >
+	{
 
-			// Header 2nd line.
-			if ( !skipSecondLine )
+		private final File file;
+
+		private final boolean gzip;
+
+		private final DoubleConsumer progress;
+
+		private final BooleanSupplier canceled;
+
+		private final List< O > list;
+
+		private final int[] order;
+
+		private final Map< Integer, double[] > columns;
+
+		private final List< String[] > header;
+
+		private final int nCols;
+
+		public CsvExport( final File file, final boolean gzip, final DoubleConsumer progress, final BooleanSupplier canceled )
+		{
+			this.file = file;
+			this.gzip = gzip;
+			this.progress = progress;
+			this.canceled = canceled;
+			this.list = objects;
+			this.order = viewToModel;
+			this.columns = new HashMap<>( columnCache );
+			this.header = csvHeader();
+			this.nCols = columnClasses.size();
+		}
+
+		@Override
+		public Boolean call() throws IOException, InterruptedException
+		{
+			final int nRows = list.size();
+			final int window = 2 * Runtime.getRuntime().availableProcessors();
+			final ArrayDeque< Future< StringBuilder > > inFlight = new ArrayDeque<>( window );
+			boolean completed = false;
+
+			OutputStream out = new FileOutputStream( file );
+			if ( gzip )
+				out = new GZIPOutputStream( out, EXPORT_BUFFER );
+
+			try (final Writer writer = new BufferedWriter( new OutputStreamWriter( out, StandardCharsets.UTF_8 ), EXPORT_BUFFER ))
 			{
-				if ( !skipLabelColumn )
-					content[ 0 ] = "Label";
-				for ( int i = labelColumnShift; i < content.length; i++ )
-					content[ i ] = featureNames.get( features.get( i - labelColumnShift ) );
-				writer.writeNext( content );
-			}
+				final StringBuilder headerBuilder = new StringBuilder();
+				for ( final String[] line : header )
+				{
+					for ( int col = 0; col < line.length; col++ )
+					{
+						if ( col > 0 )
+							headerBuilder.append( ',' );
+						appendField( headerBuilder, line[ col ] );
+					}
+					headerBuilder.append( '\n' );
+				}
+				writer.append( headerBuilder );
+
+				int next = 0;
+				int written = 0;
+				while ( written < nRows )
+				{
+					if ( canceled.getAsBoolean() || Thread.currentThread().isInterrupted() )
+						return Boolean.FALSE;
 
-			// Header 3rd line.
-			if ( !skipThirdLine )
+					// keep a few chunks ahead being formatted
+					while ( next < nRows && inFlight.size() < window )
+					{
+						final int from = next;
+						final int to = Math.min( nRows, from + EXPORT_CHUNK );
+						inFlight.add( FORMATTERS.submit( () -> format( from, to ) ) );
+						next = to;
+					}
+
+					writer.append( inFlight.poll().get() );
+					written = Math.min( nRows, written + EXPORT_CHUNK );
+					progress.accept( ( double ) written / nRows );
+				}
+				completed = true;
+			}
+			catch ( final ExecutionException e )
 			{
-				if ( !skipLabelColumn )
-					content[ 0 ] = "Label";
-				for ( int i = labelColumnShift; i < content.length; i++ )
-					content[ i ] = featureShortNames.get( features.get( i - labelColumnShift ) );
-				writer.writeNext( content );
+				throw new IOException( e.getCause() );
 			}
-
-			// Header 4th line.
-			if ( !skipLabelColumn )
-				content[ 0 ] = "";
-			for ( int i = labelColumnShift; i < content.length; i++ )
+			finally
 			{
-				final String feature = features.get( i - labelColumnShift );
-				final String units = featureUnits.get( feature );
-				final String unitsStr = ( units == null || units.isEmpty() ) ? "" : "(" + units + ")";
-				content[ i ] = unitsStr;
+				for ( final Future< StringBuilder > future : inFlight )
+					future.cancel( true );
+				if ( !completed )
+					file.delete();
 			}
-			writer.writeNext( content );
+			progress.accept( 1. );
+			return Boolean.TRUE;
+		}
 
-			/*
-			 * Content.
-			 */
+		private StringBuilder format( final int from, final int to )
+		{
+			final boolean hasLabel = labelGenerator != null;
+			final int labelColumnShift = hasLabel ? 1 : 0;
+			final StringBuilder sb = new StringBuilder( ( to - from ) * nCols * 12 );
 
-			final int nRows = table.getRowCount();
-			final TableModel model = table.getModel();
-			for ( int r = 0; r < nRows; r++ )
+			for ( int r = from; r < to; r++ )
 			{
-				final int row = table.convertRowIndexToModel( r );
+				final int modelRow = null == order ? r : order[ r ];
+				final O o = list.get( modelRow );
+
 				for ( int col = 0; col < nCols; col++ )
 				{
-					final Object obj = model.getValueAt( row, col );
-					if ( null == obj )
-						content[ col ] = "";
-					else if ( obj instanceof Integer )
-						content[ col ] = Integer.toString( ( Integer ) obj );
-					else if ( obj instanceof Double )
-						content[ col ] = Double.toString( ( Double ) obj );
-					else if ( obj instanceof Boolean )
-						content[ col ] = ( ( Boolean ) obj ) ? "1" : "0";
-					else if ( obj instanceof Color )
+					if ( col > 0 )
+						sb.append( ',' );
+					if ( null == o )
+						continue;
+
+					if ( col == 0 && hasLabel )
+					{
+						appendField( sb, labelGenerator.apply( o ) );
+						continue;
+					}
+
+					final String feature = features.get( col - labelColumnShift );
+					final double[] column = columns.get( col );
+					final double val;
+					if ( null != column && !Double.isNaN( column[ modelRow ] ) )
 					{
-						final Color color = ( Color ) obj;
-						content[ col ] = String.format( "r=%d;g=%d;b=%d", color.getRed(), color.getGreen(), color.getBlue() );
+						val = column[ modelRow ];
 					}
 					else
-						content[ col ] = obj.toString();
+					{
+						final Double v = featureFun.apply( o, feature );
+						if ( null == v )
+							continue;
+						val = v.doubleValue();
+					}
+
+					final Class< ? > pclass = columnClasses.get( col );
+					if ( pclass.equals( Color.class ) )
+					{
+						final int argb = ( int ) val;
+						sb.append( "r=" ).append( ( argb >> 16 ) & 0xFF )
+								.append( ";g=" ).append( ( argb >> 8 ) & 0xFF )
+								.append( ";b=" ).append( argb & 0xFF );
+					}
+					else if ( pclass.equals( Integer.class ) )
+						sb.append( ( int ) val );
+					else
+						sb.append( val );
 				}
-				writer.writeNext( content );
+				sb.append( '\n' );
 			}
+			return sb;
 		}
 	}
 
-	/*
-	 * INNER CLASSES
-	 */
-
 	private class MyTableToolTipProvider extends MouseMotionAdapter
 	{
 		private int previousCol = -1;
@@ -503,6 +930,10 @@ public class TablePanel< O >
 		}
 	}
 
+	/**
+	 * Rows of this model are in view order: the sorting is done here and not
+	 * by a row sorter.
+	 */
 	private class MyTableModel extends AbstractTableModel
 	{
 
@@ -523,10 +954,11 @@ public class TablePanel< O >
 		@Override
 		public Object getValueAt( final int rowIndex, final int columnIndex )
 		{
-			if ( rowIndex < 0 )
+			if ( rowIndex < 0 || rowIndex >= objects.size() )
 				return null;
 
-			final O o = objects.get( rowIndex );
+			final int modelRow = toModel( rowIndex );
+			final O o = objects.get( modelRow );
 			if ( null == o )
 				return null;
 
@@ -536,7 +968,11 @@ public class TablePanel< O >
 			else
 			{
 				final String feature = features.get( columnIndex - skipLabelColumn );
-				final Double val = featureFun.apply( o, feature );
+				// NaN in the cache may stand for a missing value, ask again
+				final double[] column = columnCache.get( columnIndex );
+				final Double val = null != column && !Double.isNaN( column[ modelRow ] )
+						? Double.valueOf( column[ modelRow ] )
+						: featureFun.apply( o, feature );
 
 				if ( feature.equals( manualColorFeature ) )
 					return val == null ? null : new Color( val.intValue(), true );
@@ -559,7 +995,7 @@ public class TablePanel< O >
 
 			if ( columnIndex == 0 )
 			{
-				final O o = objects.get( rowIndex );
+				final O o = getObjectForViewRow( rowIndex );
 				if ( null == o )
 					return;
 				labelSetter.accept( o, ( String ) aValue );
@@ -684,6 +1120,7 @@ public class TablePanel< O >
 						final Color c = colorChooser.getColor();
 						if ( c != null )
 						{
+							columnCache.remove( table.convertColumnIndexToModel( column ) );
 							final int[] rows = TablePanel.this.getTable().getSelectedRows();
 							if ( rows.length > 1 )
 							{
@@ -28,13 +28,14 @@ import java.awt.BorderLayout;
 import java.awt.Color;
 import java.awt.event.WindowAdapter;
 import java.io.File;
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.BiConsumer;
 import java.util.function.BiFunction;
@@ -49,12 +50,15 @@ import javax.swing.JPanel;
 import javax.swing.JTabbedPane;
 import javax.swing.JTable;
 import javax.swing.JToggleButton;
+import javax.swing.ProgressMonitor;
+import javax.swing.SwingUtilities;
 import javax.swing.event.ListSelectionEvent;
 import javax.swing.event.ListSelectionListener;
 import javax.swing.filechooser.FileNameExtensionFilter;
 
 import org.jgrapht.graph.DefaultWeightedEdge;
 import fiji.plugin.vollseg_kymo.Stat;
+import fiji.plugin.vollseg_kymo.StatCollection;
 import fiji.plugin.vollseg_kymo.Dimension;
 import fiji.plugin.vollseg_kymo.util.FileChooser;
 import fiji.plugin.vollseg_kymo.util.FileChooser.DialogType;
@@ -84,6 +88,12 @@ public class TrackTableView extends JFrame implements TrackMateModelView, ModelC
 
 	private final AtomicBoolean ignoreSelectionChange = new AtomicBoolean( false );
 
+	/**
+	 * The stats as they were when the rows of the Stat table were last set,
+	 * the visibility it shows is read from it.
+	 */
+	private volatile StatCollection.Snapshot statSnapshot;
+
 
 	public TrackTableView(final Model model  )
 	{
@@ -150,6 +160,7 @@ public class TrackTableView extends JFrame implements TrackMateModelView, ModelC
 			break;
 		case 2:
 			table = resfrequTable;
+			break;
 		default:
 			throw new IllegalArgumentException( "Unknown table with index " + index );
 		}
@@ -157,7 +168,7 @@ public class TrackTableView extends JFrame implements TrackMateModelView, ModelC
 		final File file = FileChooser.chooseFile(
 				this,
 				selectedFile,
-				new FileNameExtensionFilter( "CSV files", "csv" ),
+				new FileNameExtensionFilter( "CSV files, gzip-compressed if .gz", "csv", "gz" ),
 				"Export table to CSV",
 				DialogType.SAVE,
 				SelectionMode.FILES_ONLY );
@@ -165,24 +176,43 @@ public class TrackTableView extends JFrame implements TrackMateModelView, ModelC
 			return;
 
 		selectedFile = file.getAbsolutePath();
-		try
-		{
-			table.exportToCsv( file );
-		}
-		catch ( final IOException e )
-		{
-			model.getLogger().error( "Problem exporting to file "
-					+ file + "\n" + e.getMessage() );
-		}
+
+		// runs in the background, the monitor shows the progress and cancels
+		final ProgressMonitor monitor = new ProgressMonitor( this, "Exporting " + file.getName(), null, 0, 1000 );
+		monitor.setMillisToDecideToPopup( 200 );
+		final AtomicBoolean canceled = new AtomicBoolean( false );
+		final Future< Boolean > export = table.exportToCsvInBackground( file, file.getName().endsWith( ".gz" ),
+				p -> SwingUtilities.invokeLater( () -> {
+					monitor.setProgress( ( int ) ( 1000 * p ) );
+					if ( monitor.isCanceled() )
+						canceled.set( true );
+				} ),
+				canceled::get );
+
+		new Thread( () -> {
+			try
+			{
+				if ( !export.get() )
+					model.getLogger().log( "Export to " + file + " canceled.\n" );
+			}
+			catch ( final InterruptedException | ExecutionException e )
+			{
+				model.getLogger().error( "Problem exporting to file "
+						+ file + "\n" + e.getMessage() );
+			}
+			finally
+			{
+				SwingUtilities.invokeLater( monitor::close );
+			}
+		}, "TrackTableView export" ).start();
 	}
 
 	
 
 	private final TablePanel< Stat > createStatTable( final Model model )
 	{
-		final List< Stat > objects = new ArrayList<>();
-		for ( final Integer trackID : model.getTrackModel().unsortedTrackIDs( true ) )
-			objects.addAll( model.getTrackModel().trackStats( trackID ) );
+		statSnapshot = model.snapshot();
+		final List< Stat > objects = visibleTrackStats( statSnapshot );
 		final List< String > features = new ArrayList<>( model.getFeatureModel().getStatFeatures() );
 		final Map< String, String > featureNames = model.getFeatureModel().getStatFeatureNames();
 		final Map< String, String > featureShortNames = model.getFeatureModel().getStatFeatureShortNames();
@@ -228,12 +258,17 @@ public class TrackTableView extends JFrame implements TrackMateModelView, ModelC
 			}
 			else if ( feature.equals( Stat_ID ) )
 				return ( double ) Stat.ID(); 
+			else if ( feature.equals( StatCollection.VISIBILITY ) )
+				return statSnapshot.getDoubleFeature( Stat, feature );
 
-			return Stat.getFeature( feature );
+			return Stat.getDoubleFeature( feature );
 		};
 
-		final BiConsumer< Stat, Color > colorSetter =
-				( Stat, color ) -> Stat.putFeature( ManualStatColorAnalyzerFactory.FEATURE, Double.valueOf( color.getRGB() ) );
+		// the model drops the cached columns of its stats and tells the views
+		final BiConsumer< Stat, Color > colorSetter = ( Stat, color ) -> {
+			Stat.putFeature( ManualStatColorAnalyzerFactory.FEATURE, Double.valueOf( color.getRGB() ) );
+			model.notifyFeaturesComputed();
+		};
 
 		final Supplier< FeatureColorGenerator< Stat > > coloring =
 				() -> FeatureUtils.createStatColorGenerator( model, ds );
@@ -268,6 +303,21 @@ public class TrackTableView extends JFrame implements TrackMateModelView, ModelC
 	}
 
 	@Override
+	/**
+	 * @return the Stats of the visible tracks that are in the snapshot. The
+	 *         collection may be filtered meanwhile, the snapshot keeps the
+	 *         rows and the visibility they show consistent.
+	 */
+	private List< Stat > visibleTrackStats( final StatCollection.Snapshot snapshot )
+	{
+		final List< Stat > stats = new ArrayList<>();
+		for ( final Integer trackID : model.getTrackModel().unsortedTrackIDs( true ) )
+			for ( final Stat stat : model.getTrackModel().trackStats( trackID ) )
+				if ( null != snapshot.search( stat.ID() ) )
+					stats.add( stat );
+		return stats;
+	}
+
 	public void refresh()
 	{
 		repaint();
@@ -278,14 +328,15 @@ public class TrackTableView extends JFrame implements TrackMateModelView, ModelC
 	{
 		if ( event.getEventID() == ModelChangeEvent.FEATURES_COMPUTED )
 		{
+			StatTable.invalidateColumns();
+			edgeTable.invalidateColumns();
+			trackTable.invalidateColumns();
 			refresh();
 			return;
 		}
 
-		final List< Stat > Stats = new ArrayList<>();
-		for ( final Integer trackID : model.getTrackModel().unsortedTrackIDs( true ) )
-			Stats.addAll( model.getTrackModel().trackStats( trackID ) );
-		StatTable.setObjects( Stats );
+		statSnapshot = model.snapshot();
+		StatTable.setObjects( visibleTrackStats( statSnapshot ) );
 
 		final List< DefaultWeightedEdge > edges = new ArrayList<>();
 		for ( final Integer trackID : model.getTrackModel().unsortedTrackIDs( true ) )
@@ -27,6 +27,7 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Random;
 
 import mpicbg.models.AbstractModel;
 import mpicbg.models.IllDefinedDataPointsException;
@@ -44,6 +45,34 @@ public abstract class AbstractFunction2D< M extends AbstractFunction2D< M > > ex
 {
 	private static final long serialVersionUID = 9102425001575237374L;
 
+	/** The seed every thread's RANSAC random number generator starts with. */
+	public static final long DEFAULT_SEED = 69997;
+
+	/**
+	 * One random number generator per thread, so that fits running in
+	 * parallel neither disturb each other nor depend on the order they run in.
+	 */
+	private static final ThreadLocal< Random > random = ThreadLocal.withInitial( () -> new Random( DEFAULT_SEED ) );
+
+	/**
+	 * @return the random number generator for RANSAC fits of this thread
+	 */
+	protected static Random random()
+	{
+		return random.get();
+	}
+
+	/**
+	 * Re-seeds the random number generator of the calling thread, so that the
+	 * following fit on the same points gives the same segments.
+	 *
+	 * @param seed the new seed
+	 */
+	public static void setRandomSeed( final long seed )
+	{
+		random.get().setSeed( seed );
+	}
+
 	/**
 	 * Find the {@link AbstractModel} of a set of {@link PointMatch} candidates
 	 * containing a high number of outliers using
@@ -96,7 +125,7 @@ A:		while ( i < iterations )
 				P p;
 				do
 				{
-					p = candidates.get( ( int )( rnd.nextDouble() * candidates.size() ) );
+					p = candidates.get( ( int )( random().nextDouble() * candidates.size() ) );
 				}
 				while ( minMatches.contains( p ) );
 				minMatches.add( p );
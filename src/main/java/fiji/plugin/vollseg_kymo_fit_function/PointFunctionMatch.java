@@ -42,6 +42,16 @@ public class PointFunctionMatch extends PointMatch
 	{
 		super( p1, null );
 	}
+
+	/**
+	 * A match whose distance to the function is already known, e.g. a copy or
+	 * a match read back from disk.
+	 */
+	public PointFunctionMatch( final Point p1, final double distance )
+	{
+		super( p1, null );
+		this.distance = distance;
+	}
 	
 	//public Function<Point> getFunction() { return function; }
 
@@ -206,7 +206,7 @@ A:		while ( i < iterations )
 				P p;
 				do
 				{
-					p = candidates.get( ( int )( rnd.nextDouble() * candidates.size() ) );
+					p = candidates.get( ( int )( random().nextDouble() * candidates.size() ) );
 				}
 				while ( minMatches.contains( p ) );
 				minMatches.add( p );
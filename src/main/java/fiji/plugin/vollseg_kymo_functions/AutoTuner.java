@@ -0,0 +1,262 @@
+/*-
+ * #%L
+ * Microtubule tracker.
+ * %%
+ * Copyright (C) 2017 MTrack developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.vollseg_kymo_functions;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import net.imglib2.util.Pair;
+
+import fiji.plugin.vollseg_kymo.RingBufferLogger;
+import fiji.plugin.vollseg_kymo_fit_function.AbstractFunction2D;
+import fiji.plugin.vollseg_kymo_fit_function.PointFunctionMatch;
+import fiji.plugin.vollseg_kymo_fit_function.polynomial.Polynomial;
+import mpicbg.models.Point;
+
+/**
+ * Picks maxError, minInliers and maxDist per track instead of using one set
+ * for the whole batch. Candidate sets on the grid of the
+ * {@link ParameterLattice} around the user's settings are fitted in parallel
+ * and scored with the Bayesian information criterion of the piecewise model
+ * they produce,
+ *
+ * <pre>
+ * BIC = n ln(RSS / n) + k ln(n)
+ * </pre>
+ *
+ * where n is the number of timepoints, RSS the squared distance of every
+ * timepoint to the segment covering it (or the nearest one in time) and k the
+ * number of coefficients plus the breakpoints between segments. More segments
+ * only win if they explain the track sufficiently better. The search stops
+ * when the time budget of the track is used up, the best candidate so far is
+ * kept.
+ */
+public class AutoTuner
+{
+	/**
+	 * Candidates are the lattice grid points at most this many grid steps
+	 * away from the user's settings.
+	 */
+	public static final int RADIUS = 2;
+
+	private final ExecutorService executor;
+
+	public AutoTuner()
+	{
+		this( Runtime.getRuntime().availableProcessors() );
+	}
+
+	public AutoTuner( final int nThreads )
+	{
+		this.executor = Executors.newFixedThreadPool( nThreads, r -> {
+			final Thread thread = new Thread( r, "AutoTuner" );
+			thread.setDaemon( true );
+			return thread;
+		} );
+	}
+
+	/**
+	 * @return the best scoring candidate, null if none of them produced a
+	 *         segment within the budget
+	 */
+	public Result tune( final ArrayList< Point > points, final AbstractFunction2D< ? > function, final long seed,
+			final double maxError, final int minInliers, final int maxDist, final long budgetMillis )
+	{
+		final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos( budgetMillis );
+		final BooleanSupplier canceled = () -> System.nanoTime() > deadline;
+
+		final ArrayList< Callable< Result > > tasks = new ArrayList< Callable< Result > >();
+
+		// the user's settings compete as well
+		tasks.add( candidate( points, function, seed, maxError, minInliers, maxDist, canceled ) );
+
+		for ( final ParameterLattice.GridPoint g : gridAround( maxError, minInliers, maxDist ) )
+			tasks.add( candidate( points, function, seed, g.maxError(), g.minInliers(), g.maxDist(), canceled ) );
+
+		Result best = null;
+		int evaluated = 0;
+
+		try
+		{
+			final List< Future< Result > > futures = executor.invokeAll( tasks, budgetMillis, TimeUnit.MILLISECONDS );
+
+			for ( final Future< Result > future : futures )
+			{
+				if ( future.isCancelled() )
+					continue;
+
+				final Result result = future.get();
+
+				if ( result == null )
+					continue;
+
+				++evaluated;
+
+				if ( best == null || result.score < best.score )
+					best = result;
+			}
+		}
+		catch ( InterruptedException e )
+		{
+			Thread.currentThread().interrupt();
+		}
+		catch ( ExecutionException e )
+		{
+			RingBufferLogger.CONSOLE.warn( "Auto-tuning failed: %s", e.getCause() );
+		}
+		catch ( CancellationException e )
+		{
+			RingBufferLogger.CONSOLE.debug( "Auto-tuning canceled" );
+		}
+
+		if ( best != null )
+			best.evaluated = evaluated;
+
+		return best;
+	}
+
+	public void shutdown()
+	{
+		executor.shutdownNow();
+	}
+
+	protected static ArrayList< ParameterLattice.GridPoint > gridAround( final double maxError, final int minInliers, final int maxDist )
+	{
+		final ArrayList< ParameterLattice.GridPoint > grid = new ArrayList< ParameterLattice.GridPoint >();
+
+		// the lattice grid, cut down to a ball of RADIUS grid steps (distance
+		// is squared)
+		for ( final ParameterLattice.GridPoint g : ParameterLattice.gridAround( maxError, minInliers, maxDist ) )
+			if ( g.distance( maxError, minInliers, maxDist ) <= RADIUS * RADIUS )
+				grid.add( g );
+
+		return grid;
+	}
+
+	protected static Callable< Result > candidate( final ArrayList< Point > points, final AbstractFunction2D< ? > function,
+			final long seed, final double maxError, final int minInliers, final int maxDist, final BooleanSupplier canceled )
+	{
+		return () -> {
+			if ( canceled.getAsBoolean() )
+				return null;
+
+			AbstractFunction2D.setRandomSeed( seed );
+
+			@SuppressWarnings( { "rawtypes", "unchecked" } )
+			final ArrayList< Pair< AbstractFunction2D, ArrayList< PointFunctionMatch > > > segments = Tracking.findAllFunctions(
+					points, ( AbstractFunction2D ) function, maxError, minInliers, maxDist, canceled );
+
+			if ( segments == null || segments.size() == 0 )
+				return null;
+
+			final Segmentation segmentation = new Segmentation( segments );
+
+			return new Result( maxError, minInliers, maxDist, bic( points, segmentation ), segmentation );
+		};
+	}
+
+	/**
+	 * @return the BIC of the piecewise model, {@link Double#MAX_VALUE} if there
+	 *         are no segments
+	 */
+	@SuppressWarnings( "unchecked" )
+	public static double bic( final ArrayList< Point > points, final Segmentation segmentation )
+	{
+		final int n = points.size();
+		final int size = segmentation.size();
+
+		if ( size == 0 || n == 0 )
+			return Double.MAX_VALUE;
+
+		final double[] from = new double[ size ];
+		final double[] to = new double[ size ];
+		int k = size - 1;
+
+		for ( int s = 0; s < size; ++s )
+		{
+			final Pair< Double, Double > minMax = Tracking.fromTo( segmentation.segments.get( s ).getB() );
+			from[ s ] = minMax.getA();
+			to[ s ] = minMax.getB();
+			k += ( ( Polynomial< ?, Point > ) segmentation.segments.get( s ).getA() ).degree() + 1;
+		}
+
+		double rss = 0;
+
+		for ( final Point p : points )
+		{
+			final double t = p.getW()[ 0 ];
+
+			// the segment covering t, or the one closest to it in time
+			int nearest = 0;
+			double nearestDistance = Double.MAX_VALUE;
+
+			for ( int s = 0; s < size; ++s )
+			{
+				final double distance = t < from[ s ] ? from[ s ] - t : t > to[ s ] ? t - to[ s ] : 0;
+
+				if ( distance < nearestDistance )
+				{
+					nearestDistance = distance;
+					nearest = s;
+				}
+			}
+
+			final double residual = p.getW()[ 1 ]
+					- ( ( Polynomial< ?, Point > ) segmentation.segments.get( nearest ).getA() ).predict( t );
+			rss += residual * residual;
+		}
+
+		return n * Math.log( Math.max( rss / n, 1e-12 ) ) + k * Math.log( n );
+	}
+
+	/**
+	 * A scored candidate.
+	 */
+	public static class Result
+	{
+		public final double maxError;
+		public final int minInliers;
+		public final int maxDist;
+		public final double score;
+		public final Segmentation segmentation;
+
+		/** How many candidates were scored before the budget ran out. */
+		public int evaluated;
+
+		public Result( final double maxError, final int minInliers, final int maxDist, final double score, final Segmentation segmentation )
+		{
+			this.maxError = maxError;
+			this.minInliers = minInliers;
+			this.maxDist = maxDist;
+			this.score = score;
+			this.segmentation = segmentation;
+		}
+	}
+}
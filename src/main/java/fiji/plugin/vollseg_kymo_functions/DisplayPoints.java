@@ -28,6 +28,7 @@ import javax.swing.JPanel;
 
 import org.jfree.chart.ChartPanel;
 import org.jfree.chart.JFreeChart;
+import org.jfree.chart.plot.XYPlot;
 
 public class DisplayPoints {
 	public static JFrame display( final JFreeChart chart ) { return display( chart, new Dimension( 800, 500 ) ); }
@@ -51,6 +52,10 @@ public class DisplayPoints {
 				);
 		panel.add( chartPanel );
 
+		// draw only as many points as there are pixels to draw them on
+		if ( chart.getPlot() instanceof XYPlot && chart.getXYPlot().getDataset() instanceof PrimitiveXYDataset )
+			( ( PrimitiveXYDataset ) chart.getXYPlot().getDataset() ).attach( chartPanel );
+
 		final JFrame frame = new JFrame();
 		frame.setContentPane( panel );
 		frame.validate();
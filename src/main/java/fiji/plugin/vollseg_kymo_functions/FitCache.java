@@ -0,0 +1,427 @@
+/*-
+ * #%L
+ * Microtubule tracker.
+ * %%
+ * Copyright (C) 2017 MTrack developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.vollseg_kymo_functions;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+
+import net.imglib2.util.Pair;
+import net.imglib2.util.ValuePair;
+
+import fiji.plugin.vollseg_kymo.RingBufferLogger;
+import fiji.plugin.vollseg_kymo_fit_function.AbstractFunction2D;
+import fiji.plugin.vollseg_kymo_fit_function.PointFunctionMatch;
+import mpicbg.models.Point;
+
+/**
+ * Content addressed cache for the segments found by
+ * {@link Tracking#findAllFunctions}. A result is keyed by the hash of the
+ * track file together with the RANSAC parameters, kept in a bounded LRU in
+ * memory and, if a directory is set, also written to disk so that it survives
+ * a restart of the plugin.
+ *
+ * On disk the inliers of each segment are stored with their distance to the
+ * function, the function is re-fitted to them on load which gives back the
+ * same function RANSAC ended with. Files written before the distances were
+ * stored get them recomputed from the re-fitted function.
+ * <p>
+ * The segmentations kept here are never handed out, every lookup returns a
+ * {@link Segmentation#copy()} the caller may sort or modify.
+ */
+public class FitCache
+{
+	/** The seed the RANSAC random number generators start with. */
+	public static final long DEFAULT_SEED = AbstractFunction2D.DEFAULT_SEED;
+
+	public static final int DEFAULT_CAPACITY = 256;
+
+	private static final String SUFFIX = ".fit";
+
+	private final LinkedHashMap< Key, Segmentation > memory;
+
+	private final HashMap< String, Pair< Long, String > > hashes = new HashMap< String, Pair< Long, String > >();
+
+	private File diskDirectory = null;
+
+	private long hits = 0, misses = 0;
+
+	public FitCache() { this( DEFAULT_CAPACITY ); }
+
+	public FitCache( final int capacity )
+	{
+		this.memory = new LinkedHashMap< Key, Segmentation >( 16, 0.75f, true )
+		{
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry( final Map.Entry< Key, Segmentation > eldest )
+			{
+				return size() > capacity;
+			}
+		};
+	}
+
+	/**
+	 * Sets the directory of the on-disk tier, <code>null</code> disables it.
+	 */
+	public synchronized void setDiskDirectory( final File directory )
+	{
+		if ( directory != null && !directory.isDirectory() && !directory.mkdirs() )
+		{
+			RingBufferLogger.CONSOLE.warn( "Could not create fit cache directory %s", directory );
+			this.diskDirectory = null;
+		}
+		else
+		{
+			this.diskDirectory = directory;
+		}
+	}
+
+	public synchronized File getDiskDirectory() { return diskDirectory; }
+
+	public synchronized long getHits() { return hits; }
+
+	public synchronized long getMisses() { return misses; }
+
+	public synchronized void clear()
+	{
+		memory.clear();
+		hashes.clear();
+	}
+
+	/**
+	 * Builds the key of a fit of the given track file, returns <code>null</code>
+	 * if the file can not be hashed.
+	 */
+	public Key key( final File file, final double maxError, final int minInliers, final int maxDist,
+			final int functionChoice, final double lambda, final long seed )
+	{
+		final String hash = contentHash( file );
+
+		if ( hash == null )
+			return null;
+
+		return new Key( hash, maxError, minInliers, maxDist, functionChoice, lambda, seed );
+	}
+
+	/**
+	 * Same as {@link Tracking#findAllFunctions}, but returns the cached
+	 * segmentation if this fit was done before. A <code>null</code> key always
+	 * fits, a canceled fit returns <code>null</code> and is not stored.
+	 */
+	@SuppressWarnings( { "rawtypes", "unchecked" } )
+	public Segmentation segment(
+			final Key key,
+			final ArrayList< Point > points,
+			final AbstractFunction2D function,
+			final double maxError,
+			final int minInliers,
+			final int maxDist,
+			final BooleanSupplier canceled )
+	{
+		if ( key == null )
+			return wrap( Tracking.findAllFunctions( points, function, maxError, minInliers, maxDist, canceled ) );
+
+		final Segmentation cached = get( key, function );
+
+		if ( cached != null )
+			return cached;
+
+		AbstractFunction2D.setRandomSeed( key.seed );
+		final Segmentation segmentation = wrap( Tracking.findAllFunctions( points, function, maxError, minInliers, maxDist, canceled ) );
+
+		if ( segmentation == null )
+			return null;
+
+		put( key, segmentation );
+
+		return segmentation.copy();
+	}
+
+	protected static Segmentation wrap( final ArrayList< Pair< AbstractFunction2D, ArrayList< PointFunctionMatch > > > segments )
+	{
+		return segments == null ? null : new Segmentation( segments );
+	}
+
+	/**
+	 * @return a copy of the cached segmentation, null if there is none
+	 */
+	public synchronized Segmentation get( final Key key, final AbstractFunction2D< ? > function )
+	{
+		Segmentation segmentation = memory.get( key );
+
+		if ( segmentation == null && diskDirectory != null )
+		{
+			segmentation = wrap( read( new File( diskDirectory, key.toFileName() ), function ) );
+
+			if ( segmentation != null )
+				memory.put( key, segmentation );
+		}
+
+		if ( segmentation == null )
+		{
+			++misses;
+			return null;
+		}
+
+		++hits;
+
+		return segmentation.copy();
+	}
+
+	/**
+	 * Same as {@link #get(Key, AbstractFunction2D)}, but only looks in memory
+	 * and does not count a hit or a miss, for readers that should not change
+	 * what this cache keeps.
+	 *
+	 * @return a copy of the cached segmentation, null if there is none
+	 */
+	public synchronized Segmentation peek( final Key key )
+	{
+		final Segmentation segmentation = memory.get( key );
+
+		return segmentation == null ? null : segmentation.copy();
+	}
+
+	/**
+	 * Stores a copy of the segmentation, later changes to it do not reach the
+	 * cache.
+	 */
+	public synchronized void put( final Key key, final Segmentation segmentation )
+	{
+		memory.put( key, segmentation.copy() );
+
+		if ( diskDirectory != null )
+			write( new File( diskDirectory, key.toFileName() ), key, segmentation.segments );
+	}
+
+	/**
+	 * SHA-1 of the file content, remembered as long as the file keeps its size
+	 * and modification time.
+	 */
+	public synchronized String contentHash( final File file )
+	{
+		if ( file == null )
+			return null;
+
+		final long stamp = file.lastModified() * 31 + file.length();
+		final Pair< Long, String > known = hashes.get( file.getAbsolutePath() );
+
+		if ( known != null && known.getA() == stamp )
+			return known.getB();
+
+		try
+		{
+			final MessageDigest digest = MessageDigest.getInstance( "SHA-1" );
+			final byte[] buffer = new byte[ 8192 ];
+
+			try ( final InputStream in = new FileInputStream( file ) )
+			{
+				for ( int read = in.read( buffer ); read >= 0; read = in.read( buffer ) )
+					digest.update( buffer, 0, read );
+			}
+
+			final String hash = toHex( digest.digest() );
+			hashes.put( file.getAbsolutePath(), new ValuePair< Long, String >( stamp, hash ) );
+
+			return hash;
+		}
+		catch ( IOException | NoSuchAlgorithmException e )
+		{
+			RingBufferLogger.CONSOLE.warn( "Could not hash %s: %s", file, e );
+			return null;
+		}
+	}
+
+	protected static void write( final File file, final Key key, final ArrayList< Pair< AbstractFunction2D, ArrayList< PointFunctionMatch > > > segments )
+	{
+		try ( final PrintWriter out = Util.openFileWriteEx( file ) )
+		{
+			out.println( "# " + key );
+
+			for ( int segment = 0; segment < segments.size(); ++segment )
+				for ( final PointFunctionMatch p : segments.get( segment ).getB() )
+					out.println( segment + "\t" + p.getP1().getW()[ 0 ] + "\t" + p.getP1().getW()[ 1 ] + "\t" + p.getDistance() );
+		}
+		catch ( IOException e )
+		{
+			RingBufferLogger.CONSOLE.warn( "Could not write fit cache %s: %s", file, e );
+		}
+	}
+
+	@SuppressWarnings( { "rawtypes", "deprecation" } )
+	protected static ArrayList< Pair< AbstractFunction2D, ArrayList< PointFunctionMatch > > > read( final File file, final AbstractFunction2D< ? > function )
+	{
+		if ( !file.exists() )
+			return null;
+
+		final ArrayList< ArrayList< PointFunctionMatch > > inliers = new ArrayList< ArrayList< PointFunctionMatch > >();
+		boolean distances = true;
+
+		try ( final BufferedReader in = Util.openFileReadEx( file ) )
+		{
+			for ( String line = in.readLine(); line != null; line = in.readLine() )
+			{
+				if ( line.startsWith( "#" ) || line.trim().length() == 0 )
+					continue;
+
+				final String[] split = line.split( "\t" );
+				final int segment = Integer.parseInt( split[ 0 ] );
+
+				while ( inliers.size() <= segment )
+					inliers.add( new ArrayList< PointFunctionMatch >() );
+
+				final Point point = new Point( new double[] { Double.parseDouble( split[ 1 ] ), Double.parseDouble( split[ 2 ] ) } );
+
+				if ( split.length > 3 )
+				{
+					inliers.get( segment ).add( new PointFunctionMatch( point, Double.parseDouble( split[ 3 ] ) ) );
+				}
+				else
+				{
+					inliers.get( segment ).add( new PointFunctionMatch( point ) );
+					distances = false;
+				}
+			}
+
+			final ArrayList< Pair< AbstractFunction2D, ArrayList< PointFunctionMatch > > > segments = new ArrayList< Pair< AbstractFunction2D, ArrayList< PointFunctionMatch > > >();
+
+			for ( final ArrayList< PointFunctionMatch > matches : inliers )
+			{
+				final AbstractFunction2D segmentFunction = ( AbstractFunction2D ) function.copy();
+				segmentFunction.fit( matches );
+
+				if ( !distances )
+					for ( final PointFunctionMatch match : matches )
+						match.apply( segmentFunction );
+
+				segments.add( new ValuePair< AbstractFunction2D, ArrayList< PointFunctionMatch > >( segmentFunction, matches ) );
+			}
+
+			return segments;
+		}
+		catch ( Exception e )
+		{
+			RingBufferLogger.CONSOLE.warn( "Could not read fit cache %s: %s", file, e );
+			return null;
+		}
+	}
+
+	protected static String toHex( final byte[] bytes )
+	{
+		final StringBuilder hex = new StringBuilder( bytes.length * 2 );
+
+		for ( final byte b : bytes )
+			hex.append( String.format( "%02x", b ) );
+
+		return hex.toString();
+	}
+
+	/**
+	 * Everything a RANSAC segmentation of a track depends on. The slope window
+	 * is not part of it, it only filters the segments afterwards.
+	 */
+	public static class Key
+	{
+		public final String hash;
+		public final double maxError;
+		public final int minInliers;
+		public final int maxDist;
+		public final int functionChoice;
+		public final double lambda;
+		public final long seed;
+
+		public Key( final String hash, final double maxError, final int minInliers, final int maxDist,
+				final int functionChoice, final double lambda, final long seed )
+		{
+			this.hash = hash;
+			this.maxError = maxError;
+			this.minInliers = minInliers;
+			this.maxDist = maxDist;
+			this.functionChoice = functionChoice;
+			// lambda is not used by the linear function
+			this.lambda = functionChoice == 0 ? 0 : lambda;
+			this.seed = seed;
+		}
+
+		public String toFileName()
+		{
+			try
+			{
+				final MessageDigest digest = MessageDigest.getInstance( "SHA-1" );
+				return toHex( digest.digest( toString().getBytes( StandardCharsets.UTF_8 ) ) ) + SUFFIX;
+			}
+			catch ( NoSuchAlgorithmException e )
+			{
+				return hash + "_" + Integer.toHexString( hashCode() ) + SUFFIX;
+			}
+		}
+
+		@Override
+		public boolean equals( final Object o )
+		{
+			if ( this == o )
+				return true;
+			if ( !( o instanceof Key ) )
+				return false;
+
+			final Key k = ( Key ) o;
+
+			return hash.equals( k.hash ) && Double.compare( maxError, k.maxError ) == 0 && minInliers == k.minInliers
+					&& maxDist == k.maxDist && functionChoice == k.functionChoice
+					&& Double.compare( lambda, k.lambda ) == 0 && seed == k.seed;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			int h = hash.hashCode();
+			h = 31 * h + Double.hashCode( maxError );
+			h = 31 * h + minInliers;
+			h = 31 * h + maxDist;
+			h = 31 * h + functionChoice;
+			h = 31 * h + Double.hashCode( lambda );
+			h = 31 * h + Long.hashCode( seed );
+			return h;
+		}
+
+		@Override
+		public String toString()
+		{
+			return String.format( Locale.ENGLISH, "%s maxError=%s minInliers=%d maxDist=%d function=%d lambda=%s seed=%d",
+					hash, maxError, minInliers, maxDist, functionChoice, lambda, seed );
+		}
+	}
+}
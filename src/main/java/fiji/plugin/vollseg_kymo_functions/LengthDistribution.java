@@ -28,9 +28,18 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.text.NumberFormat;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.swing.SwingUtilities;
 
 import net.imglib2.util.Pair;
 import net.imglib2.util.ValuePair;
@@ -42,6 +51,7 @@ import org.jfree.chart.ui.RectangleEdge;
 import org.jfree.data.xy.XYSeries;
 import org.jfree.data.xy.XYSeriesCollection;
 
+import fiji.plugin.vollseg_kymo.RingBufferLogger;
 import fiji.plugin.vollseg_kymo.interpolation.Polynomial;
 import mpicbg.models.NotEnoughDataPointsException;
 import mpicbg.models.Point;
@@ -101,81 +111,154 @@ public class LengthDistribution {
 	}
 
 	
-	public static void GetLengthDistributionArray(ArrayList<File> AllMovies, double[] calibration) {
+	/**
+	 * The framenumbers and lengths of a track file, read once. The length
+	 * distributions are computed from these instead of re-reading the files
+	 * for every length.
+	 */
+	public static class TrackLengths {
 
-		ArrayList<Double> maxlist = new ArrayList<Double>();
-		for (int i = 0; i < AllMovies.size(); ++i) {
+		public final int[] framenumbers;
+		public final double[] lengths;
 
-			double maxlength = LengthDistribution.Lengthdistro(AllMovies.get(i));
+		public TrackLengths(final ArrayList<FLSobject> currentobject) {
 
-			if (maxlength != Double.NaN && maxlength > 0)
-				maxlist.add(maxlength);
+			final int size = currentobject == null ? 0 : currentobject.size();
 
+			framenumbers = new int[size];
+			lengths = new double[size];
+
+			for (int index = 0; index < size; ++index) {
+				framenumbers[index] = currentobject.get(index).Framenumber;
+				lengths[index] = currentobject.get(index).length;
+			}
 		}
-		Collections.sort(maxlist);
 
-		int min = 0;
-		int max = (int) Math.round(maxlist.get(maxlist.size() - 1)) + 1;
-		XYSeries counterseries = new XYSeries("MT length distribution");
-		XYSeries Logcounterseries = new XYSeries("MT Log length distribution");
-		final ArrayList<Point> points = new ArrayList<Point>();
-		for (int length = 0; length < max; ++length) {
+		/**
+		 * @return the same as {@link LengthDistribution#Lengthdistro(File)}, the
+		 *         length at the last frame
+		 */
+		public double lastlength() {
+			return lengths.length > 0 ? lengths[lengths.length - 1] : 0;
+		}
+	}
 
-			HashMap<Integer, Integer> frameseed = new HashMap<Integer, Integer>();
+	/**
+	 * Reads the files in parallel, in the order of AllMovies.
+	 */
+	public static ArrayList<TrackLengths> loadLengths(ArrayList<File> AllMovies) {
 
-			int count = 0;
-			for (int i = 0; i < AllMovies.size(); ++i) {
+		ArrayList<TrackLengths> tracks = new ArrayList<TrackLengths>();
 
-				File file = AllMovies.get(i);
+		int nThreads = Math.max(1, Math.min(AllMovies.size(), Runtime.getRuntime().availableProcessors()));
+		final ExecutorService taskexecutor = Executors.newFixedThreadPool(nThreads);
+		List<Callable<TrackLengths>> tasks = new ArrayList<Callable<TrackLengths>>();
 
-				double currentlength = LengthDistribution.Lengthdistro(file);
+		for (final File file : AllMovies)
+			tasks.add(() -> new TrackLengths(Tracking.loadMTStat(file)));
 
-				ArrayList<FLSobject> currentobject = Tracking.loadMTStat(file);
+		try {
+			for (Future<TrackLengths> future : taskexecutor.invokeAll(tasks))
+				tracks.add(future.get());
+		} catch (InterruptedException | ExecutionException e) {
+			e.printStackTrace();
+		} finally {
+			taskexecutor.shutdown();
+		}
 
-				if (currentlength > length) {
+		return tracks;
+	}
 
+	/**
+	 * Counts a length in the histogram of its frame. A length that counts for
+	 * every L up to and including upper goes into bin upper, summing the bins
+	 * from the top with {@link #accumulate(Map)} then gives per L the
+	 * number of lengths that count for it.
+	 */
+	protected static void add(Map<Integer, int[]> frameseed, int framenumber, int upper, int max) {
 
-					
-					for (int index = 0; index < currentobject.size(); ++index) {
-						ArrayList<Integer> seedlist = new ArrayList<Integer>();
-						if (currentobject.get(index).length >= length) {
-							seedlist.add(currentobject.get(index).seedID);
-							if (frameseed.get(currentobject.get(index).Framenumber) != null
-									&& frameseed.get(currentobject.get(index).Framenumber) != Double.NaN) {
+		if (upper < 0 || max <= 0)
+			return;
 
-								int currentcount = frameseed.get(currentobject.get(index).Framenumber);
-								frameseed.put(currentobject.get(index).Framenumber, seedlist.size() + currentcount);
-							} else if (currentobject.get(index) != null)
-								frameseed.put(currentobject.get(index).Framenumber, seedlist.size() );
+		int[] histogram = frameseed.get(framenumber);
 
-						}
+		if (histogram == null) {
+			histogram = new int[max];
+			frameseed.put(framenumber, histogram);
+		}
 
-					}
+		++histogram[Math.min(upper, max - 1)];
+	}
 
-				}
+	protected static void accumulate(Map<Integer, int[]> frameseed) {
 
+		for (int[] histogram : frameseed.values())
+			for (int length = histogram.length - 2; length >= 0; --length)
+				histogram[length] += histogram[length + 1];
+	}
+
+	/**
+	 * @return per L the largest count of any frame
+	 */
+	protected static int[] maxOverFrames(Map<Integer, int[]> frameseed, int max) {
+
+		int[] maxvalues = new int[Math.max(0, max)];
+
+		for (int[] histogram : frameseed.values())
+			for (int length = 0; length < maxvalues.length; ++length)
+				maxvalues[length] = Math.max(maxvalues[length], histogram[length]);
+
+		return maxvalues;
+	}
+
+	public static void GetLengthDistributionArray(ArrayList<File> AllMovies, double[] calibration) {
+
+		final ArrayList<TrackLengths> tracks = loadLengths(AllMovies);
+
+		double maxlength = 0;
+		for (TrackLengths track : tracks)
+			if (track.lastlength() > 0)
+				maxlength = Math.max(maxlength, track.lastlength());
+
+		int max = maxlength > 0 ? (int) Math.round(maxlength) + 1 : 0;
+		XYSeries counterseries = new XYSeries("MT length distribution");
+		XYSeries Logcounterseries = new XYSeries("MT Log length distribution");
+		final ArrayList<Point> points = new ArrayList<Point>();
+
+		// a length counts for L if it is at least L and the track ends longer
+		// than L, per frame
+		HashMap<Integer, int[]> frameseed = new HashMap<Integer, int[]>();
+
+		for (TrackLengths track : tracks) {
+
+			double currentlength = track.lastlength();
+
+			if (Double.isNaN(currentlength))
+				continue;
+
+			for (int index = 0; index < track.lengths.length; ++index) {
+
+				if (Double.isNaN(track.lengths[index]))
+					continue;
+
+				add(frameseed, track.framenumbers[index],
+						(int) Math.min(Math.floor(track.lengths[index]), Math.ceil(currentlength) - 1), max);
 			}
-			
-			
-			// Get maxima length, count
-			int maxvalue = Integer.MIN_VALUE;
-			
-			for (int key: frameseed.keySet()){
-				
-				int Count = frameseed.get(key);
-				
-				if (Count >= maxvalue)
-					maxvalue = Count;
-			}
-			
-			if (maxvalue!=Integer.MIN_VALUE){
-				counterseries.add(length , maxvalue );
+		}
 
-				if (maxvalue > 0){
-			 Logcounterseries.add((length ), Math.log(maxvalue));
-			 points.add(new Point(new double[]{length , Math.log(maxvalue) }));
-				}
-			
+		accumulate(frameseed);
+
+		// Get maxima length, count
+		int[] maxvalues = maxOverFrames(frameseed, max);
+
+		for (int length = 0; length < max; ++length) {
+
+			int maxvalue = maxvalues[length];
+
+			if (maxvalue > 0) {
+				counterseries.add(length, maxvalue);
+				Logcounterseries.add((length), Math.log(maxvalue));
+				points.add(new Point(new double[] { length, Math.log(maxvalue) }));
 			}
 		}
 		
@@ -223,7 +306,7 @@ public class LengthDistribution {
 						  "Number of MT","Length (micrometer)", Logdataset);
 	//	  DisplayPoints.display(logchart, new Dimension(800, 500));
 		  for (int i = 1; i >= 0; --i)
-				System.out.println(poly.getCoefficients(i) + "  " + "x" + " X to the power of "  + i );
+				RingBufferLogger.CONSOLE.debug("%s  x X to the power of %d", poly.getCoefficients(i), i);
 		  
 		  
 		//  Logdataset.addSeries(Tracking.drawFunction(poly, counterseries.getMinX(), counterseries.getMaxX(), 0.5, "Straight line fit"));
@@ -232,6 +315,105 @@ public class LengthDistribution {
 		  
 	}
 	
+	/**
+	 * The length distributions of all frames, or of every stride-th frame, in
+	 * one pass over the files. Row f of the matrix is what
+	 * {@link #GetLengthDistributionArrayatTime(ArrayList, double[], int)}
+	 * computes for frame f, with a 0 for the lengths it leaves out. The matrix
+	 * is written to "Length-Distribution All Frames.txt", one row per frame and
+	 * one column per length. Safe to call off the event dispatch thread, the
+	 * chart is shown on it.
+	 */
+	public static void GetLengthDistributionMatrix(ArrayList<File> AllMovies, final int stride, final boolean showChart) {
+
+		if (AllMovies.size() == 0)
+			return;
+
+		final ArrayList<TrackLengths> tracks = loadLengths(AllMovies);
+
+		int firstframe = Integer.MAX_VALUE;
+		double maxlength = 0;
+		for (TrackLengths track : tracks)
+			for (int index = 0; index < track.lengths.length; ++index) {
+				firstframe = Math.min(firstframe, track.framenumbers[index]);
+				if (track.lengths[index] > 0)
+					maxlength = Math.max(maxlength, track.lengths[index]);
+			}
+
+		int max = maxlength > 0 ? (int) Math.round(maxlength) + 1 : 0;
+		int step = Math.max(1, stride);
+
+		TreeMap<Integer, int[]> frameseed = new TreeMap<Integer, int[]>();
+
+		for (TrackLengths track : tracks)
+			for (int index = 0; index < track.lengths.length; ++index) {
+				int framenumber = track.framenumbers[index];
+				if ((framenumber - firstframe) % step == 0 && !Double.isNaN(track.lengths[index]))
+					add(frameseed, framenumber, (int) Math.floor(track.lengths[index]), max);
+			}
+
+		accumulate(frameseed);
+
+		WriteLengthdistroMatrix(AllMovies, frameseed, max);
+
+		if (showChart) {
+
+			final XYSeriesCollection dataset = new XYSeriesCollection();
+
+			for (Map.Entry<Integer, int[]> frame : frameseed.entrySet()) {
+
+				XYSeries counterseries = new XYSeries("T = " + frame.getKey());
+				int[] histogram = frame.getValue();
+
+				for (int length = 0; length < histogram.length; ++length)
+					if (histogram[length] > 0)
+						counterseries.add(length, histogram[length]);
+
+				dataset.addSeries(counterseries);
+			}
+
+			final JFreeChart chart = ChartFactory.createXYLineChart("MT length distribution over time",
+					"Length (micrometer)", "Number of MT", dataset);
+
+			// may be called off the event dispatch thread
+			SwingUtilities.invokeLater(() -> DisplayPoints.display(chart, new Dimension(800, 500)));
+		}
+	}
+
+	public static void WriteLengthdistroMatrix(ArrayList<File> AllMovies, Map<Integer, int[]> frameseed, int max) {
+
+		try {
+
+			File ratesfile = new File(AllMovies.get(0).getParentFile() + "//" + "Length-Distribution All Frames" + ".txt");
+
+			FileWriter fw = new FileWriter(ratesfile);
+
+			BufferedWriter bw = new BufferedWriter(fw);
+
+			StringBuilder header = new StringBuilder("\tFramenumber");
+			for (int length = 0; length < max; ++length)
+				header.append("\t").append(length);
+			bw.write(header.append("\n").toString());
+
+			for (Map.Entry<Integer, int[]> frame : frameseed.entrySet()) {
+
+				StringBuilder line = new StringBuilder("\t").append(frame.getKey());
+				for (int count : frame.getValue())
+					line.append("\t").append(count);
+				bw.write(line.append("\n").toString());
+			}
+
+			bw.close();
+			fw.close();
+
+		}
+
+		catch (IOException e) {
+			// TODO Auto-generated catch block
+			e.printStackTrace();
+		}
+	}
+
 	public static void WriteLengthdistroFile(ArrayList<File> AllMovies, XYSeries counterseries, int framenumber) {
 		
 
@@ -286,82 +468,40 @@ public class LengthDistribution {
 	
 	public static void GetLengthDistributionArrayatTime(ArrayList<File> AllMovies, double[] calibration, final int framenumber) {
 
-		ArrayList<Double> maxlist = new ArrayList<Double>();
-		for (int i = 0; i < AllMovies.size(); ++i) {
-
-			ArrayList<Pair<Integer, Double>> lengthlist = LengthDistribution.LengthdistroatTime(AllMovies.get(i), framenumber);
+		final ArrayList<TrackLengths> tracks = loadLengths(AllMovies);
 
-			for (int index = 0; index < lengthlist.size(); ++index){
-			if (lengthlist.get(index).getB() != Double.NaN && lengthlist.get(index).getB() > 0)
-				maxlist.add(lengthlist.get(index).getB());
-
-		}
-		}
-		Collections.sort(maxlist);
+		double maxlength = 0;
+		for (TrackLengths track : tracks)
+			for (int index = 0; index < track.lengths.length; ++index)
+				if (track.framenumbers[index] == framenumber && track.lengths[index] > 0)
+					maxlength = Math.max(maxlength, track.lengths[index]);
 
-		int min = 0;
-		int max = 0;
-		if(maxlist.size() > 0)
-	    max = (int) Math.round(maxlist.get(maxlist.size() - 1)) + 1;
+		int max = maxlength > 0 ? (int) Math.round(maxlength) + 1 : 0;
 		XYSeries counterseries = new XYSeries("MT length distribution");
 		XYSeries Logcounterseries = new XYSeries("MT Log length distribution");
 		final ArrayList<Point> points = new ArrayList<Point>();
-		for (int length = 0; length < max; ++length) {
-
-			HashMap<Integer, Integer> frameseed = new HashMap<Integer, Integer>();
-
-			int count = 0;
-			for (int i = 0; i < AllMovies.size(); ++i) {
-
-				File file = AllMovies.get(i);
-
-
-				ArrayList<FLSobject> currentobject = Tracking.loadMTStat(file);
 
+		HashMap<Integer, int[]> frameseed = new HashMap<Integer, int[]>();
 
+		for (TrackLengths track : tracks)
+			for (int index = 0; index < track.lengths.length; ++index)
+				if (track.framenumbers[index] == framenumber && !Double.isNaN(track.lengths[index]))
+					add(frameseed, framenumber, (int) Math.floor(track.lengths[index]), max);
 
-					if (currentobject!=null)
-					for (int index = 0; index < currentobject.size(); ++index) {
-						ArrayList<Integer> seedlist = new ArrayList<Integer>();
-						if (currentobject.get(index).length >= length && currentobject.get(index).Framenumber == framenumber) {
-							seedlist.add(currentobject.get(index).seedID);
-							if (frameseed.get(currentobject.get(index).Framenumber) != null 
-									&& frameseed.get(currentobject.get(index).Framenumber) != Double.NaN) {
+		accumulate(frameseed);
 
-								int currentcount = frameseed.get(currentobject.get(index).Framenumber);
-								frameseed.put(currentobject.get(index).Framenumber, seedlist.size() + currentcount);
-							} else if (currentobject.get(index) != null )
-								frameseed.put(currentobject.get(index).Framenumber, seedlist.size() );
-
-						}
+		int[] maxvalues = maxOverFrames(frameseed, max);
 
+		for (int length = 0; length < max; ++length) {
 
-				}
+			int maxvalue = maxvalues[length];
 
-			}
-			
-			
-			// Get maxima length, count
-			int maxvalue = Integer.MIN_VALUE;
-			
-			for (int key: frameseed.keySet()){
-				
-				int Count = frameseed.get(key);
-				
-				if (Count >= maxvalue)
-					maxvalue = Count;
-			}
-			
-			if (maxvalue!=Integer.MIN_VALUE){
-				counterseries.add(length , maxvalue );
+			if (maxvalue > 0) {
+				counterseries.add(length, maxvalue);
 
-				if (maxvalue > 0){
-					
-					System.out.println("Max " + maxvalue);
-			 Logcounterseries.add((length ), Math.log(maxvalue));
-			 points.add(new Point(new double[]{length , Math.log(maxvalue) }));
-				}
-			
+				RingBufferLogger.CONSOLE.debug("Max %d", maxvalue);
+				Logcounterseries.add((length), Math.log(maxvalue));
+				points.add(new Point(new double[] { length, Math.log(maxvalue) }));
 			}
 		}
 		
@@ -401,13 +541,13 @@ public class LengthDistribution {
 		  DisplayPoints.display(chart, new Dimension(800, 500));
 		  chart.addSubtitle(legendText);
 		  
-		  System.out.println("Series count" + dataset.getSeriesCount());
+		  RingBufferLogger.CONSOLE.debug("Series count %d", dataset.getSeriesCount());
 		  final JFreeChart logchart =
 				  ChartFactory.createScatterPlot("MT Log length distribution",
 				  "Length (micrometer)", "Number of MT", Logdataset);
 	//	  DisplayPoints.display(logchart, new Dimension(800, 500));
 		  for (int i = 1; i >= 0; --i)
-				System.out.println(poly.getCoefficients(i) + "  " + "x" + " X to the power of "  + i );
+				RingBufferLogger.CONSOLE.debug("%s  x X to the power of %d", poly.getCoefficients(i), i);
 		  
 		  
 		//  Logdataset.addSeries(Tracking.drawFunction(poly, counterseries.getMinX(), counterseries.getMaxX(), 0.5, "Straight line fit"));
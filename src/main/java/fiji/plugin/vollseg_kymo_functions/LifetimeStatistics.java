@@ -0,0 +1,133 @@
+/*-
+ * #%L
+ * Microtubule tracker.
+ * %%
+ * Copyright (C) 2017 MTrack developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.vollseg_kymo_functions;
+
+import java.util.Arrays;
+
+/**
+ * Summary statistics and a binned histogram of growth event lifetimes,
+ * collected in a single pass over the events. Median and quantiles are read
+ * off the histogram, exact up to the bin width.
+ */
+public class LifetimeStatistics {
+
+	public final double binwidth;
+
+	private int[] histogram = new int[16];
+	private int count = 0;
+	private double sum = 0;
+	private double sumsq = 0;
+	private double min = Double.MAX_VALUE;
+	private double max = -Double.MAX_VALUE;
+
+	public LifetimeStatistics(final double binwidth) {
+
+		this.binwidth = binwidth > 0 ? binwidth : 1;
+	}
+
+	public void add(final double lifetime) {
+
+		if (Double.isNaN(lifetime) || lifetime < 0)
+			return;
+
+		final int bin = (int) Math.floor(lifetime / binwidth);
+
+		if (bin >= histogram.length)
+			histogram = Arrays.copyOf(histogram, Math.max(bin + 1, histogram.length * 2));
+
+		++histogram[bin];
+		++count;
+		sum += lifetime;
+		sumsq += lifetime * lifetime;
+		min = Math.min(min, lifetime);
+		max = Math.max(max, lifetime);
+	}
+
+	public int count() {
+		return count;
+	}
+
+	public double mean() {
+		return count > 0 ? sum / count : Double.NaN;
+	}
+
+	public double standardDeviation() {
+
+		if (count < 2)
+			return Double.NaN;
+
+		final double mean = mean();
+
+		return Math.sqrt(Math.max(0, (sumsq - count * mean * mean) / (count - 1)));
+	}
+
+	public double min() {
+		return count > 0 ? min : Double.NaN;
+	}
+
+	public double max() {
+		return count > 0 ? max : Double.NaN;
+	}
+
+	public double median() {
+		return quantile(0.5);
+	}
+
+	/**
+	 * @return the q-quantile, interpolated linearly within the bin it falls
+	 *         into
+	 */
+	public double quantile(final double q) {
+
+		if (count == 0)
+			return Double.NaN;
+
+		final double rank = Math.max(0, Math.min(1, q)) * count;
+		int cumulative = 0;
+
+		for (int bin = 0; bin < histogram.length; ++bin) {
+
+			if (histogram[bin] > 0 && cumulative + histogram[bin] >= rank) {
+
+				final double value = (bin + (rank - cumulative) / histogram[bin]) * binwidth;
+
+				return Math.max(min, Math.min(max, value));
+			}
+
+			cumulative += histogram[bin];
+		}
+
+		return max;
+	}
+
+	/**
+	 * @return the number of bins up to the one holding the longest lifetime
+	 */
+	public int bins() {
+		return count > 0 ? (int) Math.floor(max / binwidth) + 1 : 0;
+	}
+
+	public int binCount(final int bin) {
+		return bin < histogram.length ? histogram[bin] : 0;
+	}
+
+}
@@ -0,0 +1,346 @@
+/*-
+ * #%L
+ * Microtubule tracker.
+ * %%
+ * Copyright (C) 2017 MTrack developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.vollseg_kymo_functions;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+import net.imglib2.util.Pair;
+
+import fiji.plugin.vollseg_kymo.util.TrackEvents;
+import fiji.plugin.vollseg_kymo_fit_function.AbstractFunction2D;
+import fiji.plugin.vollseg_kymo_fit_function.PointFunctionMatch;
+import mpicbg.models.Point;
+
+/**
+ * Segmentations of the current track on a coarse grid of maxError x
+ * minInliers x maxDist around the current settings, computed in the
+ * background on the idle cores, the grid points nearest to the current
+ * settings first. The fits bypass the fit cache and the metrics of the
+ * pipeline, they would evict the fits the user asked for and count as their
+ * RANSAC time.
+ * <p>
+ * When a slider lands near a grid point the stored segmentation can be shown
+ * right away while the exact one is computed. Once the settings leave the
+ * grid it is moved to be centred on them again: the grid points that are
+ * still in it are kept, the others are dropped and their pending fits
+ * canceled. The results stay in memory up to a budget and are all dropped
+ * when the track, the function or the seed changes.
+ */
+public class ParameterLattice
+{
+	public static final double ERROR_STEP = 0.5;
+	public static final int INLIER_STEP = 5;
+	public static final int GAP_STEP = 25;
+
+	/** Grid points per parameter on each side of the current settings. */
+	public static final int RADIUS = 3;
+
+	public static final long DEFAULT_BUDGET = 64L * 1024 * 1024;
+
+	// rough size of a PointFunctionMatch with its Point and a list slot
+	private static final long BYTES_PER_INLIER = 160;
+	private static final long BYTES_PER_SEGMENT = 256;
+
+	private final TrackPipeline pipeline;
+	private final long budget;
+	private final ExecutorService executor;
+
+	private final ConcurrentHashMap< GridPoint, Segmentation > results = new ConcurrentHashMap< GridPoint, Segmentation >();
+	private final AtomicLong used = new AtomicLong();
+	private final AtomicLong generation = new AtomicLong();
+
+	// what the current lattice was computed for
+	private String hash = null;
+	private int functionChoice;
+	private double lambda;
+	private long seed;
+	private GridPoint centre;
+
+	public ParameterLattice( final TrackPipeline pipeline ) { this( pipeline, DEFAULT_BUDGET ); }
+
+	public ParameterLattice( final TrackPipeline pipeline, final long budget )
+	{
+		this.pipeline = pipeline;
+		this.budget = budget;
+
+		final int nThreads = Math.max( 1, Runtime.getRuntime().availableProcessors() - 1 );
+		this.executor = Executors.newFixedThreadPool( nThreads, r -> {
+			final Thread thread = new Thread( r, "ParameterLattice" );
+			thread.setDaemon( true );
+			thread.setPriority( Thread.MIN_PRIORITY );
+			return thread;
+		} );
+	}
+
+	/**
+	 * Starts precomputing the lattice of a track around the given settings.
+	 * Does nothing if the lattice already belongs to this track, function and
+	 * seed and the settings are within its grid, re-centres the grid if they
+	 * are not, and otherwise drops the old lattice first.
+	 */
+	public synchronized void precompute( final File file, final ArrayList< Point > points, final AbstractFunction2D< ? > function,
+			final int functionChoice, final double lambda, final long seed, final double maxError, final int minInliers,
+			final int maxDist )
+	{
+		final String hash = pipeline.fitCache.contentHash( file );
+
+		if ( hash == null || points == null )
+		{
+			evict();
+			return;
+		}
+
+		final double usedLambda = functionChoice == 0 ? 0 : lambda;
+
+		final GridPoint centre = GridPoint.nearest( maxError, minInliers, maxDist );
+
+		if ( hash.equals( this.hash ) && functionChoice == this.functionChoice
+				&& Double.compare( usedLambda, this.lambda ) == 0 && seed == this.seed )
+		{
+			if ( this.centre.steps( centre ) <= RADIUS )
+				return;
+
+			recentre( centre );
+		}
+		else
+		{
+			evict();
+
+			this.hash = hash;
+			this.functionChoice = functionChoice;
+			this.lambda = usedLambda;
+			this.seed = seed;
+			this.centre = centre;
+		}
+
+		final long current = generation.get();
+
+		for ( final GridPoint gridPoint : gridAround( maxError, minInliers, maxDist ) )
+		{
+			if ( results.containsKey( gridPoint ) )
+				continue;
+
+			executor.submit( () -> {
+				if ( generation.get() != current || used.get() >= budget )
+					return;
+
+				final Segmentation segmentation = fit( file, points, function.copy(), gridPoint, seed,
+						() -> generation.get() != current );
+
+				if ( segmentation == null )
+					return;
+
+				final long size = estimateBytes( segmentation.segments );
+
+				// evict() and recentre() hold the same lock, a fit of the
+				// previous track or grid can not slip in after them
+				synchronized ( this )
+				{
+					if ( generation.get() != current || used.get() + size > budget )
+						return;
+
+					used.addAndGet( size );
+					results.put( gridPoint, segmentation );
+				}
+			} );
+		}
+	}
+
+	/**
+	 * @return the stored segmentation of the grid point within half a step of
+	 *         the given settings, null if there is none (yet)
+	 */
+	public Segmentation get( final double maxError, final int minInliers, final int maxDist )
+	{
+		return results.get( GridPoint.nearest( maxError, minInliers, maxDist ) );
+	}
+
+	public int size() { return results.size(); }
+
+	public long usedBytes() { return used.get(); }
+
+	/**
+	 * Drops all stored segmentations and stops the pending ones.
+	 */
+	public synchronized void evict()
+	{
+		generation.incrementAndGet();
+		results.clear();
+		used.set( 0 );
+		hash = null;
+	}
+
+	/**
+	 * Moves the grid to the given centre, cancels the pending fits and drops
+	 * the stored segmentations that are not in the new grid.
+	 */
+	protected synchronized void recentre( final GridPoint centre )
+	{
+		generation.incrementAndGet();
+		this.centre = centre;
+
+		results.entrySet().removeIf( entry -> {
+			if ( entry.getKey().steps( centre ) <= RADIUS )
+				return false;
+
+			used.addAndGet( -estimateBytes( entry.getValue().segments ) );
+			return true;
+		} );
+	}
+
+	public void shutdown()
+	{
+		evict();
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Fits a grid point with the RANSAC seed of the lattice, the RANSAC events
+	 * carry the file name like those of {@link TrackPipeline#segment}.
+	 */
+	@SuppressWarnings( { "rawtypes", "unchecked" } )
+	protected static Segmentation fit( final File file, final ArrayList< Point > points, final AbstractFunction2D function,
+			final GridPoint gridPoint, final long seed, final BooleanSupplier canceled )
+	{
+		final String previous = TrackEvents.ENABLED ? TrackEvents.enterTrack( file ) : null;
+		try
+		{
+			AbstractFunction2D.setRandomSeed( seed );
+			return FitCache.wrap( Tracking.findAllFunctions( points, function, gridPoint.maxError(), gridPoint.minInliers(),
+					gridPoint.maxDist(), canceled ) );
+		}
+		finally
+		{
+			if ( TrackEvents.ENABLED )
+				TrackEvents.exitTrack( previous );
+		}
+	}
+
+	protected static ArrayList< GridPoint > gridAround( final double maxError, final int minInliers, final int maxDist )
+	{
+		final GridPoint c = GridPoint.nearest( maxError, minInliers, maxDist );
+
+		final ArrayList< GridPoint > grid = new ArrayList< GridPoint >();
+
+		for ( int e = Math.max( 1, c.e - RADIUS ); e <= c.e + RADIUS; ++e )
+			for ( int i = Math.max( 1, c.i - RADIUS ); i <= c.i + RADIUS; ++i )
+				for ( int d = Math.max( 1, c.d - RADIUS ); d <= c.d + RADIUS; ++d )
+					grid.add( new GridPoint( e, i, d ) );
+
+		// nearest to the current settings first, in units of grid steps
+		Collections.sort( grid, new Comparator< GridPoint >()
+		{
+			@Override
+			public int compare( final GridPoint o1, final GridPoint o2 )
+			{
+				return Double.compare( o1.distance( maxError, minInliers, maxDist ), o2.distance( maxError, minInliers, maxDist ) );
+			}
+		} );
+
+		return grid;
+	}
+
+	protected static long estimateBytes( final ArrayList< ? extends Pair< ?, ArrayList< PointFunctionMatch > > > segments )
+	{
+		long bytes = 0;
+
+		for ( final Pair< ?, ArrayList< PointFunctionMatch > > segment : segments )
+			bytes += BYTES_PER_SEGMENT + BYTES_PER_INLIER * segment.getB().size();
+
+		return bytes;
+	}
+
+	/**
+	 * A point of the lattice, in multiples of the step of each parameter.
+	 */
+	protected static class GridPoint
+	{
+		final int e, i, d;
+
+		GridPoint( final int e, final int i, final int d )
+		{
+			this.e = e;
+			this.i = i;
+			this.d = d;
+		}
+
+		/**
+		 * @return the grid point within half a step of the given settings
+		 */
+		static GridPoint nearest( final double maxError, final int minInliers, final int maxDist )
+		{
+			return new GridPoint(
+					( int ) Math.round( maxError / ERROR_STEP ),
+					( int ) Math.round( minInliers / ( double ) INLIER_STEP ),
+					( int ) Math.round( maxDist / ( double ) GAP_STEP ) );
+		}
+
+		double maxError() { return e * ERROR_STEP; }
+
+		int minInliers() { return i * INLIER_STEP; }
+
+		int maxDist() { return d * GAP_STEP; }
+
+		double distance( final double maxError, final int minInliers, final int maxDist )
+		{
+			final double de = maxError / ERROR_STEP - e;
+			final double di = minInliers / ( double ) INLIER_STEP - i;
+			final double dd = maxDist / ( double ) GAP_STEP - d;
+
+			return de * de + di * di + dd * dd;
+		}
+
+		/**
+		 * @return the most grid steps the two points are apart in any of
+		 *         the parameters
+		 */
+		int steps( final GridPoint g )
+		{
+			return Math.max( Math.abs( e - g.e ), Math.max( Math.abs( i - g.i ), Math.abs( d - g.d ) ) );
+		}
+
+		@Override
+		public boolean equals( final Object o )
+		{
+			if ( !( o instanceof GridPoint ) )
+				return false;
+
+			final GridPoint g = ( GridPoint ) o;
+
+			return e == g.e && i == g.i && d == g.d;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return ( e * 31 + i ) * 31 + d;
+		}
+	}
+}
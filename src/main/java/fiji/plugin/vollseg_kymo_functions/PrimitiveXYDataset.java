@@ -0,0 +1,537 @@
+/*-
+ * #%L
+ * Microtubule tracker.
+ * %%
+ * Copyright (C) 2017 MTrack developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.vollseg_kymo_functions;
+
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+
+import org.jfree.chart.ChartPanel;
+import org.jfree.chart.axis.ValueAxis;
+import org.jfree.chart.event.ChartProgressEvent;
+import org.jfree.chart.plot.XYPlot;
+import org.jfree.chart.renderer.xy.XYItemRenderer;
+import org.jfree.chart.renderer.xy.XYLineAndShapeRenderer;
+import org.jfree.data.DomainInfo;
+import org.jfree.data.Range;
+import org.jfree.data.RangeInfo;
+import org.jfree.data.xy.AbstractXYDataset;
+
+/**
+ * An {@link org.jfree.data.xy.XYDataset} over primitive arrays, for the
+ * length plots that are redrawn on every parameter change.
+ * <p>
+ * Unlike an {@link org.jfree.data.xy.XYSeriesCollection}, adding a series
+ * neither boxes its points nor notifies the chart point by point. Between
+ * {@link #beginUpdate()} and {@link #endUpdate()} nothing is notified at
+ * all, the chart is told once at the end. The bounds of every series are
+ * computed when it is added, so the axes do not scan the data again.
+ * <p>
+ * Once {@link #attach(ChartPanel) attached} to the chart panel showing it, the
+ * dataset only hands the renderer the points in view, decimated to the pixels
+ * of the data area:
+ * <ul>
+ * <li>A series drawn as a line only, with more than a few points per pixel,
+ * is cut down to the first, last, lowest and highest point of every pixel
+ * column (M4). A line drawn through these looks the same as one through all
+ * the points.</li>
+ * <li>A series drawn with shapes keeps the first of its points in every pixel,
+ * so every pixel that shows a shape still does.</li>
+ * </ul>
+ * The decimation follows zooming, panning, resizing and changes of the
+ * renderer. The full data stay available through {@link #getSeries(int)}, for
+ * export.
+ */
+public class PrimitiveXYDataset extends AbstractXYDataset implements DomainInfo, RangeInfo
+{
+	private static final long serialVersionUID = 1L;
+
+	private final ArrayList< Series > series = new ArrayList< Series >();
+
+	private int updateLevel = 0;
+
+	private boolean changed = false;
+
+	// the visible x range and the pixel columns it is drawn on, 0 to draw all
+	private double viewLower = Double.NEGATIVE_INFINITY;
+	private double viewUpper = Double.POSITIVE_INFINITY;
+	private int pixels = 0;
+
+	// the visible y range and the pixel rows it is drawn on, 0 to draw all
+	// the points of shape series
+	private double viewBottom = Double.NEGATIVE_INFINITY;
+	private double viewTop = Double.POSITIVE_INFINITY;
+	private int rows = 0;
+
+	/** Pixels around the view in which shapes still reach into it. */
+	private static final int MARGIN = 8;
+
+	/** Draws the series, to tell lines from shapes. Null draws lines. */
+	private XYItemRenderer renderer = null;
+
+	/** Per series, the indices of the points to draw, null for all. */
+	private final ArrayList< int[] > lod = new ArrayList< int[] >();
+
+	/**
+	 * Holds back change notifications until the matching
+	 * {@link #endUpdate()}. Calls can be nested.
+	 */
+	public void beginUpdate()
+	{
+		++updateLevel;
+	}
+
+	public void endUpdate()
+	{
+		if ( --updateLevel == 0 && changed )
+		{
+			changed = false;
+			fireDatasetChanged();
+		}
+	}
+
+	private void changed()
+	{
+		if ( updateLevel > 0 )
+			changed = true;
+		else
+			fireDatasetChanged();
+	}
+
+	/**
+	 * Adds a series. The arrays are used as they are, not copied, and must
+	 * not change afterwards.
+	 */
+	public void addSeries( final Series s )
+	{
+		series.add( s );
+		lod.add( decimate( series.size() - 1 ) );
+		changed();
+	}
+
+	public void removeAllSeries()
+	{
+		if ( series.isEmpty() )
+			return;
+
+		series.clear();
+		lod.clear();
+		changed();
+	}
+
+	/**
+	 * @return the series with all of its points
+	 */
+	public Series getSeries( final int s )
+	{
+		return series.get( s );
+	}
+
+	/**
+	 * Sets the x range shown and its width in pixels, and decimates the series
+	 * for it.
+	 *
+	 * @param pixels
+	 *            the width, 0 to draw every point
+	 */
+	public void setView( final double lower, final double upper, final int pixels )
+	{
+		setView( lower, upper, pixels, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, 0 );
+	}
+
+	/**
+	 * Sets the x and y range shown and the size of the data area in pixels,
+	 * and decimates the series for it.
+	 *
+	 * @param pixels
+	 *            the width, 0 to draw every point
+	 * @param rows
+	 *            the height, 0 to draw every point of the shape series
+	 */
+	public void setView( final double lower, final double upper, final int pixels, final double bottom, final double top, final int rows )
+	{
+		if ( lower == viewLower && upper == viewUpper && pixels == this.pixels
+				&& bottom == viewBottom && top == viewTop && rows == this.rows )
+			return;
+
+		this.viewLower = lower;
+		this.viewUpper = upper;
+		this.pixels = Math.max( 0, pixels );
+		this.viewBottom = bottom;
+		this.viewTop = top;
+		this.rows = Math.max( 0, rows );
+
+		redecimate();
+	}
+
+	private void redecimate()
+	{
+		for ( int s = 0; s < series.size(); ++s )
+			lod.set( s, decimate( s ) );
+
+		changed();
+	}
+
+	/**
+	 * Keeps the decimation in line with the axes, the data area of the panel
+	 * and what the renderer draws of every series.
+	 */
+	public void attach( final ChartPanel panel )
+	{
+		final XYPlot plot = panel.getChart().getXYPlot();
+		final ValueAxis domain = plot.getDomainAxis();
+		final ValueAxis range = plot.getRangeAxis();
+
+		renderer = plot.getRenderer();
+
+		final Runnable update = () -> {
+			// the data area is known once the chart is drawn, the panel is an
+			// upper bound until then
+			final Rectangle2D area = panel.getScreenDataArea();
+			final boolean drawn = area.getWidth() > 0 && area.getHeight() > 0;
+			setView( domain.getLowerBound(), domain.getUpperBound(), drawn ? ( int ) Math.ceil( area.getWidth() ) : panel.getWidth(),
+					range.getLowerBound(), range.getUpperBound(), drawn ? ( int ) Math.ceil( area.getHeight() ) : panel.getHeight() );
+		};
+
+		domain.addChangeListener( e -> update.run() );
+		range.addChangeListener( e -> update.run() );
+		panel.addComponentListener( new ComponentAdapter()
+		{
+			@Override
+			public void componentResized( final ComponentEvent e )
+			{
+				update.run();
+			}
+		} );
+		// a resize changes the data area only once the chart is redrawn
+		panel.getChart().addProgressListener( e -> {
+			if ( e.getType() == ChartProgressEvent.DRAWING_FINISHED )
+				update.run();
+		} );
+		if ( null != renderer )
+			renderer.addChangeListener( e -> redecimate() );
+
+		update.run();
+	}
+
+	/**
+	 * @return whether series s is drawn as a line without shapes
+	 */
+	protected boolean isLine( final int s )
+	{
+		if ( renderer instanceof XYLineAndShapeRenderer )
+		{
+			final XYLineAndShapeRenderer lines = ( XYLineAndShapeRenderer ) renderer;
+			return lines.getItemLineVisible( s, 0 ) && !lines.getItemShapeVisible( s, 0 );
+		}
+
+		return null == renderer;
+	}
+
+	/**
+	 * @return the indices of the points of series s to draw for the current
+	 *         view, null if all of them are
+	 */
+	protected int[] decimate( final int s )
+	{
+		return isLine( s ) ? decimateLine( series.get( s ) ) : decimateShapes( series.get( s ) );
+	}
+
+	/**
+	 * The first, last, lowest and highest point of every pixel column.
+	 */
+	private int[] decimateLine( final Series s )
+	{
+		if ( pixels == 0 || !s.sorted || s.size <= 4 * pixels )
+			return null;
+
+		// the visible points, and one more on each side for the lines to
+		// reach the border
+		final int from = Math.max( 0, lowerIndex( s, viewLower ) - 1 );
+		final int to = Math.min( s.size, lowerIndex( s, viewUpper ) + 1 );
+
+		// at most four points per column, with a column on each side for the
+		// points just outside
+		final int[] keep = new int[ Math.min( to - from, 4 * ( pixels + 2 ) ) ];
+		int n = 0;
+
+		final double left = Math.max( viewLower, s.minX );
+		final double width = Math.min( viewUpper, s.maxX ) - left;
+
+		int i = from;
+
+		while ( i < to )
+		{
+			// the points falling into the pixel column of point i
+			final int column = width > 0 ? ( int ) ( ( s.x[ i ] - left ) / width * pixels ) : 0;
+			int first = i, last = i, min = i, max = i;
+
+			for ( ++i; i < to && ( width > 0 ? ( int ) ( ( s.x[ i ] - left ) / width * pixels ) : 0 ) == column; ++i )
+			{
+				last = i;
+				if ( s.y[ i ] < s.y[ min ] )
+					min = i;
+				if ( s.y[ i ] > s.y[ max ] )
+					max = i;
+			}
+
+			final int lo = Math.min( min, max ), hi = Math.max( min, max );
+
+			n = keep( keep, n, first );
+			n = keep( keep, n, lo );
+			n = keep( keep, n, hi );
+			n = keep( keep, n, last );
+		}
+
+		return n == keep.length ? keep : Arrays.copyOf( keep, n );
+	}
+
+	/**
+	 * The first point of every pixel, and of the pixels in a margin around the
+	 * view, in their order in the series.
+	 */
+	private int[] decimateShapes( final Series s )
+	{
+		if ( pixels == 0 || rows == 0 || s.size <= pixels )
+			return null;
+
+		final double left = Math.max( viewLower, s.minX );
+		final double width = Math.min( viewUpper, s.maxX ) - left;
+		final double bottom = Math.max( viewBottom, s.minY );
+		final double height = Math.min( viewTop, s.maxY ) - bottom;
+
+		final int columns = pixels + 2 * MARGIN;
+		final BitSet occupied = new BitSet( columns * ( rows + 2 * MARGIN ) );
+
+		final int[] keep = new int[ s.size ];
+		int n = 0;
+
+		for ( int i = 0; i < s.size; ++i )
+		{
+			// NaN is out of every cell
+			final double cx = width > 0 ? ( s.x[ i ] - left ) / width * pixels : 0;
+			final double cy = height > 0 ? ( s.y[ i ] - bottom ) / height * rows : 0;
+
+			if ( !( cx >= -MARGIN && cx < pixels + MARGIN && cy >= -MARGIN && cy < rows + MARGIN ) )
+				continue;
+
+			final int cell = ( ( int ) Math.floor( cy ) + MARGIN ) * columns + ( int ) Math.floor( cx ) + MARGIN;
+
+			if ( !occupied.get( cell ) )
+			{
+				occupied.set( cell );
+				keep[ n++ ] = i;
+			}
+		}
+
+		return n == s.size ? null : Arrays.copyOf( keep, n );
+	}
+
+	private static int keep( final int[] keep, final int n, final int index )
+	{
+		if ( n > 0 && keep[ n - 1 ] >= index )
+			return n;
+
+		keep[ n ] = index;
+		return n + 1;
+	}
+
+	/**
+	 * @return the index of the first point with x &gt;= value
+	 */
+	private static int lowerIndex( final Series s, final double value )
+	{
+		int lo = 0, hi = s.size;
+
+		while ( lo < hi )
+		{
+			final int mid = ( lo + hi ) >>> 1;
+
+			if ( s.x[ mid ] < value )
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+
+		return lo;
+	}
+
+	@Override
+	public int getSeriesCount()
+	{
+		return series.size();
+	}
+
+	@SuppressWarnings( "rawtypes" )
+	@Override
+	public Comparable getSeriesKey( final int s )
+	{
+		return series.get( s ).key;
+	}
+
+	@Override
+	public int getItemCount( final int s )
+	{
+		final int[] keep = lod.get( s );
+		return keep == null ? series.get( s ).size : keep.length;
+	}
+
+	private int index( final int s, final int item )
+	{
+		final int[] keep = lod.get( s );
+		return keep == null ? item : keep[ item ];
+	}
+
+	@Override
+	public Number getX( final int s, final int item )
+	{
+		return getXValue( s, item );
+	}
+
+	@Override
+	public Number getY( final int s, final int item )
+	{
+		return getYValue( s, item );
+	}
+
+	@Override
+	public double getXValue( final int s, final int item )
+	{
+		return series.get( s ).x[ index( s, item ) ];
+	}
+
+	@Override
+	public double getYValue( final int s, final int item )
+	{
+		return series.get( s ).y[ index( s, item ) ];
+	}
+
+	@Override
+	public double getDomainLowerBound( final boolean includeInterval )
+	{
+		final Range range = getDomainBounds( includeInterval );
+		return range == null ? Double.NaN : range.getLowerBound();
+	}
+
+	@Override
+	public double getDomainUpperBound( final boolean includeInterval )
+	{
+		final Range range = getDomainBounds( includeInterval );
+		return range == null ? Double.NaN : range.getUpperBound();
+	}
+
+	@Override
+	public Range getDomainBounds( final boolean includeInterval )
+	{
+		double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+
+		for ( final Series s : series )
+		{
+			min = Math.min( min, s.minX );
+			max = Math.max( max, s.maxX );
+		}
+
+		return min <= max ? new Range( min, max ) : null;
+	}
+
+	@Override
+	public double getRangeLowerBound( final boolean includeInterval )
+	{
+		final Range range = getRangeBounds( includeInterval );
+		return range == null ? Double.NaN : range.getLowerBound();
+	}
+
+	@Override
+	public double getRangeUpperBound( final boolean includeInterval )
+	{
+		final Range range = getRangeBounds( includeInterval );
+		return range == null ? Double.NaN : range.getUpperBound();
+	}
+
+	@Override
+	public Range getRangeBounds( final boolean includeInterval )
+	{
+		double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+
+		for ( final Series s : series )
+		{
+			min = Math.min( min, s.minY );
+			max = Math.max( max, s.maxY );
+		}
+
+		return min <= max ? new Range( min, max ) : null;
+	}
+
+	/**
+	 * The first size points of the x and y arrays, with their bounds.
+	 */
+	public static class Series
+	{
+		@SuppressWarnings( "rawtypes" )
+		public final Comparable key;
+
+		public final double[] x;
+
+		public final double[] y;
+
+		public final int size;
+
+		final double minX, maxX, minY, maxY;
+
+		/** Whether x never decreases, which decimation needs. */
+		final boolean sorted;
+
+		@SuppressWarnings( "rawtypes" )
+		public Series( final Comparable key, final double[] x, final double[] y, final int size )
+		{
+			this.key = key;
+			this.x = x;
+			this.y = y;
+			this.size = size;
+
+			double minX = Double.POSITIVE_INFINITY, maxX = Double.NEGATIVE_INFINITY;
+			double minY = Double.POSITIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+			boolean sorted = true;
+
+			for ( int i = 0; i < size; ++i )
+			{
+				if ( i > 0 && !( x[ i - 1 ] <= x[ i ] ) )
+					sorted = false;
+
+				// NaN fails both comparisons and is left out
+				if ( x[ i ] < minX ) minX = x[ i ];
+				if ( x[ i ] > maxX ) maxX = x[ i ];
+				if ( y[ i ] < minY ) minY = y[ i ];
+				if ( y[ i ] > maxY ) maxY = y[ i ];
+			}
+
+			this.minX = minX;
+			this.maxX = maxX;
+			this.minY = minY;
+			this.maxY = maxY;
+			this.sorted = sorted;
+		}
+	}
+}
@@ -159,6 +159,7 @@ public class RansacFileChooser extends JPanel {
 			panelIntro.add(Done, c);
 			
 			Done.addActionListener(new DoneButtonListener(frame, true));
+			Measurebatch.addActionListener(new RunBatchListener(frame));
 			panelIntro.validate();
 			panelIntro.repaint();
 			frame.addWindowListener(new FrameListener(frame));
@@ -171,7 +172,48 @@ public class RansacFileChooser extends JPanel {
 
 	}
 
-	
+	/**
+	 * Fits every track file of a directory without opening any window.
+	 */
+	protected class RunBatchListener implements ActionListener {
+
+		final Frame parent;
+
+		public RunBatchListener(Frame parent) {
+
+			this.parent = parent;
+
+		}
+
+		@Override
+		public void actionPerformed(final ActionEvent arg0) {
+			chooserA = new JFileChooser();
+			chooserA.setCurrentDirectory(new java.io.File("."));
+			chooserA.setDialogTitle(choosertitleA);
+			chooserA.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+
+			if (chooserA.showOpenDialog(parent) != JFileChooser.APPROVE_OPTION)
+				return;
+
+			final File[] files = chooserA.getSelectedFile().listFiles(new FilenameFilter() {
+
+				@Override
+				public boolean accept(File pathname, String filename) {
+
+					return (filename.endsWith(".txt") && !filename.contains("Rates") && !filename.contains("Average")
+							&& !filename.contains("All"));
+				}
+			});
+
+			if (files == null || files.length == 0)
+				return;
+
+			// off the event dispatch thread, nothing is shown anyway
+			new Thread(() -> new Load_ransac_fits(files, true).run(null), "Ransac batch").start();
+		}
+
+	}
+
 	protected class MeasureserialListener implements ActionListener {
 
 		final Frame parent;
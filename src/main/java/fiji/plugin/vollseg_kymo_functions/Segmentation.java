@@ -0,0 +1,248 @@
+/*-
+ * #%L
+ * Microtubule tracker.
+ * %%
+ * Copyright (C) 2017 MTrack developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.vollseg_kymo_functions;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+
+import net.imglib2.util.Pair;
+import net.imglib2.util.ValuePair;
+
+import fiji.plugin.vollseg_kymo_fit_function.AbstractFunction2D;
+import fiji.plugin.vollseg_kymo_fit_function.PointFunctionMatch;
+import fiji.plugin.vollseg_kymo_fit_function.polynomial.LinearFunction;
+import mpicbg.models.Point;
+
+/**
+ * Output of the segment stage of a track: the RANSAC segments sorted by time,
+ * the inliers of each sorted by time as well.
+ * <p>
+ * Everything the filter/classify stage needs from the segments that does not
+ * depend on its own parameters (the linear fit of each segment for the slope
+ * window, the linear fit of the points between two segments for catastrophe
+ * detection) is computed on first use and kept here. Changing the slope
+ * window, the rescue tolerances or the catastrophe settings then only re-runs
+ * the cheap comparisons, a new segmentation is only made when a RANSAC
+ * parameter changes.
+ * <p>
+ * A {@link #copy()} has segment lists, functions and matches of its own but
+ * shares these derived fits with the segmentation it was copied from, they
+ * are computed from the segments as they were when the copied segmentation
+ * was made and must not be modified.
+ */
+public class Segmentation
+{
+	public final ArrayList< Pair< AbstractFunction2D, ArrayList< PointFunctionMatch > > > segments;
+
+	private final Derived derived;
+
+	public Segmentation( final ArrayList< Pair< AbstractFunction2D, ArrayList< PointFunctionMatch > > > segments )
+	{
+		this.segments = segments;
+		sort( segments );
+
+		this.derived = new Derived( copy( segments ) );
+	}
+
+	private Segmentation( final ArrayList< Pair< AbstractFunction2D, ArrayList< PointFunctionMatch > > > segments, final Derived derived )
+	{
+		this.segments = segments;
+		this.derived = derived;
+	}
+
+	/**
+	 * @return a segmentation with the same segments that can be sorted and
+	 *         modified without changing this one
+	 */
+	public Segmentation copy()
+	{
+		return new Segmentation( copy( segments ), derived );
+	}
+
+	public int size() { return segments.size(); }
+
+	/**
+	 * @return the linear function fitted to the inliers of segment i, null if
+	 *         it can not be fitted
+	 */
+	public LinearFunction linearFit( final int i )
+	{
+		return derived.linearFit( i );
+	}
+
+	/**
+	 * Same test as {@link LinearFunction#slopeFits}, on the cached linear fit.
+	 */
+	public boolean slopeFits( final int i, final double minSlope, final double maxSlope )
+	{
+		final LinearFunction function = linearFit( i );
+
+		return function != null && function.getM() >= minSlope && function.getM() <= maxSlope;
+	}
+
+	/**
+	 * @return the linear function fitted to the points between the end of
+	 *         segment gap and the start of segment gap + 1, null if there are
+	 *         too few points or no line could be found
+	 */
+	public Pair< LinearFunction, ArrayList< PointFunctionMatch > > catastropheFit( final int gap, final ArrayList< Point > points )
+	{
+		return derived.catastropheFit( gap, points );
+	}
+
+	/**
+	 * Copies the lists, the functions and the matches, the points are shared.
+	 */
+	@SuppressWarnings( { "rawtypes", "unchecked" } )
+	public static ArrayList< Pair< AbstractFunction2D, ArrayList< PointFunctionMatch > > > copy( final ArrayList< Pair< AbstractFunction2D, ArrayList< PointFunctionMatch > > > segments )
+	{
+		final ArrayList< Pair< AbstractFunction2D, ArrayList< PointFunctionMatch > > > copy = new ArrayList< Pair< AbstractFunction2D, ArrayList< PointFunctionMatch > > >( segments.size() );
+
+		for ( final Pair< AbstractFunction2D, ArrayList< PointFunctionMatch > > segment : segments )
+		{
+			final ArrayList< PointFunctionMatch > matches = new ArrayList< PointFunctionMatch >( segment.getB().size() );
+
+			for ( final PointFunctionMatch match : segment.getB() )
+				matches.add( new PointFunctionMatch( match.getP1(), match.getDistance() ) );
+
+			copy.add( new ValuePair< AbstractFunction2D, ArrayList< PointFunctionMatch > >( ( AbstractFunction2D ) ( ( AbstractFunction2D< ? > ) segment.getA() ).copy(), matches ) );
+		}
+
+		return copy;
+	}
+
+	/**
+	 * The fits derived from the segments, shared by a segmentation and its
+	 * copies. Works on a private copy of the segments nobody else can sort or
+	 * refit.
+	 */
+	private static class Derived
+	{
+		private final ArrayList< Pair< AbstractFunction2D, ArrayList< PointFunctionMatch > > > segments;
+
+		private final ArrayList< LinearFunction > linear;
+		private final boolean[] linearDone;
+
+		private final ArrayList< Pair< LinearFunction, ArrayList< PointFunctionMatch > > > catastrophe;
+		private final boolean[] catastropheDone;
+
+		Derived( final ArrayList< Pair< AbstractFunction2D, ArrayList< PointFunctionMatch > > > segments )
+		{
+			this.segments = segments;
+
+			final int n = segments.size();
+
+			this.linear = new ArrayList< LinearFunction >( Collections.nCopies( n, ( LinearFunction ) null ) );
+			this.linearDone = new boolean[ n ];
+			this.catastrophe = new ArrayList< Pair< LinearFunction, ArrayList< PointFunctionMatch > > >(
+					Collections.nCopies( Math.max( 0, n - 1 ), ( Pair< LinearFunction, ArrayList< PointFunctionMatch > > ) null ) );
+			this.catastropheDone = new boolean[ Math.max( 0, n - 1 ) ];
+		}
+
+		@SuppressWarnings( "deprecation" )
+		synchronized LinearFunction linearFit( final int i )
+		{
+			if ( !linearDone[ i ] )
+			{
+				final LinearFunction function = new LinearFunction();
+
+				try
+				{
+					function.fit( segments.get( i ).getB() );
+					linear.set( i, function );
+				}
+				catch ( Exception e ) {}
+
+				linearDone[ i ] = true;
+			}
+
+			return linear.get( i );
+		}
+
+		synchronized Pair< LinearFunction, ArrayList< PointFunctionMatch > > catastropheFit( final int gap, final ArrayList< Point > points )
+		{
+			if ( !catastropheDone[ gap ] )
+			{
+				final ArrayList< PointFunctionMatch > start = segments.get( gap ).getB();
+				final ArrayList< PointFunctionMatch > end = segments.get( gap + 1 ).getB();
+
+				final double tStart = start.get( start.size() - 1 ).getP1().getL()[ 0 ];
+				final double tEnd = end.get( 0 ).getP1().getL()[ 0 ];
+
+				final ArrayList< Point > catastropyPoints = new ArrayList< Point >();
+
+				for ( final Point p : points )
+					if ( p.getL()[ 0 ] >= tStart && p.getL()[ 0 ] <= tEnd )
+						catastropyPoints.add( p );
+
+				if ( catastropyPoints.size() > 2 )
+				{
+					// maximally 1.1 timepoints between points on a line
+					final Pair< LinearFunction, ArrayList< PointFunctionMatch > > fit = Tracking
+							.findFunction( catastropyPoints, new LinearFunction(), 0.75, 3, 1.1 );
+
+					if ( fit != null )
+						sortMatches( fit.getB() );
+
+					catastrophe.set( gap, fit );
+				}
+
+				catastropheDone[ gap ] = true;
+			}
+
+			return catastrophe.get( gap );
+		}
+	}
+
+	/**
+	 * Sorts the segments by their first timepoint, the inliers of each
+	 * segment by time.
+	 */
+	public static void sort( final ArrayList< Pair< AbstractFunction2D, ArrayList< PointFunctionMatch > > > segments )
+	{
+		for ( final Pair< AbstractFunction2D, ArrayList< PointFunctionMatch > > segment : segments )
+			sortMatches( segment.getB() );
+
+		Collections.sort( segments, new Comparator< Pair< AbstractFunction2D, ArrayList< PointFunctionMatch > > >()
+		{
+			@Override
+			public int compare( final Pair< AbstractFunction2D, ArrayList< PointFunctionMatch > > o1,
+					final Pair< AbstractFunction2D, ArrayList< PointFunctionMatch > > o2 )
+			{
+				return Double.compare( o1.getB().get( 0 ).getP1().getL()[ 0 ], o2.getB().get( 0 ).getP1().getL()[ 0 ] );
+			}
+		} );
+	}
+
+	public static void sortMatches( final ArrayList< PointFunctionMatch > matches )
+	{
+		Collections.sort( matches, new Comparator< PointFunctionMatch >()
+		{
+			@Override
+			public int compare( final PointFunctionMatch o1, final PointFunctionMatch o2 )
+			{
+				return Double.compare( o1.getP1().getL()[ 0 ], o2.getP1().getL()[ 0 ] );
+			}
+		} );
+	}
+}
@@ -0,0 +1,197 @@
+/*-
+ * #%L
+ * Microtubule tracker.
+ * %%
+ * Copyright (C) 2017 MTrack developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.vollseg_kymo_functions;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+
+import net.imglib2.util.Pair;
+
+import fiji.plugin.vollseg_kymo.util.StageMetrics;
+import fiji.plugin.vollseg_kymo.util.StageMetrics.Stage;
+import fiji.plugin.vollseg_kymo.util.TrackEvents;
+import fiji.plugin.vollseg_kymo_fit_function.AbstractFunction2D;
+import mpicbg.models.Point;
+
+/**
+ * The stages a track goes through before its rates can be shown:
+ * <ol>
+ * <li>parse: the file is read into timepoints, lengths and calibration,
+ * depends on the file content only,</li>
+ * <li>segment: RANSAC finds the segments, depends on the parsed track and
+ * maxError, minInliers, maxDist, the function, lambda and the seed,</li>
+ * <li>filter/classify: the slope window, rescue tolerances and catastrophe
+ * settings select and label the segments,</li>
+ * <li>aggregate: rates and frequencies are summed up per track.</li>
+ * </ol>
+ * The output of the first two stages is cached under a key made of exactly
+ * the inputs of that stage, so a change of a parameter only recomputes the
+ * stage it belongs to and the ones after it. The expensive pieces of the
+ * filter/classify stage are kept in the {@link Segmentation} they were
+ * derived from, the rest of it and the aggregation are cheap and simply re-run.
+ * <p>
+ * The time spent in the first two stages, cache hits included, is recorded in
+ * the {@link StageMetrics} of the pipeline, and with flight recorder {@link TrackEvents}
+ * enabled, every load is an event.
+ */
+public class TrackPipeline
+{
+	public static final int DEFAULT_PARSED_CAPACITY = 64;
+
+	public final FitCache fitCache;
+
+	public final StageMetrics metrics;
+
+	private final LinkedHashMap< String, Track > parsed;
+
+	public TrackPipeline() { this( new FitCache(), DEFAULT_PARSED_CAPACITY ); }
+
+	public TrackPipeline( final FitCache fitCache, final int parsedCapacity ) { this( fitCache, parsedCapacity, new StageMetrics() ); }
+
+	public TrackPipeline( final FitCache fitCache, final int parsedCapacity, final StageMetrics metrics )
+	{
+		this.fitCache = fitCache;
+		this.metrics = metrics;
+		this.parsed = new LinkedHashMap< String, Track >( 16, 0.75f, true )
+		{
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry( final Map.Entry< String, Track > eldest )
+			{
+				return size() > parsedCapacity;
+			}
+		};
+	}
+
+	/**
+	 * Parse stage.
+	 *
+	 * @return the parsed track, null if the file could not be read
+	 */
+	public Track parse( final File file )
+	{
+		final long start = StageMetrics.start();
+		final TrackEvents.Span event = TrackEvents.ENABLED ? TrackEvents.beginLoad() : null;
+		Track track = null;
+		try
+		{
+			track = parseTrack( file );
+			return track;
+		}
+		finally
+		{
+			metrics.stop( Stage.PARSE, start );
+			if ( event != null )
+				TrackEvents.endLoad( event, file, track == null ? 0 : track.points.size() );
+		}
+	}
+
+	private Track parseTrack( final File file )
+	{
+		final String hash = fitCache.contentHash( file );
+
+		if ( hash != null )
+		{
+			synchronized ( parsed )
+			{
+				final Track track = parsed.get( hash );
+
+				if ( track != null )
+					return track;
+			}
+		}
+
+		final ArrayList< Pair< Integer, Double > > mts = Tracking.loadMT( file );
+
+		if ( mts == null )
+			return null;
+
+		final Track track = new Track( mts, Tracking.toPoints( mts ), Tracking.loadCalibration( file ) );
+
+		if ( hash != null )
+		{
+			synchronized ( parsed )
+			{
+				parsed.put( hash, track );
+			}
+		}
+
+		return track;
+	}
+
+	/**
+	 * Segment stage.
+	 *
+	 * @return the segmentation, null if the fit was canceled
+	 */
+	public Segmentation segment( final File file, final ArrayList< Point > points, final AbstractFunction2D< ? > function,
+			final double maxError, final int minInliers, final int maxDist, final int functionChoice, final double lambda,
+			final long seed, final BooleanSupplier canceled )
+	{
+		final FitCache.Key key = fitCache.key( file, maxError, minInliers, maxDist, functionChoice, lambda, seed );
+
+		final long start = StageMetrics.start();
+		// the RANSAC events of this fit carry the file name
+		final String previous = TrackEvents.ENABLED ? TrackEvents.enterTrack( file ) : null;
+		try
+		{
+			return fitCache.segment( key, points, function, maxError, minInliers, maxDist, canceled );
+		}
+		finally
+		{
+			metrics.stop( Stage.RANSAC, start );
+			if ( TrackEvents.ENABLED )
+				TrackEvents.exitTrack( previous );
+		}
+	}
+
+	public void clear()
+	{
+		fitCache.clear();
+
+		synchronized ( parsed )
+		{
+			parsed.clear();
+		}
+	}
+
+	/**
+	 * Output of the parse stage.
+	 */
+	public static class Track
+	{
+		public final ArrayList< Pair< Integer, Double > > mts;
+		public final ArrayList< Point > points;
+		public final double[] calibrations;
+
+		public Track( final ArrayList< Pair< Integer, Double > > mts, final ArrayList< Point > points, final double[] calibrations )
+		{
+			this.mts = mts;
+			this.points = points;
+			this.calibrations = calibrations;
+		}
+	}
+}
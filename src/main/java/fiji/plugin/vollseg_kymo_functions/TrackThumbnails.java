@@ -0,0 +1,603 @@
+/*-
+ * #%L
+ * Microtubule tracker.
+ * %%
+ * Copyright (C) 2017 MTrack developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.vollseg_kymo_functions;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.geom.Path2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.IntConsumer;
+
+import javax.swing.JComponent;
+import javax.swing.Scrollable;
+import javax.swing.SwingConstants;
+import javax.swing.SwingUtilities;
+
+import net.imglib2.util.Pair;
+
+import fiji.plugin.vollseg_kymo_fit_function.AbstractFunction2D;
+import fiji.plugin.vollseg_kymo_fit_function.PointFunctionMatch;
+import fiji.plugin.vollseg_kymo_fit_function.polynomial.Polynomial;
+import mpicbg.models.Point;
+
+/**
+ * A grid of small length plots, one per track file, with the fitted segments
+ * drawn over the track, to spot bad fits in a whole directory at a glance.
+ * <p>
+ * The grid is painted from tiles, one image per grid row. A tile is rendered
+ * in the background once it scrolls into view, tiles are rendered in
+ * parallel, and the most recently used ones are kept. The parsed track and
+ * its fit are reduced to a {@link Sparkline} and kept per track, so resizing
+ * the window redraws the tiles without fitting again. Clicking a thumbnail
+ * hands its index to the listener.
+ */
+public class TrackThumbnails extends JComponent implements Scrollable
+{
+	private static final long serialVersionUID = 1L;
+
+	public static final int CELL_WIDTH = 160;
+
+	public static final int CELL_HEIGHT = 90;
+
+	public static final int DEFAULT_TILE_CAPACITY = 128;
+
+	private static final Color SEGMENT = new Color( 200, 30, 30 );
+
+	private static final Color BAD = new Color( 255, 225, 225 );
+
+	/**
+	 * Loads and fits one track.
+	 */
+	public interface Loader
+	{
+		/**
+		 * @return the sparkline of the track, null if the file could not be
+		 *         read
+		 */
+		Sparkline load( int index );
+	}
+
+	private final File[] files;
+
+	private final Loader loader;
+
+	private final IntConsumer onClick;
+
+	private final ExecutorService executor;
+
+	private final Sparkline[] sparklines;
+
+	private final LinkedHashMap< Integer, BufferedImage > tiles;
+
+	/**
+	 * The rows being rendered, with the generation they are rendered for, see
+	 * {@link #pendingKey(int, int)}. A row requested again after the tiles
+	 * went stale is rendered again, not refused for the stale task.
+	 */
+	private final HashSet< Long > pending = new HashSet< Long >();
+
+	/** Incremented when the tiles no longer fit the layout or the data. */
+	private volatile int generation = 0;
+
+	/** The part in view at the last paint, read by the render threads. */
+	private volatile Rectangle visible = new Rectangle();
+
+	private int columns = 1;
+
+	private int selected = -1;
+
+	public TrackThumbnails( final File[] files, final Loader loader, final IntConsumer onClick )
+	{
+		this( files, loader, onClick, DEFAULT_TILE_CAPACITY );
+	}
+
+	public TrackThumbnails( final File[] files, final Loader loader, final IntConsumer onClick, final int tileCapacity )
+	{
+		this.files = files;
+		this.loader = loader;
+		this.onClick = onClick;
+		this.sparklines = new Sparkline[ files.length ];
+		this.tiles = new LinkedHashMap< Integer, BufferedImage >( 16, 0.75f, true )
+		{
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry( final Map.Entry< Integer, BufferedImage > eldest )
+			{
+				return size() > tileCapacity;
+			}
+		};
+		this.executor = Executors.newFixedThreadPool( Runtime.getRuntime().availableProcessors(), r -> {
+			final Thread thread = new Thread( r, "TrackThumbnails" );
+			thread.setDaemon( true );
+			return thread;
+		} );
+
+		setOpaque( true );
+		setBackground( Color.WHITE );
+		addMouseListener( new MouseAdapter()
+		{
+			@Override
+			public void mouseClicked( final MouseEvent e )
+			{
+				final int index = indexAt( e.getX(), e.getY() );
+
+				if ( index < 0 )
+					return;
+
+				select( index );
+				if ( onClick != null )
+					onClick.accept( index );
+			}
+		} );
+	}
+
+	/**
+	 * Forgets all fits, e.g. after the RANSAC parameters changed, and renders
+	 * the visible tiles again.
+	 */
+	public synchronized void reload()
+	{
+		for ( int i = 0; i < sparklines.length; ++i )
+			sparklines[ i ] = null;
+
+		tiles.clear();
+		++generation;
+		repaint();
+	}
+
+	public void select( final int index )
+	{
+		final int previous = selected;
+		selected = index;
+
+		if ( previous >= 0 )
+			repaint( cellBounds( previous ) );
+		if ( index >= 0 )
+		{
+			final Rectangle bounds = cellBounds( index );
+			repaint( bounds );
+			scrollRectToVisible( bounds );
+		}
+	}
+
+	public void dispose()
+	{
+		executor.shutdownNow();
+	}
+
+	public int indexAt( final int x, final int y )
+	{
+		final int column = x / CELL_WIDTH;
+
+		if ( column >= columns )
+			return -1;
+
+		final int index = ( y / CELL_HEIGHT ) * columns + column;
+
+		return index < files.length ? index : -1;
+	}
+
+	public Rectangle cellBounds( final int index )
+	{
+		return new Rectangle( ( index % columns ) * CELL_WIDTH, ( index / columns ) * CELL_HEIGHT, CELL_WIDTH, CELL_HEIGHT );
+	}
+
+	private int rows()
+	{
+		return ( files.length + columns - 1 ) / columns;
+	}
+
+	@Override
+	public void setBounds( final int x, final int y, final int width, final int height )
+	{
+		super.setBounds( x, y, width, height );
+
+		final int columns = Math.max( 1, width / CELL_WIDTH );
+
+		if ( columns != this.columns )
+		{
+			synchronized ( this )
+			{
+				this.columns = columns;
+				tiles.clear();
+				++generation;
+			}
+			revalidate();
+		}
+	}
+
+	@Override
+	protected void paintComponent( final Graphics g )
+	{
+		final Rectangle clip = g.getClipBounds();
+		visible = getVisibleRect();
+
+		g.setColor( getBackground() );
+		g.fillRect( clip.x, clip.y, clip.width, clip.height );
+
+		final int first = Math.max( 0, clip.y / CELL_HEIGHT );
+		final int last = Math.min( rows() - 1, ( clip.y + clip.height - 1 ) / CELL_HEIGHT );
+
+		for ( int row = first; row <= last; ++row )
+		{
+			final BufferedImage tile;
+
+			synchronized ( this )
+			{
+				tile = tiles.get( row );
+			}
+
+			if ( tile != null )
+				g.drawImage( tile, 0, row * CELL_HEIGHT, null );
+			else
+				request( row );
+		}
+
+		// the rows right outside the view come next when scrolling
+		if ( first > 0 )
+			request( first - 1 );
+		if ( last + 1 < rows() )
+			request( last + 1 );
+
+		if ( selected >= 0 )
+		{
+			final Rectangle bounds = cellBounds( selected );
+			g.setColor( Color.BLUE );
+			( ( Graphics2D ) g ).setStroke( new BasicStroke( 2 ) );
+			g.drawRect( bounds.x + 1, bounds.y + 1, bounds.width - 3, bounds.height - 3 );
+		}
+	}
+
+	private synchronized void request( final int row )
+	{
+		final int generation = this.generation;
+		final int columns = this.columns;
+		final Long key = pendingKey( row, generation );
+
+		if ( tiles.containsKey( row ) || !pending.add( key ) )
+			return;
+
+		executor.execute( () -> {
+			BufferedImage tile = null;
+
+			// skip rows scrolled out of view before their turn came
+			if ( isShowing( row ) )
+				tile = renderTile( row, columns, generation );
+
+			synchronized ( TrackThumbnails.this )
+			{
+				pending.remove( key );
+
+				if ( generation == this.generation )
+				{
+					if ( tile == null )
+						return;
+
+					tiles.put( row, tile );
+				}
+				// else stale, the repaint requests the row again for the
+				// current layout
+			}
+
+			SwingUtilities.invokeLater( () -> repaint( 0, row * CELL_HEIGHT, getWidth(), CELL_HEIGHT ) );
+		} );
+	}
+
+	private static Long pendingKey( final int row, final int generation )
+	{
+		return Long.valueOf( ( ( long ) generation << 32 ) | ( row & 0xffffffffL ) );
+	}
+
+	private boolean isShowing( final int row )
+	{
+		final Rectangle visible = this.visible;
+
+		return row * CELL_HEIGHT < visible.y + visible.height + CELL_HEIGHT && ( row + 1 ) * CELL_HEIGHT > visible.y - CELL_HEIGHT;
+	}
+
+	private BufferedImage renderTile( final int row, final int columns, final int generation )
+	{
+		final BufferedImage tile = new BufferedImage( columns * CELL_WIDTH, CELL_HEIGHT, BufferedImage.TYPE_INT_RGB );
+		final Graphics2D g = tile.createGraphics();
+
+		try
+		{
+			g.setRenderingHint( RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON );
+			g.setFont( new Font( Font.SANS_SERIF, Font.PLAIN, 10 ) );
+			g.setColor( Color.WHITE );
+			g.fillRect( 0, 0, tile.getWidth(), tile.getHeight() );
+
+			for ( int column = 0; column < columns; ++column )
+			{
+				final int index = row * columns + column;
+
+				if ( index >= files.length )
+					break;
+
+				final Sparkline sparkline = sparkline( index, generation );
+
+				if ( sparkline == null && generation != this.generation )
+					return null;
+
+				// clipped to the cell, fits extrapolated past the track
+				// would draw into the next one
+				final Graphics2D cell = ( Graphics2D ) g.create( column * CELL_WIDTH, 0, CELL_WIDTH, CELL_HEIGHT );
+				try
+				{
+					draw( cell, files[ index ].getName(), sparkline );
+				}
+				finally
+				{
+					cell.dispose();
+				}
+			}
+		}
+		finally
+		{
+			g.dispose();
+		}
+
+		return tile;
+	}
+
+	private Sparkline sparkline( final int index, final int generation )
+	{
+		synchronized ( this )
+		{
+			if ( sparklines[ index ] != null )
+				return sparklines[ index ];
+		}
+
+		Sparkline sparkline;
+
+		try
+		{
+			sparkline = loader.load( index );
+		}
+		catch ( final RuntimeException e )
+		{
+			e.printStackTrace();
+			sparkline = null;
+		}
+
+		if ( sparkline == null )
+			sparkline = Sparkline.BAD;
+
+		synchronized ( this )
+		{
+			// a reload meanwhile makes this fit stale
+			if ( generation != this.generation )
+				return null;
+
+			sparklines[ index ] = sparkline;
+		}
+
+		return sparkline;
+	}
+
+	private static void draw( final Graphics2D g, final String name, final Sparkline s )
+	{
+		final int w = CELL_WIDTH - 8, h = CELL_HEIGHT - 20;
+
+		if ( s.isBad() )
+		{
+			g.setColor( BAD );
+			g.fillRect( 1, 1, CELL_WIDTH - 2, CELL_HEIGHT - 2 );
+		}
+
+		g.setColor( Color.LIGHT_GRAY );
+		g.drawRect( 1, 1, CELL_WIDTH - 3, CELL_HEIGHT - 3 );
+
+		g.setColor( Color.DARK_GRAY );
+		g.drawString( name, 4, CELL_HEIGHT - 5 );
+
+		if ( s.t.length == 0 )
+			return;
+
+		final double sx = s.maxT > s.minT ? w / ( s.maxT - s.minT ) : 0;
+		final double sy = s.maxL > s.minL ? h / ( s.maxL - s.minL ) : 0;
+
+		final Path2D.Double track = new Path2D.Double();
+
+		for ( int i = 0; i < s.t.length; ++i )
+		{
+			final double x = 4 + ( s.t[ i ] - s.minT ) * sx;
+			final double y = 4 + h - ( s.l[ i ] - s.minL ) * sy;
+
+			if ( i == 0 )
+				track.moveTo( x, y );
+			else
+				track.lineTo( x, y );
+		}
+
+		g.setColor( Color.GRAY );
+		g.setStroke( new BasicStroke( 0.8f ) );
+		g.draw( track );
+
+		g.setColor( SEGMENT );
+		g.setStroke( new BasicStroke( 1.5f ) );
+
+		for ( final double[] segment : s.segments )
+		{
+			final Path2D.Double line = new Path2D.Double();
+
+			for ( int i = 0; i < segment.length; i += 2 )
+			{
+				final double x = 4 + ( segment[ i ] - s.minT ) * sx;
+				final double y = 4 + h - ( segment[ i + 1 ] - s.minL ) * sy;
+
+				if ( i == 0 )
+					line.moveTo( x, y );
+				else
+					line.lineTo( x, y );
+			}
+
+			g.draw( line );
+		}
+	}
+
+	@Override
+	public Dimension getPreferredSize()
+	{
+		return new Dimension( columns * CELL_WIDTH, rows() * CELL_HEIGHT );
+	}
+
+	@Override
+	public Dimension getPreferredScrollableViewportSize()
+	{
+		return new Dimension( 5 * CELL_WIDTH, 6 * CELL_HEIGHT );
+	}
+
+	@Override
+	public int getScrollableUnitIncrement( final Rectangle visibleRect, final int orientation, final int direction )
+	{
+		return orientation == SwingConstants.VERTICAL ? CELL_HEIGHT / 3 : CELL_WIDTH / 3;
+	}
+
+	@Override
+	public int getScrollableBlockIncrement( final Rectangle visibleRect, final int orientation, final int direction )
+	{
+		return orientation == SwingConstants.VERTICAL ? visibleRect.height - CELL_HEIGHT / 3 : visibleRect.width;
+	}
+
+	@Override
+	public boolean getScrollableTracksViewportWidth()
+	{
+		return true;
+	}
+
+	@Override
+	public boolean getScrollableTracksViewportHeight()
+	{
+		return false;
+	}
+
+	/**
+	 * What a thumbnail shows of a track: its points, at most a few per pixel,
+	 * and every fitted segment sampled along its time span.
+	 */
+	public static class Sparkline
+	{
+		public static final Sparkline BAD = new Sparkline( new double[ 0 ], new double[ 0 ], new ArrayList< double[] >() );
+
+		private static final int SAMPLES = 8;
+
+		final double[] t, l;
+
+		final ArrayList< double[] > segments;
+
+		final double minT, maxT, minL, maxL;
+
+		public Sparkline( final double[] t, final double[] l, final ArrayList< double[] > segments )
+		{
+			this.t = t;
+			this.l = l;
+			this.segments = segments;
+
+			double minT = Double.POSITIVE_INFINITY, maxT = Double.NEGATIVE_INFINITY;
+			double minL = Double.POSITIVE_INFINITY, maxL = Double.NEGATIVE_INFINITY;
+
+			for ( int i = 0; i < t.length; ++i )
+			{
+				minT = Math.min( minT, t[ i ] );
+				maxT = Math.max( maxT, t[ i ] );
+				minL = Math.min( minL, l[ i ] );
+				maxL = Math.max( maxL, l[ i ] );
+			}
+
+			this.minT = minT;
+			this.maxT = maxT;
+			this.minL = minL;
+			this.maxL = maxL;
+		}
+
+		/**
+		 * @return whether the track could not be read or no segment was found
+		 */
+		public boolean isBad()
+		{
+			return t.length == 0 || segments.isEmpty();
+		}
+
+		/**
+		 * @param segmentation
+		 *            the fit of the track, null if there is none
+		 */
+		@SuppressWarnings( "rawtypes" )
+		public static Sparkline of( final ArrayList< Point > points, final Segmentation segmentation )
+		{
+			// a few points per pixel are enough
+			final int step = Math.max( 1, points.size() / ( 2 * CELL_WIDTH ) );
+			final int n = ( points.size() + step - 1 ) / step;
+			final double[] t = new double[ n ];
+			final double[] l = new double[ n ];
+
+			for ( int i = 0, j = 0; i < points.size(); i += step, ++j )
+			{
+				t[ j ] = points.get( i ).getW()[ 0 ];
+				l[ j ] = points.get( i ).getW()[ 1 ];
+			}
+
+			final ArrayList< double[] > segments = new ArrayList< double[] >();
+
+			if ( segmentation != null )
+			{
+				for ( final Pair< AbstractFunction2D, ArrayList< PointFunctionMatch > > segment : segmentation.segments )
+				{
+					if ( !( segment.getA() instanceof Polynomial ) )
+						continue;
+
+					final Polynomial polynomial = ( Polynomial ) segment.getA();
+					final Pair< Double, Double > fromTo = Tracking.fromTo( segment.getB() );
+					final double[] line = new double[ 2 * SAMPLES ];
+
+					for ( int i = 0; i < SAMPLES; ++i )
+					{
+						final double x = fromTo.getA() + ( fromTo.getB() - fromTo.getA() ) * i / ( SAMPLES - 1 );
+						line[ 2 * i ] = x;
+						line[ 2 * i + 1 ] = polynomial.predict( x );
+					}
+
+					segments.add( line );
+				}
+			}
+
+			return new Sparkline( t, l, segments );
+		}
+	}
+}
@@ -28,9 +28,11 @@ import java.awt.Shape;
 import java.io.BufferedReader;
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.function.BooleanSupplier;
 
 import javax.swing.JFrame;
 import javax.swing.JPanel;
@@ -41,14 +43,20 @@ import net.imglib2.util.ValuePair;
 import org.jfree.chart.ChartFactory;
 import org.jfree.chart.ChartPanel;
 import org.jfree.chart.JFreeChart;
+import org.jfree.chart.event.ChartProgressEvent;
+import org.jfree.chart.event.ChartProgressListener;
 import org.jfree.chart.plot.PlotOrientation;
 import org.jfree.chart.plot.XYPlot;
 import org.jfree.chart.renderer.xy.XYItemRenderer;
 import org.jfree.chart.renderer.xy.XYLineAndShapeRenderer;
 import org.jfree.chart.util.ShapeUtils;
+import org.jfree.data.xy.XYDataset;
 import org.jfree.data.xy.XYSeries;
-import org.jfree.data.xy.XYSeriesCollection;
 
+import fiji.plugin.vollseg_kymo.RingBufferLogger;
+import fiji.plugin.vollseg_kymo.util.StageMetrics;
+import fiji.plugin.vollseg_kymo.util.StageMetrics.Stage;
+import fiji.plugin.vollseg_kymo.util.TrackEvents;
 import fiji.plugin.vollseg_kymo_fit_function.AbstractFunction2D;
 import fiji.plugin.vollseg_kymo_fit_function.PointFunctionMatch;
 import fiji.plugin.vollseg_kymo_fit_function.polynomial.LinearFunction;
@@ -57,8 +65,9 @@ import mpicbg.models.Point;
 
 public class Tracking
 {
-	
-	
+	/** The random models RANSAC tries for each segment. */
+	public static final int RANSAC_ITERATIONS = 100;
+
 	public static ArrayList< FLSobject > loadMTStat( final File file )
 	{
 		final ArrayList< FLSobject > points = new ArrayList< FLSobject >();
@@ -313,8 +322,114 @@ public class Tracking
 		return series;
 	}
 	
-	public static JFreeChart makeChart( final XYSeriesCollection dataset ) { return makeChart( dataset, "XY Chart", "x-axis", "y-axis" ); }
-	public static JFreeChart makeChart( final XYSeriesCollection dataset, final String title, final String x, final String y )
+	/**
+	 * The points of a track for a {@link PrimitiveXYDataset}, sorted by time
+	 * as an {@link XYSeries} would.
+	 */
+	public static PrimitiveXYDataset.Series pointSeries( final List< Pair< Integer, Double > > mts, final String name )
+	{
+		final int n = mts == null ? 0 : mts.size();
+		final double[] x = new double[ n ];
+		final double[] y = new double[ n ];
+
+		for ( int i = 0; i < n; ++i )
+		{
+			x[ i ] = mts.get( i ).getA();
+			y[ i ] = mts.get( i ).getB();
+		}
+
+		sortByX( x, y );
+
+		return new PrimitiveXYDataset.Series( name, x, y, n );
+	}
+
+	/**
+	 * The points of a segment for a {@link PrimitiveXYDataset}, at the same
+	 * (rounded) timepoints as {@link #toPairList(ArrayList)}.
+	 */
+	public static PrimitiveXYDataset.Series matchSeries( final List< PointFunctionMatch > points, final String name )
+	{
+		final int n = points.size();
+		final double[] x = new double[ n ];
+		final double[] y = new double[ n ];
+
+		for ( int i = 0; i < n; ++i )
+		{
+			final double[] w = points.get( i ).getP1().getW();
+			x[ i ] = Math.round( w[ 0 ] );
+			y[ i ] = w[ 1 ];
+		}
+
+		sortByX( x, y );
+
+		return new PrimitiveXYDataset.Series( name, x, y, n );
+	}
+
+	/**
+	 * The polynomial sampled from from to to, for a
+	 * {@link PrimitiveXYDataset}. Samples outside [minY, maxY] are left out.
+	 */
+	public static PrimitiveXYDataset.Series functionSeries( final Polynomial< ?, Point > polynomial, final double from, final double to,
+			final double step, final double minY, final double maxY, final String name )
+	{
+		int n = 0;
+		for ( double x = from; x <= to; x = x + step )
+			++n;
+
+		final double[] xs = new double[ n ];
+		final double[] ys = new double[ n ];
+		int size = 0;
+
+		for ( double x = from; x <= to && size < n; x = x + step )
+		{
+			final double v = polynomial.predict( x );
+
+			if ( v >= minY && v <= maxY )
+			{
+				xs[ size ] = x;
+				ys[ size ] = v;
+				++size;
+			}
+		}
+
+		return new PrimitiveXYDataset.Series( name, xs, ys, size );
+	}
+
+	public static PrimitiveXYDataset.Series functionSeries( final Polynomial< ?, Point > polynomial, final double from, final double to,
+			final double step, final String name )
+	{
+		return functionSeries( polynomial, from, to, step, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, name );
+	}
+
+	/**
+	 * Sorts the points by x, stable, if they are not sorted already.
+	 */
+	private static void sortByX( final double[] x, final double[] y )
+	{
+		boolean sorted = true;
+		for ( int i = 1; i < x.length && sorted; ++i )
+			sorted = x[ i - 1 ] <= x[ i ];
+
+		if ( sorted )
+			return;
+
+		final Integer[] order = new Integer[ x.length ];
+		for ( int i = 0; i < order.length; ++i )
+			order[ i ] = i;
+
+		Arrays.sort( order, ( a, b ) -> Double.compare( x[ a ], x[ b ] ) );
+
+		final double[] xs = x.clone();
+		final double[] ys = y.clone();
+		for ( int i = 0; i < order.length; ++i )
+		{
+			x[ i ] = xs[ order[ i ] ];
+			y[ i ] = ys[ order[ i ] ];
+		}
+	}
+
+	public static JFreeChart makeChart( final XYDataset dataset ) { return makeChart( dataset, "XY Chart", "x-axis", "y-axis" ); }
+	public static JFreeChart makeChart( final XYDataset dataset, final String title, final String x, final String y )
 	{
 		final JFreeChart chart = ChartFactory.createXYLineChart(
 				title, x, y,
@@ -365,7 +480,14 @@ public class Tracking
 	}
 
 	public static JFrame display( final JFreeChart chart ) { return display( chart, new Dimension( 800, 500 ) ); }
-	public static JFrame display( final JFreeChart chart, final Dimension d )
+	public static JFrame display( final JFreeChart chart, final Dimension d ) { return display( chart, d, null ); }
+
+	/**
+	 * @param metrics
+	 *            where the first render of the chart is recorded as
+	 *            {@link Stage#CHART}, null to record nothing.
+	 */
+	public static JFrame display( final JFreeChart chart, final Dimension d, final StageMetrics metrics )
 	{
 		final JPanel panel = new JPanel();
 		final ChartPanel chartPanel = new ChartPanel(
@@ -385,6 +507,32 @@ public class Tracking
 				);
 		panel.add( chartPanel );
 
+		// draw only as many points as there are pixels to draw them on
+		if ( chart.getPlot() instanceof XYPlot && chart.getXYPlot().getDataset() instanceof PrimitiveXYDataset )
+			( ( PrimitiveXYDataset ) chart.getXYPlot().getDataset() ).attach( chartPanel );
+
+		// the first render counts as charting, redraws on zooming or resizing
+		// are not part of the processing
+		if ( metrics != null )
+		{
+			chart.addProgressListener( new ChartProgressListener()
+			{
+				private long drawStart = 0;
+
+				@Override
+				public void chartProgress( final ChartProgressEvent e )
+				{
+					if ( e.getType() == ChartProgressEvent.DRAWING_STARTED )
+						drawStart = StageMetrics.start();
+					else if ( e.getType() == ChartProgressEvent.DRAWING_FINISHED && drawStart != 0 )
+					{
+						metrics.stop( Stage.CHART, drawStart );
+						chart.removeProgressListener( this );
+					}
+				}
+			} );
+		}
+
 		final JFrame frame = new JFrame();
 		frame.setContentPane( panel );
 		frame.validate();
@@ -436,7 +584,17 @@ public class Tracking
 
 		try
 		{
-			function.ransac( candidates, inliers, 100, maxError, 0, minNumInliers, maxDist );
+			final TrackEvents.Span event = TrackEvents.ENABLED ? TrackEvents.beginRansac() : null;
+			try
+			{
+				function.ransac( candidates, inliers, RANSAC_ITERATIONS, maxError, 0, minNumInliers, maxDist );
+			}
+			finally
+			{
+				// also a search that threw, with the inliers it got to
+				if ( event != null )
+					TrackEvents.endRansac( event, function, candidates.size(), RANSAC_ITERATIONS, inliers.size() );
+			}
 
 			if (inliers!=null){
 			
@@ -473,6 +631,21 @@ public class Tracking
 			final double maxError,
 			final int minNumInliers,
 			final int maxDist )
+	{
+		return findAllFunctions( mts, function, maxError, minNumInliers, maxDist, null );
+	}
+
+	/**
+	 * Same as above, but checks <code>canceled</code> before each segment is
+	 * fitted and gives up with <code>null</code> once it returns true.
+	 */
+	public static < P extends AbstractFunction2D< P > > ArrayList< Pair< P, ArrayList< PointFunctionMatch > > > findAllFunctions(
+			final ArrayList< Point > mts,
+			final P function,
+			final double maxError,
+			final int minNumInliers,
+			final int maxDist,
+			final BooleanSupplier canceled )
 	{
 		boolean fitted;
 
@@ -487,6 +660,9 @@ public class Tracking
 		{
 			fitted = false;
 
+			if ( canceled != null && canceled.getAsBoolean() )
+				return null;
+
 			final Pair< P, ArrayList< PointFunctionMatch > > f = findFunction( remainingPoints, function.copy(), maxError, minNumInliers, maxDist );
 
 			if ( f != null && f.getB().size() > 0 )
@@ -535,12 +711,11 @@ public class Tracking
 			{
 				function.fit( inliers );
 	
-				System.out.println( inliers.size() + "/" + candidates.size() );
-				System.out.println( function );
+				RingBufferLogger.CONSOLE.debug( "%d/%d %s", inliers.size(), candidates.size(), function );
 			}
 			else
 			{
-				System.out.println( "0/" + candidates.size() );
+				RingBufferLogger.CONSOLE.debug( "0/%d", candidates.size() );
 				return null;
 			}
 		}
@@ -569,7 +744,17 @@ public class Tracking
 
 		try
 		{
-			function.ransac( candidates, inliers, 100, maxError, 0.01, minNumInliers, maxDist );
+			final TrackEvents.Span event = TrackEvents.ENABLED ? TrackEvents.beginRansac() : null;
+			try
+			{
+				function.ransac( candidates, inliers, RANSAC_ITERATIONS, maxError, 0.01, minNumInliers, maxDist );
+			}
+			finally
+			{
+				// also a search that threw, with the inliers it got to
+				if ( event != null )
+					TrackEvents.endRansac( event, function, candidates.size(), RANSAC_ITERATIONS, inliers.size() );
+			}
 
 			if ( inliers.size() >= function.getMinNumPoints() )
 			{
@@ -588,7 +773,7 @@ public class Tracking
 		}
 		catch ( Exception e )
 		{
-			System.out.println( "Couldn't fit function: " + e );
+			RingBufferLogger.CONSOLE.warn( "Couldn't fit function: %s", e );
 			// TODO Auto-generated catch block
 			//e.printStackTrace();
 			return null;
@@ -0,0 +1,103 @@
+/*-
+ * #%L
+ * Microtubule tracker.
+ * %%
+ * Copyright (C) 2017 MTrack developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.vollseg_kymo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class ModelEventDispatcherTest
+{
+	private static ModelChangeEvent modified( final Model model, final Stat stat )
+	{
+		final ModelChangeEvent event = new ModelChangeEvent( model, ModelChangeEvent.MODEL_MODIFIED );
+		event.addStat( stat );
+		event.putStatFlag( stat, ModelChangeEvent.FLAG_Stat_ADDED );
+		return event;
+	}
+
+	@Test
+	public void testOnlyAdjacentEventsOfATypeAreMerged() throws InterruptedException
+	{
+		final Model model = new Model();
+		final ModelEventDispatcher dispatcher = model.getEventDispatcher();
+		dispatcher.setWindow( 10000 );
+
+		final List< Integer > ids = new ArrayList<>();
+		final List< Integer > sizes = new ArrayList<>();
+		final CountDownLatch done = new CountDownLatch( 1 );
+		model.addModelChangeListener( event -> {
+			ids.add( event.getEventID() );
+			sizes.add( event.getStats().size() );
+			if ( ids.size() == 3 )
+				done.countDown();
+		} );
+
+		dispatcher.post( new ModelChangeEvent( model, ModelChangeEvent.StatS_FILTERED ) );
+		dispatcher.post( modified( model, new Stat( 0, 0, 0, 0, 0, 0, 0, "a" ) ) );
+		dispatcher.post( modified( model, new Stat( 0, 0, 0, 0, 0, 0, 0, "b" ) ) );
+		dispatcher.post( new ModelChangeEvent( model, ModelChangeEvent.StatS_FILTERED ) );
+		dispatcher.flushNow();
+
+		assertTrue( done.await( 5, TimeUnit.SECONDS ) );
+		assertEquals( ModelChangeEvent.StatS_FILTERED, ( int ) ids.get( 0 ) );
+		assertEquals( ModelChangeEvent.MODEL_MODIFIED, ( int ) ids.get( 1 ) );
+		assertEquals( ModelChangeEvent.StatS_FILTERED, ( int ) ids.get( 2 ) );
+		assertEquals( 2, ( int ) sizes.get( 1 ) );
+	}
+
+	@Test
+	public void testEachModelHasItsOwnWorker() throws InterruptedException
+	{
+		final Model a = new Model();
+		final Model b = new Model();
+		final CountDownLatch blocked = new CountDownLatch( 1 );
+		final CountDownLatch delivered = new CountDownLatch( 1 );
+
+		// a listener of one model that blocks must not hold up the other
+		a.addModelChangeListener( event -> {
+			try
+			{
+				blocked.await();
+			}
+			catch ( final InterruptedException e )
+			{
+				Thread.currentThread().interrupt();
+			}
+		} );
+		b.addModelChangeListener( event -> delivered.countDown() );
+
+		a.getEventDispatcher().post( new ModelChangeEvent( a, ModelChangeEvent.StatS_FILTERED ) );
+		a.getEventDispatcher().flushNow();
+		b.getEventDispatcher().post( new ModelChangeEvent( b, ModelChangeEvent.StatS_FILTERED ) );
+		b.getEventDispatcher().flushNow();
+
+		assertTrue( delivered.await( 5, TimeUnit.SECONDS ) );
+		blocked.countDown();
+	}
+}
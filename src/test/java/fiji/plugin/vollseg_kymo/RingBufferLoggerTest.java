@@ -0,0 +1,128 @@
+/*-
+ * #%L
+ * Microtubule tracker.
+ * %%
+ * Copyright (C) 2017 MTrack developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.vollseg_kymo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Color;
+import java.util.ArrayList;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RingBufferLoggerTest
+{
+	private final ArrayList< String > lines = new ArrayList< String >();
+
+	private RingBufferLogger logger;
+
+	@Before
+	public void setUp()
+	{
+		logger = new RingBufferLogger( new RingBufferLogger.Sink()
+		{
+			@Override
+			public void append( final String[] messages, final Color[] colors, final int n )
+			{
+				for ( int i = 0; i < n; i++ )
+					lines.add( messages[ i ] );
+			}
+
+			@Override
+			public void setStatus( final String status )
+			{}
+
+			@Override
+			public void setProgress( final double val )
+			{}
+		}, 8, false );
+		// drained by the tests only
+		logger.stop();
+		logger.setRateLimit( 0 );
+	}
+
+	@After
+	public void tearDown()
+	{
+		logger.stop();
+	}
+
+	@Test
+	public void testOrderAndFormat()
+	{
+		logger.info( "%d/%d", 1, 2 );
+		logger.warn( "plain" );
+		logger.drain();
+
+		assertEquals( "1/2\n", lines.get( 0 ) );
+		assertEquals( "plain\n", lines.get( 1 ) );
+	}
+
+	@Test
+	public void testLevel()
+	{
+		logger.setLevel( RingBufferLogger.Level.WARN );
+		logger.info( "hidden" );
+		logger.error( "shown" );
+		logger.drain();
+
+		assertEquals( 1, lines.size() );
+		assertEquals( "shown", lines.get( 0 ) );
+	}
+
+	@Test
+	public void testRepeatsCollapsed()
+	{
+		for ( int i = 0; i < 5; i++ )
+			logger.info( "again" );
+		logger.drain();
+
+		assertEquals( 2, lines.size() );
+		assertTrue( lines.get( 1 ).contains( "repeated 4 more times" ) );
+	}
+
+	@Test
+	public void testFullBufferDrops()
+	{
+		for ( int i = 0; i < 10; i++ )
+			logger.info( "%d", i );
+		logger.drain();
+
+		assertEquals( "0\n", lines.get( 0 ) );
+		assertEquals( "7\n", lines.get( 7 ) );
+		assertTrue( lines.get( 8 ).contains( "2 messages dropped" ) );
+	}
+
+	@Test
+	public void testMutableArgumentsSnapshot()
+	{
+		final StringBuilder mutable = new StringBuilder( "before" );
+		logger.info( "%s", mutable );
+		mutable.setLength( 0 );
+		mutable.append( "after" );
+		logger.drain();
+
+		assertEquals( "before\n", lines.get( 0 ) );
+	}
+}
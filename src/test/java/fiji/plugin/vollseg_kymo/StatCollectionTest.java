@@ -0,0 +1,187 @@
+/*-
+ * #%L
+ * Microtubule tracker.
+ * %%
+ * Copyright (C) 2017 MTrack developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.vollseg_kymo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class StatCollectionTest
+{
+	private static Stat stat( final double rate )
+	{
+		return new Stat( rate, 0, 10, 1, 1, 0, 0, "track" );
+	}
+
+	private static StatCollection collection( final List< Stat > stats )
+	{
+		final StatCollection collection = new StatCollection();
+		collection.setNumThreads( 2 );
+		for ( int i = 0; i < stats.size(); i++ )
+			collection.add( stats.get( i ), "track" + ( i % 3 ) );
+		return collection;
+	}
+
+	private static List< Stat > stats( final int n )
+	{
+		final List< Stat > stats = new ArrayList<>();
+		for ( int i = 0; i < n; i++ )
+			stats.add( stat( i ) );
+		return stats;
+	}
+
+	@Test
+	public void testVisibilityIsNotWrittenToTheStats()
+	{
+		final List< Stat > stats = stats( 10 );
+		final StatCollection collection = collection( stats );
+		collection.filter( new FeatureFilter( Stat.RATE, 5, true ) );
+
+		final int id = Stat.featureID( StatCollection.VISIBILITY );
+		for ( final Stat stat : stats )
+		{
+			assertFalse( stat.hasFeature( id ) );
+			final boolean visible = stat.getDoubleFeature( Stat.RATE ) >= 5;
+			assertEquals( visible, collection.isVisible( stat ) );
+			assertEquals( visible ? 1d : 0d, collection.getDoubleFeature( stat, id ), 0 );
+			assertEquals( visible ? "1.0" : "0.0", collection.getFeature( stat, StatCollection.VISIBILITY ) );
+		}
+		assertEquals( 5, collection.getNstats( true ) );
+		assertNull( collection.getFeature( stat( 1 ), StatCollection.VISIBILITY ) );
+	}
+
+	@Test
+	public void testSnapshotAnswersVisibility()
+	{
+		final List< Stat > stats = stats( 4 );
+		final StatCollection collection = collection( stats );
+		collection.filter( new FeatureFilter( Stat.RATE, 2, true ) );
+		final StatCollection.Snapshot snapshot = collection.snapshot();
+		collection.setVisible( true );
+
+		final int id = Stat.featureID( StatCollection.VISIBILITY );
+		assertEquals( 0d, snapshot.getDoubleFeature( stats.get( 0 ), id ), 0 );
+		assertEquals( 1d, snapshot.getDoubleFeature( stats.get( 3 ), id ), 0 );
+		assertEquals( 1d, collection.getDoubleFeature( stats.get( 0 ), id ), 0 );
+	}
+
+	@Test
+	public void testThresholdMoveMatchesFullFilter()
+	{
+		final List< Stat > stats = stats( 200 );
+		final StatCollection collection = collection( stats );
+		collection.filter( new FeatureFilter( Stat.RATE, 50, true ) );
+		collection.filter( new FeatureFilter( Stat.RATE, 120, true ) );
+		collection.filter( new FeatureFilter( Stat.RATE, 80, true ) );
+
+		for ( final Stat stat : stats )
+			assertEquals( stat.getDoubleFeature( Stat.RATE ) >= 80, collection.isVisible( stat ) );
+		assertEquals( 120, collection.getNstats( true ) );
+	}
+
+	@Test
+	public void testReAddedStatIsRefilteredCorrectly()
+	{
+		final List< Stat > stats = stats( 20 );
+		final StatCollection collection = collection( stats );
+		collection.filter( new FeatureFilter( Stat.RATE, 10, true ) );
+
+		// already in the collection and filtered out, add() makes it visible
+		final Stat low = stats.get( 3 );
+		collection.add( low, "track0" );
+		assertTrue( collection.isVisible( low ) );
+
+		// moving the threshold must not leave it visible
+		collection.filter( new FeatureFilter( Stat.RATE, 12, true ) );
+		for ( final Stat stat : stats )
+			assertEquals( stat.getDoubleFeature( Stat.RATE ) >= 12, collection.isVisible( stat ) );
+
+		collection.filter( new FeatureFilter( Stat.RATE, 2, true ) );
+		for ( final Stat stat : stats )
+			assertEquals( stat.getDoubleFeature( Stat.RATE ) >= 2, collection.isVisible( stat ) );
+	}
+
+	@Test
+	public void testCarriedVisibility()
+	{
+		final Stat hidden = stat( 1 );
+		hidden.putFeature( StatCollection.VISIBILITY, 0d );
+		final Stat plain = stat( 2 );
+
+		final List< Stat > stats = new ArrayList<>();
+		stats.add( hidden );
+		stats.add( plain );
+		final StatCollection collection = StatCollection.fromCollection( stats );
+
+		assertFalse( collection.isVisible( hidden ) );
+		assertTrue( collection.isVisible( plain ) );
+	}
+
+	@Test
+	public void testSnapshotIsNotChangedByLaterWrites()
+	{
+		// more than one chunk, the writes below touch a single one
+		final List< Stat > stats = stats( 3000 );
+		final StatCollection collection = collection( stats );
+		collection.filter( new FeatureFilter( Stat.RATE, 1500, true ) );
+		final StatCollection.Snapshot snapshot = collection.snapshot();
+
+		final Stat removed = stats.get( 10 );
+		assertTrue( collection.remove( removed, "track1" ) );
+		final Stat added = stat( 1 );
+		collection.add( added, "track3" );
+
+		assertEquals( 3000, snapshot.getNstats( false ) );
+		assertEquals( 1500, snapshot.getNstats( true ) );
+		assertNotNull( snapshot.search( removed.ID() ) );
+		assertNull( snapshot.search( added.ID() ) );
+		assertFalse( snapshot.keySet().contains( "track3" ) );
+		int n = 0;
+		for ( final Stat stat : snapshot.iterable( "track1", false ) )
+			n++;
+		assertEquals( 1000, n );
+
+		assertNull( collection.search( removed.ID() ) );
+		assertTrue( collection.isVisible( added ) );
+		assertEquals( 3000, collection.getNstats( false ) );
+		assertEquals( 999, collection.getNstats( "track1", false ) );
+		for ( final Stat stat : stats )
+			if ( stat != removed )
+				assertEquals( stat.getDoubleFeature( Stat.RATE ) >= 1500, collection.isVisible( stat ) );
+	}
+
+	@Test( expected = UnsupportedOperationException.class )
+	public void testViewsCanNotBeModified()
+	{
+		final StatCollection collection = collection( stats( 3 ) );
+		final Set< String > keys = collection.keySet();
+		keys.remove( "track0" );
+	}
+}
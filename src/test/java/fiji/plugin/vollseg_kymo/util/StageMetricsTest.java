@@ -0,0 +1,108 @@
+/*-
+ * #%L
+ * Microtubule tracker.
+ * %%
+ * Copyright (C) 2017 MTrack developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.vollseg_kymo.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import fiji.plugin.vollseg_kymo.util.StageMetrics.Snapshot;
+import fiji.plugin.vollseg_kymo.util.StageMetrics.Stage;
+
+public class StageMetricsTest
+{
+	@Test
+	public void testCountTotalMax()
+	{
+		final StageMetrics metrics = new StageMetrics();
+		metrics.record( Stage.PARSE, 10 );
+		metrics.record( Stage.PARSE, 30 );
+		metrics.record( Stage.PARSE, -5 );
+		metrics.record( Stage.WRITE, 100 );
+
+		final Snapshot parse = metrics.snapshot( Stage.PARSE );
+		assertEquals( 3, parse.count );
+		assertEquals( 40, parse.total );
+		assertEquals( 30, parse.max );
+		assertEquals( 140, metrics.getTotalNanos() );
+		assertEquals( 0, metrics.snapshot( Stage.CHART ).count );
+	}
+
+	@Test
+	public void testSmallValuesAreExact()
+	{
+		final StageMetrics metrics = new StageMetrics();
+		for ( int i = 0; i < 8; i++ )
+			metrics.record( Stage.RANSAC, i );
+
+		final Snapshot s = metrics.snapshot( Stage.RANSAC );
+		assertEquals( 0, s.percentile( 0.1 ) );
+		assertEquals( 3, s.percentile( 0.5 ) );
+		assertEquals( 7, s.percentile( 1 ) );
+	}
+
+	@Test
+	public void testPercentilesWithinABucket()
+	{
+		final StageMetrics metrics = new StageMetrics();
+		for ( long nanos = 1; nanos <= 1_000_000; nanos += 7 )
+			metrics.record( Stage.RANSAC, nanos );
+
+		final Snapshot s = metrics.snapshot( Stage.RANSAC );
+		for ( final double q : new double[] { 0.5, 0.9, 0.99 } )
+		{
+			final double exact = q * 1_000_000;
+			final long p = s.percentile( q );
+			assertTrue( q + ": " + p, p >= exact - 7 && p <= exact * 1.125 + 7 );
+		}
+		assertEquals( s.max, s.percentile( 1 ) );
+	}
+
+	@Test
+	public void testReset()
+	{
+		final StageMetrics metrics = new StageMetrics();
+		metrics.record( Stage.PARSE, 10 );
+		metrics.reset();
+
+		assertEquals( 0, metrics.snapshot( Stage.PARSE ).count );
+		assertEquals( 0, metrics.snapshot( Stage.PARSE ).percentile( 0.5 ) );
+		assertEquals( 0, metrics.getTotalNanos() );
+	}
+
+	@Test
+	public void testWallClock() throws InterruptedException
+	{
+		final StageMetrics metrics = new StageMetrics();
+		assertEquals( 0, metrics.getWallNanos() );
+
+		metrics.beginRun();
+		Thread.sleep( 5 );
+		metrics.endRun();
+
+		final long wall = metrics.getWallNanos();
+		assertTrue( wall >= 5_000_000L );
+		// ended, does not grow any more
+		assertEquals( wall, metrics.getWallNanos() );
+	}
+}
@@ -0,0 +1,193 @@
+/*-
+ * #%L
+ * Microtubule tracker.
+ * %%
+ * Copyright (C) 2017 MTrack developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.vollseg_kymo.visualization.table;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import fiji.plugin.vollseg_kymo.Model;
+import fiji.plugin.vollseg_kymo.Stat;
+
+public class StatSearchIndexTest
+{
+	private Model model;
+
+	private Stat track15;
+
+	private Stat track2;
+
+	private Stat other;
+
+	private static Stat stat()
+	{
+		return new Stat( 0, 0, 0, 0, 0, 0, 0, "" );
+	}
+
+	@Before
+	public void setUp()
+	{
+		model = new Model();
+		track15 = model.addStatTo( stat(), "Track15" );
+		track2 = model.addStatTo( stat(), "Track2" );
+		other = model.addStatTo( stat(), "Other" );
+	}
+
+	@Test
+	public void testTrigramQuery()
+	{
+		final StatSearchIndex index = new StatSearchIndex( model );
+
+		assertSame( track15, index.next( "ck15", new StatSearchIndex.Cursor() ) );
+		assertSame( other, index.next( "the", new StatSearchIndex.Cursor() ) );
+		assertNull( index.next( "track3", new StatSearchIndex.Cursor() ) );
+	}
+
+	@Test
+	public void testShortQueriesMatchAnywhere()
+	{
+		final StatSearchIndex index = new StatSearchIndex( model );
+
+		// not only prefixes
+		assertSame( track15, index.next( "5", new StatSearchIndex.Cursor() ) );
+		assertSame( track15, index.next( "15", new StatSearchIndex.Cursor() ) );
+		assertSame( track2, index.next( "2", new StatSearchIndex.Cursor() ) );
+		assertSame( other, index.next( "er", new StatSearchIndex.Cursor() ) );
+		assertNull( index.next( "z", new StatSearchIndex.Cursor() ) );
+		assertNull( index.next( "51", new StatSearchIndex.Cursor() ) );
+	}
+
+	@Test
+	public void testCaseInsensitive()
+	{
+		final StatSearchIndex index = new StatSearchIndex( model );
+
+		assertSame( other, index.next( "OTHER", new StatSearchIndex.Cursor() ) );
+		assertSame( other, index.next( "O", new StatSearchIndex.Cursor() ) );
+	}
+
+	@Test
+	public void testCursorMovesOnAndWraps()
+	{
+		final StatSearchIndex index = new StatSearchIndex( model );
+		final StatSearchIndex.Cursor cursor = new StatSearchIndex.Cursor();
+
+		final Stat first = index.next( "tr", cursor );
+		final Stat second = index.next( "tr", cursor );
+		assertNotSame( first, second );
+		assertSame( first, index.next( "tr", cursor ) );
+
+		// another text starts over
+		assertSame( other, index.next( "ot", cursor ) );
+		assertSame( other, index.next( "ot", cursor ) );
+	}
+
+	@Test
+	public void testRemoveAndAdd()
+	{
+		final StatSearchIndex index = new StatSearchIndex( model );
+		final StatSearchIndex.Cursor cursor = new StatSearchIndex.Cursor();
+
+		index.remove( track15 );
+		assertNull( index.next( "5", cursor ) );
+		assertEquals( 2, index.size() );
+
+		index.add( track15 );
+		assertSame( track15, index.next( "5", cursor ) );
+		assertEquals( 3, index.size() );
+	}
+
+	@Test
+	public void testListenAndDispose()
+	{
+		final StatSearchIndex index = new StatSearchIndex( model );
+
+		index.listen();
+		assertEquals( 1, count( index ) );
+		index.listen();
+		assertEquals( 1, count( index ) );
+
+		index.dispose();
+		assertEquals( 0, count( index ) );
+
+		// changes missed meanwhile are picked up again
+		final Stat track5 = model.addStatTo( stat(), "Track5" );
+		index.listen();
+		assertSame( track5, index.next( "track5", new StatSearchIndex.Cursor() ) );
+		index.dispose();
+	}
+
+	@Test
+	public void testStatsAddedBetweenSearches()
+	{
+		final StatSearchIndex index = new StatSearchIndex( model );
+		final StatSearchIndex.Cursor cursor = new StatSearchIndex.Cursor();
+
+		assertSame( track15, index.next( "track", cursor ) );
+
+		// a new label with a shorter list for the trigrams than the one the
+		// cursor walked, and one more stat with a known label
+		final Stat track3 = model.addStatTo( stat(), "Track3" );
+		index.add( track3 );
+		final Stat track15b = model.addStatTo( stat(), "Track15" );
+		index.add( track15b );
+
+		// goes on after the last match, in the order of adding
+		assertSame( track2, index.next( "track", cursor ) );
+		assertSame( track3, index.next( "track", cursor ) );
+		assertSame( track15b, index.next( "track", cursor ) );
+		assertSame( track15, index.next( "track", cursor ) );
+
+		// the same when no label is added, another text starts over
+		assertSame( track15, index.next( "15", cursor ) );
+		final Stat track15c = model.addStatTo( stat(), "Track15" );
+		index.add( track15c );
+		assertSame( track15b, index.next( "15", cursor ) );
+		assertSame( track15c, index.next( "15", cursor ) );
+		assertSame( track15, index.next( "15", cursor ) );
+	}
+
+	@Test
+	public void testStatsAddedBeforeListening()
+	{
+		final StatSearchIndex index = new StatSearchIndex( model );
+
+		// as between the constructor and addNotify of the search bar
+		final Stat track7 = model.addStatTo( stat(), "Track7" );
+		index.listen();
+		assertSame( track7, index.next( "track7", new StatSearchIndex.Cursor() ) );
+		index.dispose();
+	}
+
+	private int count( final StatSearchIndex index )
+	{
+		int n = 0;
+		for ( final Object listener : model.getModelChangeListener() )
+			if ( listener == index )
+				++n;
+		return n;
+	}
+}
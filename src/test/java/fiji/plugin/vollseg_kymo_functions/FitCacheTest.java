@@ -0,0 +1,189 @@
+/*-
+ * #%L
+ * Microtubule tracker.
+ * %%
+ * Copyright (C) 2017 MTrack developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.vollseg_kymo_functions;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+import net.imglib2.util.Pair;
+import net.imglib2.util.ValuePair;
+
+import fiji.plugin.vollseg_kymo_fit_function.AbstractFunction2D;
+import fiji.plugin.vollseg_kymo_fit_function.PointFunctionMatch;
+import fiji.plugin.vollseg_kymo_fit_function.polynomial.LinearFunction;
+import mpicbg.models.Point;
+
+public class FitCacheTest
+{
+	private static FitCache.Key key( final String hash )
+	{
+		return new FitCache.Key( hash, 2.5, 20, 10, 0, 0.1, FitCache.DEFAULT_SEED );
+	}
+
+	/**
+	 * One segment from time start to start + 9 on the line y = m * t.
+	 */
+	@SuppressWarnings( "rawtypes" )
+	private static Pair< AbstractFunction2D, ArrayList< PointFunctionMatch > > segment( final int start, final double m )
+	{
+		final ArrayList< PointFunctionMatch > matches = new ArrayList< PointFunctionMatch >();
+		for ( int t = start + 9; t >= start; --t )
+			matches.add( new PointFunctionMatch( new Point( new double[] { t, m * t } ), 0.5 ) );
+
+		return new ValuePair< AbstractFunction2D, ArrayList< PointFunctionMatch > >( new LinearFunction( m, 0 ), matches );
+	}
+
+	@SuppressWarnings( "rawtypes" )
+	private static Segmentation segmentation()
+	{
+		final ArrayList< Pair< AbstractFunction2D, ArrayList< PointFunctionMatch > > > segments = new ArrayList< Pair< AbstractFunction2D, ArrayList< PointFunctionMatch > > >();
+		segments.add( segment( 10, -1 ) );
+		segments.add( segment( 0, 2 ) );
+		return new Segmentation( segments );
+	}
+
+	@Test
+	public void testKeyEquality()
+	{
+		final FitCache.Key key = key( "abc" );
+
+		assertEquals( key, key( "abc" ) );
+		assertEquals( key.hashCode(), key( "abc" ).hashCode() );
+		assertEquals( key.toFileName(), key( "abc" ).toFileName() );
+
+		assertNotEquals( key, key( "abd" ) );
+		assertNotEquals( key, new FitCache.Key( "abc", 2.6, 20, 10, 0, 0.1, FitCache.DEFAULT_SEED ) );
+		assertNotEquals( key, new FitCache.Key( "abc", 2.5, 21, 10, 0, 0.1, FitCache.DEFAULT_SEED ) );
+		assertNotEquals( key, new FitCache.Key( "abc", 2.5, 20, 11, 0, 0.1, FitCache.DEFAULT_SEED ) );
+		assertNotEquals( key, new FitCache.Key( "abc", 2.5, 20, 10, 1, 0.1, FitCache.DEFAULT_SEED ) );
+		assertNotEquals( new FitCache.Key( "abc", 2.5, 20, 10, 1, 0.1, FitCache.DEFAULT_SEED ),
+				new FitCache.Key( "abc", 2.5, 20, 10, 1, 0.2, FitCache.DEFAULT_SEED ) );
+		assertNotEquals( key, new FitCache.Key( "abc", 2.5, 20, 10, 0, 0.1, FitCache.DEFAULT_SEED + 1 ) );
+		assertNotEquals( key.toFileName(), key( "abd" ).toFileName() );
+	}
+
+	@Test
+	public void testLinearIgnoresLambda()
+	{
+		assertEquals( key( "abc" ), new FitCache.Key( "abc", 2.5, 20, 10, 0, 0.7, FitCache.DEFAULT_SEED ) );
+	}
+
+	@Test
+	public void testMissAndHit()
+	{
+		final FitCache cache = new FitCache( 4 );
+
+		assertNull( cache.get( key( "a" ), new LinearFunction() ) );
+		assertEquals( 1, cache.getMisses() );
+
+		cache.put( key( "a" ), segmentation() );
+
+		assertNotNull( cache.get( key( "a" ), new LinearFunction() ) );
+		assertEquals( 1, cache.getHits() );
+	}
+
+	@Test
+	public void testEvictsLeastRecentlyUsed()
+	{
+		final FitCache cache = new FitCache( 2 );
+
+		cache.put( key( "a" ), segmentation() );
+		cache.put( key( "b" ), segmentation() );
+
+		// a is used last, b goes first
+		assertNotNull( cache.get( key( "a" ), new LinearFunction() ) );
+		cache.put( key( "c" ), segmentation() );
+
+		assertNull( cache.get( key( "b" ), new LinearFunction() ) );
+		assertNotNull( cache.get( key( "a" ), new LinearFunction() ) );
+		assertNotNull( cache.get( key( "c" ), new LinearFunction() ) );
+	}
+
+	@Test
+	public void testClear()
+	{
+		final FitCache cache = new FitCache( 2 );
+
+		cache.put( key( "a" ), segmentation() );
+		cache.clear();
+
+		assertNull( cache.get( key( "a" ), new LinearFunction() ) );
+	}
+
+	@Test
+	public void testSegmentsAreSorted()
+	{
+		final Segmentation segmentation = segmentation();
+
+		assertEquals( 0, segmentation.segments.get( 0 ).getB().get( 0 ).getP1().getL()[ 0 ], 0 );
+		assertEquals( 10, segmentation.segments.get( 1 ).getB().get( 0 ).getP1().getL()[ 0 ], 0 );
+		assertEquals( 9, segmentation.segments.get( 0 ).getB().get( 9 ).getP1().getL()[ 0 ], 0 );
+	}
+
+	@Test
+	public void testReturnsCopies()
+	{
+		final FitCache cache = new FitCache( 2 );
+		final Segmentation stored = segmentation();
+
+		cache.put( key( "a" ), stored );
+
+		// neither the stored segmentation nor a returned one reach the cache
+		stored.segments.clear();
+		final Segmentation first = cache.get( key( "a" ), new LinearFunction() );
+		assertEquals( 2, first.size() );
+
+		first.segments.get( 0 ).getB().clear();
+		( ( LinearFunction ) first.segments.get( 1 ).getA() ).set( new LinearFunction( 5, 5 ) );
+		first.segments.remove( 0 );
+
+		final Segmentation second = cache.get( key( "a" ), new LinearFunction() );
+		assertEquals( 2, second.size() );
+		assertEquals( 10, second.segments.get( 0 ).getB().size() );
+		assertEquals( -1, ( ( LinearFunction ) second.segments.get( 1 ).getA() ).getM(), 0 );
+		assertEquals( 0.5, second.segments.get( 0 ).getB().get( 0 ).getDistance(), 0 );
+		assertFalse( first.segments == second.segments );
+	}
+
+	@Test
+	public void testNullKeyFitsWithoutCaching()
+	{
+		final FitCache cache = new FitCache( 2 );
+		final ArrayList< Point > points = new ArrayList< Point >();
+		for ( int t = 0; t < 30; ++t )
+			points.add( new Point( new double[] { t, 2 * t } ) );
+
+		final Segmentation segmentation = cache.segment( null, points, new LinearFunction(), 0.5, 10, 5, null );
+
+		assertNotNull( segmentation );
+		assertTrue( segmentation.size() > 0 );
+		assertEquals( 0, cache.getHits() + cache.getMisses() );
+	}
+}
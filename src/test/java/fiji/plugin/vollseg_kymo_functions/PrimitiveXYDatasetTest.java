@@ -0,0 +1,202 @@
+/*-
+ * #%L
+ * Microtubule tracker.
+ * %%
+ * Copyright (C) 2017 MTrack developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.vollseg_kymo_functions;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class PrimitiveXYDatasetTest
+{
+	private static final int PIXELS = 100;
+
+	private static final int ROWS = 50;
+
+	/**
+	 * A dataset that draws every series as a line, or every series as shapes.
+	 */
+	private static PrimitiveXYDataset dataset( final boolean line )
+	{
+		return new PrimitiveXYDataset()
+		{
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean isLine( final int s )
+			{
+				return line;
+			}
+		};
+	}
+
+	private static PrimitiveXYDataset.Series noise( final int size, final boolean sorted )
+	{
+		final Random random = new Random( 42 );
+		final double[] x = new double[ size ];
+		final double[] y = new double[ size ];
+		for ( int i = 0; i < size; ++i )
+		{
+			x[ i ] = sorted ? i : random.nextDouble() * size;
+			y[ i ] = random.nextGaussian();
+		}
+		return new PrimitiveXYDataset.Series( "noise", x, y, size );
+	}
+
+	private static void assertIncreasing( final PrimitiveXYDataset dataset, final PrimitiveXYDataset.Series s )
+	{
+		int previous = -1;
+		for ( int item = 0; item < dataset.getItemCount( 0 ); ++item )
+		{
+			final int index = indexOf( s, dataset.getXValue( 0, item ), dataset.getYValue( 0, item ), previous + 1 );
+			assertTrue( "points out of order or not from the series", index > previous );
+			previous = index;
+		}
+	}
+
+	private static int indexOf( final PrimitiveXYDataset.Series s, final double x, final double y, final int from )
+	{
+		for ( int i = from; i < s.size; ++i )
+			if ( s.x[ i ] == x && s.y[ i ] == y )
+				return i;
+		return -1;
+	}
+
+	@Test
+	public void testNotAttachedDrawsAll()
+	{
+		final PrimitiveXYDataset dataset = dataset( true );
+		dataset.addSeries( noise( 10000, true ) );
+
+		assertEquals( 10000, dataset.getItemCount( 0 ) );
+	}
+
+	@Test
+	public void testLineKeepsExtremaPerColumn()
+	{
+		final PrimitiveXYDataset dataset = dataset( true );
+		final PrimitiveXYDataset.Series s = noise( 100000, true );
+		dataset.addSeries( s );
+		dataset.setView( 0, s.size - 1, PIXELS );
+
+		final int n = dataset.getItemCount( 0 );
+		assertTrue( n <= 4 * ( PIXELS + 2 ) );
+		assertTrue( n > PIXELS );
+		assertIncreasing( dataset, s );
+
+		// first, last, lowest and highest point are all drawn
+		double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+		for ( int item = 0; item < n; ++item )
+		{
+			min = Math.min( min, dataset.getYValue( 0, item ) );
+			max = Math.max( max, dataset.getYValue( 0, item ) );
+		}
+		assertEquals( s.minY, min, 0 );
+		assertEquals( s.maxY, max, 0 );
+		assertEquals( s.x[ 0 ], dataset.getXValue( 0, 0 ), 0 );
+		assertEquals( s.x[ s.size - 1 ], dataset.getXValue( 0, n - 1 ), 0 );
+	}
+
+	@Test
+	public void testLineKeepsView()
+	{
+		final PrimitiveXYDataset dataset = dataset( true );
+		final PrimitiveXYDataset.Series s = noise( 100000, true );
+		dataset.addSeries( s );
+		dataset.setView( 5000, 6000, PIXELS );
+
+		// the visible points and one on each side
+		final int n = dataset.getItemCount( 0 );
+		assertEquals( 4999, dataset.getXValue( 0, 0 ), 0 );
+		assertEquals( 6000, dataset.getXValue( 0, n - 1 ), 0 );
+	}
+
+	@Test
+	public void testUnsortedLineDrawsAll()
+	{
+		final PrimitiveXYDataset dataset = dataset( true );
+		dataset.addSeries( noise( 10000, false ) );
+		dataset.setView( 0, 10000, PIXELS );
+
+		assertEquals( 10000, dataset.getItemCount( 0 ) );
+	}
+
+	@Test
+	public void testShapesKeepEveryPixel()
+	{
+		final PrimitiveXYDataset dataset = dataset( false );
+		final PrimitiveXYDataset.Series s = noise( 100000, false );
+		dataset.addSeries( s );
+		dataset.setView( s.minX, s.maxX, PIXELS, s.minY, s.maxY, ROWS );
+
+		final int n = dataset.getItemCount( 0 );
+		assertTrue( n < s.size );
+		assertIncreasing( dataset, s );
+
+		final HashSet< Long > all = new HashSet< Long >();
+		for ( int i = 0; i < s.size; ++i )
+			all.add( cell( s, s.x[ i ], s.y[ i ] ) );
+
+		final HashSet< Long > drawn = new HashSet< Long >();
+		for ( int item = 0; item < n; ++item )
+			assertTrue( "two points in one pixel", drawn.add( cell( s, dataset.getXValue( 0, item ), dataset.getYValue( 0, item ) ) ) );
+
+		assertEquals( all, drawn );
+	}
+
+	private static Long cell( final PrimitiveXYDataset.Series s, final double x, final double y )
+	{
+		final long column = ( long ) Math.floor( ( x - s.minX ) / ( s.maxX - s.minX ) * PIXELS );
+		final long row = ( long ) Math.floor( ( y - s.minY ) / ( s.maxY - s.minY ) * ROWS );
+		return Long.valueOf( ( row << 32 ) | column );
+	}
+
+	@Test
+	public void testShapesWithoutRowsDrawAll()
+	{
+		final PrimitiveXYDataset dataset = dataset( false );
+		dataset.addSeries( noise( 10000, false ) );
+		dataset.setView( 0, 10000, PIXELS );
+
+		assertEquals( 10000, dataset.getItemCount( 0 ) );
+	}
+
+	@Test
+	public void testFullSeriesKept()
+	{
+		final PrimitiveXYDataset dataset = dataset( true );
+		final PrimitiveXYDataset.Series s = noise( 100000, true );
+		dataset.addSeries( s );
+		dataset.setView( 0, 100, PIXELS );
+
+		assertSame( s, dataset.getSeries( 0 ) );
+		assertEquals( s.minX, dataset.getDomainLowerBound( false ), 0 );
+		assertEquals( s.maxY, dataset.getRangeUpperBound( false ), 0 );
+
+		dataset.setView( Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, 0 );
+		assertEquals( s.size, dataset.getItemCount( 0 ) );
+	}
+}